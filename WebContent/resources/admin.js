@@ -173,142 +173,138 @@ function updateSurveyForReal( commit ) {
 	});
 }
 
-function fillSubmissionStatusTable(submissions) {
-	$("#submitted-awaiting-approval").empty();
-	$("#submitted-approved").empty();
-	$("#submitted-rejected").empty();
-	$("#not-submitted").empty();
-	$(".status-button").attr("disbled",true);
-	var submittedAwaitingApprovalHtml = '<thead><tr><th></th><th class="translate" data-i18n="User Name">User Name</th><th class="translate" data-i18n="Organization">Organization</th><th class="translate" data-i18n="Email">Email</th><th class="translate" data-i18n="Specification Version">Specification Version</th><th class="translate" data-i18n="% Complete">% Complete</th><th class="translate" data-i18n="Score">Score</th></tr></thead>\n<tbody>';
-	var submittedRejectedHtml = '<thead><tr><th></th><th class="translate" data-i18n="User Name">User Name</th><th class="translate" data-i18n="Organization">Organization</th><th class="translate" data-i18n="Email">Email</th><th class="translate" data-i18n="Specification Version">Specification Version</th><th class="translate" data-i18n="% Complete">% Complete</th><th class="translate" data-i18n="Score">Score</th></tr></thead>\n<tbody>';
-	var notSubmittedHtml = '<thead><tr><th class="translate" data-i18n="User Name">User Name</th><th class="translate" data-i18n="Organization">Organization</th><th class="translate" data-i18n="Email">Email</th><th class="translate" data-i18n="Specification Version">Specification Version</th><th class="translate" data-i18n="% Complete">% Complete</th><th class="translate" data-i18n="Score">Score</th></tr></thead>\n<tbody>';
-	var submittedApprovedHtml = '<thead><tr><th></th><th class="translate" data-i18n="User Name">User Name</th><th class="translate" data-i18n="Organization">Organization</th><th class="translate" data-i18n="Email">Email</th><th class="translate" data-i18n="Specification Version">Specification Version</th><th class="translate" data-i18n="% Complete">% Complete</th><th class="translate" data-i18n="Score">Score</th></tr></thead>\n<tbody>';
-	for (var i = 0; i < submissions.length; i++) {
-		var html = '<tr id="submission-';
-		html += submissions[i].id;
-		html += '">';
-		if (submissions[i].submitted) {
-			html += '<td class="cb_col"><input class="status-cb" id = "submission-checked-';
-			html += submissions[i].id;
-			html += '" type="checkbox" name="submission-checked-';
-			html += submissions[i].id;
-			html += '" /></td>';
-		}
-		html += '<td class="username_col">';
-		html += submissions[i].user.username;
-		html += '</td><td class="organization_col">';
-		html += submissions[i].user.organization;
-		html += '</td><td class="email_col">';
-		html += submissions[i].user.email;
-		html += '</td><td class="spec_version_col">';
-		var specVersion = submissions[i].specVersion;
-    	var versionParts = specVersion.split( "." );
-    	if ( versionParts.length > 2 ) {
-    		specVersion = versionParts[0] + "." + versionParts[1];
-    	}
-    	html += specVersion;
-		html += '</td><td class="completed_col">';
-		html += submissions[i].percentComplete;
-		html += '</td><td class="score_col">';
-		html += submissions[i].score;
-		html += '</td></tr>\n';
-		if (submissions[i].submitted) {
-			if (submissions[i].approved) {
-				submittedApprovedHtml += html;
-			} else if (submissions[i].rejected) {
-				submittedRejectedHtml += html;
-			} else {
-				submittedAwaitingApprovalHtml += html;
-				
-			}
-		} else {
-			notSubmittedHtml += html;
-		}
+/**
+ * Columns which can be sorted on the server in the order they appear in the status tables
+ * (after the optional checkbox column).  Null indicates the column can not be sorted.
+ */
+var submissionSortColumns = ["username", "organization", "email", "specVersion", "percentComplete", "score"];
+
+/**
+ * Number of submissions requested from the server for each page of a status table
+ */
+var SUBMISSION_PAGE_LENGTH = 15;
+
+function submissionTableHeader(withCheckbox) {
+	var html = '<thead><tr>';
+	if (withCheckbox) {
+		html += '<th></th>';
 	}
-	var submittedAwaitingApproval = $("#submitted-awaiting-approval");
-	submittedAwaitingApproval.html(submittedAwaitingApprovalHtml);
-	var submittedApproved = $("#submitted-approved");
-	submittedApproved.html(submittedApprovedHtml);
-	var submittedRejected = $("#submitted-rejected");
-	submittedRejected.html(submittedRejectedHtml);
-	var notSubmitted = $("#not-submitted");
-	notSubmitted.html(notSubmittedHtml);
-	addCheckboxButtonEnablers(submittedAwaitingApproval, $(".submitted-awaiting-approval-button"));
-	addCheckboxButtonEnablers(submittedRejected, $(".submitted-rejected-button"));
-	addCheckboxButtonEnablers(submittedApproved, $(".submitted-approved-button"));
-	
-	
-	/*************001 starts  here	************/
-	
-	if(!$.fn.dataTable.isDataTable("#submitted-awaiting-approval")){
-		$('#submitted-awaiting-approval').DataTable( {
-		       "searching" : false,
-		       "bLengthChange": false,
-		       "processing": true,
-		       "pageLength": 15,
-		       "language": {					
-		            "url": "resources/locales/"+(url('?locale') ||'en')+"/translation.json"
-		        },
-		        "fnDrawCallback": function (oSettings) {
-					$('.translate').localize();
-					}
-		} );
-		
+	html += '<th class="translate" data-i18n="User Name">User Name</th><th class="translate" data-i18n="Organization">Organization</th><th class="translate" data-i18n="Email">Email</th><th class="translate" data-i18n="Specification Version">Specification Version</th><th class="translate" data-i18n="% Complete">% Complete</th><th class="translate" data-i18n="Score">Score</th></tr></thead>\n<tbody></tbody>';
+	return html;
+}
+
+function submissionRow(submission, withCheckbox) {
+	var row = [];
+	if (withCheckbox) {
+		row.push('<input class="status-cb" id = "submission-checked-' + submission.id + 
+				'" type="checkbox" name="submission-checked-' + submission.id + '" />');
 	}
-	if(!$.fn.dataTable.isDataTable("#submitted-approved")){
-		$('#submitted-approved').DataTable( {
-			   "searching" : false,
-		       "bLengthChange": false,
-		       "processing": true,
-		       "pageLength": 15,
-		       "language": {					
-		            "url": "resources/locales/"+(url('?locale') ||'en')+"/translation.json"
-		        },
-		        "fnDrawCallback": function (oSettings) {
-					$('.translate').localize();
-					}
-		} );
+	row.push(submission.user.username);
+	row.push(submission.user.organization);
+	row.push(submission.user.email);
+	var specVersion = submission.specVersion;
+	var versionParts = specVersion.split( "." );
+	if ( versionParts.length > 2 ) {
+		specVersion = versionParts[0] + "." + versionParts[1];
 	}
-	if(!$.fn.dataTable.isDataTable("#submitted-rejected")){
-		$('#submitted-rejected').DataTable( {
-			   "searching" : false,
-		       "bLengthChange": false,
-		       "processing": true,
-		       "pageLength": 15,
-		       "language": {					
-		            "url": "resources/locales/"+(url('?locale') ||'en')+"/translation.json"
-		        },
-		        "fnDrawCallback": function (oSettings) {
-					$('.translate').localize();
-					}
-		} );
+	row.push(specVersion);
+	row.push(submission.percentComplete);
+	row.push(submission.score);
+	return row;
+}
+
+/**
+ * Create a status table which requests one page of submissions at a time from the server
+ * @param tableId ID of the table element
+ * @param status Submission status shown in the table
+ * @param withCheckbox True if the rows have a checkbox for changing the status
+ * @param buttons Buttons enabled when a checkbox is checked
+ */
+function createSubmissionStatusTable(tableId, status, withCheckbox, buttons) {
+	var table = $("#" + tableId);
+	table.html(submissionTableHeader(withCheckbox));
+	var columnOffset = withCheckbox ? 1 : 0;
+	var columnDefs = [];
+	for (var i = 0; i < submissionSortColumns.length; i++) {
+		if (submissionSortColumns[i] == null) {
+			columnDefs.push({"orderable": false, "targets": i + columnOffset});
+		}
+	}
+	if (withCheckbox) {
+		columnDefs.push({"orderable": false, "className": "cb_col", "targets": 0});
 	}
-	if(!$.fn.dataTable.isDataTable("#not-submitted")){
-		$('#not-submitted').DataTable( {
-			   "searching" : false,
-		       "bLengthChange": false,
-		       "processing": true,
-		       "pageLength": 15,
-		       "language": {					
-		            "url": "resources/locales/"+(url('?locale') ||'en')+"/translation.json"
-		        },
-		        "fnDrawCallback": function (oSettings) {
-					$('.translate').localize();
+	table.DataTable( {
+		"serverSide": true,
+		"searching" : true,
+		"bLengthChange": false,
+		"processing": true,
+		"pageLength": SUBMISSION_PAGE_LENGTH,
+		"order": [[columnOffset, "asc"]],
+		"columnDefs": columnDefs,
+		"language": {
+			"url": "resources/locales/"+(url('?locale') ||'en')+"/translation.json"
+		},
+		"ajax": function (data, callback, settings) {
+			var sort = "username";
+			var order = "asc";
+			if (data.order && data.order.length > 0) {
+				var sortColumn = submissionSortColumns[data.order[0].column - columnOffset];
+				if (sortColumn) {
+					sort = sortColumn;
+					order = data.order[0].dir;
+				}
+			}
+			$.ajax({
+				url: "CertificationServlet",
+				data: {
+					request: "getsubmissions",
+					locale: getCurrentLanguage(),
+					status: status,
+					offset: data.start,
+					limit: data.length,
+					sort: sort,
+					order: order,
+					organization: data.search.value
+				},
+				type: "GET",
+				dataType : "json",
+				success: function( json ) {
+					$("#submission-status-loading").hide();
+					var rows = [];
+					for (var i = 0; i < json.submissions.length; i++) {
+						rows.push(submissionRow(json.submissions[i], withCheckbox));
 					}
-		});
+					buttons.attr("disabled",true);
+					callback({
+						"draw": data.draw,
+						"recordsTotal": json.total,
+						"recordsFiltered": json.total,
+						"data": rows
+					});
+				},
+				error: function( xhr, status, errorThrown ) {
+					$("#submission-status-loading").hide();
+					handleError( xhr, status, errorThrown);
+				}
+			});
+		},
+		"fnDrawCallback": function (oSettings) {
+			$('.translate').localize();
+		}
+	} );
+	if (withCheckbox) {
+		addCheckboxButtonEnablers(table, buttons);
 	}
-	/*************001 ends  here************/
-
 }
 
 function addCheckboxButtonEnablers(context, buttons) {
-	var selector = $('td input:checkbox',context);
-	selector.change(function() {
+	// Delegated since the rows are replaced on every page draw
+	context.on("change", "td input:checkbox", function() {
 		if($(this).prop('checked')) {
 			buttons.removeAttr("disabled");
 		} else {
 			var somethingChecked = false;
-			selector.each(function() {
+			$('td input:checkbox',context).each(function() {
 				if($(this).prop('checked')) {
 					somethingChecked = true;
 				}
@@ -378,29 +374,19 @@ function enableSubmitCheckboxes() {
 }
 
 function reloadSubmissionStatus() {
-	$("#submitted-awaiting-approval").empty();
-	$("#submitted-approved").empty();
-	$("#submitted-rejected").empty();
-	$("#not-submitted").empty();
 	$(".status-button").attr("disabled",true);
-	$("#submission-status-loading").show();
-	$.ajax({
-	    url: "CertificationServlet",
-	    data: {
-	        request: "getsubmissions",
-	        locale: getCurrentLanguage()
-	    },
-	    type: "GET",
-	    dataType : "json",
-	    success: function( json ) {
-	    	$("#submission-status-loading").hide();
-	    	fillSubmissionStatusTable(json);
-	    },
-	    error: function( xhr, status, errorThrown ) {
-	    	$("#submission-status-loading").hide();
-	    	handleError( xhr, status, errorThrown);
-	    }
-	});
+	if ($.fn.dataTable.isDataTable("#submitted-awaiting-approval")) {
+		$("#submitted-awaiting-approval").DataTable().ajax.reload(null, false);
+		$("#submitted-approved").DataTable().ajax.reload(null, false);
+		$("#submitted-rejected").DataTable().ajax.reload(null, false);
+		$("#not-submitted").DataTable().ajax.reload(null, false);
+	} else {
+		$("#submission-status-loading").show();
+		createSubmissionStatusTable("submitted-awaiting-approval", "awaitingApproval", true, $(".submitted-awaiting-approval-button"));
+		createSubmissionStatusTable("submitted-approved", "approved", true, $(".submitted-approved-button"));
+		createSubmissionStatusTable("submitted-rejected", "rejected", true, $(".submitted-rejected-button"));
+		createSubmissionStatusTable("not-submitted", "notSubmitted", false, $());
+	}
 }
 
 /**
@@ -0,0 +1,6 @@
+-- Persisted scores for the survey responses.
+-- The columns are filled in for existing survey responses the first time they are listed.
+alter table survey_response add column if not exists score integer;
+alter table survey_response add column if not exists percent_complete integer;
+alter table survey_response add column if not exists num_answered integer;
+alter table survey_response add column if not exists last_updated timestamp with time zone;
@@ -0,0 +1,8 @@
+-- Indexes for the lookups used by the data access objects and the
+-- unique constraints the data access objects already assume.
+create index if not exists idx_answer_question on answer (question_id);
+create index if not exists idx_question_subquestion_of on question (subquestion_of);
+create index if not exists idx_section_spec_version on section (spec_version);
+create unique index if not exists uk_survey_response_user_version on survey_response (user_id, spec_version);
+create unique index if not exists uk_openchain_user_username on openchain_user (username);
+create unique index if not exists uk_spec_version_language on spec (version, language);
@@ -0,0 +1,6 @@
+-- One answer per question for each survey response so that answers can be upserted.
+-- Any duplicate answers are removed keeping the most recently added.
+delete from answer a using answer b where a.response_id=b.response_id and a.question_id=b.question_id and a.id < b.id;
+create unique index if not exists uk_answer_response_question on answer (response_id, question_id);
+-- The unique index also serves lookups by response_id alone.
+drop index if exists idx_answer_response;
@@ -0,0 +1,17 @@
+-- Emails waiting to be sent by the background dispatcher.  Rows are added in the same
+-- transaction as the change which triggers the email and are kept after sending.  The body
+-- is removed once the email is sent or abandoned since verification and password reset
+-- emails contain the unhashed tokens.
+create table if not exists email_outbox (
+  id bigserial primary key,
+  from_email text not null,
+  to_email text not null,
+  subject text not null,
+  body text,
+  created timestamp with time zone not null default now(),
+  next_attempt timestamp with time zone not null default now(),
+  attempts integer not null default 0,
+  last_error text,
+  sent timestamp with time zone
+);
+create index if not exists idx_email_outbox_pending on email_outbox (next_attempt) where sent is null;
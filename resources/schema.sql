@@ -1,3 +1,5 @@
+-- Base schema for the OpenChain certification database.
+-- Later changes are applied on startup by SchemaMigrator from the scripts in db/migration
 	CREATE SEQUENCE seq_spec_id START 1;
 	alter SEQUENCE seq_spec_id OWNER TO openchain; 
 	CREATE TABLE spec
@@ -81,7 +83,11 @@
 	      REFERENCES spec (id),
 	    submitted boolean,
 	    approved boolean,
-	    rejected boolean
+	    rejected boolean,
+	    score integer,
+	    percent_complete integer,
+	    num_answered integer,
+	    last_updated timestamp with time zone
 	 );
 	 alter TABLE survey_response OWNER TO openchain;
 	    
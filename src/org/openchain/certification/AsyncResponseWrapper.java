@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response passed to a request processed on a request executor.
+ * 
+ * Once the response is completed - either by the handler finishing or by the asynchronous
+ * request timing out - the container may recycle the underlying response.  Any output from a
+ * handler which is still running after a timeout is discarded rather than written to the
+ * recycled response.  All output and the completion are synchronized on the wrapper so that
+ * a write can not overlap the completion.
+ * @author Gary O'Neall
+ *
+ */
+class AsyncResponseWrapper extends HttpServletResponseWrapper {
+	
+	private boolean completed = false;
+	private ServletOutputStream outputStream = null;
+	private PrintWriter writer = null;
+
+	/**
+	 * Output stream which discards all output once the response is completed
+	 */
+	private class CompletableOutputStream extends ServletOutputStream {
+		private ServletOutputStream delegate;
+		
+		CompletableOutputStream(ServletOutputStream delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.write(b);
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.write(b, off, len);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.flush();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writer which discards all output once the response is completed
+	 */
+	private class CompletableWriter extends Writer {
+		private Writer delegate;
+		
+		CompletableWriter(Writer delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.write(cbuf, off, len);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.flush();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			synchronized(AsyncResponseWrapper.this) {
+				if (!completed) {
+					delegate.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param response Response to wrap
+	 */
+	AsyncResponseWrapper(HttpServletResponse response) {
+		super(response);
+	}
+	
+	/**
+	 * Mark the response as completed.  Any later output is discarded.
+	 * @return true if the response was not already completed
+	 */
+	synchronized boolean setCompleted() {
+		if (completed) {
+			return false;
+		}
+		completed = true;
+		return true;
+	}
+	
+	@Override
+	public synchronized ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			outputStream = new CompletableOutputStream(super.getOutputStream());
+		}
+		return outputStream;
+	}
+
+	@Override
+	public synchronized PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			writer = new PrintWriter(new CompletableWriter(super.getWriter()));
+		}
+		return writer;
+	}
+
+	@Override
+	public synchronized void setStatus(int sc) {
+		if (!completed) {
+			super.setStatus(sc);
+		}
+	}
+
+	@Override
+	public synchronized void sendError(int sc, String msg) throws IOException {
+		if (!completed) {
+			super.sendError(sc, msg);
+		}
+	}
+
+	@Override
+	public synchronized void sendError(int sc) throws IOException {
+		if (!completed) {
+			super.sendError(sc);
+		}
+	}
+
+	@Override
+	public synchronized void sendRedirect(String location) throws IOException {
+		if (!completed) {
+			super.sendRedirect(location);
+		}
+	}
+
+	@Override
+	public synchronized void setHeader(String name, String value) {
+		if (!completed) {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public synchronized void addHeader(String name, String value) {
+		if (!completed) {
+			super.addHeader(name, value);
+		}
+	}
+
+	@Override
+	public synchronized void setDateHeader(String name, long date) {
+		if (!completed) {
+			super.setDateHeader(name, date);
+		}
+	}
+
+	@Override
+	public synchronized void addDateHeader(String name, long date) {
+		if (!completed) {
+			super.addDateHeader(name, date);
+		}
+	}
+
+	@Override
+	public synchronized void setIntHeader(String name, int value) {
+		if (!completed) {
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public synchronized void addIntHeader(String name, int value) {
+		if (!completed) {
+			super.addIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public synchronized void addCookie(Cookie cookie) {
+		if (!completed) {
+			super.addCookie(cookie);
+		}
+	}
+
+	@Override
+	public synchronized void setContentType(String type) {
+		if (!completed) {
+			super.setContentType(type);
+		}
+	}
+
+	@Override
+	public synchronized void setCharacterEncoding(String charset) {
+		if (!completed) {
+			super.setCharacterEncoding(charset);
+		}
+	}
+
+	@Override
+	public synchronized void setContentLength(int len) {
+		if (!completed) {
+			super.setContentLength(len);
+		}
+	}
+
+	@Override
+	public synchronized void flushBuffer() throws IOException {
+		if (!completed) {
+			super.flushBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void resetBuffer() {
+		if (!completed) {
+			super.resetBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		if (!completed) {
+			super.reset();
+		}
+	}
+}
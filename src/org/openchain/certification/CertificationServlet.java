@@ -22,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.security.NoSuchAlgorithmException;
@@ -39,7 +40,11 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -48,21 +53,31 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.openchain.certification.PostResponse.Status;
+import org.openchain.certification.RequestExecutors.Pool;
+import org.openchain.certification.dbdao.CertifiedSnapshot;
+import org.openchain.certification.dbdao.SpecCatalog;
+import org.openchain.certification.dbdao.SubmissionFilter;
+import org.openchain.certification.dbdao.SurveyCache;
 import org.openchain.certification.dbdao.SurveyDatabase;
 import org.openchain.certification.dbdao.SurveyDbDao;
 import org.openchain.certification.dbdao.SurveyResponseDao;
+import org.openchain.certification.dbdao.UserCache;
 import org.openchain.certification.dbdao.UserDb;
 import org.openchain.certification.git.GitRepoException;
 import org.openchain.certification.git.QuestionnaireGitRepo;
+import org.openchain.certification.model.CertifiedSubmission;
+import org.openchain.certification.model.EmailMessage;
 import org.openchain.certification.model.Question;
 import org.openchain.certification.model.QuestionException;
 import org.openchain.certification.model.Section;
 import org.openchain.certification.model.SubQuestion;
 import org.openchain.certification.model.Submission;
+import org.openchain.certification.model.SubmissionPage;
 import org.openchain.certification.model.Survey;
 import org.openchain.certification.model.SurveyResponse;
 import org.openchain.certification.model.SurveyResponseException;
 import org.openchain.certification.model.User;
+import org.openchain.certification.utility.EmailDispatcher;
 import org.openchain.certification.utility.EmailUtilException;
 import org.openchain.certification.utility.EmailUtility;
 import org.openchain.certification.utility.PasswordUtil;
@@ -94,6 +109,13 @@ public class CertificationServlet extends HttpServlet {
 	public static final String PARAMETER_SPEC_VERSION = "specVersion";  //$NON-NLS-1$
 	public static final String PARAMETER_GIT_TAG = "tag"; //$NON-NLS-1$
 	public static final String PARAMETER_GIT_COMMIT = "commit"; //$NON-NLS-1$
+	public static final String PARAMETER_OFFSET = "offset"; //$NON-NLS-1$
+	public static final String PARAMETER_LIMIT = "limit"; //$NON-NLS-1$
+	public static final String PARAMETER_SORT = "sort"; //$NON-NLS-1$
+	public static final String PARAMETER_ORDER = "order"; //$NON-NLS-1$
+	public static final String PARAMETER_STATUS = "status"; //$NON-NLS-1$
+	public static final String PARAMETER_ORGANIZATION = "organization"; //$NON-NLS-1$
+	private static final String ORDER_DESCENDING = "desc"; //$NON-NLS-1$
 	private static final String GET_SOFTWARE_VERSION_REQUEST = "version";  //$NON-NLS-1$
 	private static final String GET_SURVEY = "getsurvey";  //$NON-NLS-1$
 	private static final String GET_SUPPORTED_SPEC_VERSIONS = "getSupportedSpecVersions";  //$NON-NLS-1$
@@ -128,8 +150,107 @@ public class CertificationServlet extends HttpServlet {
 	private static final String GET_UPDATE_SURVEY_RESULTS = "getUpdateSurveyResults"; //$NON-NLS-1$
 	private static final String GET_SUPPORTED_SPEC_LANGUAGES = "getSupportedSpecLanguages"; //$NON-NLS-1$
 	private static final String SET_SURVEY_RESPONSE_LANGUAGE = "setSurveyResponseLanguage"; //$NON-NLS-1$
+	private static final String GET_DB_POOL_STATISTICS = "getDbPoolStatistics"; //$NON-NLS-1$
+	private static final String RELOAD_MESSAGES_REQUEST = "reloadMessages"; //$NON-NLS-1$
+	private static final String GET_REQUEST_STATISTICS = "getRequestStatistics"; //$NON-NLS-1$
+	
+	/**
+	 * Slow get requests processed asynchronously and the pool they are processed on
+	 */
+	private static final Map<String, Pool> ASYNC_GET_REQUESTS = new HashMap<String, Pool>();
+	/**
+	 * Slow post requests processed asynchronously and the pool they are processed on
+	 */
+	private static final Map<String, Pool> ASYNC_POST_REQUESTS = new HashMap<String, Pool>();
+	static {
+		ASYNC_GET_REQUESTS.put(GET_UPDATE_SURVEY_RESULTS, Pool.Network);
+		ASYNC_GET_REQUESTS.put(GET_GIT_TAGS_REQUEST, Pool.Network);
+		ASYNC_POST_REQUESTS.put(LOGIN_REQUEST, Pool.Hashing);
+		ASYNC_POST_REQUESTS.put(SIGNUP_REQUEST, Pool.Hashing);
+		ASYNC_POST_REQUESTS.put(PASSWORD_CHANGE_REQUEST, Pool.Hashing);
+		ASYNC_POST_REQUESTS.put(REQUEST_RESET_PASSWORD, Pool.Hashing);
+		ASYNC_POST_REQUESTS.put(RESEND_VERIFICATION, Pool.Hashing);
+		ASYNC_POST_REQUESTS.put(FINAL_SUBMISSION_REQUEST, Pool.Database);
+		ASYNC_POST_REQUESTS.put(REQUEST_UNSUBMIT, Pool.Database);
+		ASYNC_POST_REQUESTS.put(RESET_ANSWERS_REQUEST, Pool.Database);
+		ASYNC_POST_REQUESTS.put(UPDATE_SURVEY_REQUEST, Pool.Network);
+	}
+	
+	/**
+	 * Handler for a request processed asynchronously
+	 */
+	private interface RequestHandler {
+		/**
+		 * @param response Response to write to - output is discarded if the request has already timed out
+		 * @throws IOException
+		 */
+		void handle(HttpServletResponse response) throws IOException;
+	}
+	
+	/**
+	 * Handler for a get request
+	 */
+	private abstract class GetHandler {
+		private boolean requiresUser;
+		
+		/**
+		 * @param requiresUser true if the request is unauthorized when there is no user in the session
+		 */
+		GetHandler(boolean requiresUser) {
+			this.requiresUser = requiresUser;
+		}
+		
+		/**
+		 * @param request
+		 * @param response
+		 * @param out Writer for the response
+		 * @param session
+		 * @param user User for the session - may be null if the handler does not require a user
+		 * @param locale
+		 * @throws Exception
+		 */
+		abstract void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+				HttpSession session, UserSession user, String locale) throws Exception;
+	}
+	
+	/**
+	 * Handler for a post request
+	 */
+	private abstract class PostHandler {
+		private boolean requiresLogin;
+		
+		/**
+		 * @param requiresLogin true if the request is unauthorized when the user is not logged in
+		 */
+		PostHandler(boolean requiresLogin) {
+			this.requiresLogin = requiresLogin;
+		}
+		
+		/**
+		 * @param request
+		 * @param response
+		 * @param session
+		 * @param user User for the session - may be null if the handler does not require a login
+		 * @param rj JSON request read from the request body
+		 * @param locale
+		 * @param postResponse Response to update - written after the handler returns
+		 * @throws Exception
+		 */
+		abstract void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+				UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception;
+	}
 	
 	private Gson gson;
+	private RequestExecutors requestExecutors = null;
+	private RequestMetrics requestMetrics = RequestMetrics.getRequestMetrics();
+	/**
+	 * Handlers for the get requests keyed by the request parameter
+	 */
+	private Map<String, GetHandler> getHandlers = new HashMap<String, GetHandler>();
+	/**
+	 * Handlers for the post requests keyed by the JSON request
+	 */
+	private Map<String, PostHandler> postHandlers = new HashMap<String, PostHandler>();
 	
     /**
      * @see HttpServlet#HttpServlet()
@@ -139,131 +260,689 @@ public class CertificationServlet extends HttpServlet {
         GsonBuilder builder = new GsonBuilder();
 		builder.registerTypeAdapter(Question.class, new QuestionJsonDeserializer());
 		gson = builder.create();
+		registerGetHandlers();
+		registerPostHandlers();
+    }
+    
+    /**
+     * Add the handlers for all get requests other than getsurvey which is written directly to the output stream
+     */
+    private void registerGetHandlers() {
+    	getHandlers.put(GET_SOFTWARE_VERSION_REQUEST, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) {
+				gson.toJson(version, out);
+			}
+		});
+    	getHandlers.put(GET_CERTIFIED_REQUEST, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	SubmissionFilter filter = getSubmissionFilter(request);
+            	if (filter == null) {
+            		response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            		response.setContentType("text");  //$NON-NLS-1$
+            		out.print(I18N.getMessage("CertificationServlet.72",locale)); //$NON-NLS-1$
+            	} else if (request.getParameter(PARAMETER_LIMIT) != null) {
+            		gson.toJson(getCertifiedSubmissionPage(filter), out);
+            	} else {
+            		gson.toJson(getCertifiedSubmissions(filter), out);
+            	}
+			}
+		});
+    	getHandlers.put(REGISTER_USER, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	String username = request.getParameter(PARAMETER_USERNAME);
+            	String uuid = request.getParameter(PARAMETER_UUID);
+            	try {
+            		UserSession.completeEmailVerification(username, uuid, getServletConfig(),locale);
+            		response.sendRedirect("regcomplete.html?locale="+locale); //$NON-NLS-1$
+            	} catch (Exception ex) {
+            		response.sendRedirect("regfailed.html?locale="+locale); //$NON-NLS-1$
+            	}
+			}
+		});
+    	// result from clicking email link on reset password
+    	getHandlers.put(COMPLETE_PASSWORD_RESET, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	String username = request.getParameter(PARAMETER_USERNAME);
+            	String uuid = request.getParameter(PARAMETER_UUID);
+            	if (user != null && user.isLoggedIn()) {
+            		user.logout();
+            	}
+            	user = new UserSession(username, "TEMP", getServletConfig()); //$NON-NLS-1$
+            	session.setAttribute(SESSION_ATTRIBUTE_USER, user);
+            	if (user.verifyPasswordReset(uuid, locale)) {
+            		response.sendRedirect("pwreset.html?locale="+locale); //$NON-NLS-1$
+            	} else {
+            		response.sendRedirect("pwresetinvalid.html?locale="+locale); //$NON-NLS-1$
+            	}
+			}
+		});
+    	getHandlers.put(GET_USER, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	if (user == null) {
+            		user = new UserSession(getServletConfig());	// creates a new user that is not logged in and a null username
+            		user.setLanguagePreference(locale);	// Set the language to the session language
+            	}
+        		gson.toJson(user, out);
+			}
+		});
+    	getHandlers.put(GET_SUPPORTED_SPEC_VERSIONS, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	List<String> supportedSpecVersions = getSupportedSpecVersions(getServletConfig());
+            	gson.toJson(supportedSpecVersions, out);
+			}
+		});
+    	getHandlers.put(GET_GIT_TAGS_REQUEST, new GetHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	String[] tags = QuestionnaireGitRepo.getQuestionnaireGitRepo(locale).getTags(locale);
+            	gson.toJson(tags, out);
+			}
+		});
+    	getHandlers.put(GET_SURVEY_RESPONSE, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+				gson.toJson(user.getSurveyResponse(locale), out);
+			}
+		});
+    	getHandlers.put(GET_SURVEY_VERSIONS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+				gson.toJson(user.getSurveyResponseSpecVersions(locale), out);
+			}
+		});
+    	getHandlers.put(GET_SUPPORTED_SPEC_LANGUAGES, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+				gson.toJson(user.getSurveyResponseSpecLanguages(locale), out);
+			}
+		});
+    	getHandlers.put(GET_SUBMISSIONS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+            		SubmissionFilter filter = getSubmissionFilter(request);
+            		if (filter == null) {
+            			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            			response.setContentType("text");  //$NON-NLS-1$
+            			out.print(I18N.getMessage("CertificationServlet.72",locale)); //$NON-NLS-1$
+            		} else if (request.getParameter(PARAMETER_LIMIT) != null) {
+            			gson.toJson(getSubmissionPage(filter), out);
+            		} else {
+            			List<Submission> submissions = getSubmissions(filter);
+            			gson.toJson(submissions, out);
+            		}
+            	}
+			}
+		});
+    	getHandlers.put(DOWNLOAD_ANSWERS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	response.setContentType("text/csv");  //$NON-NLS-1$
+                response.setHeader("Content-Disposition", "attachment;filename=\"openchain-answers.csv\"");  //$NON-NLS-1$  //$NON-NLS-2$
+            	printAnswers(user, out, locale);
+			}
+		});
+    	getHandlers.put(DOWNLOAD_SURVEY, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+	            	String specVersion = request.getParameter(PARAMETER_SPEC_VERSION);
+	                response.setContentType("text/json");  //$NON-NLS-1$
+	                response.setHeader("Content-Disposition", "attachment;filename=\"openchain-survey-version-"+specVersion+".json\"");  //$NON-NLS-1$  //$NON-NLS-2$  //$NON-NLS-3$
+	            	printSurvey(specVersion, locale, out);
+            	}
+			}
+		});
+    	getHandlers.put(GET_UPDATE_SURVEY_RESULTS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) throws Exception {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+            		String tag = request.getParameter(PARAMETER_GIT_TAG);
+            		String commit = request.getParameter(PARAMETER_GIT_COMMIT);
+            		gson.toJson(updateSurvey(tag, commit, locale, false), out);
+            	}
+			}
+		});
+    	getHandlers.put(GET_DB_POOL_STATISTICS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+            		gson.toJson(SurveyDatabase.getPoolStatistics(), out);
+            	}
+			}
+		});
+    	getHandlers.put(GET_REQUEST_STATISTICS, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+            		gson.toJson(requestMetrics.getSummaries(), out);
+            	}
+			}
+		});
+    	getHandlers.put(RELOAD_MESSAGES_REQUEST, new GetHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+					HttpSession session, UserSession user, String locale) {
+            	if (!user.isAdmin()) {
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            	} else {
+            		gson.toJson(I18N.reload(), out);
+            	}
+			}
+		});
+    }
+    
+    /**
+     * Add the handlers for all post requests
+     */
+    private void registerPostHandlers() {
+    	postHandlers.put(LOGIN_REQUEST, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), rj.getUsername(), LOGIN_REQUEST, locale)) {
+	        		postResponse.setStatus(Status.ERROR);
+	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
+        		} else {
+        			if (user != null) {
+            			user.logout();
+            		}
+            		UserSession newUser = new UserSession(rj.getUsername(),rj.getPassword(), getServletConfig());
+            		if (newUser.login(locale)) {
+            			session.setAttribute(SESSION_ATTRIBUTE_USER, newUser);
+            			postResponse.setAdmin(newUser.isAdmin());
+            			postResponse.setLanguagePreference(newUser.getLanguagePreference());
+            			logger.info("User "+rj.getUsername()+" logged in");
+            		} else if (newUser.isValidPasswordAndNotVerified(locale)) {
+            			postResponse.setStatus(Status.NOT_VERIFIED);
+            			postResponse.setError(I18N.getMessage("CertificationServlet.18",locale)); //$NON-NLS-1$
+            		} else {
+            			postResponse.setStatus(Status.ERROR);
+            			postResponse.setError(I18N.getMessage("CertificationServlet.19",locale,newUser.getLastError())); //$NON-NLS-1$
+            		}
+        		}
+			}
+		});
+    	// request from the pwreset.html form
+    	postHandlers.put(PASSWORD_CHANGE_REQUEST, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), rj.getUsername(), PASSWORD_CHANGE_REQUEST, locale)) {
+	        		postResponse.setStatus(Status.ERROR);
+	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
+        		} else if (user == null || !user.isPasswordReset()) {
+        			postResponse.setStatus(Status.ERROR);
+        			logger.info("Invalid state for password reset for user "+ rj.getUsername());  //$NON-NLS-1$
+        			postResponse.setError(I18N.getMessage("CertificationServlet.20",locale)); //$NON-NLS-1$
+        		} else {
+        			if (!user.setPassword(rj.getUsername(), rj.getPassword(), locale)) {
+        				postResponse.setStatus(Status.ERROR);
+        				logger.error("Unable to set password for user "+rj.getUsername());  //$NON-NLS-1$
+        				postResponse.setError(user.getLastError());
+        			}
+        		}
+			}
+		});
+    	postHandlers.put(RESEND_VERIFICATION, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		//Note: We do not need to check any reCaptchas since the passwords must match for the resend verification to work
+        		//      and the captcha was already verified during the previous login
+        		if (user != null && user.isLoggedIn()) {
+        			postResponse.setStatus(Status.ERROR);
+        			postResponse.setError(I18N.getMessage("CertificationServlet.21",locale)); //$NON-NLS-1$
+        		} else {
+        			UserSession newUser = new UserSession(rj.getUsername(),rj.getPassword(), getServletConfig());
+            		String verificationUrl = request.getRequestURL().toString();
+            		if (!newUser.resendVerification(rj.getUsername(), rj.getPassword(), verificationUrl, locale)) {
+            			postResponse.setStatus(Status.ERROR);
+            			postResponse.setError(I18N.getMessage("CertificationServlet.22",locale,newUser.getLastError())); //$NON-NLS-1$
+            		}
+        		}
+			}
+		});
+    	postHandlers.put(SIGNUP_REQUEST, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), rj.getUsername(), SIGNUP_REQUEST, locale)) {
+	        		postResponse.setStatus(Status.ERROR);
+	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
+        		} else {
+        			if (user != null) {
+            			user.logout();
+            		}
+            		UserSession newUser = new UserSession(rj.getUsername(), rj.getPassword(), getServletConfig());
+            		String verificationUrl = request.getRequestURL().toString();
+            		if (!newUser.signUp(rj.getName(), rj.getAddress(), rj.getOrganization(), 
+            				rj.getEmail(), verificationUrl, rj.getNamePermission(), rj.getEmailPermission(), 
+            				rj.getLanguage(), locale)) {
+            			postResponse.setStatus(Status.ERROR);
+            			postResponse.setError(I18N.getMessage("CertificationServlet.22",locale,newUser.getLastError())); //$NON-NLS-1$
+            		}
+        		}
+			}
+		});
+    	postHandlers.put(REQUEST_RESET_PASSWORD, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), rj.getUsername(), REQUEST_RESET_PASSWORD, locale)) {
+	        		postResponse.setStatus(Status.ERROR);
+	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
+        		} else if (!resetPassword(rj.getUsername(), rj.getEmail(), getServletConfig(), request.getRequestURL().toString())) {
+	        		postResponse.setStatus(Status.ERROR);
+	        		postResponse.setError(I18N.getMessage("CertificationServlet.24",locale)); //$NON-NLS-1$
+        		}
+			}
+		});
+    	postHandlers.put(SET_LANGUAGE_REQUEST, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		session.setAttribute(LANGUAGE_ATTRIBUTE, rj.getLanguage());
+        		if (user != null) {
+        			user.setLanguagePreference(rj.getLanguage());
+        		}
+			}
+		});
+    	postHandlers.put(LOGOUT_REQUEST, new PostHandler(false) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) {
+				// Ignore the logout request if not logged in
+				if (user != null && user.isLoggedIn()) {
+					user.logout();
+				}
+			}
+		});
+    	postHandlers.put(UPDATE_PROFILE_REQUEST, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		user.updateUser(rj.getName(), rj.getEmail(), rj.getOrganization(), 
+        				rj.getAddress(), rj.getPassword(), rj.getNamePermission(), 
+        				rj.getEmailPermission(), rj.getLanguage(), locale);
+			}
+		});
+    	postHandlers.put(UPDATE_ANSWERS_REQUEST, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (rj.getAnswers() != null && rj.getAnswers().size() > 0) {
+            		user.updateAnswers(rj.getAnswers(), locale);
+        		}
+			}
+		});
+    	postHandlers.put(FINAL_SUBMISSION_REQUEST, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (rj.getAnswers() != null && rj.getAnswers().size() > 0) {
+            		user.updateAnswers(rj.getAnswers(), locale);
+        		}
+        		if (!user.finalSubmission(locale)) {
+        			postResponse.setStatus(Status.ERROR);
+        			postResponse.setError(user.getLastError());
+        		}
+			}
+		});
+    	postHandlers.put(RESET_ANSWERS_REQUEST, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+				user.resetAnswers(rj.getSpecVersion(), locale);
+			}
+		});
+    	postHandlers.put(SET_CURRENT_SURVEY_RESPONSE, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+				user.setCurrentSurveyResponse(rj.getSpecVersion(), rj.isCreate(), locale);
+			}
+		});
+    	postHandlers.put(SET_SURVEY_RESPONSE_LANGUAGE, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+				user.setSurveyResponseLanguage(rj.getLanguage(), locale);
+			}
+		});
+    	postHandlers.put(REQUEST_UNSUBMIT, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+				user.unsubmit(locale);
+			}
+		});
+    	postHandlers.put(UPDATE_SURVEY_REQUEST, new PostHandler(true) {
+			@Override
+			void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+					UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+        		if (user.isAdmin()) {
+					SurveyUpdateResult result = updateSurvey(rj.getTag(), rj.getCommit(), locale, true);
+					postResponse.setSurveyUpdateResult(result);
+        		} else {
+        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        			postResponse.setStatus(Status.ERROR);
+	        		postResponse.setError(I18N.getMessage("CertificationServlet.29",locale)); //$NON-NLS-1$
+        		}
+			}
+		});
+    	postHandlers.put(SET_APPROVED, new ReviewHandler(true, false));
+    	postHandlers.put(RESET_APPROVED, new ReviewHandler(false, false));
+    	postHandlers.put(SET_REJECTED, new ReviewHandler(true, true));
+    	postHandlers.put(RESET_REJECTED, new ReviewHandler(false, true));
+    }
+    
+    /**
+     * Handler for the admin requests which set or reset the approved or rejected flag of submissions
+     */
+    private class ReviewHandler extends PostHandler {
+    	private boolean value;
+    	private boolean rejected;
+    	
+    	/**
+    	 * @param value Value to set the flag to
+    	 * @param rejected true to update the rejected flag, false to update the approved flag
+    	 */
+    	ReviewHandler(boolean value, boolean rejected) {
+    		super(true);
+    		this.value = value;
+    		this.rejected = rejected;
+    	}
+
+		@Override
+		void handle(HttpServletRequest request, HttpServletResponse response, HttpSession session,
+				UserSession user, RequestJson rj, String locale, PostResponse postResponse) throws Exception {
+    		if (user.isAdmin()) {
+    			Connection con = SurveyDatabase.createConnection(getServletConfig());
+    			try {
+        			SurveyResponseDao dao = new SurveyResponseDao(con);
+        			if (rejected) {
+        				dao.setRejected(rj.getIds(),value);
+        			} else {
+        				dao.setApproved(rj.getIds(),value);
+        			}
+    			} finally {
+    				con.close();
+    			}
+    		} else {
+    			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+    			postResponse.setStatus(Status.ERROR);
+        		postResponse.setError(I18N.getMessage("CertificationServlet.32",locale)); //$NON-NLS-1$
+    		}
+		}
+    }
+    
+    /**
+     * @see HttpServlet#init()
+     */
+    @Override
+    public void init() throws ServletException {
+    	super.init();
+    	I18N.loadBundles();
+    	ReCaptcha.configure(getServletConfig());
+    	UserCache.configure(getServletConfig());
+    	SurveyCache.configure(getServletConfig());
+    	requestExecutors = new RequestExecutors(getServletConfig());
+    	try {
+    		EmailDispatcher.start(getServletConfig());
+    	} catch (EmailUtilException e) {
+    		// Emails remain in the outbox until the dispatcher is running
+    		logger.error("Unable to start the email dispatcher",e); //$NON-NLS-1$
+    	}
+    }
+    
+    /**
+     * @see HttpServlet#destroy()
+     */
+    @Override
+    public void destroy() {
+    	if (requestExecutors != null) {
+    		requestExecutors.shutdown();
+    	}
+    	CertifiedSnapshot.shutdown();
+    	EmailDispatcher.shutdown();
+    	ReCaptcha.shutdown();
+    	SurveyDatabase.shutdown();
+    	super.destroy();
     }
 
 	/**
 	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
 	 */
-	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		response.setHeader("Cache-Control", "no-cache, must-revalidate");  //$NON-NLS-1$  //$NON-NLS-2$
+	protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final long startNanos = System.nanoTime();
+		Pool pool = ASYNC_GET_REQUESTS.get(request.getParameter(PARAMETER_REQUEST));
+		if (pool != null) {
+			processAsync(pool, request, response, new RequestHandler() {
+
+				@Override
+				public void handle(HttpServletResponse asyncResponse) throws IOException {
+					processGet(request, asyncResponse, startNanos);
+				}
+			});
+		} else {
+			processGet(request, response, startNanos);
+		}
+	}
+	
+	/**
+	 * Process a request on one of the request executors, releasing the container thread until the request completes.
+	 * If the executor queue is full or the request times out the response is 503 Service Unavailable with a Retry-After header.
+	 * @param pool Pool to process the request on
+	 * @param request
+	 * @param response
+	 * @param handler Processes the request
+	 * @throws IOException
+	 */
+	private void processAsync(Pool pool, final HttpServletRequest request, final HttpServletResponse response, 
+			final RequestHandler handler) throws IOException {
+		if (requestExecutors == null || !request.isAsyncSupported()) {
+			handler.handle(response);
+			return;
+		}
+		final AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(requestExecutors.getTimeoutMillis());
+		// Completed by either the handler or the timeout, whichever is first.  Output from
+		// a handler still running after the timeout is discarded by the wrapper.
+		final AsyncResponseWrapper asyncResponse = new AsyncResponseWrapper(response);
+		asyncContext.addListener(new AsyncListener() {
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+				// Nothing to clean up
+			}
+
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				synchronized(asyncResponse) {
+					if (asyncResponse.setCompleted()) {
+						logger.error("Timeout processing request "+request.getParameter(PARAMETER_REQUEST)); //$NON-NLS-1$
+						if (!response.isCommitted()) {
+							// Discard any partial output from the handler which is still running
+							response.reset();
+							try {
+								sendServiceUnavailable(request, response);
+							} catch (IllegalStateException ex) {
+								logger.warn("Unable to write the timeout message - the output stream is already in use"); //$NON-NLS-1$
+							}
+						}
+						event.getAsyncContext().complete();
+					}
+				}
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				logger.error("Error processing asynchronous request",event.getThrowable()); //$NON-NLS-1$
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+				// Not restarted
+			}
+		});
+		try {
+			requestExecutors.execute(pool, new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						handler.handle(asyncResponse);
+					} catch (Exception e) {
+						logger.error("Uncaught exception processing asynchronous request",e); //$NON-NLS-1$
+					} finally {
+						if (asyncResponse.setCompleted()) {
+							asyncContext.complete();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			asyncResponse.setCompleted();
+			try {
+				sendServiceUnavailable(request, response);
+			} finally {
+				asyncContext.complete();
+			}
+		}
+	}
+	
+	/**
+	 * Send a 503 Service Unavailable response with a Retry-After header for a request which was
+	 * rejected or timed out on the request executors
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private void sendServiceUnavailable(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String locale = request.getParameter(PARAMETER_LOCALE);
+		if (locale == null) {
+			locale = User.DEFAULT_LANGUAGE;
+		}
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", String.valueOf(requestExecutors.getRetryAfterSeconds())); //$NON-NLS-1$
+		response.setContentType("text");  //$NON-NLS-1$
+		response.setCharacterEncoding("UTF-8");  //$NON-NLS-1$
+		PrintWriter out = response.getWriter();
+		try {
+			out.print(I18N.getMessage("CertificationServlet.74",locale,requestExecutors.getRetryAfterSeconds())); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Process a get request, recording the time taken for each known request type
+	 * @param request
+	 * @param response
+	 * @param startNanos System nano time the request was received
+	 * @throws IOException
+	 */
+	private void processGet(HttpServletRequest request, HttpServletResponse response, long startNanos) throws IOException {
 		String requestParam = request.getParameter(PARAMETER_REQUEST);
+		boolean completed = false;
+		try {
+			dispatchGet(request, response, requestParam);
+			completed = true;
+		} finally {
+			if (GET_SURVEY.equals(requestParam) || (requestParam != null && getHandlers.containsKey(requestParam))) {
+				recordRequest(requestParam, startNanos, response, completed);
+			}
+		}
+	}
+	
+	/**
+	 * Record the statistics for a processed request
+	 * @param requestName
+	 * @param startNanos System nano time the request was received
+	 * @param response
+	 * @param completed false if the request failed with an exception
+	 */
+	private void recordRequest(String requestName, long startNanos, HttpServletResponse response, boolean completed) {
+		requestMetrics.record(requestName, System.nanoTime() - startNanos, 
+				!completed || response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+	}
+	
+	/**
+	 * Dispatch a get request to its handler
+	 * @param request
+	 * @param response
+	 * @param requestParam Request parameter
+	 * @throws IOException
+	 */
+	private void dispatchGet(HttpServletRequest request, HttpServletResponse response, String requestParam) throws IOException {
+		response.setHeader("Cache-Control", "no-cache, must-revalidate");  //$NON-NLS-1$  //$NON-NLS-2$
 		String locale = User.DEFAULT_LANGUAGE;
 		response.setContentType("application/json"); //$NON-NLS-1$
 		response.setCharacterEncoding("UTF-8");  //$NON-NLS-1$
+		if (GET_SURVEY.equals(requestParam)) {
+			// Written directly to the output stream so it is handled outside of the writer below
+			getSurvey(request, response);
+			return;
+		}
+		if (GET_CERTIFIED_REQUEST.equals(requestParam)) {
+			SubmissionFilter filter = getSubmissionFilter(request);
+			if (filter != null && filter.isDefault()) {
+				// Served from the in memory snapshot
+				getCertified(request, response);
+				return;
+			}
+		}
 		if (requestParam != null) {
 			PrintWriter out = response.getWriter();
 			try {
 				HttpSession session = request.getSession(true);
 				UserSession user = (UserSession)session.getAttribute(SESSION_ATTRIBUTE_USER);
-				locale = request.getParameter(PARAMETER_LOCALE);
-				if (locale == null) {
-					locale = (String)session.getAttribute(LANGUAGE_ATTRIBUTE);
-				}
-				if (locale == null) {
-					locale = User.DEFAULT_LANGUAGE;
-				}
+				locale = getLocale(request, session);
 	            response.setContentType("application/json");   //$NON-NLS-1$
-	            if (requestParam.equals(GET_SOFTWARE_VERSION_REQUEST)) {
-	            	gson.toJson(version, out);
-	            } else if (requestParam.equals(GET_CERTIFIED_REQUEST)) {
-	            	List<Submission> submissions = getSubmissions(locale);
-	            	List<Submission> certifiedSubmissions = new ArrayList<Submission>();
-	            	for (Submission submission:submissions) {
-	            		if (submission.isApproved()) {
-	            			User certifiedUser = User.createNonPrivateInfo(submission.getUser());
-	            			Submission certifiedSubmission = new Submission(certifiedUser, true, 
-	            					submission.getPercentComplete(), submission.getScore(), 
-	            					submission.isApproved(), submission.isRejected(), submission.getSurveyVersion());
-	            			certifiedSubmissions.add(certifiedSubmission);
-	            		}
-	            	}
-	            	gson.toJson(certifiedSubmissions, out);
-	            } else if (requestParam.equals(REGISTER_USER)) {
-	            	String username = request.getParameter(PARAMETER_USERNAME);
-	            	String uuid = request.getParameter(PARAMETER_UUID);
-	            	try {
-	            		UserSession.completeEmailVerification(username, uuid, getServletConfig(),locale);
-	            		response.sendRedirect("regcomplete.html?locale="+locale); //$NON-NLS-1$
-	            	} catch (Exception ex) {
-	            		response.sendRedirect("regfailed.html?locale="+locale); //$NON-NLS-1$
-	            	}
-	            } else if (requestParam.equals(COMPLETE_PASSWORD_RESET)) {	// result from clicking email link on reset password
-	            	String username = request.getParameter(PARAMETER_USERNAME);
-	            	String uuid = request.getParameter(PARAMETER_UUID);
-	            	if (user != null && user.isLoggedIn()) {
-	            		user.logout();
-	            	}
-	            	user = new UserSession(username, "TEMP", getServletConfig()); //$NON-NLS-1$
-	            	session.setAttribute(SESSION_ATTRIBUTE_USER, user);
-	            	if (user.verifyPasswordReset(uuid, locale)) {
-	            		response.sendRedirect("pwreset.html?locale="+locale); //$NON-NLS-1$
-	            	} else {
-	            		response.sendRedirect("pwresetinvalid.html?locale="+locale); //$NON-NLS-1$
-	            	}
-	            } else if (requestParam.equals(GET_USER)) {
-	            	if (user == null) {
-	            		user = new UserSession(getServletConfig());	// creates a new user that is not logged in and a null username
-	            		user.setLanguagePreference(locale);	// Set the language to the session language
-	            	}
-            		gson.toJson(user, out);
-	            } else if (requestParam.equals(GET_SUPPORTED_SPEC_VERSIONS)) {
-	            	List<String> supportedSpecVersions = getSupportedSpecVersions(getServletConfig());
-	            	gson.toJson(supportedSpecVersions, out);
-	            } else if (requestParam.equals(GET_GIT_TAGS_REQUEST)) {
-	            	String[] tags = QuestionnaireGitRepo.getQuestionnaireGitRepo(locale).getTags(locale);
-	            	gson.toJson(tags, out);
-	            } else if (user == null) {
-        			// Not logged in - set the status to unauthorized
-            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            	}  else if (requestParam.equals(GET_SURVEY)) {
-	            	Connection con = SurveyDatabase.createConnection(getServletConfig());
-	            	Survey survey;
-	            	try {
-	            		SurveyDbDao dao = new SurveyDbDao(con);
-	            		survey = dao.getSurvey(null, locale);
-	            	} finally {
-	            		con.close();
-	            	}
-	            	gson.toJson(survey, out);
-	            } else if (requestParam.equals(GET_SURVEY_RESPONSE)) {
-	            	gson.toJson(user.getSurveyResponse(locale), out);
-	            } else if (requestParam.equals(GET_SURVEY_VERSIONS)) {
-	            	gson.toJson(user.getSurveyResponseSpecVersions(locale), out);
-	            } else if (requestParam.equals(GET_SUPPORTED_SPEC_LANGUAGES)) {
-	            	gson.toJson(user.getSurveyResponseSpecLanguages(locale), out);
-	            } else if (requestParam.equals(GET_SUBMISSIONS)) {
-	            	if (!user.isAdmin()) {
-	            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-	            	} else {
-		            	List<Submission> submissions = getSubmissions(locale);
-		            	gson.toJson(submissions, out);
-	            	}
-	            } else if (requestParam.equals(DOWNLOAD_ANSWERS)) {
-	            	response.setContentType("text/csv");  //$NON-NLS-1$
-	                response.setHeader("Content-Disposition", "attachment;filename=\"openchain-answers.csv\"");  //$NON-NLS-1$  //$NON-NLS-2$
-	            	printAnswers(user, out, locale);
-	            } else if (requestParam.equals(DOWNLOAD_SURVEY)) {
-	            	if (!user.isAdmin()) {
-	            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-	            	} else {
-		            	String specVersion = request.getParameter(PARAMETER_SPEC_VERSION);
-		                response.setContentType("text/json");  //$NON-NLS-1$
-		                response.setHeader("Content-Disposition", "attachment;filename=\"openchain-survey-version-"+specVersion+".json\"");  //$NON-NLS-1$  //$NON-NLS-2$  //$NON-NLS-3$
-		            	printSurvey(specVersion, locale, out);
-	            	}
-	            } else if (requestParam.equals(GET_UPDATE_SURVEY_RESULTS)) {
-	            	if (!user.isAdmin()) {
-	            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-	            	} else {
-	            		String tag = request.getParameter(PARAMETER_GIT_TAG);
-	            		String commit = request.getParameter(PARAMETER_GIT_COMMIT);
-	            		gson.toJson(updateSurvey(tag, commit, locale, false), out);
-	            	}
-	            } else {
+	            GetHandler handler = getHandlers.get(requestParam);
+	            if (handler == null) {
 	            	logger.error("Unknown get request: "+requestParam);  //$NON-NLS-1$
 	            	response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
 	            	response.setContentType("text");  //$NON-NLS-1$
 					out.print(I18N.getMessage("CertificationServlet.7",locale,requestParam)); //$NON-NLS-1$
+	            } else if (handler.requiresUser && user == null) {
+        			// Not logged in - set the status to unauthorized
+            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+	            } else {
+	            	handler.handle(request, response, out, session, user, locale);
 	            }
 			} catch (SurveyResponseException e) {
 				logger.error("Survey response error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
@@ -290,6 +969,135 @@ public class CertificationServlet extends HttpServlet {
 			}
 		}
 	}
+	
+	/**
+	 * @param request
+	 * @param session
+	 * @return the locale from the request parameter, the session or the default language in that order
+	 */
+	private String getLocale(HttpServletRequest request, HttpSession session) {
+		String locale = request.getParameter(PARAMETER_LOCALE);
+		if (locale == null) {
+			locale = (String)session.getAttribute(LANGUAGE_ATTRIBUTE);
+		}
+		if (locale == null) {
+			locale = User.DEFAULT_LANGUAGE;
+		}
+		return locale;
+	}
+	
+	/**
+	 * Respond to the getsurvey request with the pre-serialized JSON for the latest survey.  Responds
+	 * with 304 if the If-None-Match header matches the ETag and with the gzip compressed JSON if accepted.
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private void getSurvey(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		HttpSession session = request.getSession(true);
+		UserSession user = (UserSession)session.getAttribute(SESSION_ATTRIBUTE_USER);
+		String locale = getLocale(request, session);
+		if (user == null) {
+			// Not logged in - set the status to unauthorized
+			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+		SerializedSurvey serialized;
+		try {
+			Connection con = SurveyDatabase.createConnection(getServletConfig());
+			try {
+				serialized = SerializedSurvey.getSerializedSurvey(SurveyDbDao.getSurvey(con, null, locale), gson);
+			} finally {
+				con.close();
+			}
+		} catch (SurveyResponseException e) {
+			logger.error("Survey response error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.9",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		} catch (SQLException e) {
+			logger.error("SQL error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.11",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		} catch (QuestionException e) {
+			logger.error("Question error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.13",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		}
+		boolean gzip = SerializedSurvey.acceptsGzip(request.getHeader("Accept-Encoding")); //$NON-NLS-1$
+		response.setHeader("ETag", gzip ? serialized.getGzipEtag() : serialized.getEtag()); //$NON-NLS-1$
+		response.setHeader("Vary", "Accept-Encoding"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (serialized.matches(request.getHeader("If-None-Match"))) { //$NON-NLS-1$
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		byte[] body;
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+			body = serialized.getGzipJson();
+		} else {
+			body = serialized.getJson();
+		}
+		response.setContentLength(body.length);
+		OutputStream out = response.getOutputStream();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Respond to the unfiltered getcertified request with the JSON from the <code>CertifiedSnapshot</code>
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private void getCertified(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String locale = request.getParameter(PARAMETER_LOCALE);
+		if (locale == null) {
+			locale = User.DEFAULT_LANGUAGE;
+		}
+		byte[] json;
+		try {
+			json = CertifiedSnapshot.getJson(getServletConfig());
+		} catch (SurveyResponseException e) {
+			logger.error("Survey response error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.9",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		} catch (SQLException e) {
+			logger.error("SQL error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.11",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		} catch (QuestionException e) {
+			logger.error("Question error in servlet"+".  Request="+request,e);  //$NON-NLS-1$ //$NON-NLS-2$
+			printError(response, I18N.getMessage("CertificationServlet.13",locale,e.getMessage())); //$NON-NLS-1$
+			return;
+		}
+		response.setContentLength(json.length);
+		OutputStream out = response.getOutputStream();
+		try {
+			out.write(json);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Respond with an internal server error
+	 * @param response
+	 * @param message Message to print in the response
+	 * @throws IOException
+	 */
+	private void printError(HttpServletResponse response, String message) throws IOException {
+		response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		response.setContentType("text");  //$NON-NLS-1$
+		PrintWriter out = response.getWriter();
+		try {
+			out.print(message);
+		} finally {
+			out.close();
+		}
+	}
 
 
 	/**
@@ -297,33 +1105,95 @@ public class CertificationServlet extends HttpServlet {
 	 * @throws SQLException 
 	 */
 	protected static List<String> getSupportedSpecVersions(ServletConfig config) throws SQLException {
-		Connection con = SurveyDatabase.createConnection(config);
+		return new ArrayList<String>(SpecCatalog.getSpecCatalog(config).getMajorVersions());
+	}
+
+	/**
+	 * Create the paging, sorting and filtering criteria for the submission lists from the request parameters
+	 * @param request
+	 * @return the filter or null if any of the parameters are invalid
+	 */
+	private SubmissionFilter getSubmissionFilter(HttpServletRequest request) {
+		SubmissionFilter filter = new SubmissionFilter();
 		try {
-			List<String> allSpecVersions = SurveyDbDao.getSurveyVersions(con);
-			Collections.sort(allSpecVersions);
-			List<String> retval = new ArrayList<String>();
-			for (String fullVersion:allSpecVersions) {
-				String ver = UserSession.extractSpecVersion(fullVersion);
-				if (!retval.contains(ver)) {
-					retval.add(ver);
+			String offset = request.getParameter(PARAMETER_OFFSET);
+			if (offset != null) {
+				filter.setOffset(Integer.parseInt(offset));
+			}
+			String limit = request.getParameter(PARAMETER_LIMIT);
+			if (limit != null) {
+				int limitValue = Integer.parseInt(limit);
+				if (limitValue < 0) {
+					return null;
 				}
-			} 
-			return retval;
+				filter.setLimit(limitValue);
+			}
+			String sort = request.getParameter(PARAMETER_SORT);
+			if (sort != null) {
+				filter.setSortColumn(SubmissionFilter.SortColumn.valueOf(sort));
+			}
+			filter.setAscending(!ORDER_DESCENDING.equals(request.getParameter(PARAMETER_ORDER)));
+			String status = request.getParameter(PARAMETER_STATUS);
+			if (status != null) {
+				filter.setStatus(SubmissionFilter.Status.valueOf(status));
+			}
+			filter.setSpecVersion(request.getParameter(PARAMETER_SPEC_VERSION));
+			filter.setOrganizationPrefix(request.getParameter(PARAMETER_ORGANIZATION));
+		} catch (IllegalArgumentException ex) {
+			// Also catches the NumberFormatException
+			logger.warn("Invalid submission filter parameter", ex); //$NON-NLS-1$
+			return null;
+		}
+		return filter;
+	}
+
+	/**
+	 * @param filter Paging, sorting and filtering criteria
+	 * @return Public information on the approved submissions matching the filter
+	 * @throws SQLException
+	 */
+	private List<CertifiedSubmission> getCertifiedSubmissions(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		Connection con = SurveyDatabase.createConnection(getServletConfig());
+		try {
+			SurveyResponseDao dao = new SurveyResponseDao(con);
+			return dao.getCertifiedSubmissions(filter);
+		} finally {
+			con.close();
+		}
+	}
+	
+	/**
+	 * @param filter Paging, sorting and filtering criteria
+	 * @return Page of public information on the approved submissions along with the total matching
+	 * @throws SQLException
+	 */
+	private SubmissionPage<CertifiedSubmission> getCertifiedSubmissionPage(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		Connection con = SurveyDatabase.createConnection(getServletConfig());
+		try {
+			SurveyResponseDao dao = new SurveyResponseDao(con);
+			return new SubmissionPage<CertifiedSubmission>(dao.countCertifiedSubmissions(filter),
+					filter.getOffset(), filter.getLimit(), dao.getCertifiedSubmissions(filter));
 		} finally {
 			con.close();
 		}
 	}
 
-	private List<Submission> getSubmissions(String language) throws SQLException, SurveyResponseException, QuestionException {
+	private List<Submission> getSubmissions(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
 		Connection con = SurveyDatabase.createConnection(getServletConfig());
 		try {
 			SurveyResponseDao dao = new SurveyResponseDao(con);
-			List<SurveyResponse> allResponses = dao.getSurveyResponses(language);
-			List<Submission> retval = new ArrayList<Submission>();
-			for (SurveyResponse response:allResponses) {
-				retval.add(new Submission(response));
-			}
-			return retval;
+			return dao.getSubmissions(filter);
+		} finally {
+			con.close();
+		}
+	}
+	
+	private SubmissionPage<Submission> getSubmissionPage(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		Connection con = SurveyDatabase.createConnection(getServletConfig());
+		try {
+			SurveyResponseDao dao = new SurveyResponseDao(con);
+			return new SubmissionPage<Submission>(dao.countSurveyResponses(filter),
+					filter.getOffset(), filter.getLimit(), dao.getSubmissions(filter));
 		} finally {
 			con.close();
 		}
@@ -341,7 +1211,7 @@ public class CertificationServlet extends HttpServlet {
 	private void printSurvey(String specVersion, String language, PrintWriter out) throws SQLException, SurveyResponseException, QuestionException, IOException {
 		Connection con = SurveyDatabase.createConnection(getServletConfig());
 		try {
-			Survey survey = SurveyDbDao.getSurvey(con, specVersion, language);
+			Survey survey = SurveyCache.getSurveyCopy(con, specVersion, language);
 			Gson gson = new GsonBuilder().setPrettyPrinting().create();
 			// Remove redundant unnecessary fields
 			survey.prettify();
@@ -369,13 +1239,56 @@ public class CertificationServlet extends HttpServlet {
 	/**
 	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
 	 */
-	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final long startNanos = System.nanoTime();
 		request.setCharacterEncoding("UTF-8");  //$NON-NLS-1$
+		final RequestJson rj = gson.fromJson(new JsonReader(new InputStreamReader(request.getInputStream(), "UTF-8")), RequestJson.class); //$NON-NLS-1$
+		Pool pool = rj == null ? null : ASYNC_POST_REQUESTS.get(rj.getRequest());
+		if (pool != null) {
+			processAsync(pool, request, response, new RequestHandler() {
+
+				@Override
+				public void handle(HttpServletResponse asyncResponse) throws IOException {
+					processPost(request, asyncResponse, rj, startNanos);
+				}
+			});
+		} else {
+			processPost(request, response, rj, startNanos);
+		}
+	}
+	
+	/**
+	 * Process a post request, recording the time taken for each known request type
+	 * @param request
+	 * @param response
+	 * @param rj JSON request read from the request body
+	 * @param startNanos System nano time the request was received
+	 * @throws IOException
+	 */
+	private void processPost(HttpServletRequest request, HttpServletResponse response, RequestJson rj, long startNanos) throws IOException {
+		boolean completed = false;
+		try {
+			dispatchPost(request, response, rj);
+			completed = true;
+		} finally {
+			if (rj != null && rj.getRequest() != null && postHandlers.containsKey(rj.getRequest())) {
+				recordRequest(rj.getRequest(), startNanos, response, completed);
+			}
+		}
+	}
+	
+	/**
+	 * Dispatch a post request to its handler
+	 * @param request
+	 * @param response
+	 * @param rj JSON request read from the request body
+	 * @throws IOException
+	 */
+	private void dispatchPost(HttpServletRequest request, HttpServletResponse response, RequestJson rj) throws IOException {
 		response.setContentType("application/json"); //$NON-NLS-1$
 		response.setCharacterEncoding("UTF-8");  //$NON-NLS-1$
 		HttpSession session = request.getSession(true);
 		UserSession user = (UserSession)session.getAttribute(SESSION_ATTRIBUTE_USER);
-		RequestJson rj = gson.fromJson(new JsonReader(new InputStreamReader(request.getInputStream(), "UTF-8")), RequestJson.class); //$NON-NLS-1$
         PrintWriter out = response.getWriter();
         PostResponse postResponse = new PostResponse(Status.OK);
         String locale = rj.getLocale();
@@ -386,195 +1299,23 @@ public class CertificationServlet extends HttpServlet {
 			locale = User.DEFAULT_LANGUAGE;
 		}
         try {
+        	PostHandler handler = rj.getRequest() == null ? null : postHandlers.get(rj.getRequest());
         	if (rj.getRequest() == null) {
         		response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
     			response.setContentType("text");  //$NON-NLS-1$
     			out.println(I18N.getMessage("CertificationServlet.17",locale)); //$NON-NLS-1$
-        	} else if (rj.getRequest().equals(LOGIN_REQUEST)) {
-        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), locale)) {
-	        		postResponse.setStatus(Status.ERROR);
-	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
-        		} else {
-        			if (user != null) {
-            			user.logout();
-            		}
-            		UserSession newUser = new UserSession(rj.getUsername(),rj.getPassword(), getServletConfig());
-            		if (newUser.login(locale)) {
-            			session.setAttribute(SESSION_ATTRIBUTE_USER, newUser);
-            			postResponse.setAdmin(newUser.isAdmin());
-            			postResponse.setLanguagePreference(newUser.getLanguagePreference());
-            			logger.info("User "+rj.getUsername()+" logged in");
-            		} else if (newUser.isValidPasswordAndNotVerified(locale)) {
-            			postResponse.setStatus(Status.NOT_VERIFIED);
-            			postResponse.setError(I18N.getMessage("CertificationServlet.18",locale)); //$NON-NLS-1$
-            		} else {
-            			postResponse.setStatus(Status.ERROR);
-            			postResponse.setError(I18N.getMessage("CertificationServlet.19",locale,newUser.getLastError())); //$NON-NLS-1$
-            		}
-        		}
-        	} else if (rj.getRequest().equals(PASSWORD_CHANGE_REQUEST)) {	// request from the pwreset.html form
-        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), locale)) {
-	        		postResponse.setStatus(Status.ERROR);
-	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
-        		} else if (user == null || !user.isPasswordReset()) {
-        			postResponse.setStatus(Status.ERROR);
-        			logger.info("Invalid state for password reset for user "+ rj.getUsername());  //$NON-NLS-1$
-        			postResponse.setError(I18N.getMessage("CertificationServlet.20",locale)); //$NON-NLS-1$
-        		} else {
-        			if (!user.setPassword(rj.getUsername(), rj.getPassword(), locale)) {
-        				postResponse.setStatus(Status.ERROR);
-        				logger.error("Unable to set password for user "+rj.getUsername());  //$NON-NLS-1$
-        				postResponse.setError(user.getLastError());
-        			}
-        		}
-        	} else if (rj.getRequest().equals(RESEND_VERIFICATION)) {
-        		//Note: We do not need to check any reCaptchas since the passwords must match for the resend verification to work
-        		//      and the captcha was already verified during the previous login
-        		if (user != null && user.isLoggedIn()) {
-        			postResponse.setStatus(Status.ERROR);
-        			postResponse.setError(I18N.getMessage("CertificationServlet.21",locale)); //$NON-NLS-1$
-        		} else {
-        			UserSession newUser = new UserSession(rj.getUsername(),rj.getPassword(), getServletConfig());
-            		String verificationUrl = request.getRequestURL().toString();
-            		if (!newUser.resendVerification(rj.getUsername(), rj.getPassword(), verificationUrl, locale)) {
-            			postResponse.setStatus(Status.ERROR);
-            			postResponse.setError(I18N.getMessage("CertificationServlet.22",locale,newUser.getLastError())); //$NON-NLS-1$
-            		}
-        		}
-        	} else if (rj.getRequest().equals(SIGNUP_REQUEST)) {
-        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), locale)) {
-	        		postResponse.setStatus(Status.ERROR);
-	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
-        		} else {
-        			if (user != null) {
-            			user.logout();
-            		}
-            		UserSession newUser = new UserSession(rj.getUsername(), rj.getPassword(), getServletConfig());
-            		String verificationUrl = request.getRequestURL().toString();
-            		if (!newUser.signUp(rj.getName(), rj.getAddress(), rj.getOrganization(), 
-            				rj.getEmail(), verificationUrl, rj.getNamePermission(), rj.getEmailPermission(), 
-            				rj.getLanguage(), locale)) {
-            			postResponse.setStatus(Status.ERROR);
-            			postResponse.setError(I18N.getMessage("CertificationServlet.22",locale,newUser.getLastError())); //$NON-NLS-1$
-            		}
-        		}
-        	} else if (rj.getRequest().equals(REQUEST_RESET_PASSWORD)) {
-        		if (!ReCaptcha.verifyReCaptcha(rj.getReCaptchaResponse(), locale)) {
-	        		postResponse.setStatus(Status.ERROR);
-	    			postResponse.setError(I18N.getMessage("CertificationServlet.71", locale)); //$NON-NLS-1$
-        		} else if (!resetPassword(rj.getUsername(), rj.getEmail(), getServletConfig(), request.getRequestURL().toString())) {
-	        		postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.24",locale)); //$NON-NLS-1$
-        		}
-        	}else if (rj.getRequest().equals(SET_LANGUAGE_REQUEST)) {
-        		session.setAttribute(LANGUAGE_ATTRIBUTE, rj.getLanguage());
-        		if (user != null) {
-        			user.setLanguagePreference(rj.getLanguage());
-        		}
-        	} else if (user == null || !user.isLoggedIn()) {
-        		if (!rj.getRequest().equals(LOGOUT_REQUEST)) {	// Ignore the logout request if not logged in
-            		// Not logged in - set the status to unauthorized
-            		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            		postResponse.setStatus(Status.ERROR);
-            		postResponse.setError(I18N.getMessage("CertificationServlet.25",locale)); //$NON-NLS-1$
-        		}
-        	} else if (rj.getRequest().equals(UPDATE_PROFILE_REQUEST)) {
-        		user.updateUser(rj.getName(), rj.getEmail(), rj.getOrganization(), 
-        				rj.getAddress(), rj.getPassword(), rj.getNamePermission(), 
-        				rj.getEmailPermission(), rj.getLanguage(), locale);
-        	} else if (rj.getRequest().equals(UPDATE_ANSWERS_REQUEST)) {
-        		if (rj.getAnswers() != null && rj.getAnswers().size() > 0) {
-            		user.updateAnswers(rj.getAnswers(), locale);
-        		}
-        	} else if (rj.getRequest().equals(FINAL_SUBMISSION_REQUEST)) {
-        		if (rj.getAnswers() != null && rj.getAnswers().size() > 0) {
-            		user.updateAnswers(rj.getAnswers(), locale);
-        		}
-        		if (!user.finalSubmission(locale)) {
-        			postResponse.setStatus(Status.ERROR);
-        			postResponse.setError(user.getLastError());
-        		}
-        	} else if (rj.getRequest().equals(RESET_ANSWERS_REQUEST)) {
-        		user.resetAnswers(rj.getSpecVersion(), locale);
-        	} else if (rj.getRequest().equals(SET_CURRENT_SURVEY_RESPONSE)) {
-        		user.setCurrentSurveyResponse(rj.getSpecVersion(), rj.isCreate(), locale);
-        	} else if (rj.getRequest().equals(SET_SURVEY_RESPONSE_LANGUAGE)) {
-        		user.setSurveyResponseLanguage(rj.getLanguage(), locale);
-        	} else if (rj.getRequest().equals(REQUEST_UNSUBMIT)) {
-        		user.unsubmit(locale);
-        	} else if (rj.getRequest().equals(UPDATE_SURVEY_REQUEST)) {
-        		if (user.isAdmin()) {
-					SurveyUpdateResult result = updateSurvey(rj.getTag(), rj.getCommit(), locale, true);
-					postResponse.setSurveyUpdateResult(result);
-        		} else {
-        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        			postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.29",locale)); //$NON-NLS-1$
-        		}
-        		
-        	} else if (rj.getRequest().equals(SET_APPROVED)) {
-        		if (user.isAdmin()) {
-        			Connection con = SurveyDatabase.createConnection(getServletConfig());
-        			try {
-            			SurveyResponseDao dao = new SurveyResponseDao(con);
-            			dao.setApproved(rj.getIds(),true);
-        			} finally {
-        				con.close();
-        			}
-        		} else {
-        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        			postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.32",locale)); //$NON-NLS-1$
-        		}
-        	} else if (rj.getRequest().equals(RESET_APPROVED)) {
-        		if (user.isAdmin()) {
-        			Connection con = SurveyDatabase.createConnection(getServletConfig());
-        			try {
-            			SurveyResponseDao dao = new SurveyResponseDao(con);
-            			dao.setApproved(rj.getIds(),false);
-        			} finally {
-        				con.close();
-        			}
-        		} else {
-        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        			postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.32",locale)); //$NON-NLS-1$
-        		}
-        	} else if (rj.getRequest().equals(SET_REJECTED)) {
-        		if (user.isAdmin()) {
-        			Connection con = SurveyDatabase.createConnection(getServletConfig());
-        			try {
-            			SurveyResponseDao dao = new SurveyResponseDao(con);
-            			dao.setRejected(rj.getIds(),true);
-        			} finally {
-        				con.close();
-        			}
-        		} else {
-        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        			postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.32",locale)); //$NON-NLS-1$
-        		}
-        	} else if (rj.getRequest().equals(RESET_REJECTED)) {
-        		if (user.isAdmin()) {
-        			Connection con = SurveyDatabase.createConnection(getServletConfig());
-        			try {
-            			SurveyResponseDao dao = new SurveyResponseDao(con);
-            			dao.setRejected(rj.getIds(),false);
-        			} finally {
-        				con.close();
-        			}
-        		} else {
-        			response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        			postResponse.setStatus(Status.ERROR);
-	        		postResponse.setError(I18N.getMessage("CertificationServlet.32",locale)); //$NON-NLS-1$
-        		}
-        	} else if (rj.getRequest().equals(LOGOUT_REQUEST)) {
-        		user.logout();
-        	} else {
+        	} else if (handler == null) {
         		logger.error("Unknown post request: "+rj.getRequest());  //$NON-NLS-1$
     			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
     			postResponse.setStatus(Status.ERROR);
     			postResponse.setError(I18N.getMessage("CertificationServlet.36",locale,rj.getRequest())); //$NON-NLS-1$
+        	} else if (handler.requiresLogin && (user == null || !user.isLoggedIn())) {
+        		// Not logged in - set the status to unauthorized
+        		response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        		postResponse.setStatus(Status.ERROR);
+        		postResponse.setError(I18N.getMessage("CertificationServlet.25",locale)); //$NON-NLS-1$
+        	} else {
+        		handler.handle(request, response, session, user, rj, locale, postResponse);
         	}
         	gson.toJson(postResponse, out);
         } catch (SQLException e) {
@@ -646,8 +1387,9 @@ public class CertificationServlet extends HttpServlet {
 			String hashedUuid = PasswordUtil.getToken(uuid.toString());
 			user.setUuid(hashedUuid);
 			user.setPasswordReset(true);
-			UserDb.getUserDb(config).updateUser(user);
-			EmailUtility.emailPasswordReset(user.getName(), email, uuid, username, responseServletUrl, config, user.getLanguagePreference());
+			EmailMessage resetEmail = EmailUtility.createPasswordResetEmail(user.getName(), email, uuid, username, responseServletUrl, config, user.getLanguagePreference());
+			UserDb.getUserDb(config).updateUser(user, resetEmail);
+			EmailDispatcher.wakeUp();
 	        return true;
 		} catch (SQLException e) {
 			logger.error("SQL Exception signing up user",e);  //$NON-NLS-1$
@@ -695,7 +1437,29 @@ public class CertificationServlet extends HttpServlet {
 				File jsonFile = jsonFiles.next();
 				updateSurveyFromFile(jsonFile, language, updateDb, result, dao, gson);
 			}
+			if (updateDb) {
+				// Make sure no survey cached part way through the update is used
+				SurveyCache.invalidateAll();
+				SpecCatalog.invalidate();
+				SurveyCache.logStats();
+			}
 			result.verify(language);
+			if (updateDb && !result.getSpecVersionsUpdated().isEmpty()) {
+				// Changes to the questions or correct answers may change the persisted scores
+				SurveyResponseDao responseDao = new SurveyResponseDao(con);
+				for (String specVersion:result.getSpecVersionsUpdated()) {
+					try {
+						int numUpdated = responseDao.recomputeScores(specVersion);
+						logger.info("Recomputed scores for "+String.valueOf(numUpdated)+" survey responses for spec version "+specVersion); //$NON-NLS-1$ //$NON-NLS-2$
+					} catch (SurveyResponseException e) {
+						logger.error("Survey response error recomputing scores for spec version "+specVersion,e); //$NON-NLS-1$
+						result.addWarning(I18N.getMessage("CertificationServlet.73", language, specVersion, e.getMessage())); //$NON-NLS-1$
+					} catch (QuestionException e) {
+						logger.error("Question error recomputing scores for spec version "+specVersion,e); //$NON-NLS-1$
+						result.addWarning(I18N.getMessage("CertificationServlet.73", language, specVersion, e.getMessage())); //$NON-NLS-1$
+					}
+				}
+			}
 			return result;
 		} finally {
 			repo.unlock();
@@ -20,14 +20,23 @@ import org.openchain.certification.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.text.MessageFormat;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Supports the localization of Java strings for the OpenChainCertification web application
  * 
  * The primary interface is <code>getString(String key, String language)</code>
+ * 
+ * The resource bundles and the parsed message templates are cached per language.  All
+ * bundles found next to the default bundle are loaded by <code>loadBundles()</code> at
+ * startup and <code>reload()</code> re-reads the bundles from the resource files.
  * @author Gary O'Neall
  *
  */
@@ -36,6 +45,51 @@ public final class I18N {
 	static final Logger logger = LoggerFactory.getLogger(I18N.class);
 
 	private static final String BASE_RESOURCE_NAME = "messages"; //$NON-NLS-1$
+	private static final String RESOURCE_EXTENSION = ".properties"; //$NON-NLS-1$
+	/**
+	 * Limit on the number of distinct language tags cached - the language can come from the request
+	 */
+	static final int MAX_CACHED_LANGUAGES = 100;
+	
+	/**
+	 * Resource bundle for a language along with the message templates parsed for that language
+	 */
+	private static class LocaleMessages {
+		private Locale locale;
+		private ResourceBundle bundle;
+		private ConcurrentMap<String, MessageFormat> formats = new ConcurrentHashMap<String, MessageFormat>();
+		
+		LocaleMessages(Locale locale) {
+			this.locale = locale;
+			this.bundle = ResourceBundle.getBundle(BASE_RESOURCE_NAME, locale, new Utf8ResourceBundleControl());
+		}
+		
+		/**
+		 * @param key
+		 * @return the parsed message format for the key
+		 * @throws IllegalArgumentException if the template is not a valid message format
+		 */
+		MessageFormat getFormat(String key) {
+			MessageFormat retval = formats.get(key);
+			if (retval == null) {
+				retval = new MessageFormat(bundle.getString(key), locale);
+				MessageFormat existing = formats.putIfAbsent(key, retval);
+				if (existing != null) {
+					retval = existing;
+				}
+			}
+			return retval;
+		}
+	}
+	
+	/**
+	 * Map of the language tag passed to <code>getMessage</code> to the messages for that language
+	 */
+	private static volatile ConcurrentMap<String, LocaleMessages> localeMessages = new ConcurrentHashMap<String, LocaleMessages>();
+	
+	private I18N() {
+		// Static methods only
+	}
 
 	/**
 	 * @param key Key for the resource file
@@ -46,6 +100,47 @@ public final class I18N {
 		if (language == null) {
 			language = User.DEFAULT_LANGUAGE;
 		}
+		LocaleMessages messages = getLocaleMessages(language);
+		MessageFormat mf;
+		try {
+			mf = messages.getFormat(key);
+		} catch(IllegalArgumentException ex) {
+			String template = messages.bundle.getString(key);
+			logger.error("Invalid message template with key `"+key+"`: "+template, ex); //$NON-NLS-1$ //$NON-NLS-2$
+			return template;
+		}
+		try {
+			// MessageFormat is not thread safe
+			synchronized(mf) {
+				return mf.format(args, new StringBuffer(), null).toString();
+			}
+		} catch(IllegalArgumentException ex) {
+			String template = messages.bundle.getString(key);
+			logger.error("Invalid argument for message template with key `"+key+"`: "+template, ex); //$NON-NLS-1$ //$NON-NLS-2$
+			return template;
+		}
+	}
+	
+	/**
+	 * @param language tag in IETF RFC 5646 format
+	 * @return the cached messages for the language, creating them if they are not already cached
+	 */
+	private static LocaleMessages getLocaleMessages(String language) {
+		ConcurrentMap<String, LocaleMessages> cache = localeMessages;
+		LocaleMessages retval = cache.get(language);
+		if (retval == null) {
+			retval = new LocaleMessages(getLocale(language));
+			if (cache.size() < MAX_CACHED_LANGUAGES) {
+				LocaleMessages existing = cache.putIfAbsent(language, retval);
+				if (existing != null) {
+					retval = existing;
+				}
+			}
+		}
+		return retval;
+	}
+	
+	private static Locale getLocale(String language) {
 		Locale locale = Locale.forLanguageTag(language);
 		if (locale == null) {
 			logger.warn("Language "+language+" not supported by Java.  Using default language"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -55,16 +150,55 @@ public final class I18N {
 				throw(new RuntimeException("No local for the default language")); //$NON-NLS-1$
 			}
 		}
-		ResourceBundle.Control utf8Control = new Utf8ResourceBundleControl();
-		ResourceBundle bundle = ResourceBundle.getBundle(BASE_RESOURCE_NAME, locale, utf8Control);
-		String template = bundle.getString(key);
+		return locale;
+	}
+	
+	/**
+	 * Load the default resource bundle and all language bundles found in the same directory
+	 * as the default bundle.  If the bundles are not in a directory (e.g. in a jar file), only
+	 * the default bundle is loaded and the language bundles are loaded on first use.
+	 * @return the number of languages cached
+	 */
+	public static int loadBundles() {
+		ConcurrentMap<String, LocaleMessages> cache = localeMessages;
+		cache.putIfAbsent(User.DEFAULT_LANGUAGE, new LocaleMessages(getLocale(User.DEFAULT_LANGUAGE)));
+		URL defaultUrl = I18N.class.getClassLoader().getResource(BASE_RESOURCE_NAME + RESOURCE_EXTENSION);
+		if (defaultUrl == null || !"file".equals(defaultUrl.getProtocol())) { //$NON-NLS-1$
+			return cache.size();
+		}
+		File[] files;
 		try {
-			MessageFormat mf = new MessageFormat(template, locale);
-			return mf.format(args, new StringBuffer(), null).toString();
-		} catch(IllegalArgumentException ex) {
-			logger.error("Invalid argument for message template with key `"+key+"`: "+template, ex);
-			return template;
+			files = new File(defaultUrl.toURI()).getParentFile().listFiles();
+		} catch (URISyntaxException e) {
+			logger.warn("Unable to list the message resource files.  Languages will be loaded on first use.", e); //$NON-NLS-1$
+			return cache.size();
+		}
+		if (files == null) {
+			return cache.size();
 		}
+		String prefix = BASE_RESOURCE_NAME + "_"; //$NON-NLS-1$
+		for (File file:files) {
+			String name = file.getName();
+			if (name.startsWith(prefix) && name.endsWith(RESOURCE_EXTENSION)) {
+				String language = name.substring(prefix.length(), name.length() - RESOURCE_EXTENSION.length()).replace('_', '-');
+				if (!cache.containsKey(language)) {
+					cache.putIfAbsent(language, new LocaleMessages(getLocale(language)));
+				}
+			}
+		}
+		logger.info("Loaded messages for "+Integer.toString(cache.size())+" languages"); //$NON-NLS-1$ //$NON-NLS-2$
+		return cache.size();
+	}
+	
+	/**
+	 * Discard all cached bundles and message templates and load the bundles again from the resource files
+	 * @return the number of languages cached
+	 */
+	public static int reload() {
+		ResourceBundle.clearCache(I18N.class.getClassLoader());
+		localeMessages = new ConcurrentHashMap<String, LocaleMessages>();
+		logger.info("Reloading the message resources"); //$NON-NLS-1$
+		return loadBundles();
 	}
 
 }
@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.openchain.certification.RequestMetrics.RequestStats;
+import org.openchain.certification.dbdao.CertifiedSnapshot;
+import org.openchain.certification.dbdao.ConnectionPoolStatistics;
+import org.openchain.certification.dbdao.SurveyCache;
+import org.openchain.certification.dbdao.SurveyDatabase;
+import org.openchain.certification.dbdao.UserCache;
+import org.openchain.certification.utility.EmailDispatcher;
+import org.openchain.certification.utility.LatencyHistogram;
+import org.openchain.certification.utility.MetricsRegistry;
+import org.openchain.certification.utility.MetricsRegistry.Timer;
+import org.openchain.certification.utility.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet exposing the application metrics in the Prometheus text format.
+ *
+ * Access is allowed for a logged in administrator or from the remote addresses listed in the
+ * metrics_allowed_addresses context parameter (comma separated, none by default).  The remote
+ * address is the address seen by the container, which is the proxy for any request passed through
+ * the Apache proxy, so requests carrying an X-Forwarded-For header are never allowed by address.
+ * @author Gary O'Neall
+ *
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	static final Logger logger = LoggerFactory.getLogger(MetricsServlet.class);
+
+	static final String ALLOWED_ADDRESSES_PARAM = "metrics_allowed_addresses"; //$NON-NLS-1$
+	static final String DEFAULT_ALLOWED_ADDRESSES = ""; //$NON-NLS-1$
+	static final String FORWARDED_FOR_HEADER = "X-Forwarded-For"; //$NON-NLS-1$
+
+	private Set<String> allowedAddresses = new HashSet<String>();
+
+	/**
+	 * @see HttpServlet#init()
+	 */
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		String addresses = getServletConfig().getServletContext().getInitParameter(ALLOWED_ADDRESSES_PARAM);
+		if (addresses == null) {
+			addresses = DEFAULT_ALLOWED_ADDRESSES;
+		}
+		setAllowedAddresses(addresses);
+	}
+
+	/**
+	 * @param addresses Comma separated list of remote addresses allowed to read the metrics
+	 */
+	void setAllowedAddresses(String addresses) {
+		Set<String> newAddresses = new HashSet<String>();
+		for (String address:addresses.split(",")) { //$NON-NLS-1$
+			if (!address.trim().isEmpty()) {
+				newAddresses.add(address.trim());
+			}
+		}
+		allowedAddresses = newAddresses;
+	}
+
+	/**
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!isAllowed(request)) {
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		response.setContentType(PrometheusWriter.CONTENT_TYPE);
+		response.setCharacterEncoding("UTF-8"); //$NON-NLS-1$
+		response.setHeader("Cache-Control", "no-cache, must-revalidate");  //$NON-NLS-1$  //$NON-NLS-2$
+		PrintWriter out = response.getWriter();
+		try {
+			writeMetrics(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param request
+	 * @return true if the request is from an allowed address or a logged in administrator
+	 */
+	private boolean isAllowed(HttpServletRequest request) {
+		if (isAllowedAddress(request.getRemoteAddr(), request.getHeader(FORWARDED_FOR_HEADER))) {
+			return true;
+		}
+		// Do not create a session for the scrapes
+		HttpSession session = request.getSession(false);
+		if (session == null) {
+			return false;
+		}
+		Object user = session.getAttribute(CertificationServlet.SESSION_ATTRIBUTE_USER);
+		return user instanceof UserSession && ((UserSession)user).isLoggedIn() && ((UserSession)user).isAdmin();
+	}
+
+	/**
+	 * @param remoteAddress Remote address seen by the container
+	 * @param forwardedFor Value of the X-Forwarded-For header or null if not present
+	 * @return true if the remote address is allowed and the request was not passed through a proxy
+	 */
+	boolean isAllowedAddress(String remoteAddress, String forwardedFor) {
+		if (forwardedFor != null) {
+			// The remote address is the proxy's address, not the client's
+			return false;
+		}
+		return allowedAddresses.contains(remoteAddress);
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text format
+	 * @param out
+	 */
+	void writeMetrics(PrintWriter out) {
+		PrometheusWriter writer = new PrometheusWriter(out);
+		writeRequestMetrics(writer);
+		writeTimers(writer);
+		writePoolMetrics(writer);
+		writeCacheMetrics(writer);
+		writeEmailMetrics(writer);
+		writer.writeHeader("openchain_http_sessions", PrometheusWriter.GAUGE, "Active HTTP sessions"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_http_sessions", SessionMetricsListener.getActiveSessions()); //$NON-NLS-1$
+		writer.writeHeader("openchain_user_sessions", PrometheusWriter.GAUGE, "HTTP sessions with a user session"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_user_sessions", SessionMetricsListener.getUserSessions()); //$NON-NLS-1$
+		writeJvmMetrics(writer);
+	}
+
+	private void writeRequestMetrics(PrometheusWriter writer) {
+		Map<String, RequestStats> stats = RequestMetrics.getRequestMetrics().getStats();
+		writer.writeHeader("openchain_requests_total", PrometheusWriter.COUNTER, "Requests processed by the certification servlet"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (Entry<String, RequestStats> entry:stats.entrySet()) {
+			writer.writeSample("openchain_requests_total", "request", entry.getKey(), entry.getValue().getCount()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		writer.writeHeader("openchain_request_errors_total", PrometheusWriter.COUNTER, //$NON-NLS-1$
+				"Requests which failed with an exception or server error"); //$NON-NLS-1$
+		for (Entry<String, RequestStats> entry:stats.entrySet()) {
+			writer.writeSample("openchain_request_errors_total", "request", entry.getKey(), entry.getValue().getErrorCount()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		writer.writeHeader("openchain_request_duration_seconds", PrometheusWriter.HISTOGRAM, //$NON-NLS-1$
+				"Time to process requests including any wait for a request executor"); //$NON-NLS-1$
+		for (Entry<String, RequestStats> entry:stats.entrySet()) {
+			writer.writeHistogram("openchain_request_duration_seconds", "request", entry.getKey(), entry.getValue().getLatency()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private void writeTimers(PrometheusWriter writer) {
+		for (Timer timer:MetricsRegistry.getTimers()) {
+			writer.writeHeader(timer.getName(), PrometheusWriter.HISTOGRAM, timer.getHelp());
+			for (Entry<String, LatencyHistogram> entry:timer.getHistograms().entrySet()) {
+				writer.writeHistogram(timer.getName(), timer.getLabelName(), entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void writePoolMetrics(PrometheusWriter writer) {
+		ConnectionPoolStatistics stats = SurveyDatabase.getPoolStatistics();
+		if (stats == null) {
+			return;	// Not initialized or pooling is disabled
+		}
+		writer.writeHeader("openchain_db_pool_connections", PrometheusWriter.GAUGE, "Pooled database connections"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_connections", "state", "active", stats.getActive()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("openchain_db_pool_connections", "state", "idle", stats.getIdle()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("openchain_db_pool_max_connections", PrometheusWriter.GAUGE, "Maximum size of the connection pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_max_connections", stats.getMaxSize()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_waiting_threads", PrometheusWriter.GAUGE, "Threads waiting for a database connection"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_waiting_threads", stats.getWaiting()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_borrows_total", PrometheusWriter.COUNTER, "Connections borrowed from the pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_borrows_total", stats.getBorrowCount()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_waits_total", PrometheusWriter.COUNTER, "Borrows which waited for a connection"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_waits_total", stats.getWaitCount()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_wait_seconds_total", PrometheusWriter.COUNTER, "Time spent waiting for connections"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_wait_seconds_total", stats.getTotalWaitMillis() / 1000.0); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_timeouts_total", PrometheusWriter.COUNTER, "Borrows which timed out"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_timeouts_total", stats.getTimeoutCount()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_connections_created_total", PrometheusWriter.COUNTER, "Physical connections opened"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_connections_created_total", stats.getConnectionsCreated()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_connections_closed_total", PrometheusWriter.COUNTER, "Physical connections closed"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_connections_closed_total", stats.getConnectionsClosed()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_validation_failures_total", PrometheusWriter.COUNTER, "Idle connections which failed validation"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_validation_failures_total", stats.getValidationFailures()); //$NON-NLS-1$
+		writer.writeHeader("openchain_db_pool_leaks_total", PrometheusWriter.COUNTER, "Connections reported as possible leaks"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_db_pool_leaks_total", stats.getLeaksDetected()); //$NON-NLS-1$
+	}
+
+	private void writeCacheMetrics(PrometheusWriter writer) {
+		writer.writeHeader("openchain_cache_hits_total", PrometheusWriter.COUNTER, "Lookups served from the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_cache_hits_total", "cache", "survey", SurveyCache.getHitCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("openchain_cache_hits_total", "cache", "user", UserCache.getHitCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("openchain_cache_misses_total", PrometheusWriter.COUNTER, "Lookups which were not in the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_cache_misses_total", "cache", "survey", SurveyCache.getMissCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("openchain_cache_misses_total", "cache", "user", UserCache.getMissCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("openchain_cache_entries", PrometheusWriter.GAUGE, "Entries in the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_cache_entries", "cache", "survey", SurveyCache.size()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("openchain_cache_entries", "cache", "user", UserCache.size()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("openchain_cache_evictions_total", PrometheusWriter.COUNTER, "Entries evicted to keep the cache within its maximum size"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_cache_evictions_total", "cache", "survey", SurveyCache.getEvictionCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("openchain_certified_snapshot_rebuilds_total", PrometheusWriter.COUNTER, //$NON-NLS-1$
+				"Times the certified submissions snapshot was built from the database"); //$NON-NLS-1$
+		writer.writeSample("openchain_certified_snapshot_rebuilds_total", CertifiedSnapshot.getRebuildCount()); //$NON-NLS-1$
+	}
+
+	private void writeEmailMetrics(PrometheusWriter writer) {
+		EmailDispatcher dispatcher = EmailDispatcher.getInstance();
+		if (dispatcher == null) {
+			return;
+		}
+		writer.writeHeader("openchain_emails_sent_total", PrometheusWriter.COUNTER, "Emails sent by the dispatcher"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_emails_sent_total", dispatcher.getSentCount()); //$NON-NLS-1$
+		writer.writeHeader("openchain_email_failures_total", PrometheusWriter.COUNTER, "Failed attempts to send emails"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("openchain_email_failures_total", dispatcher.getFailedCount()); //$NON-NLS-1$
+		try {
+			int depth = dispatcher.getQueueDepth();
+			writer.writeHeader("openchain_email_queue_depth", PrometheusWriter.GAUGE, "Emails in the outbox waiting to be sent"); //$NON-NLS-1$ //$NON-NLS-2$
+			writer.writeSample("openchain_email_queue_depth", depth); //$NON-NLS-1$
+		} catch (SQLException e) {
+			// The other metrics are still useful when the database is unavailable
+			logger.warn("Unable to read the email queue depth", e); //$NON-NLS-1$
+		}
+	}
+
+	private void writeJvmMetrics(PrometheusWriter writer) {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+		writer.writeHeader("jvm_memory_bytes_used", PrometheusWriter.GAUGE, "Used memory"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_memory_bytes_used", "area", "heap", heap.getUsed()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("jvm_memory_bytes_used", "area", "nonheap", nonHeap.getUsed()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("jvm_memory_bytes_committed", PrometheusWriter.GAUGE, "Committed memory"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_memory_bytes_committed", "area", "heap", heap.getCommitted()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("jvm_memory_bytes_committed", "area", "nonheap", nonHeap.getCommitted()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("jvm_memory_bytes_max", PrometheusWriter.GAUGE, "Maximum memory or -1 if undefined"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_memory_bytes_max", "area", "heap", heap.getMax()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeSample("jvm_memory_bytes_max", "area", "nonheap", nonHeap.getMax()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		writer.writeHeader("jvm_gc_collections_total", PrometheusWriter.COUNTER, "Garbage collections"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+			writer.writeSample("jvm_gc_collections_total", "gc", gc.getName(), Math.max(0, gc.getCollectionCount())); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		writer.writeHeader("jvm_gc_collection_seconds_total", PrometheusWriter.COUNTER, "Time spent in garbage collection"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+			writer.writeSample("jvm_gc_collection_seconds_total", "gc", gc.getName(), Math.max(0, gc.getCollectionTime()) / 1000.0); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		writer.writeHeader("jvm_threads_current", PrometheusWriter.GAUGE, "Live threads"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_threads_current", threads.getThreadCount()); //$NON-NLS-1$
+		writer.writeHeader("jvm_threads_daemon", PrometheusWriter.GAUGE, "Live daemon threads"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_threads_daemon", threads.getDaemonThreadCount()); //$NON-NLS-1$
+		writer.writeHeader("jvm_uptime_seconds", PrometheusWriter.GAUGE, "Time since the JVM started"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.writeSample("jvm_uptime_seconds", ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0); //$NON-NLS-1$
+	}
+}
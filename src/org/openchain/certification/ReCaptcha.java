@@ -16,16 +16,29 @@
 */
 package org.openchain.certification;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.HttpsURLConnection;
+import javax.servlet.ServletConfig;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.openchain.certification.utility.CircuitBreaker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +48,25 @@ import com.google.gson.Gson;
  * Public static helper class to manage ReCaptcha verifications
  * 
  * See https://developers.google.com/recaptcha/docs/verify?hl=en
+ * 
+ * Verifications share a pooled keep-alive HTTP client with connect and read timeouts.
+ * After repeated failures of the ReCaptcha service a circuit breaker stops calling the service
+ * for a period.  While the service is failing verifications either fail with an exception
+ * (the default) or, if recaptcha_fail_open is true, succeed without checking the response.
+ * Successfully verified responses are cached for a short time so that a single retry of the
+ * same request by the same user with the same response does not call the service again.
+ * 
+ * The following context parameters configure the verification:
+ * <ul>
+ * <li>recaptcha_verify_url - URL of the verification service</li>
+ * <li>recaptcha_connect_timeout_ms - timeout connecting to the service</li>
+ * <li>recaptcha_read_timeout_ms - timeout waiting for the service response</li>
+ * <li>recaptcha_max_connections - maximum number of pooled connections</li>
+ * <li>recaptcha_failure_threshold - consecutive failures which open the circuit breaker</li>
+ * <li>recaptcha_open_circuit_ms - time the service is not called once the circuit is open</li>
+ * <li>recaptcha_fail_open - if true, verifications succeed while the service is unavailable</li>
+ * <li>recaptcha_cache_ttl_ms - time a verified response is cached</li>
+ * </ul>
  * @author Gary O'Neall
  *
  */
@@ -44,71 +76,260 @@ public class ReCaptcha {
 	public static final String RECAPTCHA_URL = "https://www.recaptcha.net/recaptcha/api/siteverify"; //$NON-NLS-1$
 	private static final String USER_AGENT = "Mozilla/5.0"; //$NON-NLS-1$
 	
+	static final String VERIFY_URL_PARAM = "recaptcha_verify_url"; //$NON-NLS-1$
+	static final String CONNECT_TIMEOUT_PARAM = "recaptcha_connect_timeout_ms"; //$NON-NLS-1$
+	static final String READ_TIMEOUT_PARAM = "recaptcha_read_timeout_ms"; //$NON-NLS-1$
+	static final String MAX_CONNECTIONS_PARAM = "recaptcha_max_connections"; //$NON-NLS-1$
+	static final String FAILURE_THRESHOLD_PARAM = "recaptcha_failure_threshold"; //$NON-NLS-1$
+	static final String OPEN_CIRCUIT_PARAM = "recaptcha_open_circuit_ms"; //$NON-NLS-1$
+	static final String FAIL_OPEN_PARAM = "recaptcha_fail_open"; //$NON-NLS-1$
+	static final String CACHE_TTL_PARAM = "recaptcha_cache_ttl_ms"; //$NON-NLS-1$
+	
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 3000;
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_CIRCUIT_MILLIS = 30000L;
+	public static final long DEFAULT_CACHE_TTL_MILLIS = 2 * 60 * 1000L;
+	/**
+	 * Maximum number of verified responses cached
+	 */
+	private static final int MAX_CACHE_SIZE = 10000;
+	
 	private static Gson gson = new Gson();
 	
+	private static String verifyUrl = RECAPTCHA_URL;
+	private static int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+	private static int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+	private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private static boolean failOpen = false;
+	private static long cacheTtlMillis = DEFAULT_CACHE_TTL_MILLIS;
+	private static CircuitBreaker circuitBreaker = new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_CIRCUIT_MILLIS);
+	private static CloseableHttpClient client = null;
+	
+	/**
+	 * Expiration time of recently verified responses keyed by request type, username and response
+	 */
+	private static final Map<String, Long> verifiedResponses = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_CACHE_SIZE || eldest.getValue() <= System.currentTimeMillis();
+		}
+	};
+	
+	/**
+	 * Configure the verification from the servlet context parameters.  Parameters which are not set use the defaults.
+	 * @param servletConfig
+	 */
+	public static synchronized void configure(ServletConfig servletConfig) {
+		String url = servletConfig.getServletContext().getInitParameter(VERIFY_URL_PARAM);
+		verifyUrl = url == null || url.trim().isEmpty() ? RECAPTCHA_URL : url.trim();
+		connectTimeoutMillis = (int)getLongParam(servletConfig, CONNECT_TIMEOUT_PARAM, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+		readTimeoutMillis = (int)getLongParam(servletConfig, READ_TIMEOUT_PARAM, DEFAULT_READ_TIMEOUT_MILLIS);
+		maxConnections = (int)getLongParam(servletConfig, MAX_CONNECTIONS_PARAM, DEFAULT_MAX_CONNECTIONS);
+		circuitBreaker = new CircuitBreaker((int)getLongParam(servletConfig, FAILURE_THRESHOLD_PARAM, DEFAULT_FAILURE_THRESHOLD),
+				getLongParam(servletConfig, OPEN_CIRCUIT_PARAM, DEFAULT_OPEN_CIRCUIT_MILLIS));
+		failOpen = Boolean.parseBoolean(servletConfig.getServletContext().getInitParameter(FAIL_OPEN_PARAM));
+		cacheTtlMillis = getLongParam(servletConfig, CACHE_TTL_PARAM, DEFAULT_CACHE_TTL_MILLIS);
+		shutdown();
+	}
+	
+	private static long getLongParam(ServletConfig servletConfig, String paramName, long defaultValue) {
+		String value = servletConfig.getServletContext().getInitParameter(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid value for ReCaptcha parameter "+paramName+": "+value+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * @return the shared HTTP client - created on first use
+	 */
+	private static synchronized CloseableHttpClient getClient() {
+		if (client == null) {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnections);
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectTimeout(connectTimeoutMillis)
+					.setSocketTimeout(readTimeoutMillis)
+					// Waiting for a pooled connection is bounded by the same time as reading the response
+					.setConnectionRequestTimeout(readTimeoutMillis)
+					.build();
+			client = HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setDefaultRequestConfig(requestConfig)
+					.setUserAgent(USER_AGENT)
+					.evictExpiredConnections()
+					.evictIdleConnections(60, TimeUnit.SECONDS)
+					.build();
+		}
+		return client;
+	}
+	
+	/**
+	 * Close the shared HTTP client and clear the verified response cache
+	 */
+	public static synchronized void shutdown() {
+		if (client != null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				logger.warn("Error closing the ReCaptcha HTTP client",e); //$NON-NLS-1$
+			}
+			client = null;
+		}
+		synchronized(verifiedResponses) {
+			verifiedResponses.clear();
+		}
+	}
+	
+	private static synchronized CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	private static synchronized boolean isFailOpen() {
+		return failOpen;
+	}
+	
+	private static synchronized String getVerifyUrl() {
+		return verifyUrl;
+	}
+	
+	/**
+	 * @param reCaptchaResponse
+	 * @param username
+	 * @param requestType
+	 * @return key for the verified response cache
+	 */
+	private static String cacheKey(String reCaptchaResponse, String username, String requestType) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(requestType);
+		sb.append('\n');
+		sb.append(username);
+		sb.append('\n');
+		sb.append(reCaptchaResponse);
+		return sb.toString();
+	}
+	
+	/**
+	 * Remove a cached verification so that it can only be used once
+	 * @param key
+	 * @return true if the response was verified within the cache time to live
+	 */
+	private static boolean useCachedVerified(String key) {
+		synchronized(verifiedResponses) {
+			Long expires = verifiedResponses.remove(key);
+			return expires != null && expires > System.currentTimeMillis();
+		}
+	}
+	
+	private static void cacheVerified(String key) {
+		long ttl;
+		synchronized(ReCaptcha.class) {
+			ttl = cacheTtlMillis;
+		}
+		if (ttl > 0) {
+			synchronized(verifiedResponses) {
+				verifiedResponses.put(key, System.currentTimeMillis() + ttl);
+			}
+		}
+	}
+	
 	/**
 	 * Verifies the reCaptcha using the Google reCaptcha service
-	 * @param servletConfig configuration which holds the secret key
 	 * @param reCaptchaResponse response from the reCaptcha widget or JavaScript front end
-	 * @return
-	 * @throws ReCaptchaException 
+	 * @param username user making the request - a cached verification is only used for the same user
+	 * @param requestType type of request being verified - a cached verification is only used for the same request type
+	 * @param locale
+	 * @return true if the response is verified
+	 * @throws ReCaptchaException if the service can not be reached or returns an error and the verification does not fail open
 	 */
-	public static boolean verifyReCaptcha(String reCaptchaResponse, String locale) throws ReCaptchaException {
+	public static boolean verifyReCaptcha(String reCaptchaResponse, String username, 
+			String requestType, String locale) throws ReCaptchaException {
 		if (Objects.isNull(reCaptchaResponse) || reCaptchaResponse.isEmpty()) {
 			return false;
 		}
-		String secret = System.getProperty("RECAPTCHA_SECRET"); //$NON-NLS-1$
-		URL reCaptchaUrl = null;
-		try {
-			reCaptchaUrl = new URL(RECAPTCHA_URL);
-		} catch(MalformedURLException ex) {
-			logger.error("Unexpected URL error accessing the ReCaptcha service.", ex); //$NON-NLS-1$
-			throw new ReCaptchaException(I18N.getMessage("ReCaptcha.3", locale)); //$NON-NLS-1$
+		String key = cacheKey(reCaptchaResponse, username, requestType);
+		if (useCachedVerified(key)) {
+			return true;
 		}
-		try {
-			HttpsURLConnection con = (HttpsURLConnection) reCaptchaUrl.openConnection();
-			con.setRequestMethod("POST"); //$NON-NLS-1$
-			con.setRequestProperty("User-Agent", USER_AGENT); //$NON-NLS-1$
-			con.setRequestProperty("Accept-Language", "en-US,en;q=0.5"); //$NON-NLS-1$ //$NON-NLS-2$
-
-			String postParams = "secret=" + secret + "&response=" //$NON-NLS-1$ //$NON-NLS-2$
-					+ reCaptchaResponse;
-
-			// Send post request
-			con.setDoOutput(true);
-			try (DataOutputStream wr = new DataOutputStream(con.getOutputStream())) {
-				wr.writeBytes(postParams);
-				wr.flush();
-			}
-
-			int responseCode = con.getResponseCode();
-			if (responseCode > 399) {
-				// Some type of error
-				logger.error("Error response code returned from ReCaptcha post: "+responseCode); //$NON-NLS-1$
-				throw new ReCaptchaException(I18N.getMessage("ReCaptcha.11", locale)); //$NON-NLS-1$
-			}
-			
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-					con.getInputStream()))) {
-				String inputLine;
-				StringBuffer sb = new StringBuffer();
-				while ((inputLine = reader.readLine()) != null) {
-					sb.append(inputLine);
-				}
-				ReCaptchaResponse response = decodeResponse(sb.toString());
-				return response.isSuccess();
-			}
+		CircuitBreaker breaker = getCircuitBreaker();
+		if (!breaker.allowRequest()) {
+			return serviceUnavailable(I18N.getMessage("ReCaptcha.13", locale), null); //$NON-NLS-1$
+		}
+		String secret = System.getProperty("RECAPTCHA_SECRET", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		HttpPost post = new HttpPost(getVerifyUrl());
+		post.setHeader("Accept-Language", "en-US,en;q=0.5"); //$NON-NLS-1$ //$NON-NLS-2$
+		List<NameValuePair> postParams = new ArrayList<NameValuePair>();
+		postParams.add(new BasicNameValuePair("secret", secret)); //$NON-NLS-1$
+		postParams.add(new BasicNameValuePair("response", reCaptchaResponse)); //$NON-NLS-1$
+		post.setEntity(new UrlEncodedFormEntity(postParams, StandardCharsets.UTF_8));
+		int responseCode;
+		String body;
+		try (CloseableHttpResponse httpResponse = getClient().execute(post)) {
+			responseCode = httpResponse.getStatusLine().getStatusCode();
+			HttpEntity entity = httpResponse.getEntity();
+			// Always consume the entity so that the connection is returned to the pool
+			body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8); //$NON-NLS-1$
 		} catch (IOException ex) {
 			logger.error("I/O error accessing the ReCaptcha service",ex); //$NON-NLS-1$
-			throw new ReCaptchaException(I18N.getMessage("ReCaptcha.13", locale)); //$NON-NLS-1$
-		} catch (Exception ex) {
+			breaker.recordFailure();
+			return serviceUnavailable(I18N.getMessage("ReCaptcha.13", locale), ex); //$NON-NLS-1$
+		} catch (RuntimeException ex) {
 			logger.error("Unexpected error accessing the ReCaptcha service",ex); //$NON-NLS-1$
+			breaker.recordFailure();
+			throw new ReCaptchaException(I18N.getMessage("ReCaptcha.15", locale)); //$NON-NLS-1$
+		}
+		if (responseCode > 399) {
+			// Some type of error
+			logger.error("Error response code returned from ReCaptcha post: "+responseCode); //$NON-NLS-1$
+			breaker.recordFailure();
+			return serviceUnavailable(I18N.getMessage("ReCaptcha.11", locale), null); //$NON-NLS-1$
+		}
+		ReCaptchaResponse response;
+		try {
+			response = gson.fromJson(body, ReCaptchaResponse.class);
+		} catch (RuntimeException ex) {
+			logger.error("Unexpected response from the ReCaptcha service: "+body,ex); //$NON-NLS-1$
+			breaker.recordFailure();
 			throw new ReCaptchaException(I18N.getMessage("ReCaptcha.15", locale)); //$NON-NLS-1$
 		}
+		breaker.recordSuccess();
+		if (response == null) {
+			logger.error("Empty response returned from the ReCaptcha service"); //$NON-NLS-1$
+			throw new ReCaptchaException(I18N.getMessage("ReCaptcha.15", locale)); //$NON-NLS-1$
+		}
+		if (response.isSuccess()) {
+			cacheVerified(key);
+		}
+		return response.isSuccess();
 	}
 
-	private synchronized static ReCaptchaResponse decodeResponse(String stringResponse) {
-		return gson.fromJson(stringResponse, ReCaptchaResponse.class);
+	/**
+	 * Handle a verification which could not be completed due to the ReCaptcha service
+	 * @param message Message for the exception
+	 * @param cause
+	 * @return true if configured to fail open
+	 * @throws ReCaptchaException if configured to fail closed
+	 */
+	private static boolean serviceUnavailable(String message, Exception cause) throws ReCaptchaException {
+		if (isFailOpen()) {
+			logger.warn("ReCaptcha service unavailable - accepting the ReCaptcha without verification"); //$NON-NLS-1$
+			return true;
+		}
+		if (cause == null) {
+			throw new ReCaptchaException(message);
+		} else {
+			throw new ReCaptchaException(message, cause);
+		}
 	}
 
 }
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded executors for the slow servlet requests which are processed asynchronously.
+ *
+ * Each pool has a fixed number of threads and a bounded queue.  When the queue is full
+ * the request is rejected so that the servlet can respond with 503 Service Unavailable rather
+ * than holding a container thread.  Separate pools keep CPU bound password hashing, database
+ * work and outbound network calls from queuing behind each other.
+ *
+ * The pools are configured by the context parameters async_&lt;pool&gt;_threads and
+ * async_&lt;pool&gt;_queue_depth where &lt;pool&gt; is hashing, database or network.
+ * @author Gary O'Neall
+ *
+ */
+public class RequestExecutors {
+
+	static final Logger logger = LoggerFactory.getLogger(RequestExecutors.class);
+
+	public enum Pool {
+		Hashing("hashing", Math.max(2, Runtime.getRuntime().availableProcessors()), 50), //$NON-NLS-1$
+		Database("database", 10, 100), //$NON-NLS-1$
+		Network("network", 4, 20); //$NON-NLS-1$
+
+		private String paramName;
+		private int defaultThreads;
+		private int defaultQueueDepth;
+
+		Pool(String paramName, int defaultThreads, int defaultQueueDepth) {
+			this.paramName = paramName;
+			this.defaultThreads = defaultThreads;
+			this.defaultQueueDepth = defaultQueueDepth;
+		}
+
+		/**
+		 * @return name of the pool used in the configuration parameters and thread names
+		 */
+		public String getParamName() {
+			return paramName;
+		}
+	};
+
+	static final String RETRY_AFTER_PARAM = "async_retry_after_seconds"; //$NON-NLS-1$
+	static final String TIMEOUT_PARAM = "async_timeout_ms"; //$NON-NLS-1$
+	public static final int DEFAULT_RETRY_AFTER_SECONDS = 5;
+	/**
+	 * Survey updates pull from the git repository so the default timeout is generous
+	 */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+	private Map<Pool, ThreadPoolExecutor> executors = new EnumMap<Pool, ThreadPoolExecutor>(Pool.class);
+	private Map<Pool, AtomicLong> rejectedCounts = new EnumMap<Pool, AtomicLong>(Pool.class);
+	private int retryAfterSeconds;
+	private long timeoutMillis;
+
+	/**
+	 * @param config Servlet configuration containing the pool sizes
+	 */
+	public RequestExecutors(ServletConfig config) {
+		for (Pool pool:Pool.values()) {
+			int threads = (int)getLongParam(config, "async_"+pool.paramName+"_threads", pool.defaultThreads); //$NON-NLS-1$ //$NON-NLS-2$
+			int queueDepth = (int)getLongParam(config, "async_"+pool.paramName+"_queue_depth", pool.defaultQueueDepth); //$NON-NLS-1$ //$NON-NLS-2$
+			executors.put(pool, createExecutor(pool, threads, queueDepth));
+			rejectedCounts.put(pool, new AtomicLong(0));
+		}
+		retryAfterSeconds = (int)getLongParam(config, RETRY_AFTER_PARAM, DEFAULT_RETRY_AFTER_SECONDS);
+		timeoutMillis = getLongParam(config, TIMEOUT_PARAM, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	private static ThreadPoolExecutor createExecutor(final Pool pool, int threads, int queueDepth) {
+		final AtomicInteger threadNumber = new AtomicInteger(0);
+		ThreadPoolExecutor retval = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueDepth)), new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread retval = new Thread(r, "request-"+pool.paramName+"-"+threadNumber.incrementAndGet()); //$NON-NLS-1$ //$NON-NLS-2$
+				retval.setDaemon(true);
+				return retval;
+			}
+		});
+		retval.allowCoreThreadTimeOut(true);
+		return retval;
+	}
+
+	private static long getLongParam(ServletConfig config, String paramName, long defaultValue) {
+		String value = config.getServletContext().getInitParameter(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid value for request executor parameter "+paramName+": "+value+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Run a request handler on the pool
+	 * @param pool
+	 * @param handler
+	 * @throws RejectedExecutionException if the queue for the pool is full or the executors have been shut down
+	 */
+	public void execute(Pool pool, Runnable handler) throws RejectedExecutionException {
+		try {
+			executors.get(pool).execute(handler);
+		} catch (RejectedExecutionException ex) {
+			rejectedCounts.get(pool).incrementAndGet();
+			logger.warn("Request rejected - the "+pool.paramName+" request queue is full"); //$NON-NLS-1$ //$NON-NLS-2$
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return number of seconds a client should wait before retrying a rejected request
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * @return time in milliseconds before an asynchronous request times out
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @param pool
+	 * @return number of requests waiting in the queue for the pool
+	 */
+	public int getQueueDepth(Pool pool) {
+		return executors.get(pool).getQueue().size();
+	}
+
+	/**
+	 * @param pool
+	 * @return number of requests being processed by the pool
+	 */
+	public int getActiveCount(Pool pool) {
+		return executors.get(pool).getActiveCount();
+	}
+
+	/**
+	 * @param pool
+	 * @return number of requests rejected since the pool was created
+	 */
+	public long getRejectedCount(Pool pool) {
+		return rejectedCounts.get(pool).get();
+	}
+
+	/**
+	 * Stop accepting requests and wait briefly for the running requests to complete
+	 */
+	public void shutdown() {
+		for (ThreadPoolExecutor executor:executors.values()) {
+			executor.shutdown();
+		}
+		for (ThreadPoolExecutor executor:executors.values()) {
+			try {
+				if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+					executor.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openchain.certification.utility.LatencyHistogram;
+
+/**
+ * Count, error count and latency histogram for each type of request processed by the servlet.
+ *
+ * Only the request types registered with the servlet are recorded so that unknown request
+ * parameters can not grow the statistics without bound.
+ * @author Gary O'Neall
+ *
+ */
+public class RequestMetrics {
+
+	private static final RequestMetrics requestMetrics = new RequestMetrics();
+
+	/**
+	 * Statistics for one type of request
+	 */
+	public static class RequestStats {
+		private final AtomicLong errorCount = new AtomicLong(0);
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		/**
+		 * @return number of requests processed
+		 */
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return number of requests which failed with an exception or server error
+		 */
+		public long getErrorCount() {
+			return errorCount.get();
+		}
+
+		/**
+		 * @return histogram of the request latencies in microseconds
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+	}
+
+	/**
+	 * Summary of the statistics for one type of request with latencies in milliseconds - serialized to JSON
+	 */
+	public static class RequestSummary {
+		private long count;
+		private long errorCount;
+		private double meanMillis;
+		private double p50Millis;
+		private double p90Millis;
+		private double p99Millis;
+		private double p999Millis;
+		private double maxMillis;
+
+		RequestSummary(RequestStats stats) {
+			LatencyHistogram latency = stats.getLatency();
+			this.count = stats.getCount();
+			this.errorCount = stats.getErrorCount();
+			this.meanMillis = latency.getMean() / 1000.0;
+			this.p50Millis = latency.getValueAtPercentile(50.0) / 1000.0;
+			this.p90Millis = latency.getValueAtPercentile(90.0) / 1000.0;
+			this.p99Millis = latency.getValueAtPercentile(99.0) / 1000.0;
+			this.p999Millis = latency.getValueAtPercentile(99.9) / 1000.0;
+			this.maxMillis = latency.getMax() / 1000.0;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP90Millis() {
+			return p90Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		public double getP999Millis() {
+			return p999Millis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+	}
+
+	private final ConcurrentMap<String, RequestStats> stats = new ConcurrentHashMap<String, RequestStats>();
+
+	/**
+	 * @return the metrics for the requests processed by the servlet
+	 */
+	public static RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
+	RequestMetrics() {
+		// Use getRequestMetrics outside of tests
+	}
+
+	/**
+	 * Record a processed request
+	 * @param request Name of the request
+	 * @param elapsedNanos Time taken to process the request in nanoseconds
+	 * @param error true if the request failed with an exception or a server error
+	 */
+	public void record(String request, long elapsedNanos, boolean error) {
+		RequestStats requestStats = stats.get(request);
+		if (requestStats == null) {
+			RequestStats newStats = new RequestStats();
+			requestStats = stats.putIfAbsent(request, newStats);
+			if (requestStats == null) {
+				requestStats = newStats;
+			}
+		}
+		if (error) {
+			requestStats.errorCount.incrementAndGet();
+		}
+		requestStats.latency.record(elapsedNanos / 1000);
+	}
+
+	/**
+	 * @return statistics for each request type which has been recorded sorted by request name
+	 */
+	public Map<String, RequestStats> getStats() {
+		return new TreeMap<String, RequestStats>(stats);
+	}
+
+	/**
+	 * @return summaries of the statistics for each request type which has been recorded sorted by request name
+	 */
+	public Map<String, RequestSummary> getSummaries() {
+		Map<String, RequestSummary> retval = new TreeMap<String, RequestSummary>();
+		for (Map.Entry<String, RequestStats> entry:stats.entrySet()) {
+			retval.put(entry.getKey(), new RequestSummary(entry.getValue()));
+		}
+		return retval;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.openchain.certification.model.Survey;
+
+import com.google.gson.Gson;
+
+/**
+ * The JSON for a survey serialized once and kept as UTF-8 and gzip bytes with a strong ETag.
+ * The gzip bytes are a different representation so they have their own ETag with a -gzip suffix.
+ *
+ * Serialized surveys are kept for as long as the survey itself is cached in the <code>SurveyCache</code>.
+ * Since the cached surveys are replaced whenever the survey questions are updated, the
+ * serialized form is never out of date.
+ * @author Gary O'Neall
+ *
+ */
+public class SerializedSurvey {
+
+	/**
+	 * Map of the (shared, unmodified) survey to its serialized form.  Weak keys release the
+	 * serialized form once the survey is evicted or invalidated from the survey cache.
+	 */
+	private static final Map<Survey, SerializedSurvey> serializedSurveys = new WeakHashMap<Survey, SerializedSurvey>();
+
+	private byte[] json;
+	private byte[] gzipJson;
+	private String etag;
+	private String gzipEtag;
+
+	/**
+	 * @param survey Survey to serialize
+	 * @param gson Gson used for the serialization
+	 * @throws IOException
+	 */
+	SerializedSurvey(Survey survey, Gson gson) throws IOException {
+		this.json = gson.toJson(survey).getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		try {
+			gzip.write(json);
+		} finally {
+			gzip.close();
+		}
+		this.gzipJson = bytes.toByteArray();
+		this.etag = createEtag(survey, json);
+		this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\""; //$NON-NLS-1$
+	}
+
+	/**
+	 * @param survey Shared survey from the <code>SurveyCache</code> - must not be modified after it is serialized
+	 * @param gson Gson used for the serialization
+	 * @return serialized form of the survey
+	 * @throws IOException
+	 */
+	public static SerializedSurvey getSerializedSurvey(Survey survey, Gson gson) throws IOException {
+		synchronized(serializedSurveys) {
+			SerializedSurvey retval = serializedSurveys.get(survey);
+			if (retval == null) {
+				retval = new SerializedSurvey(survey, gson);
+				serializedSurveys.put(survey, retval);
+			}
+			return retval;
+		}
+	}
+
+	/**
+	 * The ETag is made from the spec version and language followed by a digest of the JSON so
+	 * that any change to the questions produces a new ETag.
+	 * @param survey
+	 * @param json
+	 * @return strong ETag including the quotes
+	 */
+	private static String createEtag(Survey survey, byte[] json) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			byte[] hash = digest.digest(json);
+			StringBuilder sb = new StringBuilder("\""); //$NON-NLS-1$
+			sb.append(survey.getSpecVersion());
+			sb.append('-');
+			sb.append(survey.getLanguage());
+			sb.append('-');
+			for (int i = 0; i < 12; i++) {
+				sb.append(String.format("%02x", hash[i])); //$NON-NLS-1$
+			}
+			sb.append('"');
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required on all Java platforms
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return UTF-8 encoded JSON
+	 */
+	public byte[] getJson() {
+		return json;
+	}
+
+	/**
+	 * @return gzip compressed UTF-8 encoded JSON
+	 */
+	public byte[] getGzipJson() {
+		return gzipJson;
+	}
+
+	/**
+	 * @return strong ETag of the uncompressed JSON including the quotes
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * @return strong ETag of the gzip compressed JSON including the quotes
+	 */
+	public String getGzipEtag() {
+		return gzipEtag;
+	}
+
+	/**
+	 * @param ifNoneMatch Value of the If-None-Match header - may be null
+	 * @return true if the If-None-Match header matches either ETag of this survey
+	 */
+	public boolean matches(String ifNoneMatch) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag:ifNoneMatch.split(",")) { //$NON-NLS-1$
+			tag = tag.trim();
+			if (tag.startsWith("W/")) { //$NON-NLS-1$
+				// If-None-Match uses the weak comparison
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) { //$NON-NLS-1$
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param acceptEncoding Value of the Accept-Encoding header - may be null
+	 * @return true if the client accepts a gzip encoded response.  Codings with a q value of 0
+	 * are not acceptable and an explicit gzip coding takes precedence over <code>*</code>
+	 */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		float gzipQuality = -1;
+		float anyQuality = -1;
+		for (String coding:acceptEncoding.split(",")) { //$NON-NLS-1$
+			String[] parts = coding.split(";"); //$NON-NLS-1$
+			String name = parts[0].trim().toLowerCase();
+			float quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim().toLowerCase();
+				if (param.startsWith("q=")) { //$NON-NLS-1$
+					try {
+						quality = Float.parseFloat(param.substring(2).trim());
+					} catch (NumberFormatException ex) {
+						quality = 0;	// Ignore codings with an invalid q value
+					}
+				}
+			}
+			if (name.equals("gzip") || name.equals("x-gzip")) { //$NON-NLS-1$ //$NON-NLS-2$
+				gzipQuality = Math.max(gzipQuality, quality);
+			} else if (name.equals("*")) { //$NON-NLS-1$
+				anyQuality = Math.max(anyQuality, quality);
+			}
+		}
+		if (gzipQuality >= 0) {
+			return gzipQuality > 0;
+		}
+		return anyQuality > 0;
+	}
+}
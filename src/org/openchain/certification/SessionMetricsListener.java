@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Counts the active HTTP sessions and the sessions holding a <code>UserSession</code>
+ * for the <code>MetricsServlet</code>.  Registered as a listener in the web.xml.
+ * @author Gary O'Neall
+ *
+ */
+public class SessionMetricsListener implements HttpSessionListener, HttpSessionAttributeListener {
+
+	private static final AtomicInteger activeSessions = new AtomicInteger(0);
+	private static final AtomicInteger userSessions = new AtomicInteger(0);
+
+	/**
+	 * @return number of HTTP sessions which have been created and not destroyed
+	 */
+	public static int getActiveSessions() {
+		return activeSessions.get();
+	}
+
+	/**
+	 * @return number of HTTP sessions holding a user session
+	 */
+	public static int getUserSessions() {
+		return userSessions.get();
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent se) {
+		activeSessions.incrementAndGet();
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent se) {
+		// The attributes are removed when the session is invalidated which updates the user sessions
+		activeSessions.decrementAndGet();
+	}
+
+	@Override
+	public void attributeAdded(HttpSessionBindingEvent event) {
+		if (isUserSession(event)) {
+			userSessions.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void attributeRemoved(HttpSessionBindingEvent event) {
+		if (isUserSession(event)) {
+			userSessions.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void attributeReplaced(HttpSessionBindingEvent event) {
+		// The event holds the old value - the number of sessions only changes if the user is replaced by null
+		if (isUserSession(event) && event.getSession().getAttribute(event.getName()) == null) {
+			userSessions.decrementAndGet();
+		}
+	}
+
+	private boolean isUserSession(HttpSessionBindingEvent event) {
+		return CertificationServlet.SESSION_ATTRIBUTE_USER.equals(event.getName()) && event.getValue() instanceof UserSession;
+	}
+}
@@ -18,6 +18,7 @@ package org.openchain.certification;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,6 +43,10 @@ public class SurveyUpdateResult {
 	 * Map of spec version to a map of local to all question numbers - used to verify all question numbers match for a given version
 	 */
 	private Map<String, Map<String, List<String>>>  versionQuestions = new HashMap<>();
+	/**
+	 * Spec versions with updated questions - used to recompute the persisted scores and not returned to the client
+	 */
+	private transient Set<String> specVersionsUpdated = new HashSet<String>();
 	
 	public SurveyUpdateResult() {
 		
@@ -109,6 +114,14 @@ public class SurveyUpdateResult {
 	 */
 	public void addVersionUpdated(String version, String specLanguage, SurveyQuestionUpdateStats updateStats, String language) {
 		this.versionsUpdated.add(I18N.getMessage("SurveyUpdateResult.1", language, version, specLanguage, updateStats.toString(language))); //$NON-NLS-1$
+		this.specVersionsUpdated.add(version);
+	}
+	
+	/**
+	 * @return Spec versions which had questions updated
+	 */
+	public Set<String> getSpecVersionsUpdated() {
+		return this.specVersionsUpdated;
 	}
 	
 	public List<String> getVersionsUpdated() {
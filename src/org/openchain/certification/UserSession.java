@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -32,11 +31,14 @@ import java.util.UUID;
 
 import javax.servlet.ServletConfig;
 
+import org.openchain.certification.dbdao.SpecCatalog;
 import org.openchain.certification.dbdao.SurveyDatabase;
 import org.openchain.certification.dbdao.SurveyDbDao;
 import org.openchain.certification.dbdao.SurveyResponseDao;
 import org.openchain.certification.dbdao.UserDb;
 import org.openchain.certification.model.Answer;
+import org.openchain.certification.model.CompactAnswerMap;
+import org.openchain.certification.model.EmailMessage;
 import org.openchain.certification.model.Question;
 import org.openchain.certification.model.QuestionException;
 import org.openchain.certification.model.QuestionTypeException;
@@ -51,6 +53,7 @@ import org.openchain.certification.model.YesNoQuestion;
 import org.openchain.certification.model.YesNoQuestion.YesNo;
 import org.openchain.certification.model.YesNoQuestionWithEvidence;
 import org.openchain.certification.utility.EmailUtilException;
+import org.openchain.certification.utility.EmailDispatcher;
 import org.openchain.certification.utility.EmailUtility;
 import org.openchain.certification.utility.PasswordUtil;
 import org.slf4j.Logger;
@@ -85,10 +88,6 @@ public class UserSession {
 	 * Currently active survey response
 	 */
 	private SurveyResponse currentSurveyResponse = null;
-	/**
-	 * All specification versions available
-	 */
-	private transient List<String> allSpecVersions = null;
 
 	private boolean admin = false;
 
@@ -341,8 +340,9 @@ public class UserSession {
 			UUID uuid = UUID.randomUUID();
 			String hashedUuid = PasswordUtil.getToken(uuid.toString());
 			user.setUuid(hashedUuid);
-			UserDb.getUserDb(config).addUser(user);
-			EmailUtility.emailVerification(name, email, uuid, username, responseServletUrl, config, preferredLanguage);
+			EmailMessage verificationEmail = EmailUtility.createVerificationEmail(name, email, uuid, username, responseServletUrl, config, preferredLanguage);
+			UserDb.getUserDb(config).addUser(user, verificationEmail);
+			EmailDispatcher.wakeUp();
 	        return true;
 		} catch (SQLException e) {
 			this.lastError = I18N.getMessage("UserSession.35",locale,e.getMessage());  //$NON-NLS-1$
@@ -426,14 +426,7 @@ public class UserSession {
 		if (surveyResponses == null) {
 			_getSurveyResponses();
 		}
-		// Fetch all of the supported language codes from the database
-		Connection con = SurveyDatabase.createConnection(config);
-		try {
-			SurveyDbDao dao = new SurveyDbDao(con);
-			retval = dao.getSurveyLanguages(this.currentSurveyResponse.getSpecVersion());
-		} finally {
-			con.close();
-		}
+		retval.addAll(SpecCatalog.getSpecCatalog(config).getLanguages(this.currentSurveyResponse.getSpecVersion()));
 		Collections.sort(retval);
 		return retval;
 	}
@@ -444,14 +437,7 @@ public class UserSession {
 	 * @return Only the spec version portion of a full spec version (e.g. 1.1.1 -> 1.1)
 	 */
 	static String extractSpecVersion(String fullSpecVersion) {
-		String[] versionParts = fullSpecVersion.split("\\."); //$NON-NLS-1$
-		StringBuilder sb = new StringBuilder();
-		sb.append(versionParts[0]);
-		if (versionParts.length > 1) {
-			sb.append('.');
-			sb.append(versionParts[1]);
-		}
-		return sb.toString();
+		return SpecCatalog.extractSpecVersion(fullSpecVersion);
 	}
 	
 	/**
@@ -461,38 +447,14 @@ public class UserSession {
 	 * @throws SQLException 
 	 */
 	private String getLatestMinorVersion(String majorVersion, String locale) throws SurveyResponseException, SQLException {
-		if (allSpecVersions == null) {
-			_getAllSpecVersions();
-		}
-		String retval = ""; //$NON-NLS-1$
-		for (String fullSpecVer:allSpecVersions) {
-			String majorSpecVer = extractSpecVersion(fullSpecVer);
-			if (majorSpecVer.equals(majorVersion)) {
-				if (fullSpecVer.compareToIgnoreCase(retval) > 0) {
-					retval = fullSpecVer;
-				}
-			}
-		}
-		if (retval.isEmpty()) {
+		String retval = SpecCatalog.getSpecCatalog(config).getLatestMinorVersion(majorVersion);
+		if (retval == null) {
 			// UserSession.45=Could not find a full spec version for major version {0}
 			throw new SurveyResponseException(I18N.getMessage("UserSession.45",locale,majorVersion)); //$NON-NLS-1$
 		}
 		return retval;
 	}
 	
-	/**
-	 * Populate the field allSpecVersions from the database
-	 * @throws SQLException 
-	 */
-	private void _getAllSpecVersions() throws SQLException {
-		Connection con = SurveyDatabase.createConnection(config);
-		try {
-			allSpecVersions = SurveyDbDao.getSurveyVersions(con);
-			Collections.sort(allSpecVersions);
-		} finally {
-			con.close();
-		}
-	}
 	/**
 	 * Retrieve the survey responses from the database
 	 * @throws SQLException
@@ -509,8 +471,8 @@ public class UserSession {
 				currentSurveyResponse = new SurveyResponse(dao.getLatestSpecVersion(), languagePreference);
 				User user = UserDb.getUserDb(config).getUser(username);
 				currentSurveyResponse.setResponder(user);
-				currentSurveyResponse.setResponses(new HashMap<String, Answer>());
 				currentSurveyResponse.setSurvey(SurveyDbDao.getSurvey(con, currentSurveyResponse.getSpecVersion(), languagePreference));
+				currentSurveyResponse.setResponses(new CompactAnswerMap(currentSurveyResponse.getSurvey(), languagePreference));
 				con.commit();
 				dao.addSurveyResponse(currentSurveyResponse, languagePreference);
 				surveyResponses.add(currentSurveyResponse);
@@ -573,8 +535,8 @@ public class UserSession {
 				User saveUser = currentSurveyResponse.getResponder(); 
 				currentSurveyResponse = new SurveyResponse(getLatestMinorVersion(specVersion, locale), languagePreference);
 				currentSurveyResponse.setResponder(saveUser);
-				currentSurveyResponse.setResponses(new HashMap<String, Answer>());
 				currentSurveyResponse.setSurvey(SurveyDbDao.getSurvey(con, currentSurveyResponse.getSpecVersion(), languagePreference));
+				currentSurveyResponse.setResponses(new CompactAnswerMap(currentSurveyResponse.getSurvey(), languagePreference));
 				con.commit();
 				dao.addSurveyResponse(currentSurveyResponse, languagePreference);
 				surveyResponses.add(currentSurveyResponse);
@@ -695,24 +657,25 @@ public class UserSession {
 			this.lastError = er.toString();
 			return false;
 		}
-		currentSurveyResponse.setSubmitted(true);
-		currentSurveyResponse.setApproved(true);
-		currentSurveyResponse.setRejected(false);
 		try {
+			EmailMessage[] submissionEmails = EmailUtility.createCompleteSubmissionEmails(this.username,
+					currentSurveyResponse.getResponder().getName(),
+					currentSurveyResponse.getResponder().getEmail(),
+					currentSurveyResponse.getSpecVersion(), 
+					currentSurveyResponse.getResponder().getOrganization(),
+					config, languagePreference);
+			currentSurveyResponse.setSubmitted(true);
+			currentSurveyResponse.setApproved(true);
+			currentSurveyResponse.setRejected(false);
 			SurveyResponseDao dao = new SurveyResponseDao(con);
-			dao.setSubmitted(username, currentSurveyResponse.getSpecVersion(), true);
+			dao.setSubmitted(username, currentSurveyResponse.getSpecVersion(), true, submissionEmails);
 			//NOTE: We automatically approve per openchain call on Monday Dec. 5
 			dao.setApproved(username, currentSurveyResponse.getSpecVersion(), true);
 			dao.setRejected(username, currentSurveyResponse.getSpecVersion(), false);
 		} finally {
 			con.close();
 		}
-		EmailUtility.emailCompleteSubmission(this.username,
-				currentSurveyResponse.getResponder().getName(),
-				currentSurveyResponse.getResponder().getEmail(),
-				currentSurveyResponse.getSpecVersion(), 
-				currentSurveyResponse.getResponder().getOrganization(),
-				config, languagePreference);
+		EmailDispatcher.wakeUp();
 		return true;
 	}
 	public boolean isAdmin() {
@@ -789,8 +752,18 @@ public class UserSession {
 		}
 		user.setUuid(hashedUuid);
 		user.setVerificationExpirationDate(newExpirationDate);
+		EmailMessage verificationEmail;
 		try {
-			UserDb.getUserDb(config).updateUser(user);
+			verificationEmail = EmailUtility.createVerificationEmail(user.getName(), user.getEmail(), 
+					uuid, username, responseServletUrl, config, languagePreference);
+		} catch (EmailUtilException e) {
+			logger.error("Error emailing invitation",e);  //$NON-NLS-1$
+			// UserSession.77=Unable to re-email the invitation: {0}
+			this.lastError = I18N.getMessage("UserSession.77",locale,e.getMessage()); //$NON-NLS-1$
+			return false;
+		}
+		try {
+			UserDb.getUserDb(config).updateUser(user, verificationEmail);
 		} catch (SQLException e) {
 			this.lastError = I18N.getMessage("UserSession.35",locale,e.getMessage());  //$NON-NLS-1$
 			logger.error("SQL Exception updating user during re-verification",e);  //$NON-NLS-1$
@@ -799,16 +772,9 @@ public class UserSession {
 			// UserSession.75=Unexpected invalid user error.  Please report this error to the OpenChain team: {0}
 			this.lastError = I18N.getMessage("UserSession.75",locale,e.getMessage()); //$NON-NLS-1$
 			logger.error("Invalid user error in resending verification",e);  //$NON-NLS-1$
-		}
-		try {
-			EmailUtility.emailVerification(user.getName(), user.getEmail(), 
-					uuid, username, responseServletUrl, config, languagePreference);
-		} catch (EmailUtilException e) {
-			logger.error("Error emailing invitation",e);  //$NON-NLS-1$
-			// UserSession.77=Unable to re-email the invitation: {0}
-			this.lastError = I18N.getMessage("UserSession.77",locale,e.getMessage()); //$NON-NLS-1$
 			return false;
 		}
+		EmailDispatcher.wakeUp();
 		return true;
 	}
 	/**
@@ -834,8 +800,8 @@ public class UserSession {
 			surveyResponses.remove(currentSurveyResponse);
 			currentSurveyResponse = new SurveyResponse(getLatestMinorVersion(specVersion, locale), languagePreference);
 			currentSurveyResponse.setResponder(saveUser);
-			currentSurveyResponse.setResponses(new HashMap<String, Answer>());
 			currentSurveyResponse.setSurvey(SurveyDbDao.getSurvey(con, currentSurveyResponse.getSpecVersion(), languagePreference));
+			currentSurveyResponse.setResponses(new CompactAnswerMap(currentSurveyResponse.getSurvey(), languagePreference));
 			dao.addSurveyResponse(currentSurveyResponse, languagePreference);
 			con.commit();
 			surveyResponses.add(currentSurveyResponse);
@@ -969,19 +935,22 @@ public class UserSession {
 					needUpdate = true;
 				}
 				if (needUpdate) {
-					UserDb.getUserDb(config).updateUser(user);
+					EmailMessage[] updateEmails;
+					try {
+						updateEmails = new EmailMessage[] {EmailUtility.createProfileUpdateEmail(username, newEmail, config, preferredLanguage)};
+					}catch (EmailUtilException e) {
+						logger.warn("Error emailing profile update notice",e);  //$NON-NLS-1$
+						this.lastError = I18N.getMessage("UserSession.86",locale,e.getMessage()); //$NON-NLS-1$
+						updateEmails = new EmailMessage[0];
+					}
+					UserDb.getUserDb(config).updateUser(user, updateEmails);
+					EmailDispatcher.wakeUp();
 					this.password = newPassword;
 					this.address = newAddress;
 					this.email = newEmail;
 					this.name = newName;
 					this.organization = newOrganization;
 					this.languagePreference = preferredLanguage;
-					try {
-						EmailUtility.emailProfileUpdate(username, this.email, config, languagePreference);
-					}catch (EmailUtilException e) {
-						logger.warn("Error emailing profile update notice",e);  //$NON-NLS-1$
-						this.lastError = I18N.getMessage("UserSession.86",locale,e.getMessage()); //$NON-NLS-1$
-					}
 				}
 			} catch (SQLException e) {
 				this.lastError = I18N.getMessage("UserSession.11",locale,e.getMessage()); //$NON-NLS-1$
@@ -1104,21 +1073,22 @@ public class UserSession {
 			logger.warn("Attempting to unsubmit an unsubmitted response for User"+" "+this.username); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		currentSurveyResponse.setApproved(false);
-		currentSurveyResponse.setRejected(false);
-		currentSurveyResponse.setSubmitted(false);
 		try {
+			EmailMessage unsubmitEmail = EmailUtility.createUnsubmitEmail(this.username,
+					currentSurveyResponse.getResponder().getName(),
+					currentSurveyResponse.getResponder().getEmail(),
+					currentSurveyResponse.getSpecVersion(), config);
+			currentSurveyResponse.setApproved(false);
+			currentSurveyResponse.setRejected(false);
+			currentSurveyResponse.setSubmitted(false);
 			SurveyResponseDao dao = new SurveyResponseDao(con);
-			dao.setSubmitted(username, currentSurveyResponse.getSpecVersion(), false);
+			dao.setSubmitted(username, currentSurveyResponse.getSpecVersion(), false, unsubmitEmail);
 			dao.setApproved(username, currentSurveyResponse.getSpecVersion(), false);
 			dao.setRejected(username, currentSurveyResponse.getSpecVersion(), false);
 		} finally {
 			con.close();
 		}
-		EmailUtility.emailUnsubmit(this.username,
-				currentSurveyResponse.getResponder().getName(),
-				currentSurveyResponse.getResponder().getEmail(),
-				currentSurveyResponse.getSpecVersion(), config);
+		EmailDispatcher.wakeUp();
 	}
 	/**
 	 * @return the language
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+
+import org.openchain.certification.model.CertifiedSubmission;
+import org.openchain.certification.model.QuestionException;
+import org.openchain.certification.model.SurveyResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * In memory snapshot of the public list of certified submissions.
+ *
+ * The snapshot is built once from the database and is rebuilt in the background whenever
+ * <code>markDirty()</code> is called by a write which may change the certified list.  Several
+ * changes made while a rebuild is pending result in a single rebuild.  Readers always get the
+ * most recently built snapshot without accessing the database, except for the very first read.
+ * @author Gary O'Neall
+ *
+ */
+public class CertifiedSnapshot {
+
+	static final Logger logger = LoggerFactory.getLogger(CertifiedSnapshot.class);
+
+	/**
+	 * Immutable built snapshot
+	 */
+	private static class Snapshot {
+		private List<CertifiedSubmission> submissions;
+		private byte[] json;
+
+		Snapshot(List<CertifiedSubmission> submissions, byte[] json) {
+			this.submissions = submissions;
+			this.json = json;
+		}
+	}
+
+	private static final Object buildLock = new Object();
+	private static volatile Snapshot current = null;
+	private static volatile ServletConfig servletConfig = null;
+	private static final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+	private static final AtomicLong rebuildCount = new AtomicLong(0);
+	/**
+	 * Incremented on every change so a build which overlaps a change can be detected
+	 */
+	private static final AtomicLong changeCount = new AtomicLong(0);
+	private static ExecutorService executor = null;
+	private static final Gson gson = new Gson();
+
+	private CertifiedSnapshot() {
+		// Static methods only
+	}
+
+	/**
+	 * @param config Servlet configuration used to connect to the database
+	 * @return unmodifiable list of all certified submissions sorted by username
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public static List<CertifiedSubmission> getCertifiedSubmissions(ServletConfig config) throws SQLException, SurveyResponseException, QuestionException {
+		return getSnapshot(config).submissions;
+	}
+
+	/**
+	 * @param config Servlet configuration used to connect to the database
+	 * @return UTF-8 encoded JSON for the list of all certified submissions sorted by username - must not be modified
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public static byte[] getJson(ServletConfig config) throws SQLException, SurveyResponseException, QuestionException {
+		return getSnapshot(config).json;
+	}
+
+	private static Snapshot getSnapshot(ServletConfig config) throws SQLException, SurveyResponseException, QuestionException {
+		servletConfig = config;
+		Snapshot retval = current;
+		if (retval == null) {
+			synchronized(buildLock) {
+				retval = current;
+				if (retval == null) {
+					long startChangeCount = changeCount.get();
+					retval = build(config);
+					current = retval;
+					if (changeCount.get() != startChangeCount) {
+						// A change was made while building which may not be included
+						scheduleRebuild();
+					}
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Mark the certified list as changed.  Must be called after any committed change to
+	 * the submitted, approved or rejected status, the scores or the public user information.
+	 */
+	public static void markDirty() {
+		changeCount.incrementAndGet();
+		if (current == null) {
+			return;	// Nothing built yet - the next read will build from the database
+		}
+		scheduleRebuild();
+	}
+	
+	private static void scheduleRebuild() {
+		if (rebuildPending.compareAndSet(false, true)) {
+			getExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					rebuild();
+				}
+			});
+		}
+	}
+
+	private static void rebuild() {
+		// Clear the pending flag first so that any change made during the build schedules another build
+		rebuildPending.set(false);
+		ServletConfig config = servletConfig;
+		synchronized(buildLock) {
+			try {
+				current = build(config);
+			} catch (Exception e) {
+				logger.error("Error rebuilding the certified submissions.  The list will be read on the next request.",e); //$NON-NLS-1$
+				current = null;
+			}
+		}
+	}
+
+	private static Snapshot build(ServletConfig config) throws SQLException, SurveyResponseException, QuestionException {
+		Connection con = SurveyDatabase.createConnection(config);
+		try {
+			SurveyResponseDao dao = new SurveyResponseDao(con);
+			List<CertifiedSubmission> submissions = Collections.unmodifiableList(dao.getCertifiedSubmissions(new SubmissionFilter()));
+			rebuildCount.incrementAndGet();
+			return new Snapshot(submissions, gson.toJson(submissions).getBytes(StandardCharsets.UTF_8));
+		} finally {
+			con.close();
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread retval = new Thread(r, "certified-snapshot"); //$NON-NLS-1$
+					retval.setDaemon(true);
+					return retval;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * @return number of times the snapshot has been built from the database
+	 */
+	public static long getRebuildCount() {
+		return rebuildCount.get();
+	}
+
+	/**
+	 * Wait for any scheduled rebuild to complete - used for testing
+	 * @param timeoutMillis
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @throws TimeoutException
+	 */
+	static void awaitRebuild(long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+		getExecutor().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				// The executor is single threaded so all previously scheduled rebuilds are complete
+			}
+		}).get(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Discard the snapshot so that the next read is from the database
+	 */
+	public static void invalidate() {
+		synchronized(buildLock) {
+			current = null;
+		}
+	}
+
+	/**
+	 * Stop the background rebuilds
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		invalidate();
+	}
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of physical database connections.
+ *
+ * Connections handed out by the pool are proxies - calling <code>close()</code>
+ * returns the physical connection to the pool rather than closing it, so
+ * callers use the pool exactly as they would use a plain datasource.
+ *
+ * The pool keeps between <code>minSize</code> and <code>maxSize</code> physical
+ * connections.  Idle connections above the minimum are closed after
+ * <code>idleTimeoutMillis</code>, connections are optionally validated before being
+ * handed out, and connections held longer than <code>leakDetectionMillis</code>
+ * are logged along with the stack trace of the code which borrowed them.
+ * @author Gary O'Neall
+ *
+ */
+public class ConnectionPool {
+
+	static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+	/**
+	 * Number of seconds to wait for a connection to validate
+	 */
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	/**
+	 * A physical connection along with the bookkeeping the pool needs
+	 */
+	private class PooledConnection implements InvocationHandler {
+		private Connection physicalConnection;
+		private Connection proxy = null;
+		private long lastReturned;
+		private long borrowedAt;
+		private Throwable borrowedBy = null;
+		private boolean leakReported = false;
+
+		PooledConnection(Connection physicalConnection) {
+			this.physicalConnection = physicalConnection;
+			this.lastReturned = System.currentTimeMillis();
+		}
+
+		/**
+		 * @return a new proxy for this connection - any previously handed out proxies are invalidated
+		 */
+		synchronized Connection borrow() {
+			this.borrowedAt = System.currentTimeMillis();
+			this.leakReported = false;
+			if (leakDetectionMillis > 0) {
+				this.borrowedBy = new Throwable("Connection borrowed"); //$NON-NLS-1$
+			}
+			this.proxy = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] {Connection.class}, this);
+			return this.proxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			synchronized(this) {
+				if (proxy != this.proxy) {
+					// This proxy has already been returned to the pool
+					if ("close".equals(methodName)) { //$NON-NLS-1$
+						return null;
+					} else if ("isClosed".equals(methodName)) { //$NON-NLS-1$
+						return true;
+					} else if ("equals".equals(methodName)) { //$NON-NLS-1$
+						return proxy == args[0];
+					} else if ("hashCode".equals(methodName)) { //$NON-NLS-1$
+						return System.identityHashCode(proxy);
+					} else if ("toString".equals(methodName)) { //$NON-NLS-1$
+						return "Pooled connection (returned to pool)"; //$NON-NLS-1$
+					}
+					throw new SQLException("Connection has already been returned to the pool"); //$NON-NLS-1$
+				}
+				if ("close".equals(methodName)) { //$NON-NLS-1$
+					this.proxy = null;
+					this.borrowedBy = null;
+					returnConnection(this);
+					return null;
+				}
+			}
+			if ("equals".equals(methodName)) { //$NON-NLS-1$
+				return proxy == args[0];
+			} else if ("hashCode".equals(methodName)) { //$NON-NLS-1$
+				return System.identityHashCode(proxy);
+			}
+			try {
+				return method.invoke(physicalConnection, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+
+		void closePhysical() {
+			try {
+				physicalConnection.close();
+			} catch (SQLException e) {
+				logger.warn("Error closing pooled database connection",e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private DataSource dataSource;
+	private int minSize;
+	private int maxSize;
+	private long acquireTimeoutMillis;
+	private long idleTimeoutMillis;
+	private boolean validateOnBorrow;
+	private long leakDetectionMillis;
+
+	/**
+	 * Limits the total number of borrowed connections to maxSize
+	 */
+	private Semaphore available;
+	/**
+	 * Idle connections - most recently returned first so that connections beyond the
+	 * minimum get a chance to age out
+	 */
+	private LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private Set<PooledConnection> borrowed = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+	private ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+
+	// Statistics
+	private AtomicLong connectionsCreated = new AtomicLong(0);
+	private AtomicLong connectionsClosed = new AtomicLong(0);
+	private AtomicLong borrowCount = new AtomicLong(0);
+	private AtomicLong waitCount = new AtomicLong(0);
+	private AtomicLong totalWaitMillis = new AtomicLong(0);
+	private AtomicLong maxWaitMillis = new AtomicLong(0);
+	private AtomicLong timeoutCount = new AtomicLong(0);
+	private AtomicLong validationFailures = new AtomicLong(0);
+	private AtomicLong leaksDetected = new AtomicLong(0);
+
+	/**
+	 * @param dataSource Source for new physical connections
+	 * @param minSize Minimum number of physical connections to keep open
+	 * @param maxSize Maximum number of connections which can be borrowed at any one time
+	 * @param acquireTimeoutMillis Maximum time to wait for a connection to become available
+	 * @param idleTimeoutMillis Time after which idle connections above the minimum size are closed
+	 * @param validateOnBorrow If true, connections are validated before they are handed out
+	 * @param leakDetectionMillis Connections borrowed for longer than this are logged as possible leaks - 0 to disable
+	 * @throws SQLException
+	 */
+	public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+			long idleTimeoutMillis, boolean validateOnBorrow, long leakDetectionMillis) throws SQLException {
+		if (maxSize < 1) {
+			throw new SQLException("Connection pool maximum size must be at least 1"); //$NON-NLS-1$
+		}
+		if (minSize < 0 || minSize > maxSize) {
+			throw new SQLException("Connection pool minimum size must be between 0 and the maximum size"); //$NON-NLS-1$
+		}
+		this.dataSource = dataSource;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validateOnBorrow = validateOnBorrow;
+		this.leakDetectionMillis = leakDetectionMillis;
+		this.available = new Semaphore(maxSize, true);
+		for (int i = 0; i < minSize; i++) {
+			idle.addLast(createPooledConnection());
+		}
+		long housekeepingInterval = Math.max(1000, Math.min(
+				idleTimeoutMillis > 0 ? idleTimeoutMillis / 2 : Long.MAX_VALUE,
+				leakDetectionMillis > 0 ? leakDetectionMillis / 2 : Long.MAX_VALUE));
+		if (housekeepingInterval < Long.MAX_VALUE) {
+			housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "openchain-db-pool-housekeeper"); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			housekeeper.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						evictIdleConnections();
+						detectLeaks();
+					} catch (Throwable ex) {
+						logger.error("Error in connection pool housekeeping",ex); //$NON-NLS-1$
+					}
+				}
+			}, housekeepingInterval, housekeepingInterval, TimeUnit.MILLISECONDS);
+		}
+		logger.info("Created database connection pool with min size "+minSize+" and max size "+maxSize); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private PooledConnection createPooledConnection() throws SQLException {
+		Connection con = dataSource.getConnection();
+		connectionsCreated.incrementAndGet();
+		return new PooledConnection(con);
+	}
+
+	private void discard(PooledConnection pc) {
+		pc.closePhysical();
+		connectionsClosed.incrementAndGet();
+	}
+
+	/**
+	 * Borrow a connection from the pool, waiting up to the acquire timeout for one to become available
+	 * @return a connection which must be closed by the caller to return it to the pool
+	 * @throws SQLException if the pool is exhausted or a connection can not be created
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool has been closed"); //$NON-NLS-1$
+		}
+		long start = System.currentTimeMillis();
+		boolean acquired = available.tryAcquire();
+		if (!acquired) {
+			waitCount.incrementAndGet();
+			try {
+				acquired = available.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted waiting for a database connection"); //$NON-NLS-1$
+			}
+			long waited = System.currentTimeMillis() - start;
+			totalWaitMillis.addAndGet(waited);
+			long max = maxWaitMillis.get();
+			while (waited > max && !maxWaitMillis.compareAndSet(max, waited)) {
+				max = maxWaitMillis.get();
+			}
+			if (!acquired) {
+				timeoutCount.incrementAndGet();
+				logger.error("Timed out waiting for a database connection.  Pool statistics: "+getStatistics()); //$NON-NLS-1$
+				throw new SQLException("Timed out after "+acquireTimeoutMillis+" milliseconds waiting for a database connection"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		try {
+			PooledConnection pc = idle.pollFirst();
+			while (pc != null && validateOnBorrow && !isValid(pc)) {
+				validationFailures.incrementAndGet();
+				logger.warn("Discarding invalid pooled database connection"); //$NON-NLS-1$
+				discard(pc);
+				pc = idle.pollFirst();
+			}
+			if (pc == null) {
+				pc = createPooledConnection();
+			}
+			borrowed.add(pc);
+			borrowCount.incrementAndGet();
+			return pc.borrow();
+		} catch (SQLException ex) {
+			available.release();
+			throw ex;
+		} catch (RuntimeException ex) {
+			available.release();
+			throw ex;
+		}
+	}
+
+	private boolean isValid(PooledConnection pc) {
+		try {
+			return pc.physicalConnection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return a connection to the pool, resetting any state the borrower may have changed
+	 * @param pc
+	 */
+	private void returnConnection(PooledConnection pc) {
+		borrowed.remove(pc);
+		try {
+			boolean reusable = !closed && !pc.physicalConnection.isClosed();
+			if (reusable) {
+				try {
+					if (!pc.physicalConnection.getAutoCommit()) {
+						// roll back anything the borrower left uncommitted
+						pc.physicalConnection.rollback();
+						pc.physicalConnection.setAutoCommit(true);
+					}
+					pc.physicalConnection.clearWarnings();
+				} catch (SQLException ex) {
+					logger.warn("Unable to reset pooled database connection - discarding",ex); //$NON-NLS-1$
+					reusable = false;
+				}
+			}
+			if (reusable) {
+				pc.lastReturned = System.currentTimeMillis();
+				idle.addFirst(pc);
+			} else {
+				discard(pc);
+			}
+		} catch (SQLException ex) {
+			discard(pc);
+		} finally {
+			available.release();
+		}
+	}
+
+	/**
+	 * Close idle connections which have not been used within the idle timeout, keeping at least minSize connections open
+	 */
+	void evictIdleConnections() {
+		if (idleTimeoutMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		// The oldest idle connections are at the end of the deque
+		Iterator<PooledConnection> iter = idle.descendingIterator();
+		while (iter.hasNext() && idle.size() + borrowed.size() > minSize) {
+			PooledConnection pc = iter.next();
+			if (now - pc.lastReturned > idleTimeoutMillis) {
+				if (idle.removeLastOccurrence(pc)) {
+					discard(pc);
+				}
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Log any connections which have been borrowed longer than the leak detection threshold
+	 */
+	void detectLeaks() {
+		if (leakDetectionMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (PooledConnection pc:borrowed) {
+			synchronized(pc) {
+				if (pc.proxy != null && !pc.leakReported && now - pc.borrowedAt > leakDetectionMillis) {
+					pc.leakReported = true;
+					leaksDetected.incrementAndGet();
+					logger.warn("Possible database connection leak - connection has been borrowed for "+ //$NON-NLS-1$
+							(now - pc.borrowedAt) + " milliseconds",pc.borrowedBy); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a snapshot of the current pool statistics
+	 */
+	public ConnectionPoolStatistics getStatistics() {
+		return new ConnectionPoolStatistics(minSize, maxSize, borrowed.size(), idle.size(),
+				available.getQueueLength(), connectionsCreated.get(), connectionsClosed.get(),
+				borrowCount.get(), waitCount.get(), totalWaitMillis.get(), maxWaitMillis.get(),
+				timeoutCount.get(), validationFailures.get(), leaksDetected.get());
+	}
+
+	/**
+	 * Close all idle connections and stop the pool.  Borrowed connections are closed when they are returned.
+	 */
+	public void close() {
+		closed = true;
+		if (housekeeper != null) {
+			housekeeper.shutdownNow();
+		}
+		PooledConnection pc = idle.pollFirst();
+		while (pc != null) {
+			discard(pc);
+			pc = idle.pollFirst();
+		}
+		logger.info("Closed database connection pool"); //$NON-NLS-1$
+	}
+}
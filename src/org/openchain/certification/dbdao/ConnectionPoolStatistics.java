@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+/**
+ * Point in time snapshot of the connection pool statistics used for sizing the pool
+ * @author Gary O'Neall
+ *
+ */
+public class ConnectionPoolStatistics {
+	private int minSize;
+	private int maxSize;
+	private int active;
+	private int idle;
+	private int waiting;
+	private long connectionsCreated;
+	private long connectionsClosed;
+	private long borrowCount;
+	private long waitCount;
+	private long totalWaitMillis;
+	private long maxWaitMillis;
+	private long timeoutCount;
+	private long validationFailures;
+	private long leaksDetected;
+
+	/**
+	 * @param minSize Configured minimum pool size
+	 * @param maxSize Configured maximum pool size
+	 * @param active Number of connections currently borrowed
+	 * @param idle Number of open connections currently available in the pool
+	 * @param waiting Approximate number of threads waiting for a connection
+	 * @param connectionsCreated Total number of physical connections opened
+	 * @param connectionsClosed Total number of physical connections closed
+	 * @param borrowCount Total number of connections handed out
+	 * @param waitCount Number of borrows which had to wait for a connection
+	 * @param totalWaitMillis Total time spent waiting for connections
+	 * @param maxWaitMillis Longest time spent waiting for a connection
+	 * @param timeoutCount Number of borrows which timed out
+	 * @param validationFailures Number of idle connections which failed validation
+	 * @param leaksDetected Number of connections reported as possible leaks
+	 */
+	public ConnectionPoolStatistics(int minSize, int maxSize, int active, int idle, int waiting,
+			long connectionsCreated, long connectionsClosed, long borrowCount, long waitCount,
+			long totalWaitMillis, long maxWaitMillis, long timeoutCount, long validationFailures,
+			long leaksDetected) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.active = active;
+		this.idle = idle;
+		this.waiting = waiting;
+		this.connectionsCreated = connectionsCreated;
+		this.connectionsClosed = connectionsClosed;
+		this.borrowCount = borrowCount;
+		this.waitCount = waitCount;
+		this.totalWaitMillis = totalWaitMillis;
+		this.maxWaitMillis = maxWaitMillis;
+		this.timeoutCount = timeoutCount;
+		this.validationFailures = validationFailures;
+		this.leaksDetected = leaksDetected;
+	}
+
+	/**
+	 * @return the minSize
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of connections currently borrowed
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * @return the number of idle connections
+	 */
+	public int getIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return the approximate number of threads waiting for a connection
+	 */
+	public int getWaiting() {
+		return waiting;
+	}
+
+	/**
+	 * @return the connectionsCreated
+	 */
+	public long getConnectionsCreated() {
+		return connectionsCreated;
+	}
+
+	/**
+	 * @return the connectionsClosed
+	 */
+	public long getConnectionsClosed() {
+		return connectionsClosed;
+	}
+
+	/**
+	 * @return the borrowCount
+	 */
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	/**
+	 * @return the waitCount
+	 */
+	public long getWaitCount() {
+		return waitCount;
+	}
+
+	/**
+	 * @return the totalWaitMillis
+	 */
+	public long getTotalWaitMillis() {
+		return totalWaitMillis;
+	}
+
+	/**
+	 * @return the maxWaitMillis
+	 */
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * @return the timeoutCount
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * @return the validationFailures
+	 */
+	public long getValidationFailures() {
+		return validationFailures;
+	}
+
+	/**
+	 * @return the leaksDetected
+	 */
+	public long getLeaksDetected() {
+		return leaksDetected;
+	}
+
+	@Override
+	public String toString() {
+		return "active="+active+", idle="+idle+", waiting="+waiting+", max="+maxSize+ //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				", created="+connectionsCreated+", closed="+connectionsClosed+ //$NON-NLS-1$ //$NON-NLS-2$
+				", borrowed="+borrowCount+", waits="+waitCount+", timeouts="+timeoutCount+ //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				", leaks="+leaksDetected; //$NON-NLS-1$
+	}
+}
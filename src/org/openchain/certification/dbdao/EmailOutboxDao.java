@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openchain.certification.model.EmailMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Database access for the email outbox.
+ *
+ * Emails are added to the outbox using the connection of the change which triggers the email
+ * so that the email is only sent if that change is committed.  The dispatcher claims batches
+ * of pending emails, leasing them so that other servers do not send the same emails, and marks
+ * each email as sent or failed.  The body of an email is removed once it is sent or abandoned since
+ * verification and password reset emails contain the unhashed tokens.
+ * @author Gary O'Neall
+ *
+ */
+public class EmailOutboxDao {
+
+	static final Logger logger = LoggerFactory.getLogger(EmailOutboxDao.class);
+
+	private static final String INSERT_EMAIL_SQL = "insert into email_outbox (from_email, to_email, subject, body) values (?,?,?,?)"; //$NON-NLS-1$
+	private static final String CLAIM_EMAILS_SQL = "update email_outbox set attempts=attempts+1, " + //$NON-NLS-1$
+			"next_attempt=now()+(? * interval '1 millisecond') where id in (select id from email_outbox " + //$NON-NLS-1$
+			"where sent is null and body is not null and attempts < ? and next_attempt <= now() order by id limit ? for update skip locked) " + //$NON-NLS-1$
+			"returning id, from_email, to_email, subject, body"; //$NON-NLS-1$
+	private static final String MARK_SENT_SQL = "update email_outbox set sent=now(), last_error=null, body=null where id=?"; //$NON-NLS-1$
+	private static final String MARK_FAILED_SQL = "update email_outbox set last_error=?, " + //$NON-NLS-1$
+			"next_attempt=now()+(least(? * power(2, attempts-1), ?) * interval '1 millisecond'), " + //$NON-NLS-1$
+			"body=case when attempts >= ? then null else body end where id=? returning attempts"; //$NON-NLS-1$
+	private static final String REMOVE_ABANDONED_BODIES_SQL = "update email_outbox set body=null " + //$NON-NLS-1$
+			"where sent is null and body is not null and attempts >= ? and next_attempt <= now()"; //$NON-NLS-1$
+	private static final String COUNT_PENDING_SQL = "select count(*) from email_outbox where sent is null and body is not null and attempts < ?"; //$NON-NLS-1$
+
+	private Connection con;
+
+	/**
+	 * @param con Connection used by the dispatcher - the auto commit will be turned off
+	 * @throws SQLException
+	 */
+	public EmailOutboxDao(Connection con) throws SQLException {
+		this.con = con;
+		this.con.setAutoCommit(false);
+	}
+
+	/**
+	 * Add emails to the outbox.  The emails are not committed - they are sent only if the transaction
+	 * of the connection is committed.
+	 * @param con Connection for the transaction which triggered the emails
+	 * @param emails Emails to send
+	 * @throws SQLException
+	 */
+	public static void enqueue(Connection con, EmailMessage... emails) throws SQLException {
+		if (emails == null || emails.length == 0) {
+			return;
+		}
+		PreparedStatement stmt = null;
+		try {
+			stmt = con.prepareStatement(INSERT_EMAIL_SQL);
+			for (EmailMessage email:emails) {
+				stmt.setString(1, email.getFromEmail());
+				stmt.setString(2, email.getToEmail());
+				stmt.setString(3, email.getSubject());
+				stmt.setString(4, email.getHtmlBody());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Claim the oldest pending emails which are due to be sent.  The attempt count of each claimed
+	 * email is incremented and the email is not claimed again until the lease expires unless it is
+	 * marked failed.
+	 * @param maxEmails Maximum number of emails to claim
+	 * @param leaseMillis Time in milliseconds before an email which is not marked sent may be claimed again
+	 * @param maxAttempts Emails which have already been attempted this many times are not claimed
+	 * @return Map of outbox ID to the email in the order the emails were added
+	 * @throws SQLException
+	 */
+	public Map<Long, EmailMessage> claimBatch(int maxEmails, long leaseMillis, int maxAttempts) throws SQLException {
+		// Sorted by ID since the order of the returned rows is not defined
+		Map<Long, EmailMessage> retval = new TreeMap<Long, EmailMessage>();
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement(CLAIM_EMAILS_SQL);
+			stmt.setLong(1, leaseMillis);
+			stmt.setInt(2, maxAttempts);
+			stmt.setInt(3, maxEmails);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				retval.put(result.getLong("id"), new EmailMessage(result.getString("from_email"), //$NON-NLS-1$ //$NON-NLS-2$
+						result.getString("to_email"), result.getString("subject"), result.getString("body"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			con.commit();
+			return retval;
+		} catch (SQLException ex) {
+			con.rollback();
+			throw ex;
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * @param id Outbox ID of an email which has been sent
+	 * @throws SQLException
+	 */
+	public void markSent(long id) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = con.prepareStatement(MARK_SENT_SQL);
+			stmt.setLong(1, id);
+			stmt.executeUpdate();
+			con.commit();
+		} catch (SQLException ex) {
+			con.rollback();
+			throw ex;
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Record a failed attempt to send an email and schedule the next attempt.  The delay before the
+	 * next attempt doubles with each attempt.  The body of an email which has reached the maximum
+	 * number of attempts is removed.
+	 * @param id Outbox ID of the email
+	 * @param error Description of the failure
+	 * @param backoffMillis Delay in milliseconds after the first failed attempt
+	 * @param maxBackoffMillis Maximum delay in milliseconds
+	 * @param maxAttempts Number of attempts before the email is abandoned
+	 * @return the number of attempts made to send the email
+	 * @throws SQLException
+	 */
+	public int markFailed(long id, String error, long backoffMillis, long maxBackoffMillis, int maxAttempts) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement(MARK_FAILED_SQL);
+			stmt.setString(1, error);
+			stmt.setLong(2, backoffMillis);
+			stmt.setLong(3, maxBackoffMillis);
+			stmt.setInt(4, maxAttempts);
+			stmt.setLong(5, id);
+			result = stmt.executeQuery();
+			int retval = result.next() ? result.getInt(1) : 0;
+			con.commit();
+			return retval;
+		} catch (SQLException ex) {
+			con.rollback();
+			throw ex;
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Remove the bodies of emails which were claimed for their last attempt but never marked sent
+	 * or failed, e.g. because the server stopped while sending.  These emails are never claimed
+	 * again so they are abandoned once their lease has expired.
+	 * @param maxAttempts Number of attempts before an email is abandoned
+	 * @return the number of emails abandoned
+	 * @throws SQLException
+	 */
+	public int removeAbandonedBodies(int maxAttempts) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = con.prepareStatement(REMOVE_ABANDONED_BODIES_SQL);
+			stmt.setInt(1, maxAttempts);
+			int retval = stmt.executeUpdate();
+			con.commit();
+			return retval;
+		} catch (SQLException ex) {
+			con.rollback();
+			throw ex;
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * @param maxAttempts Emails which have been attempted this many times are not counted
+	 * @return the number of emails which have not been sent
+	 * @throws SQLException
+	 */
+	public int countPending(int maxAttempts) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement(COUNT_PENDING_SQL);
+			stmt.setInt(1, maxAttempts);
+			result = stmt.executeQuery();
+			result.next();
+			int retval = result.getInt(1);
+			con.commit();
+			return retval;
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+}
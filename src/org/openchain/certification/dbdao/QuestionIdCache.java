@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared index of question number to question ID for each spec.
+ *
+ * Question ID's do not change once a question has been added, so the ID's for a spec
+ * are read once in a single query and kept for all DAO's.  The entries for a spec
+ * must be invalidated whenever questions are added to that spec.  Only committed question ID's
+ * may be cached - a DAO adding questions must resolve the ID's within its own transaction using
+ * <code>loadQuestionIds</code> and invalidate the cache after the commit or rollback.
+ * @author Gary O'Neall
+ *
+ */
+public class QuestionIdCache {
+
+	/**
+	 * Map of spec ID to an unmodifiable map of question number to question ID
+	 */
+	private static final ConcurrentHashMap<Long, Map<String, Long>> questionIds = new ConcurrentHashMap<Long, Map<String, Long>>();
+
+	/**
+	 * Incremented on every invalidation so that question ID's loaded before an invalidation are not cached
+	 */
+	private static long generation = 0;
+
+	private QuestionIdCache() {
+		// Static methods only
+	}
+
+	/**
+	 * @param con Connection used to read the question ID's if they are not already cached
+	 * @param specId ID of the spec
+	 * @return unmodifiable map of question number to question ID for all questions in the spec
+	 * @throws SQLException
+	 */
+	public static Map<String, Long> getQuestionIds(Connection con, long specId) throws SQLException {
+		Map<String, Long> retval = questionIds.get(specId);
+		if (retval != null) {
+			return retval;
+		}
+		long loadGeneration;
+		synchronized(questionIds) {
+			loadGeneration = generation;
+		}
+		retval = loadQuestionIds(con, specId);
+		synchronized(questionIds) {
+			// If two threads load the same spec, the results are identical so either may be kept
+			if (loadGeneration == generation) {
+				questionIds.put(specId, retval);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @param con Connection used to read the question ID's if they are not already cached
+	 * @param specId ID of the spec
+	 * @param questionNumber Number of the question
+	 * @return the ID of the question or -1 if the question does not exist
+	 * @throws SQLException
+	 */
+	public static long getQuestionId(Connection con, long specId, String questionNumber) throws SQLException {
+		Long retval = getQuestionIds(con, specId).get(questionNumber);
+		return retval == null ? -1 : retval;
+	}
+
+	/**
+	 * Remove the cached question ID's for a spec.  Must be called whenever questions are added to the spec.
+	 * @param specId ID of the spec
+	 */
+	public static void invalidate(long specId) {
+		synchronized(questionIds) {
+			generation++;
+			questionIds.remove(specId);
+		}
+	}
+
+	/**
+	 * Remove all cached question ID's
+	 */
+	public static void invalidateAll() {
+		synchronized(questionIds) {
+			generation++;
+			questionIds.clear();
+		}
+	}
+
+	/**
+	 * Read the question ID's without using or updating the cache
+	 * @param con Connection used to read the question ID's
+	 * @param specId ID of the spec
+	 * @return unmodifiable map of question number to question ID for all questions in the spec
+	 * @throws SQLException
+	 */
+	static Map<String, Long> loadQuestionIds(Connection con, long specId) throws SQLException {
+		Map<String, Long> retval = new HashMap<String, Long>();
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement("select question.number, question.id from question " + //$NON-NLS-1$
+					"join section on question.section_id=section.id where section.spec_version=?"); //$NON-NLS-1$
+			stmt.setLong(1, specId);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				retval.put(result.getString(1), result.getLong(2));
+			}
+			return Collections.unmodifiableMap(retval);
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the versioned schema migrations on top of the base schema in <code>schema.sql</code>.
+ *
+ * The migrations are SQL scripts on the classpath under <code>db/migration</code> named
+ * <code>V&lt;version&gt;__&lt;description&gt;.sql</code> and are listed in <code>MIGRATIONS</code>
+ * in the order they must be applied.  Applied versions are recorded in the <code>schema_version</code>
+ * table.  All pending migrations are applied in a single transaction so a failure leaves the
+ * schema unchanged.
+ * @author Gary O'Neall
+ *
+ */
+public class SchemaMigrator {
+
+	static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+	static final String MIGRATION_PATH = "db/migration/"; //$NON-NLS-1$
+
+	/**
+	 * All migrations in the order they are applied - new migrations must be added to the end
+	 */
+	static final String[] MIGRATIONS = new String[] {
+			"V1__response_scores.sql", //$NON-NLS-1$
+			"V2__indexes.sql", //$NON-NLS-1$
+			"V3__answer_unique.sql", //$NON-NLS-1$
+			"V4__email_outbox.sql", //$NON-NLS-1$
+	};
+
+	/**
+	 * Arbitrary key for the advisory lock which prevents two servers from migrating at the same time
+	 */
+	private static final long MIGRATION_LOCK_KEY = 0x4f43534d4947L;
+
+	private Connection con;
+
+	/**
+	 * @param con Connection used for the migrations - the auto commit will be restored after migrating
+	 */
+	public SchemaMigrator(Connection con) {
+		this.con = con;
+	}
+
+	/**
+	 * Apply any migrations which have not already been applied
+	 * @return the number of migrations applied
+	 * @throws SQLException
+	 */
+	public int migrate() throws SQLException {
+		boolean autoCommit = con.getAutoCommit();
+		con.setAutoCommit(false);
+		Statement stmt = null;
+		int numApplied = 0;
+		try {
+			stmt = con.createStatement();
+			stmt.execute("select pg_advisory_xact_lock(" + String.valueOf(MIGRATION_LOCK_KEY) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			stmt.execute("create table if not exists schema_version (version integer primary key, " + //$NON-NLS-1$
+					"description text, installed_on timestamp with time zone default now())"); //$NON-NLS-1$
+			int currentVersion = getCurrentVersion();
+			for (String migration:MIGRATIONS) {
+				int version = getVersion(migration);
+				if (version > currentVersion) {
+					logger.info("Applying database migration "+migration); //$NON-NLS-1$
+					for (String sql:readStatements(migration)) {
+						stmt.execute(sql);
+					}
+					recordVersion(version, getDescription(migration));
+					numApplied++;
+				}
+			}
+			con.commit();
+			return numApplied;
+		} catch (SQLException ex) {
+			logger.error("Error applying database migrations",ex); //$NON-NLS-1$
+			try {
+				con.rollback();
+			} catch (SQLException ex2) {
+				logger.error("Error rolling back database migrations",ex2); //$NON-NLS-1$
+			}
+			throw(ex);
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+			con.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * @return the most recent migration version applied or 0 if no migrations have been applied
+	 * @throws SQLException
+	 */
+	public int getCurrentVersion() throws SQLException {
+		Statement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.createStatement();
+			result = stmt.executeQuery("select coalesce(max(version), 0) from schema_version"); //$NON-NLS-1$
+			result.next();
+			return result.getInt(1);
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the version of the last migration known to this software
+	 */
+	public static int getLatestVersion() {
+		return getVersion(MIGRATIONS[MIGRATIONS.length-1]);
+	}
+
+	private void recordVersion(int version, String description) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = con.prepareStatement("insert into schema_version (version, description) values (?,?)"); //$NON-NLS-1$
+			stmt.setInt(1, version);
+			stmt.setString(2, description);
+			stmt.executeUpdate();
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
+	static int getVersion(String migration) {
+		return Integer.parseInt(migration.substring(1, migration.indexOf("__"))); //$NON-NLS-1$
+	}
+
+	static String getDescription(String migration) {
+		return migration.substring(migration.indexOf("__")+2, migration.lastIndexOf('.')).replace('_', ' '); //$NON-NLS-1$
+	}
+
+	/**
+	 * Read the SQL statements from a migration script.  Statements are separated by a semicolon
+	 * at the end of a line and lines starting with -- are ignored.
+	 * @param migration File name of the migration
+	 * @return SQL statements in the order they appear in the script
+	 * @throws SQLException if the script can not be read
+	 */
+	static List<String> readStatements(String migration) throws SQLException {
+		InputStream is = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + migration);
+		if (is == null) {
+			throw new SQLException("Missing database migration "+migration); //$NON-NLS-1$
+		}
+		List<String> retval = new ArrayList<String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.startsWith("--")) { //$NON-NLS-1$
+					continue;
+				}
+				sb.append(line);
+				sb.append('\n');
+				if (trimmed.endsWith(";")) { //$NON-NLS-1$
+					retval.add(sb.toString().trim());
+					sb.setLength(0);
+				}
+			}
+			if (!sb.toString().trim().isEmpty()) {
+				retval.add(sb.toString().trim());
+			}
+			return retval;
+		} catch (IOException e) {
+			throw new SQLException("Error reading database migration "+migration, e); //$NON-NLS-1$
+		} finally {
+			try {
+				if (reader != null) {
+					reader.close();
+				} else {
+					is.close();
+				}
+			} catch (IOException e) {
+				logger.warn("Error closing database migration "+migration,e); //$NON-NLS-1$
+			}
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.servlet.ServletConfig;
+
+/**
+ * Catalog of the spec versions and languages stored in the database.
+ *
+ * The catalog is read once from the spec table and kept in memory until the surveys are
+ * updated.  A catalog instance is immutable - <code>invalidate()</code> replaces it with
+ * a newly loaded catalog on the next request.
+ * @author Gary O'Neall
+ *
+ */
+public class SpecCatalog {
+
+	private static volatile SpecCatalog catalog = null;
+
+	private static final Object catalogLock = new Object();
+
+	/**
+	 * Incremented on every invalidation so that a catalog loaded before an invalidation is not kept
+	 */
+	private static long generation = 0;
+
+	/**
+	 * All full spec versions (e.g. 1.1.1) in sort order
+	 */
+	private List<String> versions;
+	/**
+	 * Distinct major.minor spec versions (e.g. 1.1) in sort order
+	 */
+	private List<String> majorVersions;
+	/**
+	 * Map of major.minor spec version to the latest full spec version
+	 */
+	private Map<String, String> latestMinorVersions;
+	/**
+	 * Map of full spec version to all languages for that version
+	 */
+	private Map<String, List<String>> languages;
+	private String latestVersion;
+
+	private SpecCatalog(Connection con) throws SQLException {
+		Map<String, List<String>> versionLanguages = new HashMap<String, List<String>>();
+		Statement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.createStatement();
+			result = stmt.executeQuery("select version, language from spec"); //$NON-NLS-1$
+			while (result.next()) {
+				String version = result.getString(1);
+				List<String> versionLanguageList = versionLanguages.get(version);
+				if (versionLanguageList == null) {
+					versionLanguageList = new ArrayList<String>();
+					versionLanguages.put(version, versionLanguageList);
+				}
+				versionLanguageList.add(result.getString(2));
+			}
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+		List<String> allVersions = new ArrayList<String>(versionLanguages.keySet());
+		Collections.sort(allVersions);
+		TreeSet<String> majors = new TreeSet<String>();
+		Map<String, String> latestMinors = new HashMap<String, String>();
+		Map<String, List<String>> languageMap = new HashMap<String, List<String>>();
+		for (String version:allVersions) {
+			String major = extractSpecVersion(version);
+			majors.add(major);
+			String latestMinor = latestMinors.get(major);
+			if (latestMinor == null || version.compareToIgnoreCase(latestMinor) > 0) {
+				latestMinors.put(major, version);
+			}
+			languageMap.put(version, Collections.unmodifiableList(versionLanguages.get(version)));
+		}
+		this.versions = Collections.unmodifiableList(allVersions);
+		this.majorVersions = Collections.unmodifiableList(new ArrayList<String>(majors));
+		this.latestMinorVersions = latestMinors;
+		this.languages = languageMap;
+		this.latestVersion = allVersions.isEmpty() ? null : allVersions.get(allVersions.size()-1);
+	}
+
+	/**
+	 * @param con Connection used to load the catalog if it is not already loaded
+	 * @return the current catalog
+	 * @throws SQLException
+	 */
+	public static SpecCatalog getSpecCatalog(Connection con) throws SQLException {
+		SpecCatalog retval = catalog;
+		if (retval != null) {
+			return retval;
+		}
+		long loadGeneration;
+		synchronized(catalogLock) {
+			loadGeneration = generation;
+		}
+		retval = new SpecCatalog(con);
+		synchronized(catalogLock) {
+			if (loadGeneration == generation) {
+				catalog = retval;
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @param config Servlet configuration used to connect to the database if the catalog is not already loaded
+	 * @return the current catalog
+	 * @throws SQLException
+	 */
+	public static SpecCatalog getSpecCatalog(ServletConfig config) throws SQLException {
+		SpecCatalog retval = catalog;
+		if (retval == null) {
+			Connection con = SurveyDatabase.createConnection(config);
+			try {
+				retval = getSpecCatalog(con);
+			} finally {
+				con.close();
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Discard the catalog so that it is loaded from the database on the next request.  Must be called
+	 * whenever a spec version or language is added.
+	 */
+	public static void invalidate() {
+		synchronized(catalogLock) {
+			generation++;
+			catalog = null;
+		}
+	}
+
+	/**
+	 * @param fullSpecVersion
+	 * @return Only the spec version portion of a full spec version (e.g. 1.1.1 -> 1.1)
+	 */
+	public static String extractSpecVersion(String fullSpecVersion) {
+		String[] versionParts = fullSpecVersion.split("\\."); //$NON-NLS-1$
+		StringBuilder sb = new StringBuilder();
+		sb.append(versionParts[0]);
+		if (versionParts.length > 1) {
+			sb.append('.');
+			sb.append(versionParts[1]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return unmodifiable list of all full spec versions in sort order
+	 */
+	public List<String> getVersions() {
+		return versions;
+	}
+
+	/**
+	 * @return unmodifiable list of the distinct spec versions without the survey version (e.g. 1.1 for 1.1.1) in sort order
+	 */
+	public List<String> getMajorVersions() {
+		return majorVersions;
+	}
+
+	/**
+	 * @param majorVersion spec version without the survey version (e.g. 1.1)
+	 * @return the latest full spec version for the major version or null if there is none
+	 */
+	public String getLatestMinorVersion(String majorVersion) {
+		return latestMinorVersions.get(majorVersion);
+	}
+
+	/**
+	 * @param version full spec version
+	 * @return unmodifiable list of the languages available for the version - empty if the version does not exist
+	 */
+	public List<String> getLanguages(String version) {
+		List<String> retval = languages.get(version);
+		if (retval == null) {
+			return Collections.emptyList();
+		}
+		return retval;
+	}
+
+	/**
+	 * @return the latest full spec version or null if there are no specs
+	 */
+	public String getLatestVersion() {
+		return latestVersion;
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paging, sorting and filtering criteria for the submission lists.
+ *
+ * The criteria are translated into the where, order by and limit clauses of the
+ * submission queries so that only the requested page is read from the database.
+ * @author Gary O'Neall
+ *
+ */
+public class SubmissionFilter {
+
+	/**
+	 * Maximum number of submissions which can be requested in a single page
+	 */
+	public static final int MAX_LIMIT = 500;
+
+	/**
+	 * Columns the submissions can be sorted on
+	 */
+	public enum SortColumn {
+		username("username", "username"), //$NON-NLS-1$ //$NON-NLS-2$
+		organization("lower(organization)", "lower(organization)"), //$NON-NLS-1$ //$NON-NLS-2$
+		email("lower(email)", "lower(case when email_permission then email else null end)"), //$NON-NLS-1$ //$NON-NLS-2$
+		specVersion("version", "version"), //$NON-NLS-1$ //$NON-NLS-2$
+		score("score", "score"), //$NON-NLS-1$ //$NON-NLS-2$
+		percentComplete("percent_complete", "percent_complete"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		private String sqlExpression;
+		private String publicSqlExpression;
+
+		/**
+		 * @param sqlExpression Expression to sort on
+		 * @param publicSqlExpression Expression to sort on when only public information may be used
+		 */
+		SortColumn(String sqlExpression, String publicSqlExpression) {
+			this.sqlExpression = sqlExpression;
+			this.publicSqlExpression = publicSqlExpression;
+		}
+
+		String getSqlExpression(boolean publicOnly) {
+			return publicOnly ? publicSqlExpression : sqlExpression;
+		}
+	}
+
+	/**
+	 * Status of a submission
+	 */
+	public enum Status {
+		notSubmitted("submitted=false"), //$NON-NLS-1$
+		awaitingApproval("submitted=true and approved=false and rejected=false"), //$NON-NLS-1$
+		approved("submitted=true and approved=true"), //$NON-NLS-1$
+		rejected("submitted=true and approved=false and rejected=true"); //$NON-NLS-1$
+
+		private String sqlCondition;
+
+		Status(String sqlCondition) {
+			this.sqlCondition = sqlCondition;
+		}
+
+		String getSqlCondition() {
+			return sqlCondition;
+		}
+	}
+
+	private int offset = 0;
+	private int limit = -1;
+	private SortColumn sortColumn = SortColumn.username;
+	private boolean ascending = true;
+	private String specVersion = null;
+	private Status status = null;
+	private String organizationPrefix = null;
+
+	/**
+	 * Create a filter which matches all submissions sorted by username
+	 */
+	public SubmissionFilter() {
+
+	}
+
+	/**
+	 * @return the number of submissions to skip
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @param offset the number of submissions to skip
+	 */
+	public void setOffset(int offset) {
+		if (offset < 0) {
+			throw new IllegalArgumentException("Offset must not be negative"); //$NON-NLS-1$
+		}
+		this.offset = offset;
+	}
+
+	/**
+	 * @return the maximum number of submissions to return - a negative number indicates no limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @param limit the maximum number of submissions to return - a negative number indicates no limit
+	 */
+	public void setLimit(int limit) {
+		if (limit > MAX_LIMIT) {
+			throw new IllegalArgumentException("Limit must not be greater than "+String.valueOf(MAX_LIMIT)); //$NON-NLS-1$
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * @return the column to sort on
+	 */
+	public SortColumn getSortColumn() {
+		return sortColumn;
+	}
+
+	/**
+	 * @param sortColumn the column to sort on
+	 */
+	public void setSortColumn(SortColumn sortColumn) {
+		this.sortColumn = sortColumn == null ? SortColumn.username : sortColumn;
+	}
+
+	/**
+	 * @return true if sorted in ascending order
+	 */
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	/**
+	 * @param ascending true if sorted in ascending order
+	 */
+	public void setAscending(boolean ascending) {
+		this.ascending = ascending;
+	}
+
+	/**
+	 * @return the spec version to match or null to match all spec versions
+	 */
+	public String getSpecVersion() {
+		return specVersion;
+	}
+
+	/**
+	 * @param specVersion Spec version to match.  A major.minor version will match all patch versions.  Null matches all spec versions.
+	 */
+	public void setSpecVersion(String specVersion) {
+		this.specVersion = specVersion;
+	}
+
+	/**
+	 * @return the status to match or null to match all
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param status the status to match or null to match all
+	 */
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the case insensitive prefix of the organization name to match or null to match all
+	 */
+	public String getOrganizationPrefix() {
+		return organizationPrefix;
+	}
+
+	/**
+	 * @param organizationPrefix the case insensitive prefix of the organization name to match or null to match all
+	 */
+	public void setOrganizationPrefix(String organizationPrefix) {
+		if (organizationPrefix != null && organizationPrefix.trim().isEmpty()) {
+			organizationPrefix = null;
+		}
+		this.organizationPrefix = organizationPrefix;
+	}
+
+	/**
+	 * @return true if this filter matches all submissions in the default order without paging
+	 */
+	public boolean isDefault() {
+		return offset == 0 && limit < 0 && sortColumn == SortColumn.username && ascending &&
+				specVersion == null && status == null && organizationPrefix == null;
+	}
+
+	/**
+	 * @return conditions (without the leading where) for this filter with ? for each parameter - empty if there are no conditions
+	 */
+	String getWhereConditions() {
+		List<String> conditions = new ArrayList<String>();
+		if (status != null) {
+			conditions.add(status.getSqlCondition());
+		}
+		if (specVersion != null) {
+			conditions.add("(version=? or version like ?)"); //$NON-NLS-1$
+		}
+		if (organizationPrefix != null) {
+			conditions.add("lower(organization) like ? escape '\\'"); //$NON-NLS-1$
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String condition:conditions) {
+			if (sb.length() > 0) {
+				sb.append(" and "); //$NON-NLS-1$
+			}
+			sb.append(condition);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Set the parameters for the conditions returned by <code>getWhereConditions</code>
+	 * @param stmt Statement to set the parameters on
+	 * @param firstIndex Index of the first parameter for the where conditions
+	 * @return the index of the next parameter after the where conditions
+	 * @throws SQLException
+	 */
+	int setWhereParameters(PreparedStatement stmt, int firstIndex) throws SQLException {
+		int index = firstIndex;
+		if (specVersion != null) {
+			stmt.setString(index++, specVersion);
+			stmt.setString(index++, escapeLike(specVersion) + ".%"); //$NON-NLS-1$
+		}
+		if (organizationPrefix != null) {
+			stmt.setString(index++, escapeLike(organizationPrefix.toLowerCase()) + "%"); //$NON-NLS-1$
+		}
+		return index;
+	}
+
+	/**
+	 * @param publicOnly If true, only sort on information which can be made public so that the order does not disclose private information
+	 * @return order by clause (without the order by keywords) including a tie breaker so that paging is stable
+	 */
+	String getOrderBy(boolean publicOnly) {
+		String direction = ascending ? " asc" : " desc"; //$NON-NLS-1$ //$NON-NLS-2$
+		return sortColumn.getSqlExpression(publicOnly) + direction + ", survey_response.id" + direction; //$NON-NLS-1$
+	}
+
+	/**
+	 * @return limit and offset clause for this filter - empty if all rows are requested
+	 */
+	String getLimitOffset() {
+		StringBuilder sb = new StringBuilder();
+		if (limit >= 0) {
+			sb.append(" limit "); //$NON-NLS-1$
+			sb.append(limit);
+		}
+		if (offset > 0) {
+			sb.append(" offset "); //$NON-NLS-1$
+			sb.append(offset);
+		}
+		return sb.toString();
+	}
+
+	private static String escapeLike(String value) {
+		return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+
+import org.openchain.certification.dbdao.SurveyDbDao.ResolvedSpec;
+import org.openchain.certification.model.QuestionException;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.SurveyResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide cache of surveys keyed by the id of the spec the survey is built from.
+ *
+ * Surveys only change when an administrator updates the survey questions, so the fully built
+ * surveys are shared by all users.  The cached surveys must not be modified - callers which need
+ * to modify a survey (e.g. <code>prettify()</code>) must use <code>getSurveyCopy</code>.
+ * Requests for the latest version or for an unsupported language resolve to the same spec as
+ * an explicit request, so the requested spec version and language are kept as aliases of the
+ * resolved spec and all of them share one cached survey.
+ * The cache holds at most <code>maxSize</code> surveys, evicting the least recently used.  The
+ * maximum size is set by the <code>survey_cache_max_size</code> context parameter.
+ * @author Gary O'Neall
+ *
+ */
+public class SurveyCache {
+
+	static final Logger logger = LoggerFactory.getLogger(SurveyCache.class);
+
+	static final String MAX_SIZE_PARAM = "survey_cache_max_size"; //$NON-NLS-1$
+
+	public static final int DEFAULT_MAX_SIZE = 50;
+	/**
+	 * Number of requested version and language aliases kept for each cached survey
+	 */
+	static final int ALIASES_PER_SURVEY = 4;
+
+	private static int maxSize = DEFAULT_MAX_SIZE;
+
+	private static final Map<Long, Survey> surveys = new LinkedHashMap<Long, Survey>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Survey> eldest) {
+			if (size() > maxSize) {
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Spec resolved for each requested spec version and language.  An alias whose survey has been
+	 * evicted is still valid and saves resolving the spec when the survey is reloaded.
+	 */
+	private static final Map<SurveyKey, ResolvedSpec> aliases = new LinkedHashMap<SurveyKey, ResolvedSpec>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SurveyKey, ResolvedSpec> eldest) {
+			return size() > maxSize * ALIASES_PER_SURVEY;
+		}
+	};
+
+	/**
+	 * Incremented on every invalidation so that a survey loaded before an invalidation is not cached
+	 */
+	private static long generation = 0;
+
+	private static final AtomicLong hitCount = new AtomicLong(0);
+	private static final AtomicLong missCount = new AtomicLong(0);
+	private static final AtomicLong evictionCount = new AtomicLong(0);
+	private static final AtomicLong totalLoadTimeNanos = new AtomicLong(0);
+
+	/**
+	 * Key for the requested spec version and language
+	 */
+	private static class SurveyKey {
+		private String specVersion;
+		private String language;
+
+		SurveyKey(String specVersion, String language) {
+			this.specVersion = specVersion;
+			this.language = language;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof SurveyKey)) {
+				return false;
+			}
+			SurveyKey compare = (SurveyKey)o;
+			return Objects.equals(specVersion, compare.specVersion) && Objects.equals(language, compare.language);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(specVersion, language);
+		}
+	}
+
+	private SurveyCache() {
+		// Static methods only
+	}
+
+	/**
+	 * @param con Connection used to load the survey if it is not cached
+	 * @param specVersion Version of the specification.  If null, the latest spec version available is used
+	 * @param language tag in IETF RFC 5646 format.  If the language isn't supported, the default language will be used
+	 * @return Shared survey which must not be modified
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public static Survey getSurvey(Connection con, String specVersion, String language) throws SQLException, SurveyResponseException, QuestionException {
+		SurveyKey key = new SurveyKey(specVersion, language);
+		ResolvedSpec spec;
+		long loadGeneration;
+		synchronized(surveys) {
+			spec = aliases.get(key);
+			if (spec != null) {
+				Survey retval = surveys.get(spec.id);
+				if (retval != null) {
+					hitCount.incrementAndGet();
+					return retval;
+				}
+			}
+			loadGeneration = generation;
+		}
+		// Resolve and load outside of the lock so a slow load does not block other surveys
+		if (spec == null) {
+			spec = SurveyDbDao.resolveSpec(con, specVersion, language);
+			if (spec == null) {
+				missCount.incrementAndGet();
+				return SurveyDbDao.emptySurvey(specVersion);
+			}
+			synchronized(surveys) {
+				if (loadGeneration == generation) {
+					aliases.put(key, spec);
+					Survey retval = surveys.get(spec.id);
+					if (retval != null) {
+						// Already cached through another alias
+						hitCount.incrementAndGet();
+						return retval;
+					}
+				}
+			}
+		}
+		missCount.incrementAndGet();
+		long startTime = System.nanoTime();
+		Survey retval = SurveyDbDao.loadSurvey(con, spec);
+		totalLoadTimeNanos.addAndGet(System.nanoTime() - startTime);
+		synchronized(surveys) {
+			if (loadGeneration == generation) {
+				surveys.put(spec.id, retval);
+				aliases.put(key, spec);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @param con Connection used to load the survey if it is not cached
+	 * @param specVersion Version of the specification.  If null, the latest spec version available is used
+	 * @param language tag in IETF RFC 5646 format.  If the language isn't supported, the default language will be used
+	 * @return Copy of the survey which can be modified by the caller
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public static Survey getSurveyCopy(Connection con, String specVersion, String language) throws SQLException, SurveyResponseException, QuestionException {
+		return getSurvey(con, specVersion, language).clone();
+	}
+
+	/**
+	 * Remove all cached surveys.  Must be called after any change to the survey questions or sections.
+	 */
+	public static void invalidateAll() {
+		synchronized(surveys) {
+			generation++;
+			surveys.clear();
+			aliases.clear();
+		}
+	}
+
+	/**
+	 * Configure the cache from the servlet context parameters.  Parameters which are not set use the defaults.
+	 * @param servletConfig
+	 */
+	public static void configure(ServletConfig servletConfig) {
+		String value = servletConfig.getServletContext().getInitParameter(MAX_SIZE_PARAM);
+		int newMaxSize = DEFAULT_MAX_SIZE;
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				newMaxSize = Integer.parseInt(value.trim());
+			} catch (NumberFormatException ex) {
+				logger.error("Invalid value for survey cache parameter "+MAX_SIZE_PARAM+": "+value+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}
+		if (newMaxSize < 1) {
+			logger.error("Invalid survey cache size "+newMaxSize+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$
+			newMaxSize = DEFAULT_MAX_SIZE;
+		}
+		setMaxSize(newMaxSize);
+	}
+
+	/**
+	 * @param newMaxSize Maximum number of surveys to cache
+	 */
+	public static void setMaxSize(int newMaxSize) {
+		if (newMaxSize < 1) {
+			throw new IllegalArgumentException("Survey cache size must be at least 1"); //$NON-NLS-1$
+		}
+		synchronized(surveys) {
+			maxSize = newMaxSize;
+			// Entries over the new size are evicted as new surveys and aliases are added
+		}
+	}
+
+	/**
+	 * @return number of surveys currently cached
+	 */
+	public static int size() {
+		synchronized(surveys) {
+			return surveys.size();
+		}
+	}
+
+	/**
+	 * @return number of requests served from the cache
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of requests which loaded the survey from the database
+	 */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of surveys evicted to keep the cache within its maximum size
+	 */
+	public static long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return total time in milliseconds spent loading surveys from the database
+	 */
+	public static long getTotalLoadTimeMillis() {
+		return totalLoadTimeNanos.get() / 1000000L;
+	}
+
+	/**
+	 * Reset the statistics - used for testing
+	 */
+	static void resetStats() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+		totalLoadTimeNanos.set(0);
+	}
+
+	/**
+	 * Log the cache statistics
+	 */
+	public static void logStats() {
+		logger.info("Survey cache: size="+String.valueOf(size())+", hits="+String.valueOf(getHitCount())+ //$NON-NLS-1$ //$NON-NLS-2$
+				", misses="+String.valueOf(getMissCount())+", evictions="+String.valueOf(getEvictionCount())+ //$NON-NLS-1$ //$NON-NLS-2$
+				", loadTimeMs="+String.valueOf(getTotalLoadTimeMillis())); //$NON-NLS-1$
+	}
+}
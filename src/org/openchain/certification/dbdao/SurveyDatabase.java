@@ -21,6 +21,7 @@ import java.sql.SQLException;
 
 import javax.servlet.ServletConfig;
 
+import org.openchain.certification.utility.MetricsRegistry;
 import org.postgresql.ds.PGSimpleDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +34,28 @@ import org.slf4j.LoggerFactory;
 public class SurveyDatabase {
 	
 	static final Logger logger = LoggerFactory.getLogger(SurveyDatabase.class);
-	//TODO: Add connection pooling if needed for performance
+	
+	static final String POOL_ENABLED_PARAM = "openchaindb_pool_enabled"; //$NON-NLS-1$
+	static final String POOL_MIN_SIZE_PARAM = "openchaindb_pool_min_size"; //$NON-NLS-1$
+	static final String POOL_MAX_SIZE_PARAM = "openchaindb_pool_max_size"; //$NON-NLS-1$
+	static final String POOL_ACQUIRE_TIMEOUT_PARAM = "openchaindb_pool_acquire_timeout_ms"; //$NON-NLS-1$
+	static final String POOL_IDLE_TIMEOUT_PARAM = "openchaindb_pool_idle_timeout_ms"; //$NON-NLS-1$
+	static final String POOL_VALIDATE_ON_BORROW_PARAM = "openchaindb_pool_validate_on_borrow"; //$NON-NLS-1$
+	static final String POOL_LEAK_DETECTION_PARAM = "openchaindb_pool_leak_detection_ms"; //$NON-NLS-1$
+	static final String MIGRATE_ON_STARTUP_PARAM = "openchaindb_migrate_on_startup"; //$NON-NLS-1$
+	
+	static final int DEFAULT_POOL_MIN_SIZE = 2;
+	static final int DEFAULT_POOL_MAX_SIZE = 20;
+	static final long DEFAULT_POOL_ACQUIRE_TIMEOUT = 30000L;
+	static final long DEFAULT_POOL_IDLE_TIMEOUT = 600000L;
+	static final long DEFAULT_POOL_LEAK_DETECTION = 60000L;
 	
 	private static SurveyDatabase surveyDatabase;
 	private PGSimpleDataSource dataSource;
+	/**
+	 * Pool of connections - null if pooling has been disabled
+	 */
+	private ConnectionPool pool = null;
 	
 	private SurveyDatabase(ServletConfig servletConfig) throws SQLException {
 		dataSource = new PGSimpleDataSource();
@@ -77,16 +96,110 @@ public class SurveyDatabase {
         dataSource.setPortNumber(Integer.parseInt(port));
         logger.info("Database connection with database name "+dbName+ //$NON-NLS-1$
         		" on host" + hostname + "with user" + userName); //$NON-NLS-1$ //$NON-NLS-2$
+        String poolEnabled = servletConfig.getServletContext().getInitParameter(POOL_ENABLED_PARAM);
+        if (poolEnabled == null || Boolean.parseBoolean(poolEnabled)) {
+        	int minSize = getIntParam(servletConfig, POOL_MIN_SIZE_PARAM, DEFAULT_POOL_MIN_SIZE);
+        	int maxSize = getIntParam(servletConfig, POOL_MAX_SIZE_PARAM, DEFAULT_POOL_MAX_SIZE);
+        	long acquireTimeout = getLongParam(servletConfig, POOL_ACQUIRE_TIMEOUT_PARAM, DEFAULT_POOL_ACQUIRE_TIMEOUT);
+        	long idleTimeout = getLongParam(servletConfig, POOL_IDLE_TIMEOUT_PARAM, DEFAULT_POOL_IDLE_TIMEOUT);
+        	String validateParam = servletConfig.getServletContext().getInitParameter(POOL_VALIDATE_ON_BORROW_PARAM);
+        	boolean validateOnBorrow = validateParam == null || Boolean.parseBoolean(validateParam);
+        	long leakDetection = getLongParam(servletConfig, POOL_LEAK_DETECTION_PARAM, DEFAULT_POOL_LEAK_DETECTION);
+        	pool = new ConnectionPool(dataSource, minSize, maxSize, acquireTimeout, idleTimeout, 
+        			validateOnBorrow, leakDetection);
+        } else {
+        	logger.info("Database connection pooling is disabled"); //$NON-NLS-1$
+        }
+        String migrate = servletConfig.getServletContext().getInitParameter(MIGRATE_ON_STARTUP_PARAM);
+        if (migrate == null || Boolean.parseBoolean(migrate)) {
+        	migrate();
+        }
+	}
+	
+	/**
+	 * Apply any pending schema migrations
+	 * @throws SQLException
+	 */
+	private void migrate() throws SQLException {
+		try {
+			Connection con = _createConnection();
+			try {
+				int numApplied = new SchemaMigrator(con).migrate();
+				if (numApplied > 0) {
+					logger.info("Applied "+String.valueOf(numApplied)+" database migrations"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			} finally {
+				con.close();
+			}
+		} catch (SQLException ex) {
+			// The database will be initialized again on the next connection request
+			if (pool != null) {
+				pool.close();
+			}
+			throw(ex);
+		}
+	}
+	
+	private static int getIntParam(ServletConfig servletConfig, String paramName, int defaultValue) throws SQLException {
+		return (int)getLongParam(servletConfig, paramName, defaultValue);
+	}
+	
+	private static long getLongParam(ServletConfig servletConfig, String paramName, long defaultValue) throws SQLException {
+		String value = servletConfig.getServletContext().getInitParameter(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new SQLException("Invalid value for database configuration parameter "+paramName+": "+value); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+	
+	public static Connection createConnection(ServletConfig servletConfig) throws SQLException {
+		// Only the initialization is synchronized so that threads waiting on the pool do not block each other
+		return getSurveyDatabase(servletConfig)._createConnection();
 	}
 	
-	public static synchronized Connection createConnection(ServletConfig servletConfig) throws SQLException {
+	private static synchronized SurveyDatabase getSurveyDatabase(ServletConfig servletConfig) throws SQLException {
 		if (surveyDatabase == null) {
 			surveyDatabase = new SurveyDatabase(servletConfig);
 		}
-		return surveyDatabase._createConnection();
+		return surveyDatabase;
 	}
 
 	private Connection _createConnection() throws SQLException {
-		return this.dataSource.getConnection();
+		long startNanos = System.nanoTime();
+		try {
+			if (this.pool != null) {
+				return this.pool.getConnection();
+			} else {
+				return this.dataSource.getConnection();
+			}
+		} finally {
+			MetricsRegistry.DB_CONNECTION_ACQUIRE.record(null, System.nanoTime() - startNanos);
+		}
+	}
+	
+	/**
+	 * @return Statistics for the connection pool or null if the database has not been initialized or pooling is disabled
+	 */
+	public static synchronized ConnectionPoolStatistics getPoolStatistics() {
+		if (surveyDatabase == null || surveyDatabase.pool == null) {
+			return null;
+		}
+		return surveyDatabase.pool.getStatistics();
+	}
+	
+	/**
+	 * Close all pooled connections.  A new pool will be created on the next call to <code>createConnection</code>
+	 */
+	public static synchronized void shutdown() {
+		if (surveyDatabase != null) {
+			if (surveyDatabase.pool != null) {
+				surveyDatabase.pool.close();
+			}
+			surveyDatabase = null;
+		}
 	}
 }
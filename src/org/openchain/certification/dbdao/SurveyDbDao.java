@@ -42,6 +42,7 @@ import org.openchain.certification.model.YesNoNotApplicableQuestion;
 import org.openchain.certification.model.YesNoQuestion;
 import org.openchain.certification.model.YesNoQuestion.YesNo;
 import org.openchain.certification.model.YesNoQuestionWithEvidence;
+import org.openchain.certification.utility.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,14 +55,14 @@ public class SurveyDbDao {
 	
 	static final Logger logger = LoggerFactory.getLogger(SurveyDbDao.class);
 	
+	static final String GET_SPEC_ID_SQL = "select id from spec where version=? and language=?"; //$NON-NLS-1$
+	
 	Connection connection = null;
 	private PreparedStatement updateQuestionQuery;
 	private PreparedStatement addQuestionQuery;
-	private PreparedStatement getQuestionIdQuery;
 	private PreparedStatement insertSpecQuery;
 	private PreparedStatement insertSectionQuery;
 	private PreparedStatement updateSectionTitleQuery;
-	private PreparedStatement getLanguagesQuery;
 	
 	public SurveyDbDao(Connection connection) throws SQLException {
 		this.connection = connection;
@@ -101,7 +102,7 @@ public class SurveyDbDao {
 					return -1;
 				}
 			} else {
-				PreparedStatement getSpecIdQuery = con.prepareStatement("select id from spec where version=? and language=?"); //$NON-NLS-1$
+				PreparedStatement getSpecIdQuery = con.prepareStatement(GET_SPEC_ID_SQL);
 				getSpecIdQuery.setString(1, specVersion);
 				getSpecIdQuery.setString(2, language);
 				result = getSpecIdQuery.executeQuery();
@@ -137,139 +138,241 @@ public class SurveyDbDao {
 		}
 	}
 
+	/**
+	 * Resolves the spec to use for a version and language preferring the requested language,
+	 * then the default language, then a spec with no language.  If the version is null, the latest version is used.
+	 */
+	static final String GET_SPEC_FOR_SURVEY_SQL = "select id, version, language from spec " + //$NON-NLS-1$
+			"where version=coalesce(?, (select max(version) from spec)) " + //$NON-NLS-1$
+			"and (language=? or language=? or language is null) " + //$NON-NLS-1$
+			"order by case when language=? then 0 when language=? then 1 else 2 end limit 1"; //$NON-NLS-1$
+	
+	/**
+	 * All sections and questions for a spec including the number of the parent question for subquestions.
+	 * Sections without any questions are returned with null question columns.
+	 */
+	static final String GET_SURVEY_TREE_SQL = "select section.id as section_id, section.name as section_name, " + //$NON-NLS-1$
+			"section.title as section_title, question.number, question.question, question.type, question.correct_answer, " + //$NON-NLS-1$
+			"question.evidence_prompt, question.evidence_validation, question.spec_reference, " + //$NON-NLS-1$
+			"question.subquestion_of, parent.number as parent_number " + //$NON-NLS-1$
+			"from section left join question on question.section_id=section.id " + //$NON-NLS-1$
+			"left join question parent on parent.id=question.subquestion_of " + //$NON-NLS-1$
+			"where section.spec_version=? order by section.name asc, section.id asc, question.number asc"; //$NON-NLS-1$
+	
 	/**
 	 * @param con SQL connect
 	 * @param specVersion Version of the specification.  If null, will get the latest spec version available
 	 * @param language tag in IETF RFC 5646 format
-	 * @return Survey with questions (static information) for the specific version.  If the language isn't supported, the default language will be used
+	 * @return Survey with questions (static information) for the specific version.  If the language isn't supported, the default language will be used.
+	 * The survey is shared through the <code>SurveyCache</code> and must not be modified - use <code>clone()</code> for a modifiable copy.
 	 * @throws SQLException
 	 * @throws SurveyResponseException 
 	 * @throws QuestionException 
 	 */
 	public static Survey getSurvey(Connection con, String specVersion, String language) throws SQLException, SurveyResponseException, QuestionException {
-		Survey retval = null;
-		Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		return SurveyCache.getSurvey(con, specVersion, language);
+	}
+	
+	/**
+	 * Spec resolved for a requested version and language after falling back to the
+	 * latest version and the default language
+	 */
+	static class ResolvedSpec {
+		final long id;
+		final String specVersion;
+		final String language;
+		
+		ResolvedSpec(long id, String specVersion, String language) {
+			this.id = id;
+			this.specVersion = specVersion;
+			this.language = language;
+		}
+	}
+	
+	/**
+	 * @param con SQL connection
+	 * @param specVersion Version of the specification.  If null, the latest spec version available is used
+	 * @param language tag in IETF RFC 5646 format.  If the language isn't supported, the default language is used
+	 * @return the spec a survey request is served from or null if there is no spec for the version
+	 * @throws SQLException
+	 */
+	static ResolvedSpec resolveSpec(Connection con, String specVersion, String language) throws SQLException {
+		PreparedStatement specStmt = null;
 		ResultSet result = null;
 		try {
-			if (specVersion == null) {
-				// Get the latest from the spec
-				result = stmt.executeQuery("select max(version) from spec"); //$NON-NLS-1$
-				if (!result.next()) {
-					throw new SurveyResponseException("No specs found in database"); //$NON-NLS-1$
+			String requestedLanguage = language == null ? User.DEFAULT_LANGUAGE : language;
+			specStmt = con.prepareStatement(GET_SPEC_FOR_SURVEY_SQL);
+			specStmt.setString(1, specVersion);
+			specStmt.setString(2, requestedLanguage);
+			specStmt.setString(3, User.DEFAULT_LANGUAGE);
+			specStmt.setString(4, requestedLanguage);
+			specStmt.setString(5, User.DEFAULT_LANGUAGE);
+			result = specStmt.executeQuery();
+			if (!result.next()) {
+				logger.warn("Empty survey for version "+specVersion); //$NON-NLS-1$
+				return null;
+			}
+			String resolvedVersion = result.getString("version"); //$NON-NLS-1$
+			String specLanguage = result.getString("language"); //$NON-NLS-1$
+			String resolvedLanguage = User.DEFAULT_LANGUAGE;
+			if (requestedLanguage.equals(specLanguage)) {
+				resolvedLanguage = requestedLanguage;
+			} else {
+				logger.warn("Language "+requestedLanguage+" does not exist for spec version "+resolvedVersion+".  Using default language."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				if (specLanguage == null) {
+					logger.warn("No default language for survey with spec version "+resolvedVersion); //$NON-NLS-1$
 				}
-				specVersion = result.getString(1);
+			}
+			return new ResolvedSpec(result.getLong("id"), resolvedVersion, resolvedLanguage); //$NON-NLS-1$
+		} catch (SQLException ex) {
+			logger.error("SQL Error getting survey", ex); //$NON-NLS-1$
+			throw ex;
+		} finally {
+			if (result != null) {
 				result.close();
 			}
-			int specId = 0;
-			if (language == null) {
-				language = User.DEFAULT_LANGUAGE;
-			} else {
-				result = stmt.executeQuery("select id from spec where version='"+specVersion+"' and language='"+language+"'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-				if (!result.next()) {
-					result.close();
-					logger.warn("Language "+language+" does not exist for spec version "+specVersion+".  Using default language."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-					language = User.DEFAULT_LANGUAGE;
-					result = stmt.executeQuery("select id from spec where version='"+specVersion+"' and language='"+language+"'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-					if (!result.next()) {
-						logger.warn("No default language for survey with spec version "+specVersion); //$NON-NLS-1$
-						result = stmt.executeQuery("select id from spec where version='"+specVersion+"' and language is null"); //$NON-NLS-1$ //$NON-NLS-2$
-						if (!result.next()) {
-							logger.warn("Empty survey for version "+specVersion); //$NON-NLS-1$
-						} else {
-							specId = result.getInt(1);
-						}
-					} else {
-						specId = result.getInt(1);
-					}
-				} else {
-					specId = result.getInt(1);
-				}
+			if (specStmt != null) {
+				specStmt.close();
 			}
-			retval = new Survey(specVersion, language);
-			result = stmt.executeQuery("select name, title, id from section where spec_version="+specId+" order by name asc"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+	
+	/**
+	 * Build a survey from the database bypassing the <code>SurveyCache</code>
+	 * @param con SQL connect
+	 * @param specVersion Version of the specification.  If null, will get the latest spec version available
+	 * @param language tag in IETF RFC 5646 format
+	 * @return Survey with questions (static information) for the specific version.  If the language isn't supported, the default language will be used
+	 * @throws SQLException
+	 * @throws SurveyResponseException 
+	 * @throws QuestionException 
+	 */
+	static Survey loadSurvey(Connection con, String specVersion, String language) throws SQLException, SurveyResponseException, QuestionException {
+		ResolvedSpec spec = resolveSpec(con, specVersion, language);
+		if (spec == null) {
+			return emptySurvey(specVersion);
+		}
+		return loadSurvey(con, spec);
+	}
+	
+	/**
+	 * @param specVersion
+	 * @return Survey with no sections returned when there is no spec for the version
+	 */
+	static Survey emptySurvey(String specVersion) {
+		Survey retval = new Survey(specVersion, User.DEFAULT_LANGUAGE);
+		retval.setSections(new ArrayList<Section>());
+		return retval;
+	}
+	
+	/**
+	 * Build the survey for a resolved spec from the database bypassing the <code>SurveyCache</code>
+	 * @param con SQL connect
+	 * @param spec Spec returned by <code>resolveSpec</code>
+	 * @return Survey with questions (static information) for the spec
+	 * @throws SQLException
+	 * @throws SurveyResponseException 
+	 * @throws QuestionException 
+	 */
+	static Survey loadSurvey(Connection con, ResolvedSpec spec) throws SQLException, SurveyResponseException, QuestionException {
+		PreparedStatement treeStmt = null;
+		ResultSet result = null;
+		long startNanos = System.nanoTime();
+		try {
+			String specVersion = spec.specVersion;
+			String language = spec.language;
+			Survey retval = new Survey(specVersion, language);
 			List<Section> sections = new ArrayList<Section>();
-			List<Long> sectionIds = new ArrayList<Long>();
-			while (result.next()) {
-				sectionIds.add(result.getLong("id")); //$NON-NLS-1$
-				Section section = new Section(language);
-				section.setName(result.getString("name")); //$NON-NLS-1$
-				section.setTitle(result.getString("title")); //$NON-NLS-1$
-				section.setQuestions(new ArrayList<Question>());
-				sections.add(section);
-			}
 			retval.setSections(sections);
-			// fill in the questions
+			treeStmt = con.prepareStatement(GET_SURVEY_TREE_SQL);
+			treeStmt.setLong(1, spec.id);
+			result = treeStmt.executeQuery();
 			Map<String, SubQuestion> foundSubQuestions = new HashMap<String, SubQuestion>();
-			for (int i = 0; i < sections.size(); i++) {
-				result.close();
-				result = stmt.executeQuery("select number, question, type, correct_answer, evidence_prompt, evidence_validation, subquestion_of, spec_reference from question where section_id="+ //$NON-NLS-1$
-								String.valueOf(sectionIds.get(i)) + " order by number asc"); //$NON-NLS-1$
-				Section section = sections.get(i);
-				List<Question> questions = section.getQuestions();
-				while (result.next()) {
-					String type = result.getString("type"); //$NON-NLS-1$
-					if (type == null) {
-						throw(new QuestionTypeException("No question type stored in the database")); //$NON-NLS-1$
+			long currentSectionId = -1;
+			Section section = null;
+			while (result.next()) {
+				long sectionId = result.getLong("section_id"); //$NON-NLS-1$
+				if (section == null || sectionId != currentSectionId) {
+					if (section != null) {
+						Collections.sort(section.getQuestions());
 					}
-					Question question;
-					if (type.equals(YesNoQuestion.TYPE_NAME)) {
-						question = new YesNoQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
-								result.getString("number"), specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), //$NON-NLS-1$ //$NON-NLS-2$
-								 language, YesNo.valueOf(result.getString("correct_answer"))); //$NON-NLS-1$
-					} else if (type.equals(YesNoQuestionWithEvidence.TYPE_NAME)) {
-						Pattern evidenceValidation = null;
-						String evidenceValString = result.getString("evidence_validation"); //$NON-NLS-1$
-						if (evidenceValString != null) {
-							evidenceValidation = Pattern.compile(evidenceValString);
-						}
-						question = new YesNoQuestionWithEvidence(result.getString("question"), section.getName(),  //$NON-NLS-1$
-								result.getString("number"), specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), language, //$NON-NLS-1$ //$NON-NLS-2$
-								YesNo.valueOf(result.getString("correct_answer")),  //$NON-NLS-1$
-								result.getString("evidence_prompt"),  //$NON-NLS-1$
-								evidenceValidation);
-					} else if (type.equals(YesNoNotApplicableQuestion.TYPE_NAME)) {
-						question = new YesNoNotApplicableQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
-								result.getString("number"),  specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), language, //$NON-NLS-1$ //$NON-NLS-2$
-								YesNo.valueOf(result.getString("correct_answer")), //$NON-NLS-1$
-										"Not required by IL"); //$NON-NLS-1$
-					} else if (type.equals(SubQuestion.TYPE_NAME)) {
-						int minValidAnswers = 0;
-						try {
-							minValidAnswers = Integer.parseInt(result.getString("correct_answer")); //$NON-NLS-1$
-						} catch (Exception ex) {
-							logger.error("Can not parse min correct answers in DB: "+result.getString("correct_answer")); //$NON-NLS-1$ //$NON-NLS-2$
-							throw new QuestionTypeException("Unexpected error getting sub question information from the database."); //$NON-NLS-1$
-						}
-						question = foundSubQuestions.get(result.getString("number")); //$NON-NLS-1$
-						if (question == null) {
-							question = new SubQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
-									result.getString("number"),  specVersion, //$NON-NLS-1$
-									Question.specReferenceStrToArray(result.getString("spec_reference")), language, minValidAnswers); //$NON-NLS-1$
-							foundSubQuestions.put(question.getNumber(), (SubQuestion)question);
-						} else {
-							question.setQuestion(result.getString("question")); //$NON-NLS-1$
-							question.setSpecReference(Question.specReferenceStrToArray(result.getString("spec_reference"))); //$NON-NLS-1$
-							((SubQuestion)question).setMinNumberValidatedAnswers(minValidAnswers);
-						}
-						
+					currentSectionId = sectionId;
+					section = new Section(language);
+					section.setName(result.getString("section_name")); //$NON-NLS-1$
+					section.setTitle(result.getString("section_title")); //$NON-NLS-1$
+					section.setQuestions(new ArrayList<Question>());
+					sections.add(section);
+				}
+				String type = result.getString("type"); //$NON-NLS-1$
+				if (result.getString("number") == null) { //$NON-NLS-1$
+					continue;	// section with no questions
+				}
+				if (type == null) {
+					throw(new QuestionTypeException("No question type stored in the database")); //$NON-NLS-1$
+				}
+				Question question;
+				if (type.equals(YesNoQuestion.TYPE_NAME)) {
+					question = new YesNoQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
+							result.getString("number"), specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), //$NON-NLS-1$ //$NON-NLS-2$
+							 language, YesNo.valueOf(result.getString("correct_answer"))); //$NON-NLS-1$
+				} else if (type.equals(YesNoQuestionWithEvidence.TYPE_NAME)) {
+					Pattern evidenceValidation = null;
+					String evidenceValString = result.getString("evidence_validation"); //$NON-NLS-1$
+					if (evidenceValString != null) {
+						evidenceValidation = Pattern.compile(evidenceValString);
+					}
+					question = new YesNoQuestionWithEvidence(result.getString("question"), section.getName(),  //$NON-NLS-1$
+							result.getString("number"), specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), language, //$NON-NLS-1$ //$NON-NLS-2$
+							YesNo.valueOf(result.getString("correct_answer")),  //$NON-NLS-1$
+							result.getString("evidence_prompt"),  //$NON-NLS-1$
+							evidenceValidation);
+				} else if (type.equals(YesNoNotApplicableQuestion.TYPE_NAME)) {
+					question = new YesNoNotApplicableQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
+							result.getString("number"),  specVersion, Question.specReferenceStrToArray(result.getString("spec_reference")), language, //$NON-NLS-1$ //$NON-NLS-2$
+							YesNo.valueOf(result.getString("correct_answer")), //$NON-NLS-1$
+									"Not required by IL"); //$NON-NLS-1$
+				} else if (type.equals(SubQuestion.TYPE_NAME)) {
+					int minValidAnswers = 0;
+					try {
+						minValidAnswers = Integer.parseInt(result.getString("correct_answer")); //$NON-NLS-1$
+					} catch (Exception ex) {
+						logger.error("Can not parse min correct answers in DB: "+result.getString("correct_answer")); //$NON-NLS-1$ //$NON-NLS-2$
+						throw new QuestionTypeException("Unexpected error getting sub question information from the database."); //$NON-NLS-1$
+					}
+					question = foundSubQuestions.get(result.getString("number")); //$NON-NLS-1$
+					if (question == null) {
+						question = new SubQuestion(result.getString("question"), section.getName(),  //$NON-NLS-1$
+								result.getString("number"),  specVersion, //$NON-NLS-1$
+								Question.specReferenceStrToArray(result.getString("spec_reference")), language, minValidAnswers); //$NON-NLS-1$
+						foundSubQuestions.put(question.getNumber(), (SubQuestion)question);
 					} else {
-						throw(new QuestionTypeException("Unknown question type in database: "+type)); //$NON-NLS-1$
+						question.setQuestion(result.getString("question")); //$NON-NLS-1$
+						question.setSpecReference(Question.specReferenceStrToArray(result.getString("spec_reference"))); //$NON-NLS-1$
+						((SubQuestion)question).setMinNumberValidatedAnswers(minValidAnswers);
 					}
-					long subQuestionId = result.getLong("subquestion_of"); //$NON-NLS-1$
-					if (subQuestionId > 0) {
-						String subQuestionNumber = getQuestionNumber(subQuestionId, con);
-						question.setSubQuestionOfNumber(subQuestionNumber);
-						SubQuestion parent = foundSubQuestions.get(subQuestionNumber);
-						if (parent == null) {
-							parent = new SubQuestion("", section.getName(), subQuestionNumber, specVersion, //$NON-NLS-1$
-									new String[0], language, 0); //$NON-NLS-1$
-							foundSubQuestions.put(subQuestionNumber, parent);
-						}
-						parent.addSubQuestion(question);
+					
+				} else {
+					throw(new QuestionTypeException("Unknown question type in database: "+type)); //$NON-NLS-1$
+				}
+				long subQuestionId = result.getLong("subquestion_of"); //$NON-NLS-1$
+				if (subQuestionId > 0) {
+					String subQuestionNumber = result.getString("parent_number"); //$NON-NLS-1$
+					if (subQuestionNumber == null) {
+						subQuestionNumber = ""; //$NON-NLS-1$
+					}
+					question.setSubQuestionOfNumber(subQuestionNumber);
+					SubQuestion parent = foundSubQuestions.get(subQuestionNumber);
+					if (parent == null) {
+						parent = new SubQuestion("", section.getName(), subQuestionNumber, specVersion, //$NON-NLS-1$
+								new String[0], language, 0); //$NON-NLS-1$
+						foundSubQuestions.put(subQuestionNumber, parent);
 					}
-					questions.add(question);
+					parent.addSubQuestion(question);
 				}
-				Collections.sort(questions);
+				section.getQuestions().add(question);
+			}
+			if (section != null) {
+				Collections.sort(section.getQuestions());
 			}
 			return retval;
 		} catch (SQLException ex) {
@@ -279,30 +382,12 @@ public class SurveyDbDao {
 			logger.error("Invalid question found in database",e); //$NON-NLS-1$
 			throw(e);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyDbDao.loadSurvey", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (result != null) {
 				result.close();
 			}
-			stmt.close();
-		}
-	}
-
-	private static String getQuestionNumber(long subQuestionId, Connection con) throws SQLException {
-		ResultSet result = null;
-		Statement stmt = null;
-		try {
-			stmt = con.createStatement();
-			result = stmt.executeQuery("select number from question where id="+String.valueOf(subQuestionId)); //$NON-NLS-1$
-			if (result.next()) {
-				return result.getString(1);
-			} else {
-				return ""; //$NON-NLS-1$
-			}
-		} finally {
-			if (result != null) {
-				result.close();
-			}
-			if (stmt != null) {
-				stmt.close();
+			if (treeStmt != null) {
+				treeStmt.close();
 			}
 		}
 	}
@@ -322,10 +407,11 @@ public class SurveyDbDao {
 						"evidence_prompt, evidence_validation, " + //$NON-NLS-1$
 						"subquestion_of, spec_reference) = " + //$NON-NLS-1$
 						"(?, ?, ?, ?, ?, ?, ?)" + //$NON-NLS-1$
-						"where number=? and section_id=(select id from section where name=? and " + //$NON-NLS-1$
-						"spec_version=(select id from spec where version=? and language=?))"); //$NON-NLS-1$
+						"where id=?"); //$NON-NLS-1$
 			}
 			updateQuestionQuery.clearBatch();
+			Map<String, Long> specIds = new HashMap<String, Long>();
+			Map<Long, Map<String, Long>> questionIds = new HashMap<Long, Map<String, Long>>();
 			for (Question question:updatedQuestions) {
 				updateQuestionQuery.setString(1, question.getQuestion());
 				updateQuestionQuery.setString(2, question.getType());
@@ -354,8 +440,8 @@ public class SurveyDbDao {
 					updateQuestionQuery.setString(5, null);
 				}
 				if (question.getSubQuestionOfNumber() != null && !question.getSubQuestionOfNumber().isEmpty()) {
-					long subQuestionId = getQuestionId(question.getSubQuestionOfNumber(), question.getSectionName(), 
-							question.getSpecVersion(), question.getLanguage());
+					long subQuestionId = getQuestionId(question.getSubQuestionOfNumber(), 
+							question.getSpecVersion(), question.getLanguage(), specIds, questionIds);
 					if (subQuestionId < 0) {
 						throw(new QuestionException("Invalid subquestion number "+question.getSubQuestionOfNumber())); //$NON-NLS-1$
 					}
@@ -364,10 +450,9 @@ public class SurveyDbDao {
 					updateQuestionQuery.setNull(6, Types.BIGINT);
 				}
 				updateQuestionQuery.setString(7, Question.specReferenceArrayToStr(question.getSpecReference()));
-				updateQuestionQuery.setString(8, question.getNumber());
-				updateQuestionQuery.setString(9, question.getSectionName());
-				updateQuestionQuery.setString(10, question.getSpecVersion());
-				updateQuestionQuery.setString(11, question.getLanguage());
+				// A question which does not exist results in an update count of 0 which is logged below
+				updateQuestionQuery.setLong(8, getQuestionId(question.getNumber(), 
+						question.getSpecVersion(), question.getLanguage(), specIds, questionIds));
 				updateQuestionQuery.addBatch();
 			}
 			int[] counts = updateQuestionQuery.executeBatch();
@@ -394,34 +479,45 @@ public class SurveyDbDao {
 			if (save != null) {
 				this.connection.commit();
 			}
+			SurveyCache.invalidateAll();
 		}
 	}
 
-	private synchronized long getQuestionId(String questionNumber, String sectionName,
-			String specVersion, String language) throws SQLException {
-		if (this.getQuestionIdQuery == null) {
-			this.getQuestionIdQuery = connection.prepareStatement("select question.id from "+ //$NON-NLS-1$
-					"question join section on question.section_id=section.id " + //$NON-NLS-1$
-					"join spec on section.spec_version=spec.id where " + //$NON-NLS-1$
-					"number=? and section.name=? and version=? and language=?"); //$NON-NLS-1$
+	/**
+	 * Resolve a question ID within the current transaction.  The ID's are read through this
+	 * connection so that questions added earlier in the transaction are visible, and are kept
+	 * local to the operation rather than published to the shared <code>QuestionIdCache</code>.
+	 * @param questionNumber Number of the question
+	 * @param specVersion Version of the spec containing the question
+	 * @param language Language of the spec containing the question
+	 * @param specIds Spec ID's already resolved during the current operation keyed by version and language
+	 * @param questionIds Question ID's already resolved during the current operation keyed by spec ID
+	 * @return the ID of the question or -1 if it does not exist
+	 * @throws SQLException
+	 */
+	private long getQuestionId(String questionNumber, String specVersion, 
+			String language, Map<String, Long> specIds, Map<Long, Map<String, Long>> questionIds) throws SQLException {
+		long specId = getSpecId(specVersion, language, specIds);
+		if (specId < 0) {
+			return -1;
 		}
-		ResultSet result = null;
-		try {
-			this.getQuestionIdQuery.setString(1, questionNumber);
-			this.getQuestionIdQuery.setString(2, sectionName);
-			this.getQuestionIdQuery.setString(3, specVersion);
-			this.getQuestionIdQuery.setString(4, language);
-			result = this.getQuestionIdQuery.executeQuery();
-			if (result.next()) {
-				return result.getLong(1);
-			} else {
-				return -1;
-			}
-		} finally {
-			if (result != null) {
-				result.close();
-			}
+		Map<String, Long> ids = questionIds.get(specId);
+		if (ids == null) {
+			ids = QuestionIdCache.loadQuestionIds(connection, specId);
+			questionIds.put(specId, ids);
 		}
+		Long retval = ids.get(questionNumber);
+		return retval == null ? -1 : retval;
+	}
+	
+	private long getSpecId(String specVersion, String language, Map<String, Long> specIds) throws SQLException {
+		String key = specVersion + "|" + language; //$NON-NLS-1$
+		Long retval = specIds.get(key);
+		if (retval == null) {
+			retval = getSpecId(specVersion, language, false);
+			specIds.put(key, retval);
+		}
+		return retval;
 	}
 
 	/**
@@ -432,8 +528,9 @@ public class SurveyDbDao {
 	 */
 	public synchronized void addQuestions(List<Question> addedQuestions) throws SQLException, QuestionException {
 		Savepoint save = this.connection.setSavepoint();
+		Map<String, Long> specIds = new HashMap<String, Long>();
 		try {
-			_addQuestions(addedQuestions);
+			_addQuestions(addedQuestions, specIds, new HashMap<Long, Map<String, Long>>());
 		} catch(QuestionException ex) {
 			if (save != null) {
 				try {
@@ -456,11 +553,33 @@ public class SurveyDbDao {
 			if (save != null) {
 				connection.commit();
 			}
+			invalidateQuestionIds(specIds);
+			SurveyCache.invalidateAll();
 		}
 
 	}
 	
-	private void _addQuestions(List<Question> addedQuestions) throws SQLException, QuestionException {
+	/**
+	 * Remove the cached question ID's for the specs questions were added to.  Called after
+	 * the commit or rollback so that other threads do not use ID's for uncommitted questions.
+	 * @param specIds Spec ID's keyed by version and language
+	 */
+	private void invalidateQuestionIds(Map<String, Long> specIds) {
+		for (Long specId:specIds.values()) {
+			QuestionIdCache.invalidate(specId);
+		}
+	}
+	
+	/**
+	 * Add questions - the caller is responsible for committing and for invalidating the cached question ID's
+	 * @param addedQuestions Questions to add
+	 * @param specIds Spec ID's resolved while adding the questions keyed by version and language
+	 * @param questionIds Question ID's resolved within the current transaction keyed by spec ID
+	 * @throws SQLException
+	 * @throws QuestionException
+	 */
+	private void _addQuestions(List<Question> addedQuestions, Map<String, Long> specIds,
+			Map<Long, Map<String, Long>> questionIds) throws SQLException, QuestionException {
 		if (addedQuestions == null) {
 			logger.error("Null questions passed to addQuestion"); //$NON-NLS-1$
 			throw(new QuestionException("Null exception passed to addQuestions")); //$NON-NLS-1$
@@ -491,8 +610,8 @@ public class SurveyDbDao {
 				addQuestionQuery.setString(5, null);
 				addQuestionQuery.setString(6, null);
 				if (question.getSubQuestionOfNumber() != null && !question.getSubQuestionOfNumber().isEmpty()) {
-					long subQuestionId = getQuestionId(question.getSubQuestionOfNumber(), question.getSectionName(), 
-							question.getSpecVersion(), question.getLanguage());
+					long subQuestionId = getQuestionId(question.getSubQuestionOfNumber(), 
+							question.getSpecVersion(), question.getLanguage(), specIds, questionIds);
 					if (subQuestionId < 0) {
 						throw(new QuestionException("Invalud subquestion number "+question.getSubQuestionOfNumber())); //$NON-NLS-1$
 					}
@@ -517,6 +636,8 @@ public class SurveyDbDao {
 				logger.warn("Unexpected update count.  Expected 1, found "+String.valueOf(count)); //$NON-NLS-1$
 			}
 		}
+		// The subquestions just added must be visible to the lookups below
+		questionIds.clear();
 		// Now we add the rest
 		addQuestionQuery.clearBatch();
 		numAdded = 0;
@@ -552,7 +673,7 @@ public class SurveyDbDao {
 				}
 				if (question.getSubQuestionOfNumber() != null && !question.getSubQuestionOfNumber().isEmpty()) {
 					long subQuestionId = getQuestionId(question.getSubQuestionOfNumber(), 
-							question.getSectionName(), question.getSpecVersion(), question.getLanguage());
+							question.getSpecVersion(), question.getLanguage(), specIds, questionIds);
 					if (subQuestionId < 0) {
 						throw(new QuestionException("Invalid subquestion number "+question.getSubQuestionOfNumber())); //$NON-NLS-1$
 					}
@@ -591,6 +712,8 @@ public class SurveyDbDao {
 		}
 		Savepoint save = this.connection.setSavepoint();
 		Statement stmt = null;
+		Map<String, Long> specIds = new HashMap<String, Long>();
+		Map<Long, Map<String, Long>> questionIds = new HashMap<Long, Map<String, Long>>();
 		if (insertSpecQuery == null) {
 			insertSpecQuery = connection.prepareStatement("insert into spec (version,language) values (?,?)"); //$NON-NLS-1$
 		}
@@ -638,7 +761,7 @@ public class SurveyDbDao {
 			}
 			// Add the questions
 			for (Section section:survey.getSections()) {
-				_addQuestions(section.getQuestions());
+				_addQuestions(section.getQuestions(), specIds, questionIds);
 			}
 		} catch(SQLException ex) {
 			if (save != null) {
@@ -674,6 +797,9 @@ public class SurveyDbDao {
 			if(save != null) {
 				this.connection.commit();
 			}
+			invalidateQuestionIds(specIds);
+			SurveyCache.invalidateAll();
+			SpecCatalog.invalidate();
 			if (stmt != null) {
 				stmt.close();
 			}
@@ -720,25 +846,7 @@ public class SurveyDbDao {
 	 * @throws SQLException
 	 */
 	public static List<String> getSurveyVersions(Connection con) throws SQLException {
-		Statement stmt = null;
-		ResultSet result = null;
-		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-			result = stmt.executeQuery("select distinct version from spec order by version"); //$NON-NLS-1$
-			ArrayList<String> retval = new ArrayList<String>();
-			while (result.next()) {
-				retval.add(result.getString(1));
-			}
-			return retval;
-		} catch (SQLException ex) {
-			logger.error("SQL Error getting survey versions", ex); //$NON-NLS-1$
-			throw ex;
-		} finally {
-			if (result != null) {
-				result.close();
-			}
-			stmt.close();
-		}
+		return new ArrayList<String>(SpecCatalog.getSpecCatalog(con).getVersions());
 	}
 
 	/**
@@ -777,6 +885,7 @@ public class SurveyDbDao {
 			if (save != null) {
 				this.connection.commit();
 			}
+			SurveyCache.invalidateAll();
 		}
 	}
 
@@ -786,22 +895,6 @@ public class SurveyDbDao {
 	 * @throws SQLException 
 	 */
 	public List<String> getSurveyLanguages(String specVersion) throws SQLException {
-		if (this.getLanguagesQuery == null) {
-			this.getLanguagesQuery = connection.prepareStatement("select language from spec where version=?"); //$NON-NLS-1$
-		}
-		ResultSet result = null;
-		try {
-			this.getLanguagesQuery.setString(1, specVersion);
-			List<String> retval = new ArrayList<>();
-			result = this.getLanguagesQuery.executeQuery();
-			while (result.next()) {
-				retval.add(result.getString(1));
-			}
-			return retval;
-		} finally {
-			if (result != null) {
-				result.close();
-			}
-		}
+		return new ArrayList<String>(SpecCatalog.getSpecCatalog(connection).getLanguages(specVersion));
 	}
 }
\ No newline at end of file
@@ -30,10 +30,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.openchain.certification.model.AnswerKey;
+import org.openchain.certification.model.CertifiedSubmission;
+import org.openchain.certification.model.CompactAnswerMap;
+import org.openchain.certification.model.EmailMessage;
 import org.openchain.certification.model.QuestionException;
 import org.openchain.certification.model.QuestionTypeException;
 import org.openchain.certification.model.SubQuestion;
 import org.openchain.certification.model.SubQuestionAnswers;
+import org.openchain.certification.model.Submission;
 import org.openchain.certification.model.Survey;
 import org.openchain.certification.model.SurveyResponse;
 import org.openchain.certification.model.SurveyResponseException;
@@ -45,6 +50,7 @@ import org.openchain.certification.model.YesNoNotApplicableQuestion;
 import org.openchain.certification.model.YesNoQuestion;
 import org.openchain.certification.model.YesNoQuestionWithEvidence;
 import org.openchain.certification.model.YesNoQuestion.YesNo;
+import org.openchain.certification.utility.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,20 +69,71 @@ public class SurveyResponseDao {
 	private PreparedStatement getAnswersQuery;
 	private PreparedStatement getUserIdQuery;
 	private PreparedStatement addSurveyResponseQuery;
-	private PreparedStatement addAnswerQuery;
-	private PreparedStatement updateAnswerQuery;
-	private PreparedStatement deleteAnswerQuery;
+	private PreparedStatement upsertAnswerQuery;
+	private PreparedStatement deleteOtherAnswersQuery;
+	private PreparedStatement getResponseIdQuery;
 	private PreparedStatement setSubmittedQuery;
 	private PreparedStatement setApprovedQuery;
 	private PreparedStatement setRejectedQuery;
-	private PreparedStatement getQuestionNameQuery;
-	private PreparedStatement getUsersWithResponsesQuery;
 	private PreparedStatement getResponsesForUserQuery;
 	private PreparedStatement setApprovedIdsQuery;
 	private PreparedStatement setRejectedIdsQuery;
 	private PreparedStatement getStatusQuery;
 	private PreparedStatement deleteAllAnswersForResponseQuery;
 	private PreparedStatement deleteAllResponsesForSpecVersionQuery;
+	private PreparedStatement getAllAnswersQuery;
+	private PreparedStatement getAllAnswersForUserQuery;
+	private PreparedStatement getAnswersForResponsesQuery;
+	private PreparedStatement updateScoreQuery;
+	private PreparedStatement updateScoreIdsQuery;
+	private PreparedStatement getVersionsForResponsesQuery;
+	
+	/**
+	 * Columns and joins for reading survey responses along with the responding user
+	 */
+	private static final String SELECT_RESPONSES_WITH_USERS = "select username, password_token, name, address, email," + //$NON-NLS-1$
+			"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
+			" uuid, organization, openchain_user.id as id, submitted, approved, rejected, version, " + //$NON-NLS-1$
+			"survey_response.id as responseid, name_permission, email_permission, score, percent_complete from survey_response join openchain_user " + //$NON-NLS-1$
+			"on survey_response.user_id=openchain_user.id join spec on survey_response.spec_version=spec.id"; //$NON-NLS-1$
+	
+	private static final String COUNT_RESPONSES_WITH_USERS = "select count(*) from survey_response join openchain_user " + //$NON-NLS-1$
+			"on survey_response.user_id=openchain_user.id join spec on survey_response.spec_version=spec.id"; //$NON-NLS-1$
+	
+	private static final String SELECT_CERTIFIED = "select case when name_permission then name else null end as name, " + //$NON-NLS-1$
+			"case when email_permission then email else null end as email, organization, " + //$NON-NLS-1$
+			"name_permission, email_permission, openchain_user.language, submitted, approved, rejected, version, " + //$NON-NLS-1$
+			"survey_response.id as responseid, score, percent_complete " + //$NON-NLS-1$
+			"from survey_response join openchain_user on survey_response.user_id=openchain_user.id " + //$NON-NLS-1$
+			"join spec on survey_response.spec_version=spec.id where approved=true"; //$NON-NLS-1$
+	
+	private static final String COUNT_CERTIFIED = "select count(*) " + //$NON-NLS-1$
+			"from survey_response join openchain_user on survey_response.user_id=openchain_user.id " + //$NON-NLS-1$
+			"join spec on survey_response.spec_version=spec.id where approved=true"; //$NON-NLS-1$
+	
+	/**
+	 * Number of survey responses which have their scores recomputed in a single transaction
+	 */
+	private static final int RECOMPUTE_BATCH_SIZE = 200;
+	
+	/**
+	 * Number of answer rows fetched per round trip when streaming answers for many responses
+	 */
+	private static final int ANSWER_FETCH_SIZE = 1000;
+	
+	static final String GET_ANSWERS_SQL = "select question.number, answer, evidence, question.type, question_id, " + //$NON-NLS-1$
+			"question.subquestion_of, parent.number as parent_number from " + //$NON-NLS-1$
+			"answer join survey_response on answer.response_id=survey_response.id " + //$NON-NLS-1$
+			"join question on answer.question_id=question.id " + //$NON-NLS-1$
+			"left join question parent on question.subquestion_of=parent.id " + //$NON-NLS-1$
+			"join spec on survey_response.spec_version=spec.id " + //$NON-NLS-1$
+			"where user_id=? and version=? order by question.number"; //$NON-NLS-1$
+	static final String GET_USER_ID_SQL = "select id from openchain_user where username=?"; //$NON-NLS-1$
+	static final String UPSERT_ANSWER_SQL = "insert into answer (response_id, question_id, answer, evidence) values (?,?,?,?) " + //$NON-NLS-1$
+			"on conflict (response_id, question_id) do update set answer=excluded.answer, evidence=excluded.evidence " + //$NON-NLS-1$
+			"where answer.answer is distinct from excluded.answer or answer.evidence is distinct from excluded.evidence"; //$NON-NLS-1$
+	static final String DELETE_OTHER_ANSWERS_SQL = "delete from answer where response_id=? and not (question_id = any(?))"; //$NON-NLS-1$
+	static final String GET_RESPONSE_ID_SQL = "select id from survey_response where user_id=? and spec_version=?"; //$NON-NLS-1$
 	
 	public SurveyResponseDao(Connection con) throws SQLException {
 		this.con = con;
@@ -88,28 +145,45 @@ public class SurveyResponseDao {
 		getLatestSpecVersionForUserQuery = con.prepareStatement("select max(version) from survey_response join " + //$NON-NLS-1$
 				"spec on survey_response.spec_version=spec.id where user_id=?", //$NON-NLS-1$
 				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getAnswersQuery = con.prepareStatement("select number, answer, evidence, type, question_id, subquestion_of from " + //$NON-NLS-1$
+		getAnswersQuery = con.prepareStatement(GET_ANSWERS_SQL,
+				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		getAllAnswersQuery = con.prepareStatement("select answer.response_id, question.number, answer, evidence, question.type, question_id, " + //$NON-NLS-1$
+				"question.subquestion_of, parent.number as parent_number from " + //$NON-NLS-1$
+				"answer join question on answer.question_id=question.id " + //$NON-NLS-1$
+				"left join question parent on question.subquestion_of=parent.id " + //$NON-NLS-1$
+				"order by answer.response_id, question.number", //$NON-NLS-1$
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		getAllAnswersQuery.setFetchSize(ANSWER_FETCH_SIZE);
+		getAllAnswersForUserQuery = con.prepareStatement("select answer.response_id, question.number, answer, evidence, question.type, question_id, " + //$NON-NLS-1$
+				"question.subquestion_of, parent.number as parent_number from " + //$NON-NLS-1$
 				"answer join survey_response on answer.response_id=survey_response.id " + //$NON-NLS-1$
+				"join openchain_user on survey_response.user_id=openchain_user.id " + //$NON-NLS-1$
 				"join question on answer.question_id=question.id " + //$NON-NLS-1$
-				"join spec on survey_response.spec_version=spec.id " + //$NON-NLS-1$
-				"where user_id=? and version=? order by number", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getUserIdQuery = con.prepareStatement("select id from openchain_user where username=?", //$NON-NLS-1$
+				"left join question parent on question.subquestion_of=parent.id " + //$NON-NLS-1$
+				"where username=? order by answer.response_id, question.number", //$NON-NLS-1$
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		getAllAnswersForUserQuery.setFetchSize(ANSWER_FETCH_SIZE);
+		getAnswersForResponsesQuery = con.prepareStatement("select answer.response_id, question.number, answer, evidence, question.type, question_id, " + //$NON-NLS-1$
+				"question.subquestion_of, parent.number as parent_number from " + //$NON-NLS-1$
+				"answer join question on answer.question_id=question.id " + //$NON-NLS-1$
+				"left join question parent on question.subquestion_of=parent.id " + //$NON-NLS-1$
+				"where answer.response_id = any(?) order by answer.response_id, question.number", //$NON-NLS-1$
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		getAnswersForResponsesQuery.setFetchSize(ANSWER_FETCH_SIZE);
+		updateScoreQuery = con.prepareStatement("update survey_response set score=?, percent_complete=?, num_answered=?, last_updated=now() " + //$NON-NLS-1$
+				"where id=?"); //$NON-NLS-1$
+		updateScoreIdsQuery = con.prepareStatement("update survey_response set score=?, percent_complete=?, num_answered=? where id=?"); //$NON-NLS-1$
+		getVersionsForResponsesQuery = con.prepareStatement("select survey_response.id as responseid, version from survey_response " + //$NON-NLS-1$
+				"join spec on survey_response.spec_version=spec.id where survey_response.id = any(?)", //$NON-NLS-1$
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		getUserIdQuery = con.prepareStatement(GET_USER_ID_SQL,
 				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
 		addSurveyResponseQuery = con.prepareStatement("insert into survey_response (user_id, spec_version, submitted, approved, rejected) values (?,?,?,?,?)", //$NON-NLS-1$
 				Statement.RETURN_GENERATED_KEYS);
-		deleteAnswerQuery = con.prepareStatement("delete from answer where response_id in (select id from " + //$NON-NLS-1$
-				"survey_response where user_id=? and spec_version=?) and question_id in (select id from question where number=? and section_id in " + //$NON-NLS-1$
-				"(select id from section where spec_version=?))", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
-		updateAnswerQuery = con.prepareStatement("update answer set answer=?, evidence=? where response_id in (select id from " + //$NON-NLS-1$
-				"survey_response where user_id=? and spec_version=?) and question_id in (select id from question where number=? and section_id in " + //$NON-NLS-1$
-				"(select id from section where spec_version=?))", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
-		addAnswerQuery = con.prepareStatement("insert into answer (response_id, question_id, answer, evidence) values((select id from " + //$NON-NLS-1$
-				"survey_response where user_id=? and spec_version=?), (select id from question where number=? and section_id in " + //$NON-NLS-1$
-				"(select id from section where spec_version=?)), ?, ?)", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+		upsertAnswerQuery = con.prepareStatement(UPSERT_ANSWER_SQL);
+		deleteOtherAnswersQuery = con.prepareStatement(DELETE_OTHER_ANSWERS_SQL);
+		getResponseIdQuery = con.prepareStatement(GET_RESPONSE_ID_SQL,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 		setSubmittedQuery = con.prepareStatement("update survey_response set submitted=? where " + //$NON-NLS-1$
 				"user_id =(select id from openchain_user where username=?) and spec_version in (select id from spec where version=?)", //$NON-NLS-1$
 				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
@@ -127,15 +201,6 @@ public class SurveyResponseDao {
 				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
 		setRejectedIdsQuery = con.prepareStatement("update survey_response set rejected=? where id=?", //$NON-NLS-1$
 				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
-		getQuestionNameQuery = con.prepareStatement("select number from question where id=?", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getUsersWithResponsesQuery = con.prepareStatement("select username, password_token, name, address, email," + //$NON-NLS-1$
-				"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
-				" uuid, organization, openchain_user.id as id, submitted, approved, rejected, version, " + //$NON-NLS-1$
-				"survey_response.id as responseid, name_permission, email_permission from survey_response join openchain_user " + //$NON-NLS-1$
-				"on survey_response.user_id=openchain_user.id join spec on survey_response.spec_version=spec.id" + //$NON-NLS-1$
-				" order by username asc", //$NON-NLS-1$
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
 		getResponsesForUserQuery = con.prepareStatement("select username, password_token, name, address, email," + //$NON-NLS-1$
 				"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
 				" uuid, organization, openchain_user.id as id, submitted, approved, rejected, version, " + //$NON-NLS-1$
@@ -161,6 +226,7 @@ public class SurveyResponseDao {
 	 */
 	public synchronized SurveyResponse getSurveyResponse(String username, String specVersion, String language) throws SQLException, QuestionException, SurveyResponseException {
 		ResultSet result = null;
+		long startNanos = System.nanoTime();
 		try {
 			getUserQuery.setString(1, username);
 			result = getUserQuery.executeQuery();
@@ -198,7 +264,7 @@ public class SurveyResponseDao {
 				}
 			}
 			Survey survey = SurveyDbDao.getSurvey(con, specVersion, language);
-			Map<String, Answer>answers = getAnswers(userId, specVersion, language);			
+			Map<String, Answer>answers = getAnswers(userId, specVersion, survey, language);			
 			SurveyResponse retval = new SurveyResponse(specVersion, language);
 			retval.setResponder(user);
 			retval.setResponses(answers);
@@ -226,6 +292,7 @@ public class SurveyResponseDao {
 			logger.error("SQL Exception getting survey response for user "+username,e); //$NON-NLS-1$
 			throw(e);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyResponseDao.getSurveyResponse", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (result != null) {
 				result.close();
 				con.commit();
@@ -240,44 +307,58 @@ public class SurveyResponseDao {
 	 * @throws QuestionException 
 	 * @throws SurveyResponseException 
 	 */
-	public synchronized List<SurveyResponse> getSurveyResponses(String language) throws SQLException, SurveyResponseException, QuestionException {
+	public List<SurveyResponse> getSurveyResponses(String language) throws SQLException, SurveyResponseException, QuestionException {
+		return getSurveyResponses(language, new SubmissionFilter());
+	}
+	
+	/**
+	 * @param language tag in IETF RFC 5646 format
+	 * @param filter Paging, sorting and filtering criteria
+	 * @return The page of survey responses matching the filter
+	 * @throws SQLException 
+	 * @throws QuestionException 
+	 * @throws SurveyResponseException 
+	 */
+	public synchronized List<SurveyResponse> getSurveyResponses(String language, SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		PreparedStatement stmt = null;
 		ResultSet result = null;
 		List<SurveyResponse> retval = new ArrayList<SurveyResponse>();
 		Map<String, Survey> surveys = new HashMap<String, Survey>();	// Cache of spec version to survey
+		Map<Long, SurveyResponse> responsesById = new HashMap<Long, SurveyResponse>();
 		try {
-			result = getUsersWithResponsesQuery.executeQuery();
+			String where = filter.getWhereConditions();
+			stmt = con.prepareStatement(SELECT_RESPONSES_WITH_USERS + 
+					(where.isEmpty() ? "" : " where " + where) + //$NON-NLS-1$ //$NON-NLS-2$
+					" order by " + filter.getOrderBy(false) + filter.getLimitOffset()); //$NON-NLS-1$
+			filter.setWhereParameters(stmt, 1);
+			result = stmt.executeQuery();
 			while (result.next()) {
 				String specVersion = result.getString("version"); //$NON-NLS-1$
 				SurveyResponse response = new SurveyResponse(specVersion, language);
-				User user = new User();
-				user.setAddress(result.getString("address")); //$NON-NLS-1$
-				user.setAdmin(result.getBoolean("admin")); //$NON-NLS-1$
-				user.setEmail(result.getString("email")); //$NON-NLS-1$
-				user.setName(result.getString("name")); //$NON-NLS-1$
-				user.setPasswordReset(result.getBoolean("passwordReset")); //$NON-NLS-1$
-				user.setPasswordToken(result.getString("password_token")); //$NON-NLS-1$
-				user.setUsername(result.getString("username")); //$NON-NLS-1$
-				user.setUuid(result.getString("uuid")); //$NON-NLS-1$
-				user.setVerificationExpirationDate(result.getDate("verificationExpirationDate")); //$NON-NLS-1$
-				user.setVerified(result.getBoolean("verified")); //$NON-NLS-1$
-				user.setOrganization(result.getString("organization")); //$NON-NLS-1$
-				user.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
-				user.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
-				long userId = result.getLong("id"); //$NON-NLS-1$
-				response.setResponder(user);
+				response.setResponder(userFromResult(result));
 				response.setSubmitted(result.getBoolean("submitted")); //$NON-NLS-1$
 				response.setApproved(result.getBoolean("approved")); //$NON-NLS-1$
 				response.setRejected(result.getBoolean("rejected")); //$NON-NLS-1$
-				response.setId(String.valueOf(result.getLong("responseid"))); //$NON-NLS-1$
+				long responseId = result.getLong("responseid"); //$NON-NLS-1$
+				response.setId(String.valueOf(responseId));
 				Survey survey = surveys.get(specVersion);
 				if (survey == null) {
 					survey = SurveyDbDao.getSurvey(con, specVersion, language);
 					surveys.put(specVersion, survey);
 				}
 				response.setSurvey(survey);
-				response.setResponses(getAnswers(userId, specVersion, language));
+				response.setResponses(new CompactAnswerMap(survey, language));
+				responsesById.put(responseId, response);
 				retval.add(response);
 			}
+			result.close();
+			result = null;
+			if (where.isEmpty() && filter.getLimit() < 0 && filter.getOffset() == 0) {
+				loadAnswers(getAllAnswersQuery, responsesById, language);
+			} else if (!responsesById.isEmpty()) {
+				getAnswersForResponsesQuery.setArray(1, con.createArrayOf("int8", responsesById.keySet().toArray())); //$NON-NLS-1$
+				loadAnswers(getAnswersForResponsesQuery, responsesById, language);
+			}
 			return retval;
 		} catch (SQLException e) {
 			logger.error("SQL error getting users with responses",e); //$NON-NLS-1$
@@ -285,65 +366,282 @@ public class SurveyResponseDao {
 		} finally {
 			if (result != null) {
 				result.close();
-				this.con.commit();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+			this.con.commit();
+		}
+	}
+	
+	/**
+	 * Get a page of submission summaries using the persisted scores without loading any answers.
+	 * Any responses which do not yet have persisted scores will have the scores computed and stored.
+	 * @param filter Paging, sorting and filtering criteria
+	 * @return The page of submissions matching the filter
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public synchronized List<Submission> getSubmissions(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		List<Submission> retval = new ArrayList<Submission>();
+		Map<Long, Submission> missingScores = new HashMap<Long, Submission>();
+		long startNanos = System.nanoTime();
+		try {
+			String where = filter.getWhereConditions();
+			stmt = con.prepareStatement(SELECT_RESPONSES_WITH_USERS + 
+					(where.isEmpty() ? "" : " where " + where) + //$NON-NLS-1$ //$NON-NLS-2$
+					" order by " + filter.getOrderBy(false) + filter.getLimitOffset()); //$NON-NLS-1$
+			filter.setWhereParameters(stmt, 1);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				int score = result.getInt("score"); //$NON-NLS-1$
+				boolean scoreMissing = result.wasNull();
+				Submission submission = new Submission(userFromResult(result), result.getBoolean("submitted"), //$NON-NLS-1$
+						result.getInt("percent_complete"), score, result.getBoolean("approved"), //$NON-NLS-1$ //$NON-NLS-2$
+						result.getBoolean("rejected"), result.getString("version")); //$NON-NLS-1$ //$NON-NLS-2$
+				long responseId = result.getLong("responseid"); //$NON-NLS-1$
+				submission.setId(String.valueOf(responseId));
+				if (scoreMissing) {
+					missingScores.put(responseId, submission);
+				}
+				retval.add(submission);
+			}
+			result.close();
+			result = null;
+			if (!missingScores.isEmpty()) {
+				Map<Long, int[]> scores = updateScores(new ArrayList<Long>(missingScores.keySet()));
+				for (Entry<Long, int[]> entry:scores.entrySet()) {
+					Submission submission = missingScores.get(entry.getKey());
+					submission.setScore(entry.getValue()[0]);
+					submission.setPercentComplete(entry.getValue()[1]);
+				}
+			}
+			return retval;
+		} catch (SQLException e) {
+			logger.error("SQL error getting submissions",e); //$NON-NLS-1$
+			throw(e);
+		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyResponseDao.getSubmissions", System.nanoTime() - startNanos); //$NON-NLS-1$
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+			this.con.commit();
+		}
+	}
+	
+	/**
+	 * Recompute and store the scores for all survey responses for a spec version.  This must be called
+	 * whenever the questions or correct answers for a spec version are changed.
+	 * @param specVersion Spec version of the responses to recompute - if null, all responses are recomputed
+	 * @return the number of survey responses updated
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	public synchronized int recomputeScores(String specVersion) throws SQLException, SurveyResponseException, QuestionException {
+		List<Long> ids = new ArrayList<Long>();
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement("select survey_response.id from survey_response join spec on survey_response.spec_version=spec.id" + //$NON-NLS-1$
+					(specVersion == null ? "" : " where version=?") + " order by survey_response.id"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			if (specVersion != null) {
+				stmt.setString(1, specVersion);
+			}
+			result = stmt.executeQuery();
+			while (result.next()) {
+				ids.add(result.getLong(1));
+			}
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
 			}
 		}
+		int numUpdated = 0;
+		for (int i = 0; i < ids.size(); i += RECOMPUTE_BATCH_SIZE) {
+			Savepoint save = con.setSavepoint();
+			try {
+				numUpdated += updateScores(ids.subList(i, Math.min(i + RECOMPUTE_BATCH_SIZE, ids.size()))).size();
+			} catch (SQLException ex) {
+				logger.error("SQL exception recomputing survey response scores",ex); //$NON-NLS-1$
+				try {
+					con.rollback(save);
+				} catch (SQLException ex2) {
+					logger.error("Error rolling back transaction",ex2); //$NON-NLS-1$
+				}
+				throw(ex);
+			} finally {
+				con.commit();
+			}
+		}
+		if (numUpdated > 0) {
+			CertifiedSnapshot.markDirty();
+		}
+		return numUpdated;
+	}
+	
+	/**
+	 * Compute the scores from the stored answers and update the persisted scores.  The transaction is not committed.
+	 * @param ids IDs of the survey responses to update
+	 * @return Map of survey response ID to an array of the score, percent complete and number answered
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 * @throws QuestionException
+	 */
+	private Map<Long, int[]> updateScores(List<Long> ids) throws SQLException, SurveyResponseException, QuestionException {
+		Map<Long, int[]> retval = new HashMap<Long, int[]>();
+		Map<Long, SurveyResponse> responsesById = new HashMap<Long, SurveyResponse>();
+		Map<String, Survey> surveys = new HashMap<String, Survey>();	// Cache of spec version to survey
+		java.sql.Array idArray = con.createArrayOf("int8", ids.toArray()); //$NON-NLS-1$
+		ResultSet result = null;
+		try {
+			getVersionsForResponsesQuery.setArray(1, idArray);
+			result = getVersionsForResponsesQuery.executeQuery();
+			while (result.next()) {
+				String specVersion = result.getString("version"); //$NON-NLS-1$
+				Survey survey = surveys.get(specVersion);
+				if (survey == null) {
+					survey = SurveyDbDao.getSurvey(con, specVersion, User.DEFAULT_LANGUAGE);
+					surveys.put(specVersion, survey);
+				}
+				SurveyResponse response = new SurveyResponse(specVersion, User.DEFAULT_LANGUAGE);
+				response.setSurvey(survey);
+				response.setResponses(new CompactAnswerMap(survey, User.DEFAULT_LANGUAGE));
+				responsesById.put(result.getLong("responseid"), response); //$NON-NLS-1$
+			}
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+		}
+		getAnswersForResponsesQuery.setArray(1, idArray);
+		loadAnswers(getAnswersForResponsesQuery, responsesById, User.DEFAULT_LANGUAGE);
+		updateScoreIdsQuery.clearBatch();
+		// Score the responses for each survey in a single batch
+		Map<Survey, List<Long>> idsBySurvey = new HashMap<Survey, List<Long>>();
+		for (Entry<Long, SurveyResponse> entry:responsesById.entrySet()) {
+			List<Long> surveyIds = idsBySurvey.get(entry.getValue().getSurvey());
+			if (surveyIds == null) {
+				surveyIds = new ArrayList<Long>();
+				idsBySurvey.put(entry.getValue().getSurvey(), surveyIds);
+			}
+			surveyIds.add(entry.getKey());
+		}
+		for (Entry<Survey, List<Long>> entry:idsBySurvey.entrySet()) {
+			List<Map<String, Answer>> answers = new ArrayList<Map<String, Answer>>();
+			for (Long id:entry.getValue()) {
+				answers.add(responsesById.get(id).getResponses());
+			}
+			int[][] scores = entry.getKey().getAnswerKey().scoreAll(answers);
+			for (int i = 0; i < scores.length; i++) {
+				long id = entry.getValue().get(i);
+				updateScoreIdsQuery.setInt(1, scores[i][AnswerKey.SCORE]);
+				updateScoreIdsQuery.setInt(2, scores[i][AnswerKey.PERCENT_COMPLETE]);
+				updateScoreIdsQuery.setInt(3, scores[i][AnswerKey.NUM_ANSWERED]);
+				updateScoreIdsQuery.setLong(4, id);
+				updateScoreIdsQuery.addBatch();
+				retval.put(id, scores[i]);
+			}
+		}
+		if (!retval.isEmpty()) {
+			updateScoreIdsQuery.executeBatch();
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param result Result set positioned on a row containing the user columns
+	 * @return the user
+	 * @throws SQLException
+	 */
+	private User userFromResult(ResultSet result) throws SQLException {
+		User user = new User();
+		user.setAddress(result.getString("address")); //$NON-NLS-1$
+		user.setAdmin(result.getBoolean("admin")); //$NON-NLS-1$
+		user.setEmail(result.getString("email")); //$NON-NLS-1$
+		user.setName(result.getString("name")); //$NON-NLS-1$
+		user.setPasswordReset(result.getBoolean("passwordReset")); //$NON-NLS-1$
+		user.setPasswordToken(result.getString("password_token")); //$NON-NLS-1$
+		user.setUsername(result.getString("username")); //$NON-NLS-1$
+		user.setUuid(result.getString("uuid")); //$NON-NLS-1$
+		user.setVerificationExpirationDate(result.getDate("verificationExpirationDate")); //$NON-NLS-1$
+		user.setVerified(result.getBoolean("verified")); //$NON-NLS-1$
+		user.setOrganization(result.getString("organization")); //$NON-NLS-1$
+		user.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
+		user.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
+		return user;
+	}
+	
+	/**
+	 * @param filter Filtering criteria - paging and sorting are ignored
+	 * @return the total number of survey responses matching the filter
+	 * @throws SQLException
+	 */
+	public synchronized int countSurveyResponses(SubmissionFilter filter) throws SQLException {
+		String where = filter.getWhereConditions();
+		return count(COUNT_RESPONSES_WITH_USERS + (where.isEmpty() ? "" : " where " + where), filter); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * @param filter Filtering criteria - paging and sorting are ignored
+	 * @return the total number of approved submissions matching the filter
+	 * @throws SQLException
+	 */
+	public synchronized int countCertifiedSubmissions(SubmissionFilter filter) throws SQLException {
+		String where = filter.getWhereConditions();
+		return count(COUNT_CERTIFIED + (where.isEmpty() ? "" : " and " + where), filter); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	private int count(String sql, SubmissionFilter filter) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			stmt = con.prepareStatement(sql);
+			filter.setWhereParameters(stmt, 1);
+			result = stmt.executeQuery();
+			result.next();
+			return result.getInt(1);
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+			if (stmt != null) {
+				stmt.close();
+			}
+			this.con.commit();
+		}
 	}
 	
 	/**
 	 * Get all answers for a given user ID and specVersion
 	 * @param userId ID for the user
 	 * @param specVersion Specification version
+	 * @param survey Survey for the specification version
 	 * @param language tag in IETF RFC 5646 format
 	 * @return
 	 * @throws SQLException
 	 * @throws QuestionTypeException
 	 * @throws SurveyResponseException
 	 */
-	private Map<String, Answer> getAnswers(long userId, String specVersion, String language) throws SQLException, QuestionTypeException, SurveyResponseException {
+	private Map<String, Answer> getAnswers(long userId, String specVersion, Survey survey, String language) throws SQLException, QuestionTypeException, SurveyResponseException {
 		ResultSet result = null;
-		Map<String, Answer> responses = new HashMap<String, Answer>();
+		Map<String, Answer> responses = new CompactAnswerMap(survey, language);
 		try {
 			getAnswersQuery.setLong(1,userId);
 			getAnswersQuery.setString(2,specVersion);
 			result = getAnswersQuery.executeQuery();	
 			Map<Long,SubQuestionAnswers> questionNumSubQuestionAnswer = new HashMap<Long,SubQuestionAnswers>();
 			while (result.next()) {
-				String questionNumber = result.getString("number"); //$NON-NLS-1$
-				String type = result.getString("type"); //$NON-NLS-1$
-				long questionId = result.getLong("question_id"); //$NON-NLS-1$
-				long subQuestionOfId = result.getLong("subquestion_of"); //$NON-NLS-1$
-				Answer answer;
-				if (type == null) {
-					throw(new QuestionTypeException("No question type stored in the database")); //$NON-NLS-1$
-				}
-				if (type.equals(YesNoQuestion.TYPE_NAME)) {
-					answer = new YesNoAnswer(language, YesNo.valueOf(result.getString("answer"))); //$NON-NLS-1$
-				} else if (type.equals(YesNoQuestionWithEvidence.TYPE_NAME)) {
-					answer = new YesNoAnswerWithEvidence(language, YesNo.valueOf(result.getString("answer")), //$NON-NLS-1$
-							result.getString("evidence")); //$NON-NLS-1$
-				} else if (type.equals(YesNoNotApplicableQuestion.TYPE_NAME)) {
-					answer = new YesNoAnswer(language, YesNo.valueOf(result.getString("answer"))); //$NON-NLS-1$
-				} else if (type.equals(SubQuestion.TYPE_NAME)) {
-					answer = questionNumSubQuestionAnswer.get(questionId);
-					if (answer == null) {
-						answer = new SubQuestionAnswers(language);
-						questionNumSubQuestionAnswer.put(questionId, (SubQuestionAnswers)answer);
-					}
-				} else {
-					throw(new QuestionTypeException("Unknown question type in database: "+type)); //$NON-NLS-1$
-				}
-				if (subQuestionOfId > 0) {
-					SubQuestionAnswers parentAnswer = questionNumSubQuestionAnswer.get(subQuestionOfId);
-					if (parentAnswer == null) {
-						parentAnswer = new SubQuestionAnswers(language);
-						questionNumSubQuestionAnswer.put(subQuestionOfId, parentAnswer);
-						String parentQuestionNumber = getQuestionNumber(subQuestionOfId);
-						responses.put(parentQuestionNumber, parentAnswer);
-					}
-					parentAnswer.addSubAnswer(questionNumber, answer);
-				}
-				responses.put(questionNumber, answer);
+				addAnswer(result, responses, questionNumSubQuestionAnswer, language);
 			}
 			return responses;
 		} finally {
@@ -353,50 +651,177 @@ public class SurveyResponseDao {
 		}
 	}
 	
-	private String getQuestionNumber(long questionId) throws SQLException {
-		getQuestionNameQuery.setLong(1, questionId);
+	/**
+	 * Stream the answers for many responses in a single query and add them to the responses.
+	 * The query must be ordered by response ID so that each response is completed in a single pass.
+	 * @param answersQuery query returning the answer columns along with the response_id
+	 * @param responsesById responses to fill in keyed by the response ID
+	 * @param language tag in IETF RFC 5646 format
+	 * @throws SQLException
+	 * @throws QuestionTypeException
+	 */
+	private void loadAnswers(PreparedStatement answersQuery, Map<Long, SurveyResponse> responsesById, String language) throws SQLException, QuestionTypeException {
+		if (responsesById.isEmpty()) {
+			return;
+		}
 		ResultSet result = null;
 		try {
-			result = getQuestionNameQuery.executeQuery();
-			if (result.next()) {
-				return result.getString(1);
-			} else {
-				return null;
+			result = answersQuery.executeQuery();
+			long currentResponseId = -1;
+			Map<String, Answer> responses = null;
+			Map<Long,SubQuestionAnswers> questionNumSubQuestionAnswer = new HashMap<Long,SubQuestionAnswers>();
+			while (result.next()) {
+				long responseId = result.getLong("response_id"); //$NON-NLS-1$
+				if (responseId != currentResponseId) {
+					currentResponseId = responseId;
+					questionNumSubQuestionAnswer.clear();
+					SurveyResponse response = responsesById.get(responseId);
+					responses = response == null ? null : response.getResponses();
+				}
+				if (responses != null) {
+					addAnswer(result, responses, questionNumSubQuestionAnswer, language);
+				}
 			}
 		} finally {
 			if (result != null) {
 				result.close();
 			}
 		}
-		
-		
+	}
+	
+	/**
+	 * Create an answer from the current row of an answer query and add it to the responses
+	 * @param result Result set positioned on an answer row
+	 * @param responses Map of question number to answers to add the answer to
+	 * @param questionNumSubQuestionAnswer Subquestion answers already found for this response keyed by question ID
+	 * @param language tag in IETF RFC 5646 format
+	 * @throws SQLException
+	 * @throws QuestionTypeException
+	 */
+	private void addAnswer(ResultSet result, Map<String, Answer> responses, 
+			Map<Long,SubQuestionAnswers> questionNumSubQuestionAnswer, String language) throws SQLException, QuestionTypeException {
+		String questionNumber = result.getString("number"); //$NON-NLS-1$
+		String type = result.getString("type"); //$NON-NLS-1$
+		long questionId = result.getLong("question_id"); //$NON-NLS-1$
+		long subQuestionOfId = result.getLong("subquestion_of"); //$NON-NLS-1$
+		Answer answer;
+		if (type == null) {
+			throw(new QuestionTypeException("No question type stored in the database")); //$NON-NLS-1$
+		}
+		if (type.equals(YesNoQuestion.TYPE_NAME)) {
+			answer = new YesNoAnswer(language, YesNo.valueOf(result.getString("answer"))); //$NON-NLS-1$
+		} else if (type.equals(YesNoQuestionWithEvidence.TYPE_NAME)) {
+			answer = new YesNoAnswerWithEvidence(language, YesNo.valueOf(result.getString("answer")), //$NON-NLS-1$
+					result.getString("evidence")); //$NON-NLS-1$
+		} else if (type.equals(YesNoNotApplicableQuestion.TYPE_NAME)) {
+			answer = new YesNoAnswer(language, YesNo.valueOf(result.getString("answer"))); //$NON-NLS-1$
+		} else if (type.equals(SubQuestion.TYPE_NAME)) {
+			answer = questionNumSubQuestionAnswer.get(questionId);
+			if (answer == null) {
+				answer = new SubQuestionAnswers(language);
+				questionNumSubQuestionAnswer.put(questionId, (SubQuestionAnswers)answer);
+			}
+		} else {
+			throw(new QuestionTypeException("Unknown question type in database: "+type)); //$NON-NLS-1$
+		}
+		if (subQuestionOfId > 0) {
+			SubQuestionAnswers parentAnswer = questionNumSubQuestionAnswer.get(subQuestionOfId);
+			if (parentAnswer == null) {
+				parentAnswer = new SubQuestionAnswers(language);
+				questionNumSubQuestionAnswer.put(subQuestionOfId, parentAnswer);
+				responses.put(result.getString("parent_number"), parentAnswer); //$NON-NLS-1$
+			}
+			parentAnswer.addSubAnswer(questionNumber, answer);
+		}
+		responses.put(questionNumber, answer);
 	}
 
 	/**
-	 * @return the latest (most recent) version of the spec
+	 * Get the public information for all approved survey responses.  Only the non-private
+	 * user information is read (name and email are only returned if the user gave permission)
+	 * and the answers are not loaded.
+	 * @return approved submissions ordered by username
 	 * @throws SQLException
-	 * @throws SurveyResponseException
 	 */
-	public String getLatestSpecVersion() throws SQLException, SurveyResponseException {
-		Statement stmt = null;
+	public List<CertifiedSubmission> getCertifiedSubmissions() throws SQLException, SurveyResponseException, QuestionException {
+		return getCertifiedSubmissions(new SubmissionFilter());
+	}
+	
+	/**
+	 * Get the public information for a page of approved survey responses.
+	 * @param filter Paging, sorting and filtering criteria
+	 * @return approved submissions matching the filter
+	 * @throws SQLException
+	 * @throws QuestionException 
+	 * @throws SurveyResponseException 
+	 */
+	public synchronized List<CertifiedSubmission> getCertifiedSubmissions(SubmissionFilter filter) throws SQLException, SurveyResponseException, QuestionException {
+		List<CertifiedSubmission> retval = new ArrayList<CertifiedSubmission>();
+		Map<Long, CertifiedSubmission> missingScores = new HashMap<Long, CertifiedSubmission>();
+		PreparedStatement stmt = null;
 		ResultSet result = null;
-		
+		long startNanos = System.nanoTime();
 		try {
-			stmt = con.createStatement();
-			result = stmt.executeQuery("select max(version) from spec"); //$NON-NLS-1$
-			if (!result.next()) {
-				throw new SurveyResponseException("No specs found in database"); //$NON-NLS-1$
+			String where = filter.getWhereConditions();
+			stmt = con.prepareStatement(SELECT_CERTIFIED + (where.isEmpty() ? "" : " and " + where) + //$NON-NLS-1$ //$NON-NLS-2$
+					" order by " + filter.getOrderBy(true) + filter.getLimitOffset()); //$NON-NLS-1$
+			filter.setWhereParameters(stmt, 1);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				User user = new User();
+				user.setName(result.getString("name")); //$NON-NLS-1$
+				user.setEmail(result.getString("email")); //$NON-NLS-1$
+				user.setOrganization(result.getString("organization")); //$NON-NLS-1$
+				user.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
+				user.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
+				user.setLanguagePreference(result.getString("language")); //$NON-NLS-1$
+				int score = result.getInt("score"); //$NON-NLS-1$
+				boolean scoreMissing = result.wasNull();
+				CertifiedSubmission certified = new CertifiedSubmission(user, result.getBoolean("submitted"), //$NON-NLS-1$
+						result.getBoolean("approved"), result.getBoolean("rejected"), //$NON-NLS-1$ //$NON-NLS-2$
+						result.getString("version"), score, result.getInt("percent_complete")); //$NON-NLS-1$ //$NON-NLS-2$
+				if (scoreMissing) {
+					missingScores.put(result.getLong("responseid"), certified); //$NON-NLS-1$
+				}
+				retval.add(certified);
 			}
-			return result.getString(1);
+			result.close();
+			result = null;
+			if (!missingScores.isEmpty()) {
+				Map<Long, int[]> scores = updateScores(new ArrayList<Long>(missingScores.keySet()));
+				for (Entry<Long, int[]> entry:scores.entrySet()) {
+					CertifiedSubmission certified = missingScores.get(entry.getKey());
+					certified.setScore(entry.getValue()[0]);
+					certified.setPercentComplete(entry.getValue()[1]);
+				}
+			}
+			return retval;
+		} catch (SQLException e) {
+			logger.error("SQL error getting certified submissions",e); //$NON-NLS-1$
+			throw(e);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyResponseDao.getCertifiedSubmissions", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (result != null) {
 				result.close();
 			}
 			if (stmt != null) {
 				stmt.close();
-				con.commit();
 			}
+			this.con.commit();
+		}
+	}
+	
+	/**
+	 * @return the latest (most recent) version of the spec
+	 * @throws SQLException
+	 * @throws SurveyResponseException
+	 */
+	public String getLatestSpecVersion() throws SQLException, SurveyResponseException {
+		String retval = SpecCatalog.getSpecCatalog(con).getLatestVersion();
+		if (retval == null) {
+			throw new SurveyResponseException("No specs found in database"); //$NON-NLS-1$
 		}
+		return retval;
 	}
 	
 	/**
@@ -409,6 +834,7 @@ public class SurveyResponseDao {
 	public synchronized void addSurveyResponse(SurveyResponse response, String language) throws SQLException, SurveyResponseException, QuestionTypeException {
 		Savepoint save = con.setSavepoint();
 		ResultSet result = null;
+		long startNanos = System.nanoTime();
 		try {
 			long userId = getUserId(response.getResponder().getUsername());
 			long versionId = SurveyDbDao.getSpecId(con, response.getSpecVersion(), User.DEFAULT_LANGUAGE, true);	// We always use the default language to prevent duplicates
@@ -451,6 +877,7 @@ public class SurveyResponseDao {
 			}
 			throw(ex);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyResponseDao.addSurveyResponse", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (result != null) {
 				result.close();
 			}
@@ -460,7 +887,15 @@ public class SurveyResponseDao {
 		}
 	}
 	
-	public synchronized void setSubmitted(String userName, String specVersion, boolean submitted) throws SQLException {
+	/**
+	 * Set the submitted flag for a survey response
+	 * @param userName
+	 * @param specVersion
+	 * @param submitted
+	 * @param emails Emails added to the email outbox in the same transaction as the change
+	 * @throws SQLException
+	 */
+	public synchronized void setSubmitted(String userName, String specVersion, boolean submitted, EmailMessage... emails) throws SQLException {
 		Savepoint save = con.setSavepoint();
 		try {
 			setSubmittedQuery.setBoolean(1, submitted);
@@ -470,10 +905,19 @@ public class SurveyResponseDao {
 			if (count != 1) {
 				logger.warn("Unexpected count on setting submitted.  Expected 1, found "+String.valueOf(count)); //$NON-NLS-1$
 			}
+			EmailOutboxDao.enqueue(con, emails);
+		} catch(SQLException ex) {
+			try {
+				con.rollback(save);
+			} catch (SQLException ex2) {
+				logger.error("Error rolling back transaction",ex2); //$NON-NLS-1$
+			}
+			throw(ex);
 		} finally {
 			if (save != null) {
 				con.commit();
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 	
@@ -491,6 +935,7 @@ public class SurveyResponseDao {
 			if (save != null) {
 				con.commit();
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 	
@@ -508,6 +953,7 @@ public class SurveyResponseDao {
 			if (save != null) {
 				con.commit();
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 
@@ -538,6 +984,7 @@ public class SurveyResponseDao {
 	 */
 	public synchronized void updateSurveyResponseAnswers(SurveyResponse response, String language) throws SQLException, SurveyResponseException, QuestionTypeException {
 		Savepoint save = con.setSavepoint();
+		long startNanos = System.nanoTime();
 		try {
 			long userId = getUserId(response.getResponder().getUsername());
 			long versionId = SurveyDbDao.getSpecId(con, response.getSpecVersion(), User.DEFAULT_LANGUAGE, true);  // Always use the default language to prevent duplicate surveys
@@ -551,9 +998,14 @@ public class SurveyResponseDao {
 			}
 			throw(ex);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("SurveyResponseDao.updateSurveyResponseAnswers", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (save != null) {
 				con.commit();
 			}
+			if (response.isSubmitted()) {
+				// The persisted score is part of the certified list
+				CertifiedSnapshot.markDirty();
+			}
 		}
 	}
 	
@@ -569,17 +1021,13 @@ public class SurveyResponseDao {
 		// First, verify the question numbers
 		Set<String> numbers = response.getSurvey().getQuestionNumbers();
 		try {
-			Map<String, Answer> storedAnswers = getAnswers(userId, response.getSpecVersion(), language);
-			this.addAnswerQuery.clearBatch();
-			this.updateAnswerQuery.clearBatch();
-			this.deleteAnswerQuery.clearBatch();
-			int numAdds = 0;
-			int numUpdates = 0;
-			int numDeletes = 0;
-			Iterator<Entry<String, Answer>> iter = response.getResponses().entrySet().iterator();
-			while (iter.hasNext()) {
-				Entry<String, Answer> entry = iter.next();
-				if (!numbers.contains(entry.getKey())) {
+			long responseId = getResponseId(userId, versionId);
+			Map<String, Long> questionIds = QuestionIdCache.getQuestionIds(con, versionId);
+			List<Long> answeredQuestionIds = new ArrayList<Long>();
+			this.upsertAnswerQuery.clearBatch();
+			for (Entry<String, Answer> entry:response.getResponses().entrySet()) {
+				Long questionId = questionIds.get(entry.getKey());
+				if (!numbers.contains(entry.getKey()) || questionId == null) {
 					logger.error("Attempting to update an answer for a question that does not exist.  Username="+ //$NON-NLS-1$
 									response.getResponder().getUsername()+", specVersion="+response.getSpecVersion() + //$NON-NLS-1$
 									"language: " + language + ", " +  //$NON-NLS-1$ //$NON-NLS-2$
@@ -587,116 +1035,63 @@ public class SurveyResponseDao {
 					
 					throw(new SurveyResponseException("Can not update answers.  Question "+entry.getKey()+" does not exist.")); //$NON-NLS-1$ //$NON-NLS-2$
 				}
-				if (storedAnswers.containsKey(entry.getKey())) {
-					// already there
-					if (entry.getKey() == null) {
-						// Delete the entry
-						this.deleteAnswerQuery.clearParameters();
-						this.deleteAnswerQuery.setLong(1, userId);
-						this.deleteAnswerQuery.setLong(2, versionId);
-						this.deleteAnswerQuery.setString(3, entry.getKey());
-						this.deleteAnswerQuery.setLong(4, versionId);
-						this.deleteAnswerQuery.addBatch();
-						numDeletes++;
-					} else {
-						// We don't want to update with a null value
-						Answer storedAnswer = storedAnswers.get(entry.getKey());
-						if (storedAnswer == null || !storedAnswer.equals(entry.getValue())) {
-							// must update
-							this.updateAnswerQuery.clearParameters();
-							this.updateAnswerQuery.setLong(3, userId);
-							this.updateAnswerQuery.setLong(4, versionId);
-							this.updateAnswerQuery.setString(5, entry.getKey());
-							
-							this.updateAnswerQuery.setLong(6, versionId);
-							if (entry.getValue() instanceof YesNoAnswer) {
-								YesNoAnswer yn = (YesNoAnswer)entry.getValue();
-								this.updateAnswerQuery.setString(1, yn.getAnswer().toString());
-							} else {
-								this.updateAnswerQuery.setNull(1, java.sql.Types.VARCHAR);
-							}
-							if (entry.getValue() instanceof YesNoAnswerWithEvidence) {
-								this.updateAnswerQuery.setString(2, ((YesNoAnswerWithEvidence)entry.getValue()).getEvidence());
-							} else {
-								this.updateAnswerQuery.setString(2, null);
-							}
-							this.updateAnswerQuery.addBatch();
-							numUpdates++;
-						}
-					}
+				this.upsertAnswerQuery.setLong(1, responseId);
+				this.upsertAnswerQuery.setLong(2, questionId);
+				if (entry.getValue() instanceof YesNoAnswer) {
+					this.upsertAnswerQuery.setString(3, ((YesNoAnswer)entry.getValue()).getAnswer().toString());
 				} else {
-					// Insert a new row
-					this.addAnswerQuery.clearParameters();
-					this.addAnswerQuery.setLong(1, userId);
-					this.addAnswerQuery.setLong(2, versionId);
-					this.addAnswerQuery.setString(3, entry.getKey());
-					this.addAnswerQuery.setLong(4, versionId);
-					if (entry.getValue() instanceof YesNoAnswer) {
-						YesNoAnswer yn = (YesNoAnswer)entry.getValue();
-						this.addAnswerQuery.setString(5, yn.getAnswer().toString());
-					} else {
-						this.addAnswerQuery.setString(5, null);
-					}
-					if (entry.getValue() instanceof YesNoAnswerWithEvidence) {
-						this.addAnswerQuery.setString(6, ((YesNoAnswerWithEvidence)entry.getValue()).getEvidence());
-					} else {
-						this.addAnswerQuery.setString(6, null);
-					}
-					this.addAnswerQuery.addBatch();
-					numAdds++;
-				}
-				storedAnswers.remove(entry.getKey());
-			}
-			// Delete the entries not found
-			iter = storedAnswers.entrySet().iterator();
-			while (iter.hasNext()) {
-				Entry<String, Answer> entry = iter.next();
-				this.deleteAnswerQuery.clearParameters();
-				this.deleteAnswerQuery.setLong(1, userId);
-				this.deleteAnswerQuery.setLong(2, versionId);
-				this.deleteAnswerQuery.setString(3, entry.getKey());
-				this.deleteAnswerQuery.setLong(4, versionId);
-				this.deleteAnswerQuery.addBatch();
-				numDeletes++;
-			}
-			if (numAdds > 0) {
-				int[] counts = this.addAnswerQuery.executeBatch();
-				if (counts.length != numAdds) {
-					logger.warn("Number of adds did not match. Expected "+String.valueOf(numAdds)+".  Found "+String.valueOf(counts.length)); //$NON-NLS-1$ //$NON-NLS-2$
-				}
-				for (int count:counts) {
-					if (count != 1) {
-						logger.warn("Expected 1 update for add index.  found "+String.valueOf(count)); //$NON-NLS-1$
-					}
-				}
-			}
-			if (numDeletes > 0) {
-				int[] counts = this.deleteAnswerQuery.executeBatch();
-				if (counts.length != numDeletes) {
-					logger.warn("Number of deletes did not match. Expected "+String.valueOf(numDeletes)+".  Found "+String.valueOf(counts.length)); //$NON-NLS-1$ //$NON-NLS-2$
+					this.upsertAnswerQuery.setNull(3, java.sql.Types.VARCHAR);
 				}
-				for (int count:counts) {
-					if (count != 1) {
-						logger.warn("Expected 1 update for delete index.  found "+String.valueOf(count)); //$NON-NLS-1$
-					}
+				if (entry.getValue() instanceof YesNoAnswerWithEvidence) {
+					this.upsertAnswerQuery.setString(4, ((YesNoAnswerWithEvidence)entry.getValue()).getEvidence());
+				} else {
+					this.upsertAnswerQuery.setNull(4, java.sql.Types.VARCHAR);
 				}
+				this.upsertAnswerQuery.addBatch();
+				answeredQuestionIds.add(questionId);
 			}
-			if (numUpdates > 0) {
-				int[] counts = this.updateAnswerQuery.executeBatch();
-				if (counts.length != numUpdates) {
-					logger.warn("Number of updates did not match. Expected "+String.valueOf(numDeletes)+".  Found "+String.valueOf(counts.length)); //$NON-NLS-1$ //$NON-NLS-2$
-				}
-				for (int count:counts) {
-					if (count != 1) {
-						logger.warn("Expected 1 update for update index.  found "+String.valueOf(count)); //$NON-NLS-1$
-					}
-				}
+			// Delete the stored answers which are no longer in the response
+			this.deleteOtherAnswersQuery.setLong(1, responseId);
+			this.deleteOtherAnswersQuery.setArray(2, con.createArrayOf("int8", answeredQuestionIds.toArray())); //$NON-NLS-1$
+			this.deleteOtherAnswersQuery.executeUpdate();
+			if (!answeredQuestionIds.isEmpty()) {
+				this.upsertAnswerQuery.executeBatch();
 			}
+			int[] scores = response.getSurvey().getAnswerKey().score(response.getResponses());
+			updateScoreQuery.setInt(1, scores[AnswerKey.SCORE]);
+			updateScoreQuery.setInt(2, scores[AnswerKey.PERCENT_COMPLETE]);
+			updateScoreQuery.setInt(3, scores[AnswerKey.NUM_ANSWERED]);
+			updateScoreQuery.setLong(4, responseId);
+			updateScoreQuery.executeUpdate();
 		} finally {
 			// Didn't open a resultset, but leaving this as a hook if we add something that needs to be cleaned up
 		}
 	}
 
+	/**
+	 * @param userId ID of the user
+	 * @param versionId ID of the spec version
+	 * @return the ID of the survey response for the user and spec version
+	 * @throws SQLException
+	 * @throws SurveyResponseException if there is no survey response
+	 */
+	private long getResponseId(long userId, long versionId) throws SQLException, SurveyResponseException {
+		ResultSet result = null;
+		try {
+			getResponseIdQuery.setLong(1, userId);
+			getResponseIdQuery.setLong(2, versionId);
+			result = getResponseIdQuery.executeQuery();
+			if (!result.next()) {
+				throw(new SurveyResponseException("No survey response found to update answers")); //$NON-NLS-1$
+			}
+			return result.getLong(1);
+		} finally {
+			if (result != null) {
+				result.close();
+			}
+		}
+	}
+	
 	/**
 	 * @param ids any responses for any of these ID's will be set to approved
 	 * @param value value to set approved to
@@ -737,6 +1132,7 @@ public class SurveyResponseDao {
 			if (save != null) {
 				con.commit();
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 
@@ -780,6 +1176,7 @@ public class SurveyResponseDao {
 			if (save != null) {
 				con.commit();
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 	
@@ -830,6 +1227,7 @@ public class SurveyResponseDao {
 					throw(e);
 				}
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 
@@ -875,6 +1273,7 @@ public class SurveyResponseDao {
 					throw(e);
 				}
 			}
+			CertifiedSnapshot.markDirty();
 		}
 	}
 
@@ -890,6 +1289,7 @@ public class SurveyResponseDao {
 		ResultSet result = null;
 		List<SurveyResponse> retval = new ArrayList<SurveyResponse>();
 		Map<String, Survey> surveys = new HashMap<String, Survey>();	// Cache of spec version to survey
+		Map<Long, SurveyResponse> responsesById = new HashMap<Long, SurveyResponse>();
 		try {
 			getResponsesForUserQuery.setString(1, username);
 			result = getResponsesForUserQuery.executeQuery();
@@ -910,21 +1310,26 @@ public class SurveyResponseDao {
 				user.setOrganization(result.getString("organization")); //$NON-NLS-1$
 				user.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
 				user.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
-				long userId = result.getLong("id"); //$NON-NLS-1$
 				response.setResponder(user);
 				response.setSubmitted(result.getBoolean("submitted")); //$NON-NLS-1$
 				response.setApproved(result.getBoolean("approved")); //$NON-NLS-1$
 				response.setRejected(result.getBoolean("rejected")); //$NON-NLS-1$
-				response.setId(String.valueOf(result.getLong("responseid"))); //$NON-NLS-1$
+				long responseId = result.getLong("responseid"); //$NON-NLS-1$
+				response.setId(String.valueOf(responseId));
 				Survey survey = surveys.get(specVersion);
 				if (survey == null) {
 					survey = SurveyDbDao.getSurvey(con, specVersion, language);
 					surveys.put(specVersion, survey);
 				}
 				response.setSurvey(survey);
-				response.setResponses(getAnswers(userId, specVersion, language));
+				response.setResponses(new CompactAnswerMap(survey, language));
+				responsesById.put(responseId, response);
 				retval.add(response);
 			}
+			result.close();
+			result = null;
+			getAllAnswersForUserQuery.setString(1, username);
+			loadAnswers(getAllAnswersForUserQuery, responsesById, language);
 			return retval;
 		} catch (SQLException e) {
 			logger.error("SQL error getting users with responses",e); //$NON-NLS-1$
@@ -932,8 +1337,8 @@ public class SurveyResponseDao {
 		} finally {
 			if (result != null) {
 				result.close();
-				this.con.commit();
 			}
+			this.con.commit();
 		}
 	}
 }
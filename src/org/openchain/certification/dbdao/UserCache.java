@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.dbdao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+
+import org.openchain.certification.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide write-through cache of users keyed by username.
+ *
+ * All changes to users made through <code>UserDb</code> update the cache.  Entries expire after
+ * <code>ttlMillis</code> so that changes made directly to the database are eventually seen.
+ * Changes made on another server are also only seen once the entry expires - with several servers,
+ * an old password (the cached hash and salt) keeps working on the other servers for up to
+ * <code>ttlMillis</code> after a password change or reset, so the time to live is kept short.  Lookups
+ * for usernames which do not exist are cached for the shorter <code>negativeTtlMillis</code> so that
+ * repeated logins with unknown usernames do not each query the database.
+ * The cache holds at most <code>maxSize</code> users.  When it is full, expired entries and then
+ * the least recently used entries are evicted in a batch, so the eviction is approximate.
+ * Cached users are never returned directly - callers always receive a copy.
+ * Lookups do not lock - only changes to the cache are serialized.
+ * 
+ * The following context parameters configure the cache:
+ * <ul>
+ * <li>user_cache_max_size - maximum number of cached users</li>
+ * <li>user_cache_ttl_ms - time a user is cached</li>
+ * <li>user_cache_negative_ttl_ms - time the absence of a user is cached</li>
+ * </ul>
+ * @author Gary O'Neall
+ *
+ */
+public class UserCache {
+
+	static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+	static final String MAX_SIZE_PARAM = "user_cache_max_size"; //$NON-NLS-1$
+	static final String TTL_PARAM = "user_cache_ttl_ms"; //$NON-NLS-1$
+	static final String NEGATIVE_TTL_PARAM = "user_cache_negative_ttl_ms"; //$NON-NLS-1$
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+	public static final long DEFAULT_TTL_MILLIS = 30 * 1000L;
+	public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30 * 1000L;
+
+	private static int maxSize = DEFAULT_MAX_SIZE;
+	private static long ttlMillis = DEFAULT_TTL_MILLIS;
+	private static long negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+
+	/**
+	 * A full cache evicts an extra 1/EVICTION_BATCH_DIVISOR of its maximum size
+	 */
+	private static final int EVICTION_BATCH_DIVISOR = 10;
+
+	/**
+	 * Cached user or the absence of a user along with the time the entry expires.
+	 * The cached user is never modified - a change replaces the entry.
+	 */
+	static class CachedUser {
+		private final User user;
+		private final long expires;
+		private volatile long lastAccess;
+
+		CachedUser(User user, long expires) {
+			this.user = user;
+			this.expires = expires;
+			this.lastAccess = System.nanoTime();
+		}
+
+		/**
+		 * @return a copy of the cached user or null if the user does not exist
+		 */
+		User getUser() {
+			return user == null ? null : user.copy();
+		}
+	}
+
+	private static final ConcurrentHashMap<String, CachedUser> users = new ConcurrentHashMap<String, CachedUser>();
+
+	/**
+	 * Held while changing the cache so that the generation check and the change are atomic
+	 */
+	private static final Object updateLock = new Object();
+
+	/**
+	 * Incremented on every change so that a user loaded before a change is not cached
+	 */
+	private static long generation = 0;
+
+	private static final AtomicLong hitCount = new AtomicLong(0);
+	private static final AtomicLong missCount = new AtomicLong(0);
+
+	private UserCache() {
+		// Static methods only
+	}
+
+	/**
+	 * @param username
+	 * @return the cached entry or null if the username is not cached or the entry has expired
+	 */
+	static CachedUser get(String username) {
+		CachedUser retval = users.get(username);
+		if (retval != null && retval.expires <= System.currentTimeMillis()) {
+			// Only remove the expired entry, not a newer entry which may have replaced it
+			users.remove(username, retval);
+			retval = null;
+		}
+		if (retval == null) {
+			missCount.incrementAndGet();
+		} else {
+			retval.lastAccess = System.nanoTime();
+			hitCount.incrementAndGet();
+		}
+		return retval;
+	}
+
+	/**
+	 * @return the current generation which must be passed to <code>putLoaded</code>
+	 */
+	static long getGeneration() {
+		synchronized(updateLock) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Cache a user read from the database unless the users changed since the read started
+	 * @param username
+	 * @param user user read from the database or null if the user does not exist
+	 * @param loadGeneration generation returned by <code>getGeneration</code> before the read
+	 */
+	static void putLoaded(String username, User user, long loadGeneration) {
+		synchronized(updateLock) {
+			if (loadGeneration == generation) {
+				users.put(username, newEntry(user));
+				evictIfFull();
+			}
+		}
+	}
+
+	/**
+	 * Update the cache with a user which has been committed to the database
+	 * @param user
+	 */
+	static void put(User user) {
+		synchronized(updateLock) {
+			generation++;
+			users.put(user.getUsername(), newEntry(normalize(user)));
+			evictIfFull();
+		}
+	}
+
+	/**
+	 * Update the verified flag of a cached user after the change has been committed to the database
+	 * @param username
+	 * @param verified
+	 */
+	static void setVerified(String username, boolean verified) {
+		synchronized(updateLock) {
+			generation++;
+			CachedUser cached = users.get(username);
+			if (cached != null) {
+				if (cached.user == null) {
+					users.remove(username);
+				} else {
+					User updated = cached.user.copy();
+					updated.setVerified(verified);
+					users.put(username, new CachedUser(updated, cached.expires));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evict expired entries and then the least recently used entries once the cache is over its
+	 * maximum size.  Evicts down to below the maximum so that the scan is not repeated on every put.
+	 * Must be called holding the <code>updateLock</code>.
+	 */
+	private static void evictIfFull() {
+		if (users.size() <= maxSize) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<Map.Entry<String, CachedUser>> live = new ArrayList<Map.Entry<String, CachedUser>>();
+		Iterator<Map.Entry<String, CachedUser>> iter = users.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, CachedUser> entry = iter.next();
+			if (entry.getValue().expires <= now) {
+				iter.remove();
+			} else {
+				live.add(entry);
+			}
+		}
+		if (live.size() <= maxSize) {
+			return;
+		}
+		int target = maxSize - maxSize / EVICTION_BATCH_DIVISOR;
+		Collections.sort(live, new Comparator<Map.Entry<String, CachedUser>>() {
+
+			@Override
+			public int compare(Map.Entry<String, CachedUser> o1, Map.Entry<String, CachedUser> o2) {
+				return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+			}
+		});
+		for (int i = 0; i < live.size() - target; i++) {
+			users.remove(live.get(i).getKey(), live.get(i).getValue());
+		}
+	}
+
+	private static CachedUser newEntry(User user) {
+		long ttl = user == null ? negativeTtlMillis : ttlMillis;
+		return new CachedUser(user, System.currentTimeMillis() + ttl);
+	}
+
+	/**
+	 * @param user
+	 * @return a copy of the user matching what would be read back from the database
+	 */
+	private static User normalize(User user) {
+		User retval = user.copy();
+		Date expiration = retval.getVerificationExpirationDate();
+		if (expiration != null) {
+			// The database only stores the date
+			retval.setVerificationExpirationDate(java.sql.Date.valueOf(new java.sql.Date(expiration.getTime()).toString()));
+		}
+		return retval;
+	}
+
+	/**
+	 * Remove a user from the cache.  Must be called after any change made to the user outside of <code>UserDb</code>.
+	 * @param username
+	 */
+	public static void invalidate(String username) {
+		synchronized(updateLock) {
+			generation++;
+			users.remove(username);
+		}
+	}
+
+	/**
+	 * Remove all users from the cache
+	 */
+	public static void invalidateAll() {
+		synchronized(updateLock) {
+			generation++;
+			users.clear();
+		}
+	}
+
+	/**
+	 * Configure the cache from the servlet context parameters.  Parameters which are not set use the defaults.
+	 * @param servletConfig
+	 */
+	public static void configure(ServletConfig servletConfig) {
+		int newMaxSize = (int)getLongParam(servletConfig, MAX_SIZE_PARAM, DEFAULT_MAX_SIZE);
+		if (newMaxSize < 1) {
+			logger.error("Invalid user cache size "+newMaxSize+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$
+			newMaxSize = DEFAULT_MAX_SIZE;
+		}
+		configure(newMaxSize, getLongParam(servletConfig, TTL_PARAM, DEFAULT_TTL_MILLIS),
+				getLongParam(servletConfig, NEGATIVE_TTL_PARAM, DEFAULT_NEGATIVE_TTL_MILLIS));
+	}
+
+	private static long getLongParam(ServletConfig servletConfig, String paramName, long defaultValue) {
+		String value = servletConfig.getServletContext().getInitParameter(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid value for user cache parameter "+paramName+": "+value+".  Using the default value."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param newMaxSize Maximum number of users to cache
+	 * @param newTtlMillis Time in milliseconds a user is cached
+	 * @param newNegativeTtlMillis Time in milliseconds the absence of a user is cached
+	 */
+	public static void configure(int newMaxSize, long newTtlMillis, long newNegativeTtlMillis) {
+		if (newMaxSize < 1) {
+			throw new IllegalArgumentException("User cache size must be at least 1"); //$NON-NLS-1$
+		}
+		synchronized(updateLock) {
+			maxSize = newMaxSize;
+			ttlMillis = newTtlMillis;
+			negativeTtlMillis = newNegativeTtlMillis;
+			generation++;
+			users.clear();
+		}
+	}
+
+	/**
+	 * @return number of users currently cached including cached unknown usernames
+	 */
+	public static int size() {
+		return users.size();
+	}
+
+	/**
+	 * @return number of lookups served from the cache
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of lookups which read the user from the database
+	 */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+}
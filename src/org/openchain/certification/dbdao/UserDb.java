@@ -27,14 +27,18 @@ import java.util.List;
 import javax.servlet.ServletConfig;
 
 import org.openchain.certification.InvalidUserException;
+import org.openchain.certification.model.EmailMessage;
 import org.openchain.certification.model.User;
+import org.openchain.certification.utility.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This is a singleton DAO - since the requests will be relatively short and
- * this will be frequently used, we will maintain a connection just for the user
- * database.
+ * This is a singleton DAO for the user table.  The DAO itself holds no connection -
+ * each call borrows a connection from the pool managed by <code>SurveyDatabase</code>
+ * so that concurrent user lookups and updates run in parallel.
+ * 
+ * Users are read through the <code>UserCache</code> and all updates are written through to the cache.
  * 
  * @author Gary O'Neall
  *
@@ -43,14 +47,23 @@ public class UserDb {
 	
 	static final Logger logger = LoggerFactory.getLogger(UserDb.class);
 	
-	private static UserDb _userDb;
-	private Connection connection;
-	private PreparedStatement getUserQuery;
-	private PreparedStatement getAllUserQuery;
-	private PreparedStatement addUserQuery;
-	private PreparedStatement updateVerifiedQuery;
-	private PreparedStatement updateUserQuery;
-	private PreparedStatement getUserIdQuery;
+	static final String GET_USER_SQL = "select password_token, name, address, email," + //$NON-NLS-1$
+			"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
+			" uuid, organization, name_permission, email_permission, language from openchain_user where username=?"; //$NON-NLS-1$
+	private static final String GET_ALL_USERS_SQL = "select username, password_token, name, address, email," + //$NON-NLS-1$
+			"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
+			" uuid, organization, name_permission, email_permission, language from openchain_user order by username asc"; //$NON-NLS-1$
+	private static final String ADD_USER_SQL = "insert into openchain_user (username, password_token, name, address, email," + //$NON-NLS-1$
+			"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
+			" uuid, organization, name_permission, email_permission, language) values (?,?,?,?,?,?,?,?,?,?,?,?,?,?)"; //$NON-NLS-1$
+	private static final String UPDATE_VERIFIED_SQL = "update openchain_user set verified=? where username=?"; //$NON-NLS-1$
+	private static final String UPDATE_USER_SQL = "update openchain_user set password_token=?, " + //$NON-NLS-1$
+			"name=?, address=?, verified=?, passwordReset=?, admin=?, " + //$NON-NLS-1$
+			"verificationExpirationDate=?, uuid=?, organization=?, email=?, name_permission=?, email_permission=?," + //$NON-NLS-1$
+			"language=? where username=?"; //$NON-NLS-1$
+	private static final String GET_USER_ID_SQL = "select id from openchain_user where username=?"; //$NON-NLS-1$
+	
+	private static volatile UserDb _userDb;
 	private ServletConfig servletConfig;
 	
 	/**
@@ -59,95 +72,110 @@ public class UserDb {
 	 * @return
 	 * @throws SQLException
 	 */
-	public static synchronized UserDb getUserDb(ServletConfig servletConfig) throws SQLException {
-		if (_userDb == null) {
-			_userDb = new UserDb(servletConfig);
+	public static UserDb getUserDb(ServletConfig servletConfig) throws SQLException {
+		UserDb retval = _userDb;
+		if (retval == null) {
+			synchronized(UserDb.class) {
+				retval = _userDb;
+				if (retval == null) {
+					retval = new UserDb(servletConfig);
+					_userDb = retval;
+				}
+			}
 		}
-		_userDb.checkConnection();
-		return _userDb;
+		return retval;
 	}
 	
 	/**
-	 * Check if the connection is still active, creating the connection if needed
+	 * This should only be called by the statice getUserDb method
+	 * @param servletConfig
 	 * @throws SQLException
 	 */
-	protected synchronized void checkConnection() throws SQLException {
-		if (this.connection == null || this.connection.isClosed()) {
-			this.connection = SurveyDatabase.createConnection(servletConfig);
-			this.connection.setAutoCommit(false);
-			prepareStatements();
-		}
+	private UserDb(ServletConfig servletConfig) throws SQLException {
+		this.servletConfig = servletConfig;
 	}
 	
 	/**
-	 * This should only be called by the statice getUserDb method
-	 * @param servletConfig
+	 * @return a connection from the pool with auto commit turned off - must be closed by the caller
 	 * @throws SQLException
 	 */
-	private UserDb(ServletConfig servletConfig) throws SQLException {
-		this.servletConfig = servletConfig;
-		this.connection = SurveyDatabase.createConnection(servletConfig);
-		this.connection.setAutoCommit(false);
-		prepareStatements();
+	private Connection borrowConnection() throws SQLException {
+		Connection con = SurveyDatabase.createConnection(servletConfig);
+		con.setAutoCommit(false);
+		return con;
 	}
 	
 	/**
-	 * Prepare all statements
+	 * Create a user from the current row of a result set
+	 * @param result
+	 * @param username
+	 * @return
 	 * @throws SQLException
 	 */
-	private void prepareStatements() throws SQLException {
-		getUserQuery = connection.prepareStatement("select password_token, name, address, email," + //$NON-NLS-1$
-				"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
-				" uuid, organization, name_permission, email_permission, language from openchain_user where username=?"); //$NON-NLS-1$
-		getAllUserQuery = connection.prepareStatement("select username, password_token, name, address, email," + //$NON-NLS-1$
-				"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
-				" uuid, organization, name_permission, email_permission, language from openchain_user order by username asc"); //$NON-NLS-1$
-		addUserQuery = connection.prepareStatement("insert into openchain_user (username, password_token, name, address, email," + //$NON-NLS-1$
-				"verified, passwordReset, admin, verificationExpirationDate," + //$NON-NLS-1$
-				" uuid, organization, name_permission, email_permission, language) values (?,?,?,?,?,?,?,?,?,?,?,?,?,?)"); //$NON-NLS-1$
-		updateVerifiedQuery = connection.prepareStatement("update openchain_user set verified=? where username=?"); //$NON-NLS-1$
-		updateUserQuery = connection.prepareStatement("update openchain_user set password_token=?, " + //$NON-NLS-1$
-				"name=?, address=?, verified=?, passwordReset=?, admin=?, " + //$NON-NLS-1$
-				"verificationExpirationDate=?, uuid=?, organization=?, email=?, name_permission=?, email_permission=?," + //$NON-NLS-1$
-				"language=? where username=?"); //$NON-NLS-1$
-		getUserIdQuery = connection.prepareStatement("select id from openchain_user where username=?"); //$NON-NLS-1$
+	private static User userFromResult(ResultSet result, String username) throws SQLException {
+		User retval = new User();
+		retval.setAddress(result.getString("address")); //$NON-NLS-1$
+		retval.setAdmin(result.getBoolean("admin")); //$NON-NLS-1$
+		retval.setEmail(result.getString("email")); //$NON-NLS-1$
+		retval.setName(result.getString("name")); //$NON-NLS-1$
+		retval.setPasswordReset(result.getBoolean("passwordReset")); //$NON-NLS-1$
+		retval.setPasswordToken(result.getString("password_token")); //$NON-NLS-1$
+		retval.setUsername(username);
+		retval.setUuid(result.getString("uuid")); //$NON-NLS-1$
+		retval.setVerificationExpirationDate(result.getDate("verificationExpirationDate")); //$NON-NLS-1$
+		retval.setVerified(result.getBoolean("verified")); //$NON-NLS-1$
+		retval.setOrganization(result.getString("organization")); //$NON-NLS-1$
+		retval.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
+		retval.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
+		retval.setLanguagePreference(result.getString("language")); //$NON-NLS-1$
+		return retval;
 	}
 
 	/**
-	 * Get the user from the database
+	 * Get the user from the user cache or the database
+	 * @param username Username of the user
+	 * @return populated user from the DB or null if the user does not exist
+	 * @throws SQLException
+	 */
+	public User getUser(String username) throws SQLException {
+		UserCache.CachedUser cached = UserCache.get(username);
+		if (cached != null) {
+			return cached.getUser();
+		}
+		long generation = UserCache.getGeneration();
+		User retval = loadUser(username);
+		UserCache.putLoaded(username, retval == null ? null : retval.copy(), generation);
+		return retval;
+	}
+	
+	/**
+	 * Read the user from the database without using the <code>UserCache</code>
 	 * @param username Username of the user
-	 * @return populated user from the DB
+	 * @return populated user from the DB or null if the user does not exist
 	 * @throws SQLException
 	 */
-	public synchronized User getUser(String username) throws SQLException {
+	User loadUser(String username) throws SQLException {
+		Connection connection = SurveyDatabase.createConnection(servletConfig);
+		PreparedStatement getUserQuery = null;
 		ResultSet result = null;
+		long startNanos = System.nanoTime();
 		try {
+			getUserQuery = connection.prepareStatement(GET_USER_SQL);
 			getUserQuery.setString(1, username);
 			result = getUserQuery.executeQuery();
 			if (!result.next()) {
 				return null;
 			}
-			User retval = new User();
-			retval.setAddress(result.getString("address")); //$NON-NLS-1$
-			retval.setAdmin(result.getBoolean("admin")); //$NON-NLS-1$
-			retval.setEmail(result.getString("email")); //$NON-NLS-1$
-			retval.setName(result.getString("name")); //$NON-NLS-1$
-			retval.setPasswordReset(result.getBoolean("passwordReset")); //$NON-NLS-1$
-			retval.setPasswordToken(result.getString("password_token")); //$NON-NLS-1$
-			retval.setUsername(username);
-			retval.setUuid(result.getString("uuid")); //$NON-NLS-1$
-			retval.setVerificationExpirationDate(result.getDate("verificationExpirationDate")); //$NON-NLS-1$
-			retval.setVerified(result.getBoolean("verified")); //$NON-NLS-1$
-			retval.setOrganization(result.getString("organization")); //$NON-NLS-1$
-			retval.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
-			retval.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
-			retval.setLanguagePreference(result.getString("language")); //$NON-NLS-1$
-			return retval;
+			return userFromResult(result, username);
 		} finally {
+			MetricsRegistry.DAO_OPERATIONS.record("UserDb.loadUser", System.nanoTime() - startNanos); //$NON-NLS-1$
 			if (result != null) {
 				result.close();
 			}
-			connection.commit();
+			if (getUserQuery != null) {
+				getUserQuery.close();
+			}
+			connection.close();
 		}
 	}
 	
@@ -155,72 +183,70 @@ public class UserDb {
 	 * @return all users from the database
 	 * @throws SQLException
 	 */
-	public synchronized List<User> getUsers() throws SQLException {
+	public List<User> getUsers() throws SQLException {
 		List<User> retval = new ArrayList<User>();
+		Connection connection = SurveyDatabase.createConnection(servletConfig);
+		PreparedStatement getAllUserQuery = null;
 		ResultSet result = null;
 		try {
+			getAllUserQuery = connection.prepareStatement(GET_ALL_USERS_SQL);
 			result = getAllUserQuery.executeQuery();
 			while (result.next()) {
-				User user = new User();
-				user.setAddress(result.getString("address")); //$NON-NLS-1$
-				user.setAdmin(result.getBoolean("admin")); //$NON-NLS-1$
-				user.setEmail(result.getString("email")); //$NON-NLS-1$
-				user.setName(result.getString("name")); //$NON-NLS-1$
-				user.setPasswordReset(result.getBoolean("passwordReset")); //$NON-NLS-1$
-				user.setPasswordToken(result.getString("password_token")); //$NON-NLS-1$
-				user.setUsername(result.getString("username")); //$NON-NLS-1$
-				user.setUuid(result.getString("uuid")); //$NON-NLS-1$
-				user.setVerificationExpirationDate(result.getDate("verificationExpirationDate")); //$NON-NLS-1$
-				user.setVerified(result.getBoolean("verified")); //$NON-NLS-1$
-				user.setOrganization(result.getString("organization")); //$NON-NLS-1$
-				user.setNamePermission(result.getBoolean("name_permission")); //$NON-NLS-1$
-				user.setEmailPermission(result.getBoolean("email_permission")); //$NON-NLS-1$
-				user.setLanguagePreference(result.getString("language")); //$NON-NLS-1$
-				retval.add(user);
+				retval.add(userFromResult(result, result.getString("username"))); //$NON-NLS-1$
 			}
 			return retval;
 		} finally {
 			if (result != null) {
 				result.close();
-				connection.commit();
 			}
+			if (getAllUserQuery != null) {
+				getAllUserQuery.close();
+			}
+			connection.close();
 		}
 	}
 	
 	/**
 	 * Add a user to the database.  The username must not already exist
 	 * @param user
+	 * @param emails Emails added to the email outbox in the same transaction as the user
 	 * @return a positive integer if successful
 	 * @throws SQLException
 	 * @throws InvalidUserException
 	 */
-	public synchronized int addUser(User user) throws SQLException, InvalidUserException {
-		Savepoint save = connection.setSavepoint();
-		long userId = getUserId(user.getUsername());
-		if (userId >0) {
-			throw(new InvalidUserException("Can not add user "+user.getUsername()+": already exists.")); //$NON-NLS-1$ //$NON-NLS-2$
-		}
+	public int addUser(User user, EmailMessage... emails) throws SQLException, InvalidUserException {
+		Connection connection = borrowConnection();
+		PreparedStatement addUserQuery = null;
+		Savepoint save = null;
+		int retval;
 		try {
-			this.addUserQuery.setString(1, user.getUsername());
-			this.addUserQuery.setString(2, user.getPasswordToken());
-			this.addUserQuery.setString(3, user.getName());
-			this.addUserQuery.setString(4, user.getAddress());
-			this.addUserQuery.setString(5, user.getEmail());
-			this.addUserQuery.setBoolean(6, user.isVerified());
-			this.addUserQuery.setBoolean(7, user.isPasswordReset());
-			this.addUserQuery.setBoolean(8, user.isAdmin());
+			save = connection.setSavepoint();
+			long userId = getUserId(connection, user.getUsername());
+			if (userId >0) {
+				throw(new InvalidUserException("Can not add user "+user.getUsername()+": already exists.")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			addUserQuery = connection.prepareStatement(ADD_USER_SQL);
+			addUserQuery.setString(1, user.getUsername());
+			addUserQuery.setString(2, user.getPasswordToken());
+			addUserQuery.setString(3, user.getName());
+			addUserQuery.setString(4, user.getAddress());
+			addUserQuery.setString(5, user.getEmail());
+			addUserQuery.setBoolean(6, user.isVerified());
+			addUserQuery.setBoolean(7, user.isPasswordReset());
+			addUserQuery.setBoolean(8, user.isAdmin());
 			java.sql.Date sqlDate = new java.sql.Date(user.getVerificationExpirationDate().getTime());
-			this.addUserQuery.setDate(9, sqlDate);
-			this.addUserQuery.setString(10, user.getUuid());
-			this.addUserQuery.setString(11, user.getOrganization());
-			this.addUserQuery.setBoolean(12, user.hasNamePermission());
-			this.addUserQuery.setBoolean(13, user.hasEmailPermission());
+			addUserQuery.setDate(9, sqlDate);
+			addUserQuery.setString(10, user.getUuid());
+			addUserQuery.setString(11, user.getOrganization());
+			addUserQuery.setBoolean(12, user.hasNamePermission());
+			addUserQuery.setBoolean(13, user.hasEmailPermission());
 			if (user.getLanguagePreference() != null) {
-				this.addUserQuery.setString(14, user.getLanguagePreference());
+				addUserQuery.setString(14, user.getLanguagePreference());
 			} else {
-				this.addUserQuery.setNull(14, java.sql.Types.VARCHAR);
+				addUserQuery.setNull(14, java.sql.Types.VARCHAR);
 			}
-			return this.addUserQuery.executeUpdate();
+			retval = addUserQuery.executeUpdate();
+			EmailOutboxDao.enqueue(connection, emails);
 		} catch(SQLException ex) {
 			if (save != null) {
 				try {
@@ -231,21 +257,33 @@ public class UserDb {
 			}
 			throw(ex);
 		} finally {
-			if (save != null) {
-				this.connection.commit();
+			try {
+				if (addUserQuery != null) {
+					addUserQuery.close();
+				}
+				if (save != null) {
+					connection.commit();
+				}
+			} finally {
+				connection.close();
 			}
 		}
+		UserCache.put(user);
+		return retval;
 	}
 
 	/**
 	 * 
+	 * @param connection
 	 * @param username
 	 * @return The unique user ID in the database
 	 * @throws SQLException
 	 */
-	private long getUserId(String username) throws SQLException {
+	private long getUserId(Connection connection, String username) throws SQLException {
+		PreparedStatement getUserIdQuery = null;
 		ResultSet result = null;
 		try {
+			getUserIdQuery = connection.prepareStatement(GET_USER_ID_SQL);
 			getUserIdQuery.setString(1, username);
 			result = getUserIdQuery.executeQuery();
 			if (result.next()) {
@@ -257,6 +295,9 @@ public class UserDb {
 			if (result != null) {
 				result.close();
 			}
+			if (getUserIdQuery != null) {
+				getUserIdQuery.close();
+			}
 		}
 	}
 
@@ -265,11 +306,16 @@ public class UserDb {
 	 * @return true if the user exists
 	 * @throws SQLException
 	 */
-	public synchronized boolean userExists(String username) throws SQLException {
+	public boolean userExists(String username) throws SQLException {
+		UserCache.CachedUser cached = UserCache.get(username);
+		if (cached != null) {
+			return cached.getUser() != null;
+		}
+		Connection connection = SurveyDatabase.createConnection(servletConfig);
 		try {
-			return getUserId(username) > 0;
+			return getUserId(connection, username) > 0;
 		} finally {
-			this.connection.commit();
+			connection.close();
 		}
 	}
 	/**
@@ -279,12 +325,17 @@ public class UserDb {
 	 * @return
 	 * @throws SQLException
 	 */
-	public synchronized int setVerified(String username, boolean verified) throws SQLException {
-		Savepoint save = this.connection.setSavepoint();
+	public int setVerified(String username, boolean verified) throws SQLException {
+		Connection connection = borrowConnection();
+		PreparedStatement updateVerifiedQuery = null;
+		Savepoint save = null;
+		int retval;
 		try {
-			this.updateVerifiedQuery.setBoolean(1, verified);
-			this.updateVerifiedQuery.setString(2, username);
-			return this.updateVerifiedQuery.executeUpdate();
+			save = connection.setSavepoint();
+			updateVerifiedQuery = connection.prepareStatement(UPDATE_VERIFIED_SQL);
+			updateVerifiedQuery.setBoolean(1, verified);
+			updateVerifiedQuery.setString(2, username);
+			retval = updateVerifiedQuery.executeUpdate();
 		} catch(SQLException ex) {
 			if (save != null) {
 				try {
@@ -295,23 +346,37 @@ public class UserDb {
 			}
 			throw(ex);
 		} finally {
-			if (save != null) {
-				this.connection.commit();
+			try {
+				if (updateVerifiedQuery != null) {
+					updateVerifiedQuery.close();
+				}
+				if (save != null) {
+					connection.commit();
+				}
+			} finally {
+				connection.close();
 			}
 		}
+		UserCache.setVerified(username, verified);
+		return retval;
 	}
 
 	/**
 	 * Update all fields in the user with the username user.username
 	 * @param user
+	 * @param emails Emails added to the email outbox in the same transaction as the update
 	 * @throws SQLException 
 	 * @throws InvalidUserException 
 	 */
-	public synchronized void updateUser(User user) throws SQLException, InvalidUserException {
+	public void updateUser(User user, EmailMessage... emails) throws SQLException, InvalidUserException {
 		if (user == null || user.getUsername() == null || user.getUsername().trim().isEmpty()) {
 			throw(new InvalidUserException("Can not update user.  No username specified")); //$NON-NLS-1$
 		}
+		Connection connection = borrowConnection();
+		PreparedStatement updateUserQuery = null;
+		int count;
 		try {
+			updateUserQuery = connection.prepareStatement(UPDATE_USER_SQL);
 			updateUserQuery.setString(1, user.getPasswordToken());
 			updateUserQuery.setString(2, user.getName());
 			updateUserQuery.setString(3, user.getAddress());
@@ -330,12 +395,32 @@ public class UserDb {
 				updateUserQuery.setNull(13, java.sql.Types.VARCHAR);
 			}
 			updateUserQuery.setString(14, user.getUsername());
-			int count = updateUserQuery.executeUpdate();
-			if (count != 1) {
-				logger.warn("Unexpected count result from update user query.  Expected 1, found "+String.valueOf(count)); //$NON-NLS-1$
+			count = updateUserQuery.executeUpdate();
+			EmailOutboxDao.enqueue(connection, emails);
+			connection.commit();
+		} catch(SQLException ex) {
+			try {
+				connection.rollback();
+			} catch (SQLException ex2) {
+				logger.error("Error rolling back transaction",ex2); //$NON-NLS-1$
 			}
+			throw(ex);
 		} finally {
-			this.connection.commit();
+			try {
+				if (updateUserQuery != null) {
+					updateUserQuery.close();
+				}
+			} finally {
+				connection.close();
+			}
+		}
+		if (count != 1) {
+			logger.warn("Unexpected count result from update user query.  Expected 1, found "+String.valueOf(count)); //$NON-NLS-1$
+			UserCache.invalidate(user.getUsername());
+		} else {
+			UserCache.put(user);
 		}
+		// The name, organization and permissions are part of the public certified list
+		CertifiedSnapshot.markDirty();
 	}
 }
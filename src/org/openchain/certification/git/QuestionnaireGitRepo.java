@@ -49,6 +49,7 @@ import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.openchain.certification.I18N;
+import org.openchain.certification.utility.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -211,6 +212,7 @@ public class QuestionnaireGitRepo {
 			}
 		}
 		CloneCommand command = Git.cloneRepository();
+		long startNanos = System.nanoTime();
 		try {
 			Files.createDirectory(gitPath);
 			command.setDirectory(workingDir);
@@ -229,6 +231,8 @@ public class QuestionnaireGitRepo {
 		} catch (GitAPIException e) {
 			logger.error("API error accessing the github repository "+QUESTIONAIRRE_URI, e);  //$NON-NLS-1$
 			throw new GitRepoException(I18N.getMessage("QuestionnaireGitRepo.7", language), e); //$NON-NLS-1$
+		} finally {
+			MetricsRegistry.GIT_OPERATIONS.record("clone", System.nanoTime() - startNanos); //$NON-NLS-1$
 		}
 	}
 	
@@ -304,6 +308,7 @@ public class QuestionnaireGitRepo {
 	 * @throws GitRepoException 
 	 */
 	public synchronized void refresh(String language) throws GitRepoException {
+		long startNanos = System.nanoTime();
 		try {
 			String fullBranch = repo.getFullBranch();
 			if (fullBranch == null || !fullBranch.startsWith("refs/")) {  //$NON-NLS-1$
@@ -347,6 +352,8 @@ public class QuestionnaireGitRepo {
 		} catch (IOException e) {
 			logger.error("I/O error refreshing repo",e);  //$NON-NLS-1$
 			throw new GitRepoException(I18N.getMessage("QuestionnaireGitRepo.20", language)); //$NON-NLS-1$
+		} finally {
+			MetricsRegistry.GIT_OPERATIONS.record("pull", System.nanoTime() - startNanos); //$NON-NLS-1$
 		}
 	}
 	
@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+/**
+ * Answer key compiled from a survey used to score survey responses.
+ *
+ * For each top level question the key holds a bit set of the packed answer codes
+ * (see <code>CompactAnswerMap</code>) which are correct for the question.  Checking an answer
+ * stored in a <code>CompactAnswerMap</code> is a shift and mask of the packed answer.  Questions
+ * with subquestions also hold the ordinals and correct answer codes of the subquestions along
+ * with the minimum number of valid subquestion answers.
+ *
+ * Questions of types the key does not know how to compile are scored by calling
+ * <code>Question.validate</code>.  Answers in other maps are packed one at a time.
+ * The results are the same as <code>Submission.calcScore</code>, <code>calcPercentComplete</code>
+ * and <code>calcNumAnswered</code> computed from the survey questions.
+ * @author Gary O'Neall
+ *
+ */
+public class AnswerKey {
+
+	/**
+	 * Index into the array returned by <code>score</code> for the percent of questions answered correctly
+	 */
+	public static final int SCORE = 0;
+	/**
+	 * Index into the array returned by <code>score</code> for the percent of questions answered
+	 */
+	public static final int PERCENT_COMPLETE = 1;
+	/**
+	 * Index into the array returned by <code>score</code> for the number of questions answered
+	 */
+	public static final int NUM_ANSWERED = 2;
+
+	/**
+	 * Correct answer codes for a question which must be scored using <code>Question.validate</code>
+	 */
+	private static final long NOT_COMPILED = 0;
+	private static final int NO_SUBQUESTIONS = -1;
+	private static final int[] NO_CHILDREN = new int[0];
+	private static final long[] NO_CHILD_CODES = new long[0];
+
+	private QuestionIndex index;
+	/**
+	 * Top level questions in the order they appear in the sections
+	 */
+	private Question[] questions;
+	/**
+	 * Ordinal for each top level question
+	 */
+	private int[] ordinals;
+	/**
+	 * Bit set of the correct packed answer codes for each top level question
+	 */
+	private long[] correctCodes;
+	/**
+	 * Minimum number of valid subquestion answers for each top level question or NO_SUBQUESTIONS
+	 */
+	private int[] minValidSubAnswers;
+	/**
+	 * Ordinals of the subquestions for each top level question
+	 */
+	private int[][] childOrdinals;
+	/**
+	 * Bit set of the correct packed answer codes for each subquestion
+	 */
+	private long[][] childCorrectCodes;
+	/**
+	 * True if all top level questions are in the index and can be scored from the packed answers
+	 */
+	private boolean allIndexed = true;
+
+	/**
+	 * @param survey Survey to compile the answer key for
+	 */
+	AnswerKey(Survey survey) {
+		this.index = survey.getQuestionIndex();
+		List<Question> topLevel = new ArrayList<Question>();
+		if (survey.getSections() != null) {
+			for (Section section:survey.getSections()) {
+				if (section.getQuestions() == null) {
+					continue;
+				}
+				for (Question question:section.getQuestions()) {
+					if (question.getSubQuestionOfNumber() == null) {
+						topLevel.add(question);	// we don't want to count subquestions
+					}
+				}
+			}
+		}
+		int numQuestions = topLevel.size();
+		questions = topLevel.toArray(new Question[numQuestions]);
+		ordinals = new int[numQuestions];
+		correctCodes = new long[numQuestions];
+		minValidSubAnswers = new int[numQuestions];
+		childOrdinals = new int[numQuestions][];
+		childCorrectCodes = new long[numQuestions][];
+		for (int i = 0; i < numQuestions; i++) {
+			Question question = questions[i];
+			ordinals[i] = index.getOrdinal(question.getNumber());
+			if (ordinals[i] < 0) {
+				allIndexed = false;
+			}
+			minValidSubAnswers[i] = NO_SUBQUESTIONS;
+			childOrdinals[i] = NO_CHILDREN;
+			childCorrectCodes[i] = NO_CHILD_CODES;
+			if (question.getClass() == SubQuestion.class) {
+				compileSubQuestion(i, (SubQuestion)question);
+			} else {
+				correctCodes[i] = compileYesNo(question);
+			}
+		}
+	}
+
+	/**
+	 * @param question
+	 * @return bit set of the correct packed answer codes for a yes/no question or NOT_COMPILED
+	 * if the question must be validated by calling <code>validate</code>
+	 */
+	private static long compileYesNo(Question question) {
+		if (question.getClass() != YesNoQuestion.class && question.getClass() != YesNoQuestionWithEvidence.class &&
+				question.getClass() != YesNoNotApplicableQuestion.class) {
+			return NOT_COMPILED;
+		}
+		YesNo correctAnswer = ((YesNoQuestion)question).getCorrectAnswer();
+		if (correctAnswer == null) {
+			return NOT_COMPILED;
+		}
+		long retval = 0;
+		if (correctAnswer == YesNo.Any) {
+			// Any answer is correct
+			for (int code = 1; code <= (CompactAnswerMap.TYPE_MASK | CompactAnswerMap.VALUE_MASK); code++) {
+				retval |= 1L << code;
+			}
+			return retval;
+		}
+		for (YesNo value:YesNo.values()) {
+			boolean correct;
+			if (correctAnswer == YesNo.YesNotApplicable) {
+				correct = value == YesNo.Yes || value == YesNo.NotApplicable;
+			} else if (correctAnswer == YesNo.NoNotApplicable) {
+				correct = value == YesNo.No || value == YesNo.NotApplicable;
+			} else {
+				correct = value == correctAnswer;
+			}
+			if (correct) {
+				retval |= 1L << (CompactAnswerMap.TYPE_YES_NO | (value.ordinal() + 1));
+				retval |= 1L << (CompactAnswerMap.TYPE_YES_NO_EVIDENCE | (value.ordinal() + 1));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Compile the subquestions of the top level question at position i
+	 * @param i
+	 * @param question
+	 */
+	private void compileSubQuestion(int i, SubQuestion question) {
+		if (ordinals[i] < 0) {
+			return;
+		}
+		Map<String, Question> subQuestions = new HashMap<String, Question>();
+		for (Question subQuestion:question.getAllSubquestions()) {
+			subQuestions.put(subQuestion.getNumber(), subQuestion);
+		}
+		// Only the subquestions in the index can be answered in a CompactAnswerMap
+		List<Integer> children = new ArrayList<Integer>();
+		List<Long> childCodes = new ArrayList<Long>();
+		for (int child:index.getChildren(ordinals[i])) {
+			Question subQuestion = subQuestions.get(index.getNumber(child));
+			if (subQuestion != null) {
+				long codes = compileYesNo(subQuestion);
+				if (codes == NOT_COMPILED) {
+					return;	// validate the question using the answer objects
+				}
+				children.add(child);
+				childCodes.add(codes);
+			}
+		}
+		childOrdinals[i] = new int[children.size()];
+		childCorrectCodes[i] = new long[children.size()];
+		for (int j = 0; j < children.size(); j++) {
+			childOrdinals[i][j] = children.get(j);
+			childCorrectCodes[i][j] = childCodes.get(j);
+		}
+		minValidSubAnswers[i] = question.getMinNumberValidatedAnswers();
+		correctCodes[i] = 1L << CompactAnswerMap.TYPE_SUBQUESTION;
+	}
+
+	/**
+	 * @return number of top level questions
+	 */
+	public int getNumQuestions() {
+		return questions.length;
+	}
+
+	/**
+	 * @param answers Map of question number to answer
+	 * @return array of the score, percent complete and number of questions answered indexed by
+	 * SCORE, PERCENT_COMPLETE and NUM_ANSWERED
+	 */
+	public int[] score(Map<String, Answer> answers) {
+		int numAnswered = 0;
+		int numCorrect = 0;
+		if (allIndexed && answers instanceof CompactAnswerMap && ((CompactAnswerMap)answers).getQuestionIndex() == index &&
+				!((CompactAnswerMap)answers).hasOtherAnswers()) {
+			byte[] packed = ((CompactAnswerMap)answers).getPackedAnswers();
+			for (int i = 0; i < questions.length; i++) {
+				int code = packed[ordinals[i]];
+				if (code == CompactAnswerMap.NO_ANSWER) {
+					continue;
+				}
+				numAnswered++;
+				if (correctCodes[i] == NOT_COMPILED) {
+					if (questions[i].validate(answers.get(questions[i].getNumber()))) {
+						numCorrect++;
+					}
+				} else if ((correctCodes[i] >>> code & 1L) != 0 &&
+						(minValidSubAnswers[i] == NO_SUBQUESTIONS || countValidSubAnswers(i, packed) >= minValidSubAnswers[i])) {
+					numCorrect++;
+				}
+			}
+		} else {
+			for (int i = 0; i < questions.length; i++) {
+				Answer answer = answers.get(questions[i].getNumber());
+				if (answer == null) {
+					continue;
+				}
+				numAnswered++;
+				int code = CompactAnswerMap.pack(answer);
+				boolean correct;
+				if (correctCodes[i] == NOT_COMPILED || minValidSubAnswers[i] != NO_SUBQUESTIONS ||
+						code == CompactAnswerMap.NO_ANSWER) {
+					// The subanswers of answers not in a compact map may not match the answers in the map
+					correct = questions[i].validate(answer);
+				} else {
+					correct = (correctCodes[i] >>> code & 1L) != 0;
+				}
+				if (correct) {
+					numCorrect++;
+				}
+			}
+		}
+		int[] retval = new int[3];
+		retval[NUM_ANSWERED] = numAnswered;
+		if (questions.length == 0) {
+			retval[SCORE] = 100;
+			retval[PERCENT_COMPLETE] = 100;
+		} else {
+			retval[SCORE] = (numCorrect * 100) / questions.length;
+			retval[PERCENT_COMPLETE] = (numAnswered * 100) / questions.length;
+		}
+		return retval;
+	}
+
+	/**
+	 * @param i position of the top level question
+	 * @param packed packed answers
+	 * @return number of correct answers to the subquestions of the question
+	 */
+	private int countValidSubAnswers(int i, byte[] packed) {
+		int retval = 0;
+		int[] children = childOrdinals[i];
+		long[] codes = childCorrectCodes[i];
+		for (int j = 0; j < children.length; j++) {
+			retval += (int)(codes[j] >>> packed[children[j]] & 1L);
+		}
+		return retval;
+	}
+
+	/**
+	 * Score a batch of responses to the survey
+	 * @param responses List of maps of question number to answer
+	 * @return array of scores in the same order as the responses - see <code>score</code>
+	 */
+	public int[][] scoreAll(List<Map<String, Answer>> responses) {
+		int[][] retval = new int[responses.size()][];
+		int i = 0;
+		for (Map<String, Answer> answers:responses) {
+			retval[i++] = score(answers);
+		}
+		return retval;
+	}
+}
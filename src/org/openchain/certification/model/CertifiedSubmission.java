@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+/**
+ * Public summary of an approved submission.  Only holds the information
+ * which can be shown to anyone - the user only contains non-private information
+ * (see <code>User.createNonPrivateInfo</code>).
+ * @author Gary O'Neall
+ *
+ */
+public class CertifiedSubmission {
+
+	/**
+	 * Non-private information for the user who submitted the questionnaire
+	 */
+	private User user;
+	private boolean submitted;
+	private boolean approved;
+	private boolean rejected;
+	private String specVersion;
+	/**
+	 * Score calculated by the number of correct answers divided by the total answers
+	 */
+	private int score;
+	/**
+	 * Percent questions which have been answered
+	 */
+	private int percentComplete;
+
+	public CertifiedSubmission(User user, boolean submitted, boolean approved,
+			boolean rejected, String specVersion, int score, int percentComplete) {
+		this.user = user;
+		this.submitted = submitted;
+		this.approved = approved;
+		this.rejected = rejected;
+		this.specVersion = specVersion;
+		this.score = score;
+		this.percentComplete = percentComplete;
+	}
+
+	/**
+	 * @return the non-private user information
+	 */
+	public User getUser() {
+		return user;
+	}
+
+	/**
+	 * @return the submitted
+	 */
+	public boolean isSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * @return the approved
+	 */
+	public boolean isApproved() {
+		return approved;
+	}
+
+	/**
+	 * @return the rejected
+	 */
+	public boolean isRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return the specVersion
+	 */
+	public String getSpecVersion() {
+		return specVersion;
+	}
+
+	/**
+	 * @return the score
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * @param score the score to set
+	 */
+	public void setScore(int score) {
+		this.score = score;
+	}
+
+	/**
+	 * @return the percentComplete
+	 */
+	public int getPercentComplete() {
+		return percentComplete;
+	}
+
+	/**
+	 * @param percentComplete the percentComplete to set
+	 */
+	public void setPercentComplete(int percentComplete) {
+		this.percentComplete = percentComplete;
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+/**
+ * Map of question number to answer which stores the answers in arrays indexed by the
+ * question ordinal in the survey rather than as answer objects.
+ *
+ * Each answer is packed into a single byte holding the type of answer and the yes/no value.
+ * Evidence strings are interned and all answers share the language of the map.  Answer objects
+ * are created when the answers are read, so changes made to an answer object returned by this
+ * map must be put back into the map.
+ * The sub-answers of a <code>SubQuestionAnswers</code> are the answers to the subquestions
+ * stored in this map.
+ *
+ * Answers for questions which are not in the survey or of an unknown type are stored as objects.
+ * @author Gary O'Neall
+ *
+ */
+public class CompactAnswerMap extends AbstractMap<String, Answer> {
+
+	static final byte NO_ANSWER = 0;
+	static final byte TYPE_MASK = 0x30;
+	static final byte TYPE_YES_NO = 0x10;
+	static final byte TYPE_YES_NO_EVIDENCE = 0x20;
+	static final byte TYPE_SUBQUESTION = 0x30;
+	/**
+	 * The yes/no value is stored as the YesNo ordinal + 1 so that 0 represents a null value
+	 */
+	static final byte VALUE_MASK = 0x0F;
+	private static final YesNo[] YES_NO_VALUES = YesNo.values();
+
+	private QuestionIndex ordinals;
+	private byte[] answers;
+	/**
+	 * Evidence indexed by question ordinal - only created when an answer with evidence is added
+	 */
+	private String[] evidence = null;
+	/**
+	 * Answers which can not be stored in the arrays
+	 */
+	private Map<String, Answer> otherAnswers = null;
+	private String language;
+	private int size = 0;
+
+	/**
+	 * @param survey Survey containing the questions for the answers
+	 * @param language tag in IETF RFC 5646 format
+	 */
+	public CompactAnswerMap(Survey survey, String language) {
+		this.ordinals = survey.getQuestionIndex();
+		this.answers = new byte[ordinals.size()];
+		this.language = language;
+	}
+
+	/**
+	 * @return the index of the survey questions used for the ordinals
+	 */
+	QuestionIndex getQuestionIndex() {
+		return ordinals;
+	}
+
+	/**
+	 * @return the packed answers indexed by question ordinal - must not be modified
+	 */
+	byte[] getPackedAnswers() {
+		return answers;
+	}
+
+	/**
+	 * @return true if any answers are stored as objects rather than packed
+	 */
+	boolean hasOtherAnswers() {
+		return otherAnswers != null && !otherAnswers.isEmpty();
+	}
+
+	/**
+	 * @param language tag in IETF RFC 5646 format for all answers
+	 */
+	public void setLanguage(String language) {
+		this.language = language;
+		if (otherAnswers != null) {
+			for (Answer answer:otherAnswers.values()) {
+				answer.setLanguage(language);
+			}
+		}
+	}
+
+	/**
+	 * @param answer
+	 * @return the packed answer or NO_ANSWER if the answer can not be packed
+	 */
+	static byte pack(Answer answer) {
+		byte type;
+		if (answer instanceof YesNoAnswerWithEvidence) {
+			type = TYPE_YES_NO_EVIDENCE;
+		} else if (answer instanceof YesNoAnswer) {
+			type = TYPE_YES_NO;
+		} else if (answer instanceof SubQuestionAnswers) {
+			return TYPE_SUBQUESTION;
+		} else {
+			return NO_ANSWER;
+		}
+		if (answer.getClass() != YesNoAnswer.class && answer.getClass() != YesNoAnswerWithEvidence.class) {
+			return NO_ANSWER;	// subclasses may contain additional information
+		}
+		YesNo value = ((YesNoAnswer)answer).getAnswer();
+		return (byte)(type | (value == null ? 0 : value.ordinal() + 1));
+	}
+
+	/**
+	 * @param ordinal
+	 * @return a new answer object for the answer stored at the ordinal or null if there is no answer
+	 */
+	private Answer unpack(int ordinal) {
+		byte packed = answers[ordinal];
+		if (packed == NO_ANSWER) {
+			return null;
+		}
+		int valueIndex = packed & VALUE_MASK;
+		YesNo value = valueIndex == 0 ? null : YES_NO_VALUES[valueIndex - 1];
+		switch (packed & TYPE_MASK) {
+		case TYPE_YES_NO: return new YesNoAnswer(language, value);
+		case TYPE_YES_NO_EVIDENCE: return new YesNoAnswerWithEvidence(language, value, evidence[ordinal]);
+		default:
+			SubQuestionAnswers retval = new SubQuestionAnswers(language);
+			for (int child:ordinals.getChildren(ordinal)) {
+				Answer subAnswer = unpack(child);
+				if (subAnswer != null) {
+					retval.addSubAnswer(ordinals.getNumber(child), subAnswer);
+				}
+			}
+			return retval;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size + (otherAnswers == null ? 0 : otherAnswers.size());
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		int ordinal = ordinals.getOrdinal((String)key);
+		if (ordinal >= 0 && answers[ordinal] != NO_ANSWER) {
+			return true;
+		}
+		return otherAnswers != null && otherAnswers.containsKey(key);
+	}
+
+	@Override
+	public Answer get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int ordinal = ordinals.getOrdinal((String)key);
+		if (ordinal >= 0 && answers[ordinal] != NO_ANSWER) {
+			return unpack(ordinal);
+		}
+		return otherAnswers == null ? null : otherAnswers.get(key);
+	}
+
+	@Override
+	public Answer put(String questionNumber, Answer answer) {
+		Answer retval = remove(questionNumber);
+		int ordinal = ordinals.getOrdinal(questionNumber);
+		byte packed = answer == null ? NO_ANSWER : pack(answer);
+		if (ordinal < 0 || packed == NO_ANSWER) {
+			if (otherAnswers == null) {
+				otherAnswers = new HashMap<String, Answer>();
+			}
+			otherAnswers.put(questionNumber, answer);
+			return retval;
+		}
+		answers[ordinal] = packed;
+		if ((packed & TYPE_MASK) == TYPE_YES_NO_EVIDENCE) {
+			if (evidence == null) {
+				evidence = new String[answers.length];
+			}
+			String answerEvidence = ((YesNoAnswerWithEvidence)answer).getEvidence();
+			evidence[ordinal] = answerEvidence == null ? null : answerEvidence.intern();
+		}
+		size++;
+		return retval;
+	}
+
+	@Override
+	public Answer remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int ordinal = ordinals.getOrdinal((String)key);
+		if (ordinal >= 0 && answers[ordinal] != NO_ANSWER) {
+			Answer retval = unpack(ordinal);
+			answers[ordinal] = NO_ANSWER;
+			if (evidence != null) {
+				evidence[ordinal] = null;
+			}
+			size--;
+			return retval;
+		}
+		return otherAnswers == null ? null : otherAnswers.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < answers.length; i++) {
+			answers[i] = NO_ANSWER;
+		}
+		evidence = null;
+		otherAnswers = null;
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<String, Answer>> entrySet() {
+		return new AbstractSet<Entry<String, Answer>>() {
+
+			@Override
+			public Iterator<Entry<String, Answer>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return CompactAnswerMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Iterates over the packed answers in ordinal order followed by the other answers
+	 */
+	private class EntryIterator implements Iterator<Entry<String, Answer>> {
+		private int nextOrdinal = -1;
+		private String lastKey = null;
+		private Iterator<Entry<String, Answer>> otherIterator = null;
+
+		EntryIterator() {
+			advance();
+		}
+
+		private void advance() {
+			nextOrdinal++;
+			while (nextOrdinal < answers.length && answers[nextOrdinal] == NO_ANSWER) {
+				nextOrdinal++;
+			}
+			if (nextOrdinal >= answers.length && otherIterator == null) {
+				// Copy the keys so that removing a packed answer does not effect the iteration
+				Map<String, Answer> others = otherAnswers == null ? new HashMap<String, Answer>() : new HashMap<String, Answer>(otherAnswers);
+				otherIterator = others.entrySet().iterator();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextOrdinal < answers.length || otherIterator.hasNext();
+		}
+
+		@Override
+		public Entry<String, Answer> next() {
+			if (nextOrdinal < answers.length) {
+				Entry<String, Answer> retval = new SimpleEntry<String, Answer>(ordinals.getNumber(nextOrdinal), unpack(nextOrdinal));
+				lastKey = retval.getKey();
+				advance();
+				return retval;
+			}
+			if (!otherIterator.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Entry<String, Answer> retval = otherIterator.next();
+			lastKey = retval.getKey();
+			return retval;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			CompactAnswerMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+/**
+ * An email to a single recipient with an HTML body
+ * @author Gary O'Neall
+ *
+ */
+public class EmailMessage {
+
+	private String fromEmail;
+	private String toEmail;
+	private String subject;
+	private String htmlBody;
+
+	/**
+	 * @param fromEmail Return email address
+	 * @param toEmail Recipient email address
+	 * @param subject Subject line
+	 * @param htmlBody Body of the email in HTML
+	 */
+	public EmailMessage(String fromEmail, String toEmail, String subject, String htmlBody) {
+		this.fromEmail = fromEmail;
+		this.toEmail = toEmail;
+		this.subject = subject;
+		this.htmlBody = htmlBody;
+	}
+
+	/**
+	 * @return the fromEmail
+	 */
+	public String getFromEmail() {
+		return fromEmail;
+	}
+
+	/**
+	 * @return the toEmail
+	 */
+	public String getToEmail() {
+		return toEmail;
+	}
+
+	/**
+	 * @return the subject
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * @return the htmlBody
+	 */
+	public String getHtmlBody() {
+		return htmlBody;
+	}
+}
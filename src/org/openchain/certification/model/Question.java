@@ -38,7 +38,18 @@ public abstract class Question implements Comparable<Question> {
 	protected String specVersion; 
 	transient static final Pattern NUMBER_PATTERN = Pattern.compile("(\\d+)(\\.\\d+)?(\\.\\d+)?"); //$NON-NLS-1$
 	transient static final Pattern NUM_ALPH_AROMAN_PATTERN = Pattern.compile("(\\d+)(\\.[a-z]+)?(\\.[ivxlmcd]+)?"); //$NON-NLS-1$
+	transient static final long SORT_KEY_NOT_COMPUTED = 0;
+	/**
+	 * Sort key for question numbers with parts too large to pack
+	 */
+	transient static final long SORT_KEY_NOT_PACKED = -1;
+	transient static final long MAX_SORT_KEY_LEVEL1 = 0x7FFFFFFFL;
+	transient static final long MAX_SORT_KEY_LEVEL = 0xFFFFL;
 	transient private Matcher numberMatch;
+	/**
+	 * Packed representation of the question number used for sorting - see <code>computeSortKey()</code>
+	 */
+	transient private volatile long sortKey = SORT_KEY_NOT_COMPUTED;
 	private String[] specReference = new String[0];
 	private String language;
 	
@@ -72,6 +83,7 @@ public abstract class Question implements Comparable<Question> {
 		this.specVersion = specVersion;
 		this.language = language;
 		this.specReference = specRefs;
+		this.sortKey = computeSortKey();
 	}
 
 	/**
@@ -139,6 +151,7 @@ public abstract class Question implements Comparable<Question> {
 			throw(new QuestionException(I18N.getMessage("Question.6", language, number))); //$NON-NLS-1$
 		}
 		this.number = number;
+		this.sortKey = computeSortKey();
 	}
 	
 	public String getSubQuestionOfNumber() {
@@ -159,6 +172,7 @@ public abstract class Question implements Comparable<Question> {
 	 */
 	public void setSpecVersion(String specVersion) {
 		this.specVersion = specVersion;
+		this.sortKey = SORT_KEY_NOT_COMPUTED;	// the numbering system may have changed
 	}
 	
 	public Matcher getNumberMatch() {
@@ -179,13 +193,73 @@ public abstract class Question implements Comparable<Question> {
 		}
 	}
 	
+	/**
+	 * Compute a key which sorts in the same order as the question number.  The key holds
+	 * each level of the number plus one (zero for a missing level) with the first level in
+	 * bits 32 through 62 and the second and third levels in 16 bits each.  The second and third
+	 * levels are numeric for spec versions before 1.0.2 and alpha and roman numerals after.
+	 * @return the sort key or SORT_KEY_NOT_PACKED if a level of the number is too large to pack
+	 */
+	private long computeSortKey() {
+		if (this.numberMatch == null) {
+			// Questions created by deserialization do not have a number matcher
+			if (this.number == null || this.specVersion == null) {
+				return SORT_KEY_NOT_PACKED;
+			}
+			setNumberMatcher(this.number, this.specVersion);
+			if (!this.numberMatch.matches()) {
+				return SORT_KEY_NOT_PACKED;
+			}
+		}
+		boolean numeric = this.specVersion == null || this.specVersion.compareTo("1.0.2") < 0; //$NON-NLS-1$
+		try {
+			long level1 = Integer.parseInt(this.numberMatch.group(1)) + 1L;
+			long level2 = 0;
+			long level3 = 0;
+			if (this.numberMatch.groupCount() > 1 && this.numberMatch.group(2) != null) {
+				String part = this.numberMatch.group(2).substring(1);
+				level2 = (numeric ? Integer.parseInt(part) : alphaToInt(part)) + 1L;
+			}
+			if (this.numberMatch.groupCount() > 2 && this.numberMatch.group(3) != null) {
+				String part = this.numberMatch.group(3).substring(1);
+				level3 = (numeric ? Integer.parseInt(part) : romanToInt(part)) + 1L;
+			}
+			if (level1 > MAX_SORT_KEY_LEVEL1 || level2 < 0 || level2 > MAX_SORT_KEY_LEVEL ||
+					level3 < 0 || level3 > MAX_SORT_KEY_LEVEL) {
+				return SORT_KEY_NOT_PACKED;
+			}
+			return (level1 << 32) | (level2 << 16) | level3;
+		} catch (NumberFormatException ex) {
+			return SORT_KEY_NOT_PACKED;
+		}
+	}
+
+	/**
+	 * @return the packed sort key for the question number
+	 */
+	long getSortKey() {
+		long retval = this.sortKey;
+		if (retval == SORT_KEY_NOT_COMPUTED) {
+			retval = computeSortKey();
+			this.sortKey = retval;
+		}
+		return retval;
+	}
+	
 	@Override
 	public int compareTo(Question compare) {
-		int retval = this.specVersion.compareToIgnoreCase(compare.getSpecVersion());
-		if (retval != 0) {
-			return retval;
+		if (!this.specVersion.equals(compare.getSpecVersion())) {
+			int retval = this.specVersion.compareToIgnoreCase(compare.getSpecVersion());
+			if (retval != 0) {
+				return retval;
+			}
+		}
+		long key = getSortKey();
+		long compareKey = compare.getSortKey();
+		if (key != SORT_KEY_NOT_PACKED && compareKey != SORT_KEY_NOT_PACKED) {
+			return Long.compare(key, compareKey);
 		} else if (this.specVersion.compareTo("1.0.2") < 0) { //$NON-NLS-1$
-				return compareNumeric(compare);
+			return compareNumeric(compare);
 		} else {
 			return compareNumAlphaRoman(compare);
 		}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the questions in a survey.
+ *
+ * The questions are numbered with ordinals from 0 to size()-1 in section order and can be looked
+ * up by question number.  The subquestion relationships and the sorted order of the questions
+ * are precomputed.  The ordinals are also used to store answers in arrays rather than in maps
+ * keyed by the question number.
+ *
+ * The index reflects the structure of the survey at the time it was built - <code>Survey</code>
+ * builds a new index whenever the sections change.
+ * @author Gary O'Neall
+ *
+ */
+public class QuestionIndex {
+
+	private static final int[] NO_CHILDREN = new int[0];
+
+	private Question[] questions;
+	private Map<String, Integer> ordinals;
+	private Set<String> numbers;
+	/**
+	 * Ordinals of the subquestions of each question
+	 */
+	private int[][] children;
+	/**
+	 * Ordinal of the parent subquestion for each question or -1 if the question is not a subquestion
+	 */
+	private int[] parents;
+	/**
+	 * Questions in sort order - created on first use since prettified questions can not be compared
+	 */
+	private volatile List<Question> sortedQuestions = null;
+
+	/**
+	 * @param survey Survey containing the questions
+	 */
+	QuestionIndex(Survey survey) {
+		List<Question> questionList = new ArrayList<Question>();
+		ordinals = new HashMap<String, Integer>();
+		if (survey.getSections() != null) {
+			for (Section section:survey.getSections()) {
+				if (section.getQuestions() == null) {
+					continue;
+				}
+				for (Question question:section.getQuestions()) {
+					// The first question with a number is used to match the linear search this replaces
+					if (!ordinals.containsKey(question.getNumber())) {
+						ordinals.put(question.getNumber(), questionList.size());
+						questionList.add(question);
+					}
+				}
+			}
+		}
+		questions = questionList.toArray(new Question[questionList.size()]);
+		numbers = Collections.unmodifiableSet(ordinals.keySet());
+		parents = new int[questions.length];
+		int[] numChildren = new int[questions.length];
+		for (int i = 0; i < questions.length; i++) {
+			String parentNumber = questions[i].getSubQuestionOfNumber();
+			parents[i] = parentNumber == null ? -1 : getOrdinal(parentNumber);
+			if (parents[i] >= 0) {
+				numChildren[parents[i]]++;
+			}
+		}
+		children = new int[questions.length][];
+		for (int i = 0; i < questions.length; i++) {
+			children[i] = numChildren[i] == 0 ? NO_CHILDREN : new int[numChildren[i]];
+			numChildren[i] = 0;
+		}
+		for (int i = 0; i < questions.length; i++) {
+			if (parents[i] >= 0) {
+				children[parents[i]][numChildren[parents[i]]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * @return number of questions
+	 */
+	public int size() {
+		return questions.length;
+	}
+
+	/**
+	 * @param questionNumber
+	 * @return the ordinal for the question number or -1 if the question is not in the survey
+	 */
+	public int getOrdinal(String questionNumber) {
+		Integer retval = ordinals.get(questionNumber);
+		return retval == null ? -1 : retval;
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the question number for the ordinal
+	 */
+	public String getNumber(int ordinal) {
+		return questions[ordinal].getNumber();
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the question for the ordinal
+	 */
+	public Question getQuestion(int ordinal) {
+		return questions[ordinal];
+	}
+
+	/**
+	 * @param questionNumber
+	 * @return the question with the number or null if the question is not in the survey
+	 */
+	public Question getQuestion(String questionNumber) {
+		int ordinal = getOrdinal(questionNumber);
+		return ordinal < 0 ? null : questions[ordinal];
+	}
+
+	/**
+	 * @return unmodifiable set of all question numbers
+	 */
+	public Set<String> getQuestionNumbers() {
+		return numbers;
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the ordinal of the question this is a subquestion of or -1 if it is not a subquestion
+	 */
+	public int getParent(int ordinal) {
+		return parents[ordinal];
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the ordinals of all subquestions of the question - must not be modified
+	 */
+	public int[] getChildren(int ordinal) {
+		return children[ordinal];
+	}
+
+	/**
+	 * @return unmodifiable list of all questions in sort order
+	 */
+	public List<Question> getSortedQuestions() {
+		List<Question> retval = sortedQuestions;
+		if (retval == null) {
+			Question[] sorted = questions.clone();
+			Arrays.sort(sorted);
+			retval = Collections.unmodifiableList(Arrays.asList(sorted));
+			sortedQuestions = retval;
+		}
+		return retval;
+	}
+}
@@ -62,60 +62,37 @@ public class Submission {
 		this.submitted = response.isSubmitted();
 		this.approved = response.isApproved();
 		this.rejected = response.isRejected();
-		this.percentComplete = calcPercentComplete(response.getSurvey(), response.getResponses());
-		this.score = calcScore(response.getSurvey(), response.getResponses());
+		int[] scores = response.getSurvey().getAnswerKey().score(response.getResponses());
+		this.percentComplete = scores[AnswerKey.PERCENT_COMPLETE];
+		this.score = scores[AnswerKey.SCORE];
 		this.id = response.getId();
 		this.specVersion = response.getSpecVersion();
 	}
-	@SuppressWarnings("unused")
-	private int calcScore(Survey survey, Map<String, Answer> answers) {
-		int numQuestions = 0;
-		int numCorrectAnswers = 0;
-		int numIncorrectAnswers = 0;
-		int numNotAnswered = 0;
-		for (Section section:survey.getSections()) {
-			for (Question question:section.getQuestions()) {
-				if (question.getSubQuestionOfNumber() == null) {
-					numQuestions++ ;	// we don't want to count subquestions
-					Answer answer = answers.get(question.getNumber());
-					if (answer != null) {
-						if (question.validate(answer)) {
-							numCorrectAnswers++;
-						} else {
-							numIncorrectAnswers++;
-						}
-					} else {
-						numNotAnswered++;
-					}
-				}
-			}
-		}
-		if (numQuestions == 0) {
-			return 100;
-		} else {
-			return (numCorrectAnswers * 100) / numQuestions;
-		}
+	/**
+	 * @param survey Survey the answers are for
+	 * @param answers Map of question number to answer
+	 * @return Percent of the top level questions answered correctly
+	 */
+	public static int calcScore(Survey survey, Map<String, Answer> answers) {
+		return survey.getAnswerKey().score(answers)[AnswerKey.SCORE];
+	}
+	
+	/**
+	 * @param survey Survey the answers are for
+	 * @param answers Map of question number to answer
+	 * @return Number of top level questions which have been answered
+	 */
+	public static int calcNumAnswered(Survey survey, Map<String, Answer> answers) {
+		return survey.getAnswerKey().score(answers)[AnswerKey.NUM_ANSWERED];
 	}
 
-	private int calcPercentComplete(Survey survey, Map<String, Answer> answers) {
-		int numQuestions = 0;
-		int numAnswers = 0;
-		for (Section section:survey.getSections()) {
-			for (Question question:section.getQuestions()) {
-				if (question.getSubQuestionOfNumber() == null) {
-					numQuestions++ ;	// we don't want to count subquestions
-					Answer answer = answers.get(question.getNumber());
-					if (answer != null) {
-						numAnswers++;
-					}
-				}
-			}
-		}
-		if (numQuestions == 0) {
-			return 100;
-		} else {
-			return (numAnswers * 100) / numQuestions;
-		}
+	/**
+	 * @param survey Survey the answers are for
+	 * @param answers Map of question number to answer
+	 * @return Percent of the top level questions which have been answered
+	 */
+	public static int calcPercentComplete(Survey survey, Map<String, Answer> answers) {
+		return survey.getAnswerKey().score(answers)[AnswerKey.PERCENT_COMPLETE];
 	}
 
 	/**
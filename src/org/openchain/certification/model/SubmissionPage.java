@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.model;
+
+import java.util.List;
+
+/**
+ * One page of a submission list along with the total number of matching submissions
+ * so that the client can display the paging controls.
+ * @author Gary O'Neall
+ *
+ * @param <T> type of submission summary
+ */
+public class SubmissionPage<T> {
+	/**
+	 * Total number of submissions matching the filter
+	 */
+	private int total;
+	/**
+	 * Number of submissions skipped before this page
+	 */
+	private int offset;
+	/**
+	 * Maximum number of submissions requested for this page
+	 */
+	private int limit;
+	private List<T> submissions;
+	
+	public SubmissionPage(int total, int offset, int limit, List<T> submissions) {
+		this.total = total;
+		this.offset = offset;
+		this.limit = limit;
+		this.submissions = submissions;
+	}
+
+	/**
+	 * @return the total number of submissions matching the filter
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the submissions on this page
+	 */
+	public List<T> getSubmissions() {
+		return submissions;
+	}
+}
@@ -47,6 +47,8 @@ public class Survey {
 	private String language;
 	private List<Section> sections;
 	transient private Boolean compactAndPretty = null;	// Null indicates it has not been explicitly set
+	transient private volatile QuestionIndex questionIndex = null;
+	transient private volatile AnswerKey answerKey = null;
 	
 	public Survey(String specVersion, String language) {
 		this.specVersion = specVersion;
@@ -94,38 +96,50 @@ public class Survey {
 	 */
 	public void setSections(List<Section> sections) {
 		this.sections = sections;
+		this.questionIndex = null;
+		this.answerKey = null;
+	}
+	
+	/**
+	 * The index is built on first use and rebuilt after any change to the sections made through
+	 * <code>setSections</code>, <code>prettify</code> or <code>addInfoToSectionQuestions</code>
+	 * @return an index of all questions in the survey
+	 */
+	public QuestionIndex getQuestionIndex() {
+		QuestionIndex retval = questionIndex;
+		if (retval == null) {
+			retval = new QuestionIndex(this);
+			questionIndex = retval;
+		}
+		return retval;
 	}
 
 	/**
-	 * @return a set of all question numbers in the survey
+	 * The answer key is compiled on first use and recompiled whenever the question index is rebuilt
+	 * @return the answer key used to score responses to the survey
 	 */
-	public Set<String> getQuestionNumbers() {
-		HashSet<String> retval = new HashSet<String>();
-		if (sections != null) {
-			for (Section section:sections) {
-				List<Question> questions = section.getQuestions();
-				for (Question question:questions) {
-					retval.add(question.getNumber());
-				}
-			}
+	public AnswerKey getAnswerKey() {
+		AnswerKey retval = answerKey;
+		if (retval == null) {
+			retval = new AnswerKey(this);
+			answerKey = retval;
 		}
 		return retval;
 	}
 
+	/**
+	 * @return an unmodifiable set of all question numbers in the survey
+	 */
+	public Set<String> getQuestionNumbers() {
+		return getQuestionIndex().getQuestionNumbers();
+	}
+
+	/**
+	 * @param questionNumber
+	 * @return the question with the question number or null if it is not in the survey
+	 */
 	public Question getQuestion(String questionNumber) {
-		// TODO this is not the fastest, but it is accurate
-		if (sections == null) {
-			return null;
-		}
-		for (Section section:sections) {
-			List<Question> questions = section.getQuestions();
-			for (Question question:questions) {
-				if (Objects.equals(question.getNumber(), questionNumber)) {
-					return question;
-				}
-			}
-		}
-		return null;
+		return getQuestionIndex().getQuestion(questionNumber);
 	}
 
 	/**
@@ -155,11 +169,33 @@ public class Survey {
 		Survey retval = new Survey(this.specVersion, this.language);
 		if (sections != null) {
 			List<Section> clonedSections = new ArrayList<Section>();
+			Map<String, Question> clonedQuestions = new HashMap<String, Question>();
 			for (Section section:sections) {
-				clonedSections.add(section.clone());
+				Section clonedSection = section.clone();
+				clonedSections.add(clonedSection);
+				if (clonedSection.getQuestions() != null) {
+					for (Question question:clonedSection.getQuestions()) {
+						clonedQuestions.put(question.getNumber(), question);
+					}
+				}
+			}
+			// The cloned subquestions still refer to the original questions - replace them with the clones
+			for (Question question:clonedQuestions.values()) {
+				if (question instanceof SubQuestion) {
+					SubQuestion subQuestion = (SubQuestion)question;
+					for (Question original:new ArrayList<Question>(subQuestion.getAllSubquestions())) {
+						Question clone = clonedQuestions.get(original.getNumber());
+						if (clone == null) {
+							// Subquestion is not in any section (e.g. a prettified survey)
+							clone = original.clone();
+						}
+						subQuestion.addSubQuestion(clone);
+					}
+				}
 			}
 			retval.setSections(clonedSections);
 		}
+		retval.compactAndPretty = this.compactAndPretty;
 		return retval;
 	}
 	
@@ -200,6 +236,8 @@ public class Survey {
 			}
 		}
 		this.compactAndPretty = true;
+		this.questionIndex = null;
+		this.answerKey = null;
 	}
 	
 	/**
@@ -236,6 +274,8 @@ public class Survey {
 			}
 		}
 		this.compactAndPretty = false;
+		this.questionIndex = null;
+		this.answerKey = null;
 	}
 
 	/**
@@ -19,12 +19,10 @@ package org.openchain.certification.model;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Iterator;
-import java.util.Set;
 import java.util.TreeMap;
 
 import com.opencsv.CSVWriter;
@@ -130,18 +128,16 @@ public class SurveyResponse {
 	 */
 	public List<Question> invalidAnswers() {
 		List<Question> retval = new ArrayList<Question>();
-		Set<String> allQuestionNumbers = this.survey.getQuestionNumbers();
-		for (String questionNumber:allQuestionNumbers) {
-			Question question = this.survey.getQuestion(questionNumber);
+		// The index is in sort order, so the result is also sorted
+		for (Question question:this.survey.getQuestionIndex().getSortedQuestions()) {
 			if (question.getSubQuestionOfNumber() == null) {
 				// we ignore any subquestions since they will be covered by the parent
-				Answer answer = this.responses.get(questionNumber);
+				Answer answer = this.responses.get(question.getNumber());
 				if (answer == null || !question.validate(answer)) {
 					retval.add(question);
 				}
 			}
 		}
-		Collections.sort(retval);
 		return retval;
 	}
 	/**
@@ -222,8 +218,12 @@ public class SurveyResponse {
 	public void setLanguage(String language) {
 		this.language = language;
 		// set the language for any responses
-		for (Answer answer:this.responses.values()) {
-			answer.setLanguage(language);
+		if (this.responses instanceof CompactAnswerMap) {
+			((CompactAnswerMap)this.responses).setLanguage(language);
+		} else {
+			for (Answer answer:this.responses.values()) {
+				answer.setLanguage(language);
+			}
 		}
 	}
 	
@@ -239,4 +239,28 @@ public class User {
 	public boolean hasEmailPermission() {
 		return this.emailPermission;
 	}
+	
+	/**
+	 * @return a copy of this user which can be modified independently
+	 */
+	public User copy() {
+		User retval = new User();
+		retval.setUsername(username);
+		retval.setPasswordToken(passwordToken);
+		retval.setName(name);
+		retval.setAddress(address);
+		retval.setEmail(email);
+		retval.setVerified(verified);
+		retval.setPasswordReset(passwordReset);
+		retval.setAdmin(admin);
+		if (verificationExpirationDate != null) {
+			retval.setVerificationExpirationDate((Date)verificationExpirationDate.clone());
+		}
+		retval.setOrganization(organization);
+		retval.setLanguagePreference(languagePreference);
+		retval.setUuid(uuid);
+		retval.setNamePermission(namePermission);
+		retval.setEmailPermission(emailPermission);
+		return retval;
+	}
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+/**
+ * Circuit breaker protecting calls to an external service.
+ *
+ * After <code>failureThreshold</code> consecutive failures the circuit opens and calls are
+ * rejected without contacting the service for <code>openMillis</code>.  A single trial call
+ * is then allowed - if it succeeds the circuit closes, otherwise it opens again.
+ * @author Gary O'Neall
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {Closed, Open, HalfOpen};
+
+	private int failureThreshold;
+	private long openMillis;
+	private State state = State.Closed;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+
+	/**
+	 * @param failureThreshold Number of consecutive failures which open the circuit
+	 * @param openMillis Time in milliseconds the circuit stays open before a trial call is allowed
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("Circuit breaker failure threshold must be at least 1"); //$NON-NLS-1$
+		}
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Must be followed by a call to <code>recordSuccess</code> or <code>recordFailure</code> if true is returned
+	 * @return true if the call to the service may be made
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case Closed: return true;
+		case Open:
+			if (System.currentTimeMillis() - openedAt >= openMillis) {
+				state = State.HalfOpen;
+				return true;
+			}
+			return false;
+		default: return false;	// a trial call is already in progress
+		}
+	}
+
+	/**
+	 * Record a successful call to the service
+	 */
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		state = State.Closed;
+	}
+
+	/**
+	 * Record a failed call to the service
+	 */
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HalfOpen || consecutiveFailures >= failureThreshold) {
+			state = State.Open;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return the current state of the circuit
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+
+import org.openchain.certification.dbdao.EmailOutboxDao;
+import org.openchain.certification.dbdao.SurveyDatabase;
+import org.openchain.certification.model.EmailMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the emails in the email outbox in the background.
+ *
+ * The outbox is drained in batches whenever <code>wakeUp()</code> is called after emails are added
+ * and at a fixed poll interval to pick up retries and emails added by other servers.  Emails are
+ * sent through a single long lived <code>EmailTransport</code> no faster than the maximum send rate.
+ * Failed emails are retried with an exponential backoff until the maximum number of attempts is
+ * reached.  An email may be sent more than once if the server stops after sending the email but
+ * before it is marked sent.
+ *
+ * The following context parameters configure the dispatcher started by the servlet:
+ * <ul>
+ * <li>email_transport - class name of the <code>EmailTransport</code> (default SesEmailTransport)</li>
+ * <li>email_max_send_rate - emails per second (default the SES send quota)</li>
+ * <li>email_batch_size - emails claimed from the outbox at a time</li>
+ * <li>email_poll_interval_ms - time between checks of the outbox</li>
+ * <li>email_max_attempts - attempts before an email is abandoned</li>
+ * </ul>
+ * @author Gary O'Neall
+ *
+ */
+public class EmailDispatcher {
+
+	static final Logger logger = LoggerFactory.getLogger(EmailDispatcher.class);
+
+	static final String TRANSPORT_PARAM = "email_transport"; //$NON-NLS-1$
+	static final String MAX_SEND_RATE_PARAM = "email_max_send_rate"; //$NON-NLS-1$
+	static final String BATCH_SIZE_PARAM = "email_batch_size"; //$NON-NLS-1$
+	static final String POLL_INTERVAL_PARAM = "email_poll_interval_ms"; //$NON-NLS-1$
+	static final String MAX_ATTEMPTS_PARAM = "email_max_attempts"; //$NON-NLS-1$
+
+	/**
+	 * Send rate used if the rate is not configured and the transport does not report a quota - the SES sandbox rate
+	 */
+	public static final double DEFAULT_MAX_SEND_RATE = 1.0;
+	public static final int DEFAULT_BATCH_SIZE = 50;
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = 10000L;
+	public static final int DEFAULT_MAX_ATTEMPTS = 8;
+	public static final long DEFAULT_BACKOFF_MILLIS = 30000L;
+	public static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+	/**
+	 * Time a claimed email is reserved for this server before another server may send it
+	 */
+	public static final long LEASE_MILLIS = 5 * 60 * 1000L;
+
+	private static volatile EmailDispatcher instance = null;
+
+	private ServletConfig config;
+	private EmailTransport transport;
+	private long sendIntervalNanos;
+	private int batchSize;
+	private int maxAttempts;
+	private long backoffMillis;
+	private long nextSendNanos = 0;
+	/**
+	 * Executor for the background sending - null if not started or stopped
+	 */
+	private volatile ScheduledExecutorService executor = null;
+	/**
+	 * Held while draining the outbox so that only one drain runs at a time.  Separate from the
+	 * monitor of the dispatcher so that request threads waking up the dispatcher never wait for a drain.
+	 */
+	private final Object dispatchLock = new Object();
+	private final AtomicLong sentCount = new AtomicLong(0);
+	private final AtomicLong failedCount = new AtomicLong(0);
+
+	/**
+	 * @param config Servlet configuration used to connect to the database
+	 * @param transport Transport used to send the emails
+	 * @param maxSendRate Maximum emails sent per second - 0 or less for no limit
+	 * @param batchSize Number of emails claimed from the outbox at a time
+	 * @param maxAttempts Number of attempts before an email is abandoned
+	 * @param backoffMillis Delay before the first retry - doubled for each additional retry
+	 */
+	public EmailDispatcher(ServletConfig config, EmailTransport transport, double maxSendRate,
+			int batchSize, int maxAttempts, long backoffMillis) {
+		this.config = config;
+		this.transport = transport;
+		this.sendIntervalNanos = maxSendRate > 0 ? (long)(1000000000L / maxSendRate) : 0;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.backoffMillis = backoffMillis;
+	}
+
+	/**
+	 * Create and start the dispatcher configured by the servlet context parameters
+	 * @param config
+	 * @throws EmailUtilException if the transport can not be created
+	 */
+	public static synchronized void start(ServletConfig config) throws EmailUtilException {
+		if (instance != null) {
+			return;
+		}
+		EmailTransport transport = createTransport(config);
+		double maxSendRate = getDoubleParam(config, MAX_SEND_RATE_PARAM, 0);
+		if (maxSendRate <= 0) {
+			maxSendRate = transport.getMaxSendRate();
+			if (maxSendRate <= 0) {
+				maxSendRate = DEFAULT_MAX_SEND_RATE;
+			}
+		}
+		int batchSize = (int)getDoubleParam(config, BATCH_SIZE_PARAM, DEFAULT_BATCH_SIZE);
+		int maxAttempts = (int)getDoubleParam(config, MAX_ATTEMPTS_PARAM, DEFAULT_MAX_ATTEMPTS);
+		long pollInterval = (long)getDoubleParam(config, POLL_INTERVAL_PARAM, DEFAULT_POLL_INTERVAL_MILLIS);
+		instance = new EmailDispatcher(config, transport, maxSendRate, batchSize, maxAttempts, DEFAULT_BACKOFF_MILLIS);
+		instance.startPolling(pollInterval);
+		logger.info("Email dispatcher started using "+transport.getClass().getSimpleName()+" at "+ //$NON-NLS-1$ //$NON-NLS-2$
+				String.valueOf(maxSendRate)+" emails per second"); //$NON-NLS-1$
+	}
+
+	private static EmailTransport createTransport(ServletConfig config) throws EmailUtilException {
+		String transportClass = config.getServletContext().getInitParameter(TRANSPORT_PARAM);
+		if (transportClass == null || transportClass.trim().isEmpty()) {
+			return new SesEmailTransport(config);
+		}
+		try {
+			Class<?> clazz = Class.forName(transportClass.trim());
+			try {
+				return (EmailTransport)clazz.getConstructor(ServletConfig.class).newInstance(config);
+			} catch (NoSuchMethodException ex) {
+				return (EmailTransport)clazz.getDeclaredConstructor().newInstance();
+			}
+		} catch (Exception ex) {
+			logger.error("Unable to create the email transport "+transportClass,ex); //$NON-NLS-1$
+			throw(new EmailUtilException("Unable to create the email transport "+transportClass, ex)); //$NON-NLS-1$
+		}
+	}
+
+	private static double getDoubleParam(ServletConfig config, String paramName, double defaultValue) throws EmailUtilException {
+		String value = config.getServletContext().getInitParameter(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new EmailUtilException("Invalid value for email configuration parameter "+paramName+": "+value); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * @return the dispatcher started by <code>start</code> or null if it is not running
+	 */
+	public static EmailDispatcher getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Request the running dispatcher to send any pending emails.  Called after emails are committed to the outbox.
+	 */
+	public static void wakeUp() {
+		EmailDispatcher dispatcher = getInstance();
+		if (dispatcher != null) {
+			dispatcher.dispatchLater();
+		}
+	}
+
+	/**
+	 * Stop the running dispatcher and close its transport
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.stop();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Start draining the outbox in the background
+	 * @param pollIntervalMillis Time between checks of the outbox
+	 */
+	public synchronized void startPolling(long pollIntervalMillis) {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread retval = new Thread(r, "email-dispatcher"); //$NON-NLS-1$
+				retval.setDaemon(true);
+				return retval;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				dispatchAndLog();
+			}
+		}, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void dispatchLater() {
+		ScheduledExecutorService current = executor;
+		if (current != null) {
+			try {
+				current.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						dispatchAndLog();
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				// Stopped - the emails remain in the outbox
+			}
+		}
+	}
+
+	private void dispatchAndLog() {
+		try {
+			dispatch();
+		} catch (InterruptedException ex) {
+			// Stopped while draining - the unsent emails remain in the outbox
+			Thread.currentThread().interrupt();
+		} catch (Exception ex) {
+			logger.error("Error sending the emails in the outbox",ex); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Stop the background sending and close the transport
+	 */
+	public void stop() {
+		ScheduledExecutorService current;
+		synchronized(this) {
+			current = executor;
+			executor = null;
+		}
+		if (current != null) {
+			// Interrupts any drain in progress rather than waiting for the outbox to be empty
+			current.shutdownNow();
+		}
+		transport.close();
+	}
+
+	/**
+	 * Send all emails in the outbox which are due to be sent
+	 * @return the number of emails sent
+	 * @throws SQLException
+	 * @throws InterruptedException if interrupted while waiting for the send rate limit
+	 */
+	public int dispatch() throws SQLException, InterruptedException {
+		synchronized(dispatchLock) {
+			return drainOutbox();
+		}
+	}
+
+	private int drainOutbox() throws SQLException, InterruptedException {
+		int retval = 0;
+		Connection con = SurveyDatabase.createConnection(config);
+		try {
+			EmailOutboxDao dao = new EmailOutboxDao(con);
+			int abandoned = dao.removeAbandonedBodies(maxAttempts);
+			if (abandoned > 0) {
+				logger.error("Giving up sending "+String.valueOf(abandoned)+" emails whose last attempt did not complete"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			Map<Long, EmailMessage> batch = dao.claimBatch(batchSize, LEASE_MILLIS, maxAttempts);
+			while (!batch.isEmpty()) {
+				for (Entry<Long, EmailMessage> entry:batch.entrySet()) {
+					waitForSendRate();
+					EmailMessage email = entry.getValue();
+					try {
+						transport.send(email);
+						dao.markSent(entry.getKey());
+						sentCount.incrementAndGet();
+						retval++;
+						logger.info("Email sent to "+email.getToEmail()+": "+email.getSubject()); //$NON-NLS-1$ //$NON-NLS-2$
+					} catch (Exception ex) {
+						failedCount.incrementAndGet();
+						int attempts = dao.markFailed(entry.getKey(), String.valueOf(ex.getMessage()), backoffMillis, MAX_BACKOFF_MILLIS, maxAttempts);
+						if (attempts >= maxAttempts) {
+							logger.error("Giving up sending email to "+email.getToEmail()+" after "+ //$NON-NLS-1$ //$NON-NLS-2$
+									String.valueOf(attempts)+" attempts",ex); //$NON-NLS-1$
+						} else {
+							logger.warn("Email send to "+email.getToEmail()+" failed - will retry",ex); //$NON-NLS-1$ //$NON-NLS-2$
+						}
+					}
+				}
+				if (batch.size() < batchSize) {
+					break;
+				}
+				batch = dao.claimBatch(batchSize, LEASE_MILLIS, maxAttempts);
+			}
+		} finally {
+			con.close();
+		}
+		return retval;
+	}
+
+	/**
+	 * Wait until the next email can be sent without exceeding the maximum send rate
+	 * @throws InterruptedException
+	 */
+	private void waitForSendRate() throws InterruptedException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException();
+		}
+		if (sendIntervalNanos <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (nextSendNanos - now > 0) {
+			TimeUnit.NANOSECONDS.sleep(nextSendNanos - now);
+			now = nextSendNanos;
+		}
+		nextSendNanos = now + sendIntervalNanos;
+	}
+
+	/**
+	 * @return number of emails sent by this dispatcher
+	 */
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * @return number of failed attempts to send emails by this dispatcher
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return number of emails in the outbox which have not been sent and will be attempted again
+	 * @throws SQLException
+	 */
+	public int getQueueDepth() throws SQLException {
+		// Not synchronized so that the depth can be read while a batch is being sent
+		Connection con = SurveyDatabase.createConnection(config);
+		try {
+			return new EmailOutboxDao(con).countPending(maxAttempts);
+		} finally {
+			con.close();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import org.openchain.certification.model.EmailMessage;
+
+/**
+ * Transport used by the <code>EmailDispatcher</code> to deliver emails
+ * @author Gary O'Neall
+ *
+ */
+public interface EmailTransport {
+
+	/**
+	 * Send a single email
+	 * @param email
+	 * @throws EmailUtilException if the email could not be sent
+	 */
+	public void send(EmailMessage email) throws EmailUtilException;
+
+	/**
+	 * @return the maximum number of emails per second the transport accepts or 0 if it is not limited
+	 */
+	public double getMaxSendRate();
+
+	/**
+	 * Release any resources held by the transport
+	 */
+	public void close();
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in microseconds with log-linear buckets in the style of
+ * HdrHistogram.
+ *
+ * Values below 64 microseconds are counted exactly.  Larger values are counted in buckets
+ * covering 1/32 of a power of 2 so that percentiles are accurate to about 3%.  Values above
+ * MAX_VALUE are counted as MAX_VALUE.
+ * @author Gary O'Neall
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Values below this are counted in their own bucket
+	 */
+	private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+	/**
+	 * Largest value counted - about 19 hours in microseconds
+	 */
+	public static final long MAX_VALUE = (1L << 36) - 1;
+	private static final int BUCKET_COUNT = getIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalCount = new AtomicLong(0);
+	private final AtomicLong totalValue = new AtomicLong(0);
+	private final AtomicLong maxValue = new AtomicLong(0);
+
+	/**
+	 * @param value
+	 * @return index of the bucket counting the value
+	 */
+	static int getIndex(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+	}
+
+	/**
+	 * @param index
+	 * @return the lowest value counted in the bucket
+	 */
+	static long getLowestValue(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int offset = index - LINEAR_LIMIT;
+		int shift = offset / SUB_BUCKET_COUNT + 1;
+		return (long)(offset % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+	}
+
+	/**
+	 * @param index
+	 * @return the highest value counted in the bucket
+	 */
+	static long getHighestValue(int index) {
+		return index + 1 < BUCKET_COUNT ? getLowestValue(index + 1) - 1 : MAX_VALUE;
+	}
+
+	/**
+	 * Record a latency
+	 * @param micros latency in microseconds
+	 */
+	public void record(long micros) {
+		long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+		counts.incrementAndGet(getIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+
+	/**
+	 * @return number of latencies recorded
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * @return mean latency in microseconds or 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double)totalValue.get() / count;
+	}
+
+	/**
+	 * @return largest latency recorded in microseconds
+	 */
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/**
+	 * @return sum of the latencies recorded in microseconds
+	 */
+	public long getTotal() {
+		return totalValue.get();
+	}
+
+	/**
+	 * @param percentile percentile between 0 and 100
+	 * @return the latency in microseconds at or below which the percentile of the recorded latencies fall -
+	 * accurate to the bucket size
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = getCounts();
+		long count = 0;
+		for (long bucketCount:snapshot) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+		long cumulative = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= target) {
+				return Math.min(getHighestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @param upperBound latency in microseconds
+	 * @return number of recorded latencies less than or equal to the upper bound - accurate to the bucket size
+	 */
+	public long getCountAtOrBelow(long upperBound) {
+		long retval = 0;
+		int lastIndex = getIndex(Math.min(Math.max(upperBound, 0), MAX_VALUE));
+		for (int i = 0; i <= lastIndex; i++) {
+			retval += counts.get(i);
+		}
+		return retval;
+	}
+
+	/**
+	 * @return a copy of the bucket counts
+	 */
+	private long[] getCounts() {
+		long[] retval = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			retval[i] = counts.get(i);
+		}
+		return retval;
+	}
+}
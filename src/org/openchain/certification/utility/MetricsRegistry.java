@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide registry of the timers used to monitor the application.
+ *
+ * Each timer holds a latency histogram for every value of its label.  The timers are created
+ * when this class is loaded and are exported by the <code>MetricsServlet</code> in the Prometheus
+ * text format along with the statistics kept by the caches, the connection pool and the servlet.
+ * @author Gary O'Neall
+ *
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Latency histograms for the values of a label
+	 */
+	public static class Timer {
+		private String name;
+		private String help;
+		private String labelName;
+		private ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+		/**
+		 * @param name Name of the metric
+		 * @param help Description of the metric
+		 * @param labelName Name of the label or null if the timer has a single histogram
+		 */
+		Timer(String name, String help, String labelName) {
+			this.name = name;
+			this.help = help;
+			this.labelName = labelName;
+		}
+
+		/**
+		 * Record the time taken for an operation
+		 * @param labelValue Value of the label - ignored if the timer has no label
+		 * @param elapsedNanos Time taken in nanoseconds
+		 */
+		public void record(String labelValue, long elapsedNanos) {
+			String key = labelName == null || labelValue == null ? "" : labelValue; //$NON-NLS-1$
+			LatencyHistogram histogram = histograms.get(key);
+			if (histogram == null) {
+				LatencyHistogram newHistogram = new LatencyHistogram();
+				histogram = histograms.putIfAbsent(key, newHistogram);
+				if (histogram == null) {
+					histogram = newHistogram;
+				}
+			}
+			histogram.record(elapsedNanos / 1000);
+		}
+
+		/**
+		 * @return the name of the metric
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the description of the metric
+		 */
+		public String getHelp() {
+			return help;
+		}
+
+		/**
+		 * @return the name of the label or null if the timer has a single histogram
+		 */
+		public String getLabelName() {
+			return labelName;
+		}
+
+		/**
+		 * @return histograms in microseconds keyed by the label value sorted by label value
+		 */
+		public Map<String, LatencyHistogram> getHistograms() {
+			return new TreeMap<String, LatencyHistogram>(histograms);
+		}
+	}
+
+	private static final List<Timer> timers = new ArrayList<Timer>();
+
+	/**
+	 * Time taken to acquire a database connection including any wait for the pool
+	 */
+	public static final Timer DB_CONNECTION_ACQUIRE = addTimer("openchain_db_connection_acquire_seconds", //$NON-NLS-1$
+			"Time to acquire a database connection", null); //$NON-NLS-1$
+	/**
+	 * Time taken by DAO operations labeled by the class and method
+	 */
+	public static final Timer DAO_OPERATIONS = addTimer("openchain_dao_operation_seconds", //$NON-NLS-1$
+			"Time taken by database access operations", "operation"); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Time taken to clone or pull the questionnaire git repository
+	 */
+	public static final Timer GIT_OPERATIONS = addTimer("openchain_git_operation_seconds", //$NON-NLS-1$
+			"Time taken to clone or refresh the questionnaire git repository", "operation"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	private MetricsRegistry() {
+		// Static methods only
+	}
+
+	private static Timer addTimer(String name, String help, String labelName) {
+		Timer retval = new Timer(name, help, labelName);
+		timers.add(retval);
+		return retval;
+	}
+
+	/**
+	 * @return all timers in the order they were created
+	 */
+	public static List<Timer> getTimers() {
+		return Collections.unmodifiableList(timers);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2021 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes metrics in the Prometheus text exposition format version 0.0.4.
+ *
+ * Each metric family is started with <code>writeHeader</code> followed by its samples.  Latency
+ * histograms are converted from microseconds to seconds using the fixed bucket bounds in
+ * <code>BUCKET_BOUNDS</code>.  The bucket counts are accurate to the precision of the
+ * <code>LatencyHistogram</code> so a bucket may include values up to about 3% above its bound.
+ * @author Gary O'Neall
+ *
+ */
+public class PrometheusWriter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4"; //$NON-NLS-1$
+	public static final String COUNTER = "counter"; //$NON-NLS-1$
+	public static final String GAUGE = "gauge"; //$NON-NLS-1$
+	public static final String HISTOGRAM = "histogram"; //$NON-NLS-1$
+
+	/**
+	 * Upper bounds of the histogram buckets in seconds
+	 */
+	static final double[] BUCKET_BOUNDS = new double[] {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+		0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 30.0, 60.0};
+
+	private PrintWriter out;
+
+	/**
+	 * @param out Writer for the metrics - the line separator is always a newline
+	 */
+	public PrometheusWriter(PrintWriter out) {
+		this.out = out;
+	}
+
+	/**
+	 * Start a metric family
+	 * @param name Name of the metric
+	 * @param type COUNTER, GAUGE or HISTOGRAM
+	 * @param help Description of the metric
+	 */
+	public void writeHeader(String name, String type, String help) {
+		out.print("# HELP "); //$NON-NLS-1$
+		out.print(name);
+		out.print(' ');
+		out.print(help.replace("\\", "\\\\").replace("\n", "\\n")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		out.print('\n');
+		out.print("# TYPE "); //$NON-NLS-1$
+		out.print(name);
+		out.print(' ');
+		out.print(type);
+		out.print('\n');
+	}
+
+	/**
+	 * Write a sample without labels
+	 * @param name
+	 * @param value
+	 */
+	public void writeSample(String name, double value) {
+		writeSample(name, null, null, value);
+	}
+
+	/**
+	 * Write a sample
+	 * @param name
+	 * @param labelName Name of the label or null if there is no label
+	 * @param labelValue
+	 * @param value
+	 */
+	public void writeSample(String name, String labelName, String labelValue, double value) {
+		out.print(name);
+		if (labelName != null) {
+			out.print('{');
+			writeLabel(labelName, labelValue);
+			out.print('}');
+		}
+		out.print(' ');
+		out.print(formatValue(value));
+		out.print('\n');
+	}
+
+	/**
+	 * Write the bucket, sum and count samples for a latency histogram
+	 * @param name
+	 * @param labelName Name of the label or null if there is no label
+	 * @param labelValue
+	 * @param histogram Latencies in microseconds
+	 */
+	public void writeHistogram(String name, String labelName, String labelValue, LatencyHistogram histogram) {
+		for (double bound:BUCKET_BOUNDS) {
+			writeBucket(name, labelName, labelValue, formatValue(bound),
+					histogram.getCountAtOrBelow((long)(bound * 1000000)));
+		}
+		// The count is taken from the buckets so that it always matches the +Inf bucket
+		long count = histogram.getCountAtOrBelow(LatencyHistogram.MAX_VALUE);
+		writeBucket(name, labelName, labelValue, "+Inf", count); //$NON-NLS-1$
+		writeSample(name + "_sum", labelName, labelValue, histogram.getTotal() / 1000000.0); //$NON-NLS-1$
+		writeSample(name + "_count", labelName, labelValue, count); //$NON-NLS-1$
+	}
+
+	private void writeBucket(String name, String labelName, String labelValue, String bound, long count) {
+		out.print(name);
+		out.print("_bucket{"); //$NON-NLS-1$
+		if (labelName != null) {
+			writeLabel(labelName, labelValue);
+			out.print(',');
+		}
+		writeLabel("le", bound); //$NON-NLS-1$
+		out.print("} "); //$NON-NLS-1$
+		out.print(count);
+		out.print('\n');
+	}
+
+	private void writeLabel(String labelName, String labelValue) {
+		out.print(labelName);
+		out.print("=\""); //$NON-NLS-1$
+		out.print(escapeLabelValue(labelValue));
+		out.print('"');
+	}
+
+	/**
+	 * @param value
+	 * @return the label value with backslash, double quote and newline escaped
+	 */
+	static String escapeLabelValue(String value) {
+		if (value == null) {
+			return ""; //$NON-NLS-1$
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+
+	/**
+	 * @param value
+	 * @return the value formatted for the exposition format - whole numbers are formatted without a decimal point
+	 */
+	static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN"; //$NON-NLS-1$
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return String.valueOf((long)value);
+		}
+		return String.valueOf(value);
+	}
+}
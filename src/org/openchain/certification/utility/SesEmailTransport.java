@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+*/
+package org.openchain.certification.utility;
+
+import javax.servlet.ServletConfig;
+
+import org.openchain.certification.I18N;
+import org.openchain.certification.model.EmailMessage;
+import org.openchain.certification.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
+import com.amazonaws.services.simpleemail.model.Body;
+import com.amazonaws.services.simpleemail.model.Content;
+import com.amazonaws.services.simpleemail.model.Destination;
+import com.amazonaws.services.simpleemail.model.Message;
+import com.amazonaws.services.simpleemail.model.SendEmailRequest;
+
+/**
+ * Email transport using the Amazon SES email services.  A single client is created for
+ * the life of the transport.
+ * @author Gary O'Neall
+ *
+ */
+public class SesEmailTransport implements EmailTransport {
+
+	static final Logger logger = LoggerFactory.getLogger(SesEmailTransport.class);
+	private static final String ACCESS_KEY_VAR = "AWS_ACCESS_KEY_ID"; //$NON-NLS-1$
+	private static final String SECRET_KEY_VAR = "AWS_SECRET_ACCESS_KEY"; //$NON-NLS-1$
+
+	private AmazonSimpleEmailServiceClient client;
+
+	/**
+	 * @param config Servlet configuration containing the email_ses_region parameter
+	 * @throws EmailUtilException if the region is not configured
+	 */
+	public SesEmailTransport(ServletConfig config) throws EmailUtilException {
+		String regionName = config.getServletContext().getInitParameter("email_ses_region"); //$NON-NLS-1$
+		if (regionName == null || regionName.isEmpty()) {
+			logger.error("Missing email_ses_region parameter in the web.xml file"); //$NON-NLS-1$
+			throw(new EmailUtilException(I18N.getMessage("EmailUtility.4",User.DEFAULT_LANGUAGE))); //$NON-NLS-1$
+		}
+		String secretKey = null;
+		String accessKey = System.getenv(ACCESS_KEY_VAR);
+		if (accessKey == null) {
+			accessKey = System.getProperty(ACCESS_KEY_VAR);
+			if (accessKey != null) {
+				secretKey = System.getProperty(SECRET_KEY_VAR);
+			}
+		} else {
+			secretKey = System.getenv(SECRET_KEY_VAR);
+		}
+		if (accessKey != null) {
+			AWSCredentials credentials = new BasicAWSCredentials(accessKey, secretKey);
+			client = new AmazonSimpleEmailServiceClient(credentials);
+		} else {
+			client = new AmazonSimpleEmailServiceClient();
+		}
+		Region region = Region.getRegion(Regions.fromName(regionName));
+		client.setRegion(region);
+	}
+
+	@Override
+	public void send(EmailMessage email) throws EmailUtilException {
+		Destination destination = new Destination().withToAddresses(new String[]{email.getToEmail()});
+		Content subject = new Content().withData(email.getSubject());
+		Content bodyData = new Content().withData(email.getHtmlBody());
+		Body body = new Body();
+		body.setHtml(bodyData);
+		Message message = new Message().withSubject(subject).withBody(body);
+		SendEmailRequest request = new SendEmailRequest().withSource(email.getFromEmail()).withDestination(destination).withMessage(message);
+		try {
+			client.sendEmail(request);
+		} catch (Exception ex) {
+			throw(new EmailUtilException("SES send failed: "+ex.getMessage(), ex)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @return the maximum send rate from the SES send quota or 0 if the quota is not available
+	 */
+	@Override
+	public double getMaxSendRate() {
+		try {
+			return client.getSendQuota().getMaxSendRate();
+		} catch (Exception ex) {
+			logger.warn("Unable to get the SES send quota",ex); //$NON-NLS-1$
+			return 0;
+		}
+	}
+
+	@Override
+	public void close() {
+		client.shutdown();
+	}
+}
@@ -0,0 +1,65 @@
+package org.openchain.certification;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Compares the throughput of the cached <code>I18N.getMessage</code> with the previous
+ * implementation which looked up the bundle and parsed the template on every call.
+ * 
+ * Run with the resources directory on the classpath:
+ * java -cp ... org.openchain.certification.I18NBenchmark [iterations]
+ */
+public class I18NBenchmark {
+	
+	static final String KEY = "test.key2";
+	static final String[] LANGUAGES = new String[] {"en", "de", "ja", "de-CH"};
+	static final int WARMUP_ITERATIONS = 50000;
+	
+	/**
+	 * The implementation of getMessage before the message formats were cached
+	 */
+	static String uncachedGetMessage(String key, String language, Object... args) {
+		Locale locale = Locale.forLanguageTag(language);
+		ResourceBundle.Control utf8Control = new Utf8ResourceBundleControl();
+		ResourceBundle bundle = ResourceBundle.getBundle("messages", locale, utf8Control);
+		String template = bundle.getString(key);
+		MessageFormat mf = new MessageFormat(template, locale);
+		return mf.format(args, new StringBuffer(), null).toString();
+	}
+	
+	static long runUncached(int iterations) {
+		long chars = 0;
+		for (int i = 0; i < iterations; i++) {
+			chars += uncachedGetMessage(KEY, LANGUAGES[i % LANGUAGES.length], "arg", i).length();
+		}
+		return chars;
+	}
+	
+	static long runCached(int iterations) {
+		long chars = 0;
+		for (int i = 0; i < iterations; i++) {
+			chars += I18N.getMessage(KEY, LANGUAGES[i % LANGUAGES.length], "arg", i).length();
+		}
+		return chars;
+	}
+	
+	static void report(String name, int iterations, long nanos) {
+		System.out.println(String.format("%-10s %,12.0f ops/s  %,8.0f ns/op", name,
+				iterations * 1e9 / nanos, (double)nanos / iterations));
+	}
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		I18N.loadBundles();
+		long check = runUncached(WARMUP_ITERATIONS) + runCached(WARMUP_ITERATIONS);
+		long start = System.nanoTime();
+		check += runUncached(iterations);
+		report("uncached", iterations, System.nanoTime() - start);
+		start = System.nanoTime();
+		check += runCached(iterations);
+		report("cached", iterations, System.nanoTime() - start);
+		System.out.println("checksum " + check);
+	}
+}
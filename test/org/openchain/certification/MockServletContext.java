@@ -20,14 +20,22 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.EventListener;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.Filter;
+import javax.servlet.FilterRegistration;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.Servlet;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRegistration.Dynamic;
+import javax.servlet.SessionCookieConfig;
+import javax.servlet.SessionTrackingMode;
+import javax.servlet.descriptor.JspConfigDescriptor;
 
 /**
  * Fake servlet context for the unit tests
@@ -36,7 +44,7 @@ import javax.servlet.ServletException;
  */
 public class MockServletContext implements ServletContext {
 
-	static final Map<String, String> INIT_PARAMS = new HashMap<String, String>();
+	public static final Map<String, String> INIT_PARAMS = new HashMap<String, String>();
 	static {
 		INIT_PARAMS.put("openchaindb_dbname", TestHelper.TEST_DB_NAME);
 		INIT_PARAMS.put("openchaindb_user", TestHelper.TEST_DB_USER_NAME);
@@ -244,4 +252,220 @@ public class MockServletContext implements ServletContext {
 		throw(new RuntimeException("Not implemented"));
 	}
 
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getContextPath()
+	 */
+	@Override
+	public String getContextPath() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getEffectiveMajorVersion()
+	 */
+	@Override
+	public int getEffectiveMajorVersion() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getEffectiveMinorVersion()
+	 */
+	@Override
+	public int getEffectiveMinorVersion() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#setInitParameter(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public boolean setInitParameter(String arg0, String arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addServlet(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Dynamic addServlet(String arg0, String arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addServlet(java.lang.String, javax.servlet.Servlet)
+	 */
+	@Override
+	public Dynamic addServlet(String arg0, Servlet arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addServlet(java.lang.String, java.lang.Class)
+	 */
+	@Override
+	public Dynamic addServlet(String arg0, Class<? extends Servlet> arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#createServlet(java.lang.Class)
+	 */
+	@Override
+	public <T extends Servlet> T createServlet(Class<T> arg0) throws ServletException {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getServletRegistration(java.lang.String)
+	 */
+	@Override
+	public ServletRegistration getServletRegistration(String arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getServletRegistrations()
+	 */
+	@Override
+	public Map<String, ? extends ServletRegistration> getServletRegistrations() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addFilter(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public javax.servlet.FilterRegistration.Dynamic addFilter(String arg0, String arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addFilter(java.lang.String, javax.servlet.Filter)
+	 */
+	@Override
+	public javax.servlet.FilterRegistration.Dynamic addFilter(String arg0, Filter arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addFilter(java.lang.String, java.lang.Class)
+	 */
+	@Override
+	public javax.servlet.FilterRegistration.Dynamic addFilter(String arg0, Class<? extends Filter> arg1) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#createFilter(java.lang.Class)
+	 */
+	@Override
+	public <T extends Filter> T createFilter(Class<T> arg0) throws ServletException {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getFilterRegistration(java.lang.String)
+	 */
+	@Override
+	public FilterRegistration getFilterRegistration(String arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getFilterRegistrations()
+	 */
+	@Override
+	public Map<String, ? extends FilterRegistration> getFilterRegistrations() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getSessionCookieConfig()
+	 */
+	@Override
+	public SessionCookieConfig getSessionCookieConfig() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#setSessionTrackingModes(java.util.Set)
+	 */
+	@Override
+	public void setSessionTrackingModes(Set<SessionTrackingMode> arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getDefaultSessionTrackingModes()
+	 */
+	@Override
+	public Set<SessionTrackingMode> getDefaultSessionTrackingModes() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getEffectiveSessionTrackingModes()
+	 */
+	@Override
+	public Set<SessionTrackingMode> getEffectiveSessionTrackingModes() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addListener(java.lang.String)
+	 */
+	@Override
+	public void addListener(String arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addListener(java.util.EventListener)
+	 */
+	@Override
+	public <T extends EventListener> void addListener(T arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#addListener(java.lang.Class)
+	 */
+	@Override
+	public void addListener(Class<? extends EventListener> arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#createListener(java.lang.Class)
+	 */
+	@Override
+	public <T extends EventListener> T createListener(Class<T> arg0) throws ServletException {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getJspConfigDescriptor()
+	 */
+	@Override
+	public JspConfigDescriptor getJspConfigDescriptor() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#getClassLoader()
+	 */
+	@Override
+	public ClassLoader getClassLoader() {
+		throw(new RuntimeException("Not implemented"));
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContext#declareRoles(java.lang.String[])
+	 */
+	@Override
+	public void declareRoles(String... arg0) {
+		throw(new RuntimeException("Not implemented"));
+	}
+
 }
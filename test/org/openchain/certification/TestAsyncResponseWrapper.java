@@ -0,0 +1,99 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncResponseWrapper {
+	
+	StringWriter written;
+	ByteArrayOutputStream bytesWritten;
+	Map<String, Object> calls;
+	HttpServletResponse response;
+
+	@Before
+	public void setUp() throws Exception {
+		written = new StringWriter();
+		bytesWritten = new ByteArrayOutputStream();
+		calls = new HashMap<String, Object>();
+		final PrintWriter writer = new PrintWriter(written);
+		final ServletOutputStream out = new ServletOutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				bytesWritten.write(b);
+			}
+		};
+		response = (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), 
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getWriter")) {
+					return writer;
+				} else if (method.getName().equals("getOutputStream")) {
+					return out;
+				}
+				calls.put(method.getName(), args == null ? null : args[0]);
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		AsyncResponseWrapper wrapper = new AsyncResponseWrapper(response);
+		PrintWriter out = wrapper.getWriter();
+		assertTrue(out == wrapper.getWriter());
+		out.print("before");
+		out.flush();
+		assertEquals("before", written.toString());
+		assertTrue(wrapper.setCompleted());
+		assertFalse(wrapper.setCompleted());
+		out.print("after");
+		out.flush();
+		wrapper.getWriter().print("after");
+		assertEquals("before", written.toString());
+	}
+	
+	@Test
+	public void testOutputStream() throws Exception {
+		AsyncResponseWrapper wrapper = new AsyncResponseWrapper(response);
+		ServletOutputStream out = wrapper.getOutputStream();
+		out.write(new byte[] {1, 2});
+		assertEquals(2, bytesWritten.size());
+		wrapper.setCompleted();
+		out.write(new byte[] {3, 4});
+		out.write(5);
+		assertEquals(2, bytesWritten.size());
+	}
+	
+	@Test
+	public void testHeaders() throws Exception {
+		AsyncResponseWrapper wrapper = new AsyncResponseWrapper(response);
+		wrapper.setStatus(HttpServletResponse.SC_OK);
+		wrapper.setHeader("ETag", "\"1\"");
+		assertEquals(HttpServletResponse.SC_OK, calls.get("setStatus"));
+		assertEquals("ETag", calls.get("setHeader"));
+		calls.clear();
+		wrapper.setCompleted();
+		wrapper.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		wrapper.setHeader("ETag", "\"2\"");
+		wrapper.setContentType("text");
+		wrapper.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		assertTrue(calls.isEmpty());
+	}
+}
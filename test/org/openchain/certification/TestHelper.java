@@ -3,9 +3,28 @@ package org.openchain.certification;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletConfig;
 
+import org.openchain.certification.dbdao.CertifiedSnapshot;
+import org.openchain.certification.dbdao.QuestionIdCache;
+import org.openchain.certification.dbdao.SchemaMigrator;
+import org.openchain.certification.dbdao.SpecCatalog;
+import org.openchain.certification.dbdao.SurveyCache;
+import org.openchain.certification.dbdao.UserCache;
+import org.openchain.certification.model.Question;
+import org.openchain.certification.model.QuestionException;
+import org.openchain.certification.model.Section;
+import org.openchain.certification.model.SubQuestion;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.YesNoNotApplicableQuestion;
+import org.openchain.certification.model.YesNoQuestion;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+import org.openchain.certification.model.YesNoQuestionWithEvidence;
 import org.postgresql.ds.PGSimpleDataSource;
 
 public class TestHelper {
@@ -25,6 +44,8 @@ public class TestHelper {
 	}
 	
 	static final ServletConfig TEST_SERVLET_CONFIG = new MockServletConfig();
+	
+	private static boolean schemaMigrated = false;
 
 	public static Connection getConnection() throws SQLException {
 		return dataSource.getConnection();
@@ -40,10 +61,20 @@ public class TestHelper {
 	 * @throws SQLException 
 	 */
 	public static void truncateDatabase(Connection con) throws SQLException {
+		if (!schemaMigrated) {
+			// Tables added by new migrations must exist before they can be truncated
+			new SchemaMigrator(con).migrate();
+			schemaMigrated = true;
+		}
 		Statement stmt = null;
 		try {
 			stmt = con.createStatement();
-			stmt.executeUpdate("truncate answer, survey_response, openchain_user, question, section, spec");
+			stmt.executeUpdate("truncate answer, survey_response, openchain_user, question, section, spec, email_outbox");
+			QuestionIdCache.invalidateAll();
+			SurveyCache.invalidateAll();
+			CertifiedSnapshot.invalidate();
+			SpecCatalog.invalidate();
+			UserCache.invalidateAll();
 		} finally {
 			if (stmt != null) {
 				stmt.close();
@@ -51,4 +82,89 @@ public class TestHelper {
 		}
 	}
 
+	/**
+	 * Builds surveys for tests.  Questions are added to the most recently added section.
+	 * <pre>
+	 * Survey survey = new TestHelper.SurveyBuilder("1.1", "en")
+	 * 		.section("G1", "Title")
+	 * 		.yesNo("1.a", "q1", YesNo.Yes)
+	 * 		.subQuestion("1.b", "q2", 1)
+	 * 		.yesNo("1.b.i", "q3", YesNo.No).subQuestionOf("1.b")
+	 * 		.build();
+	 * </pre>
+	 */
+	public static class SurveyBuilder {
+		private String specVersion;
+		private String language;
+		private List<Section> sections = new ArrayList<Section>();
+		private Section section = null;
+		private List<Question> questions = null;
+		private Question lastQuestion = null;
+		private Map<String, SubQuestion> subQuestions = new HashMap<String, SubQuestion>();
+
+		public SurveyBuilder(String specVersion, String language) {
+			this.specVersion = specVersion;
+			this.language = language;
+		}
+
+		public SurveyBuilder section(String name, String title) {
+			section = new Section(name, title, language);
+			questions = new ArrayList<Question>();
+			section.setQuestions(questions);
+			sections.add(section);
+			return this;
+		}
+
+		private SurveyBuilder add(Question question) {
+			if (section == null) {
+				throw new IllegalStateException("A section must be added before the questions");
+			}
+			questions.add(question);
+			lastQuestion = question;
+			return this;
+		}
+
+		public SurveyBuilder yesNo(String number, String text, YesNo correctAnswer) throws QuestionException {
+			return add(new YesNoQuestion(text, section.getName(), number, specVersion,
+					new String[] {"ref"}, language, correctAnswer));
+		}
+
+		public SurveyBuilder yesNoWithEvidence(String number, String text, YesNo correctAnswer, 
+				String evidencePrompt) throws QuestionException {
+			return add(new YesNoQuestionWithEvidence(text, section.getName(), number, specVersion,
+					new String[] {"ref"}, language, correctAnswer, evidencePrompt, null));
+		}
+
+		public SurveyBuilder yesNoNotApplicable(String number, String text, YesNo correctAnswer, 
+				String notApplicablePrompt) throws QuestionException {
+			return add(new YesNoNotApplicableQuestion(text, section.getName(), number, specVersion,
+					new String[] {"ref"}, language, correctAnswer, notApplicablePrompt));
+		}
+
+		public SurveyBuilder subQuestion(String number, String text, int minNumberValidatedAnswers) throws QuestionException {
+			SubQuestion subQuestion = new SubQuestion(text, section.getName(), number, specVersion,
+					new String[] {"ref"}, language, minNumberValidatedAnswers);
+			subQuestions.put(number, subQuestion);
+			return add(subQuestion);
+		}
+
+		/**
+		 * Make the most recently added question a subquestion
+		 * @param parentNumber Number of the parent question
+		 */
+		public SurveyBuilder subQuestionOf(String parentNumber) throws QuestionException {
+			lastQuestion.setSubQuestionOfNumber(parentNumber);
+			SubQuestion parent = subQuestions.get(parentNumber);
+			if (parent != null) {
+				parent.addSubQuestion(lastQuestion);
+			}
+			return this;
+		}
+
+		public Survey build() {
+			Survey survey = new Survey(specVersion, language);
+			survey.setSections(sections);
+			return survey;
+		}
+	}
 }
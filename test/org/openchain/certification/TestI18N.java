@@ -54,4 +54,23 @@ public class TestI18N {
 		Integer p2 = new Integer(7);
 		assertEquals(template1+p1+template2+"\""+p2+"\"", I18N.getMessage(TEST_KEY2, TEST_LANGUAGE, p1, p2));
 	}
+
+	@Test
+	public void testCachedMessage() {
+		String key = "CertificationServlet.7";
+		assertEquals("Unknown server request: a", I18N.getMessage(key, "en", "a"));
+		assertEquals("Unknown server request: b", I18N.getMessage(key, "en", "b"));
+		assertEquals("Unknown server request: b", I18N.getMessage(key, TEST_SWISS_GERMAN, "b"));
+		assertEquals(TEST_KEY1_GERMAN_VALUE, I18N.getMessage(TEST_KEY1, TEST_LANGUAGE));
+		assertEquals(TEST_KEY1_DEFAULT_VALUE, I18N.getMessage(TEST_KEY1, "en"));
+	}
+	
+	@Test
+	public void testLoadAndReload() {
+		int numLanguages = I18N.loadBundles();
+		assertTrue(numLanguages > 1);
+		assertTrue(I18N.reload() > 1);
+		assertEquals(TEST_KEY1_GERMAN_VALUE, I18N.getMessage(TEST_KEY1, TEST_LANGUAGE));
+		assertEquals(TEST_KEY1_DEFAULT_VALUE, I18N.getMessage(TEST_KEY1, null));
+	}
 }
@@ -0,0 +1,48 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.openchain.certification.utility.MetricsRegistry;
+
+public class TestMetricsServlet {
+
+	@Test
+	public void testWriteMetrics() {
+		RequestMetrics.getRequestMetrics().record("testMetricsRequest", 5000000L, true);
+		MetricsRegistry.DAO_OPERATIONS.record("TestDao.testOperation", 1000000L);
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		new MetricsServlet().writeMetrics(out);
+		out.flush();
+		String result = sw.toString();
+		assertTrue(result.contains("# TYPE openchain_requests_total counter\n"));
+		assertTrue(result.contains("openchain_requests_total{request=\"testMetricsRequest\"} 1\n"));
+		assertTrue(result.contains("openchain_request_errors_total{request=\"testMetricsRequest\"} 1\n"));
+		assertTrue(result.contains("openchain_request_duration_seconds_bucket{request=\"testMetricsRequest\",le=\"0.01\"} 1\n"));
+		assertTrue(result.contains("openchain_dao_operation_seconds_count{operation=\"TestDao.testOperation\"} 1\n"));
+		assertTrue(result.contains("# TYPE openchain_db_connection_acquire_seconds histogram\n"));
+		assertTrue(result.contains("openchain_cache_hits_total{cache=\"survey\"}"));
+		assertTrue(result.contains("openchain_user_sessions "));
+		assertTrue(result.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+		for (String line:result.split("\n")) {
+			assertTrue(line, line.startsWith("#") || line.matches("[a-z_]+(\\{.*\\})? [-+0-9.EInf]+"));
+		}
+	}
+
+	@Test
+	public void testIsAllowedAddress() {
+		MetricsServlet servlet = new MetricsServlet();
+		servlet.setAllowedAddresses(MetricsServlet.DEFAULT_ALLOWED_ADDRESSES);
+		assertFalse(servlet.isAllowedAddress("127.0.0.1", null));
+		servlet.setAllowedAddresses(" 127.0.0.1, 10.0.0.5 ,");
+		assertTrue(servlet.isAllowedAddress("127.0.0.1", null));
+		assertTrue(servlet.isAllowedAddress("10.0.0.5", null));
+		assertFalse(servlet.isAllowedAddress("10.0.0.6", null));
+		// Requests through the proxy all arrive from the proxy address
+		assertFalse(servlet.isAllowedAddress("127.0.0.1", "203.0.113.7"));
+	}
+}
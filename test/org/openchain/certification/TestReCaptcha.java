@@ -0,0 +1,183 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestReCaptcha {
+	
+	/**
+	 * Stub of the ReCaptcha verification service
+	 */
+	class StubHandler implements HttpHandler {
+		volatile int statusCode = 200;
+		volatile long delayMillis = 0;
+		volatile String lastRequest = null;
+		AtomicInteger requestCount = new AtomicInteger(0);
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+			InputStream in = exchange.getRequestBody();
+			ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int len;
+			while ((len = in.read(buf)) > 0) {
+				requestBody.write(buf, 0, len);
+			}
+			lastRequest = new String(requestBody.toByteArray(), StandardCharsets.UTF_8);
+			if (delayMillis > 0) {
+				try {
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			boolean success = lastRequest.contains("response=valid");
+			byte[] response = ("{\"success\": " + success + ", \"hostname\": \"localhost\"}").getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(statusCode, response.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(response);
+			out.close();
+		}
+	}
+	
+	HttpServer server;
+	StubHandler handler;
+
+	@Before
+	public void setUp() throws Exception {
+		handler = new StubHandler();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/siteverify", handler);
+		server.start();
+		MockServletContext.INIT_PARAMS.put(ReCaptcha.VERIFY_URL_PARAM, 
+				"http://localhost:" + server.getAddress().getPort() + "/siteverify");
+		MockServletContext.INIT_PARAMS.put(ReCaptcha.READ_TIMEOUT_PARAM, "500");
+		MockServletContext.INIT_PARAMS.put(ReCaptcha.FAILURE_THRESHOLD_PARAM, "2");
+		MockServletContext.INIT_PARAMS.put(ReCaptcha.OPEN_CIRCUIT_PARAM, "300");
+		ReCaptcha.configure(TestHelper.getTestServletConfig());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MockServletContext.INIT_PARAMS.remove(ReCaptcha.VERIFY_URL_PARAM);
+		MockServletContext.INIT_PARAMS.remove(ReCaptcha.READ_TIMEOUT_PARAM);
+		MockServletContext.INIT_PARAMS.remove(ReCaptcha.FAILURE_THRESHOLD_PARAM);
+		MockServletContext.INIT_PARAMS.remove(ReCaptcha.OPEN_CIRCUIT_PARAM);
+		MockServletContext.INIT_PARAMS.remove(ReCaptcha.FAIL_OPEN_PARAM);
+		ReCaptcha.configure(TestHelper.getTestServletConfig());
+		server.stop(0);
+	}
+
+	@Test
+	public void testVerify() throws ReCaptchaException {
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertTrue(handler.lastRequest.contains("response=valid-token"));
+		assertTrue(handler.lastRequest.contains("secret="));
+		assertFalse(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		assertFalse(ReCaptcha.verifyReCaptcha("", "user", "login", "en"));
+		assertFalse(ReCaptcha.verifyReCaptcha(null, "user", "login", "en"));
+		assertEquals(2, handler.requestCount.get());
+	}
+	
+	@Test
+	public void testEncodeResponse() throws ReCaptchaException {
+		assertFalse(ReCaptcha.verifyReCaptcha("a&b=c", "user", "login", "en"));
+		assertTrue(handler.lastRequest.contains("response=a%26b%3Dc"));
+	}
+	
+	@Test
+	public void testCache() throws ReCaptchaException {
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertEquals(1, handler.requestCount.get());
+		// failed verifications are not cached
+		assertFalse(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		assertFalse(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		assertEquals(3, handler.requestCount.get());
+	}
+	
+	@Test
+	public void testCacheNotReplayed() throws ReCaptchaException {
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		// a cached verification is only used for the same user and request type
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "other", "login", "en"));
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "signup", "en"));
+		assertEquals(3, handler.requestCount.get());
+		// and only once
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertEquals(3, handler.requestCount.get());
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertEquals(4, handler.requestCount.get());
+	}
+	
+	@Test
+	public void testTimeout() throws ReCaptchaException {
+		handler.delayMillis = 2000;
+		long start = System.currentTimeMillis();
+		try {
+			ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en");
+			fail("Expected timeout");
+		} catch (ReCaptchaException ex) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 1500);
+	}
+	
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		handler.statusCode = 500;
+		for (int i = 0; i < 2; i++) {
+			try {
+				ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en");
+				fail("Expected service error");
+			} catch (ReCaptchaException ex) {
+				// expected
+			}
+		}
+		assertEquals(2, handler.requestCount.get());
+		// Circuit is open - the service is not called
+		try {
+			ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en");
+			fail("Expected open circuit");
+		} catch (ReCaptchaException ex) {
+			// expected
+		}
+		assertEquals(2, handler.requestCount.get());
+		handler.statusCode = 200;
+		Thread.sleep(400);
+		assertTrue(ReCaptcha.verifyReCaptcha("valid-token", "user", "login", "en"));
+		assertEquals(3, handler.requestCount.get());
+	}
+	
+	@Test
+	public void testFailOpen() throws Exception {
+		MockServletContext.INIT_PARAMS.put(ReCaptcha.FAIL_OPEN_PARAM, "true");
+		ReCaptcha.configure(TestHelper.getTestServletConfig());
+		handler.statusCode = 503;
+		assertTrue(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		assertTrue(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		// open circuit also fails open without calling the service
+		assertTrue(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+		assertEquals(2, handler.requestCount.get());
+		// responses accepted without verification are not cached
+		handler.statusCode = 200;
+		Thread.sleep(400);
+		assertFalse(ReCaptcha.verifyReCaptcha("invalid-token", "user", "login", "en"));
+	}
+}
@@ -0,0 +1,107 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.RequestExecutors.Pool;
+
+public class TestRequestExecutors {
+	
+	RequestExecutors executors;
+	CountDownLatch release;
+
+	@Before
+	public void setUp() throws Exception {
+		MockServletContext.INIT_PARAMS.put("async_hashing_threads", "1");
+		MockServletContext.INIT_PARAMS.put("async_hashing_queue_depth", "2");
+		MockServletContext.INIT_PARAMS.put(RequestExecutors.RETRY_AFTER_PARAM, "7");
+		executors = new RequestExecutors(TestHelper.getTestServletConfig());
+		release = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		executors.shutdown();
+		MockServletContext.INIT_PARAMS.remove("async_hashing_threads");
+		MockServletContext.INIT_PARAMS.remove("async_hashing_queue_depth");
+		MockServletContext.INIT_PARAMS.remove(RequestExecutors.RETRY_AFTER_PARAM);
+	}
+	
+	private Runnable blockingHandler(final CountDownLatch started) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testQueueLimit() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		executors.execute(Pool.Hashing, blockingHandler(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(1, executors.getActiveCount(Pool.Hashing));
+		executors.execute(Pool.Hashing, blockingHandler(new CountDownLatch(1)));
+		executors.execute(Pool.Hashing, blockingHandler(new CountDownLatch(1)));
+		assertEquals(2, executors.getQueueDepth(Pool.Hashing));
+		try {
+			executors.execute(Pool.Hashing, blockingHandler(new CountDownLatch(1)));
+			fail("Expected the full queue to reject the request");
+		} catch (RejectedExecutionException ex) {
+			// expected
+		}
+		assertEquals(1, executors.getRejectedCount(Pool.Hashing));
+		assertEquals(7, executors.getRetryAfterSeconds());
+	}
+	
+	@Test
+	public void testSeparatePools() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		executors.execute(Pool.Hashing, blockingHandler(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executors.execute(Pool.Hashing, blockingHandler(new CountDownLatch(1)));
+		executors.execute(Pool.Hashing, blockingHandler(new CountDownLatch(1)));
+		// The saturated hashing pool does not delay database requests
+		final CountDownLatch databaseDone = new CountDownLatch(1);
+		executors.execute(Pool.Database, new Runnable() {
+
+			@Override
+			public void run() {
+				databaseDone.countDown();
+			}
+		});
+		assertTrue(databaseDone.await(5, TimeUnit.SECONDS));
+		assertEquals(0, executors.getRejectedCount(Pool.Database));
+	}
+	
+	@Test
+	public void testShutdown() {
+		executors.shutdown();
+		try {
+			executors.execute(Pool.Network, new Runnable() {
+
+				@Override
+				public void run() {
+					// not run
+				}
+			});
+			fail("Expected shut down executors to reject requests");
+		} catch (RejectedExecutionException ex) {
+			// expected
+		}
+	}
+}
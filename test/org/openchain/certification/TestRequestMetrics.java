@@ -0,0 +1,37 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openchain.certification.RequestMetrics.RequestSummary;
+
+public class TestRequestMetrics {
+
+	@Test
+	public void testRecord() {
+		RequestMetrics metrics = new RequestMetrics();
+		assertTrue(metrics.getSummaries().isEmpty());
+		metrics.record("updateAnswers", 2000000L, false);
+		metrics.record("updateAnswers", 4000000L, true);
+		metrics.record("getsurveyResponse", 10000000L, false);
+		Map<String, RequestSummary> summaries = metrics.getSummaries();
+		assertEquals(2, summaries.size());
+		Iterator<String> iter = summaries.keySet().iterator();
+		assertEquals("getsurveyResponse", iter.next());
+		assertEquals("updateAnswers", iter.next());
+		RequestSummary update = summaries.get("updateAnswers");
+		assertEquals(2, update.getCount());
+		assertEquals(1, update.getErrorCount());
+		assertEquals(3.0, update.getMeanMillis(), 0.001);
+		assertEquals(4.0, update.getMaxMillis(), 0.001);
+		assertEquals(2.0, update.getP50Millis(), 2.0 * 0.04);
+		assertEquals(4.0, update.getP99Millis(), 0.001);
+		RequestSummary get = summaries.get("getsurveyResponse");
+		assertEquals(1, get.getCount());
+		assertEquals(0, get.getErrorCount());
+		assertEquals(10.0, get.getP999Millis(), 0.001);
+	}
+}
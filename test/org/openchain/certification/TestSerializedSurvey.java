@@ -0,0 +1,81 @@
+package org.openchain.certification;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+import com.google.gson.Gson;
+
+public class TestSerializedSurvey {
+
+	private Survey createSurvey(String questionText) throws Exception {
+		return new TestHelper.SurveyBuilder("1.1", "en")
+				.section("G1", "Title")
+				.yesNo("1.a", questionText, YesNo.Yes)
+				.build();
+	}
+
+	@Test
+	public void testSerialize() throws Exception {
+		Gson gson = new Gson();
+		Survey survey = createSurvey("Question text é");
+		SerializedSurvey serialized = SerializedSurvey.getSerializedSurvey(survey, gson);
+		assertTrue(serialized == SerializedSurvey.getSerializedSurvey(survey, gson));
+		assertEquals(gson.toJson(survey), new String(serialized.getJson(), StandardCharsets.UTF_8));
+		GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(serialized.getGzipJson()));
+		ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int len;
+		while ((len = gzip.read(buf)) > 0) {
+			unzipped.write(buf, 0, len);
+		}
+		gzip.close();
+		assertArrayEquals(serialized.getJson(), unzipped.toByteArray());
+	}
+
+	@Test
+	public void testEtag() throws Exception {
+		Gson gson = new Gson();
+		SerializedSurvey serialized = SerializedSurvey.getSerializedSurvey(createSurvey("q1"), gson);
+		String etag = serialized.getEtag();
+		assertTrue(etag.startsWith("\"1.1-en-"));
+		assertTrue(etag.endsWith("\""));
+		assertEquals(etag, SerializedSurvey.getSerializedSurvey(createSurvey("q1"), gson).getEtag());
+		assertFalse(etag.equals(SerializedSurvey.getSerializedSurvey(createSurvey("q2"), gson).getEtag()));
+		assertTrue(serialized.matches(etag));
+		assertTrue(serialized.matches("\"other\", " + etag));
+		assertTrue(serialized.matches("W/" + etag));
+		assertTrue(serialized.matches("*"));
+		assertFalse(serialized.matches(null));
+		assertFalse(serialized.matches("\"other\""));
+		String gzipEtag = serialized.getGzipEtag();
+		assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", gzipEtag);
+		assertTrue(serialized.matches(gzipEtag));
+		assertTrue(serialized.matches("W/" + gzipEtag));
+	}
+
+	@Test
+	public void testAcceptsGzip() {
+		assertFalse(SerializedSurvey.acceptsGzip(null));
+		assertFalse(SerializedSurvey.acceptsGzip(""));
+		assertTrue(SerializedSurvey.acceptsGzip("gzip"));
+		assertTrue(SerializedSurvey.acceptsGzip("deflate, GZIP"));
+		assertTrue(SerializedSurvey.acceptsGzip("gzip;q=0.5, identity"));
+		assertTrue(SerializedSurvey.acceptsGzip("x-gzip"));
+		assertTrue(SerializedSurvey.acceptsGzip("*"));
+		assertFalse(SerializedSurvey.acceptsGzip("gzip;q=0"));
+		assertFalse(SerializedSurvey.acceptsGzip("gzip; q=0.000, deflate"));
+		assertFalse(SerializedSurvey.acceptsGzip("*, gzip;q=0"));
+		assertFalse(SerializedSurvey.acceptsGzip("*;q=0"));
+		assertFalse(SerializedSurvey.acceptsGzip("deflate, identity"));
+		assertFalse(SerializedSurvey.acceptsGzip("gzipx"));
+		assertFalse(SerializedSurvey.acceptsGzip("gzip;q=invalid"));
+	}
+}
@@ -0,0 +1,184 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.postgresql.ds.PGSimpleDataSource;
+
+public class TestConnectionPool {
+
+	PGSimpleDataSource dataSource;
+	ConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new PGSimpleDataSource();
+		dataSource.setDatabaseName(TestHelper.TEST_DB_NAME);
+		dataSource.setUser(TestHelper.TEST_DB_USER_NAME);
+		dataSource.setPassword(TestHelper.TEST_DB_PASSWORD);
+		dataSource.setServerName(TestHelper.TEST_DB_HOST);
+		dataSource.setPortNumber(TestHelper.TEST_DB_PORT);
+		pool = null;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	private int selectOne(Connection con) throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("select 1");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void testReuseConnections() throws SQLException {
+		pool = new ConnectionPool(dataSource, 1, 3, 1000, 60000, true, 0);
+		assertEquals(1, pool.getStatistics().getIdle());
+		for (int i = 0; i < 10; i++) {
+			Connection con = pool.getConnection();
+			assertEquals(1, selectOne(con));
+			assertEquals(1, pool.getStatistics().getActive());
+			con.close();
+		}
+		ConnectionPoolStatistics stats = pool.getStatistics();
+		assertEquals(1, stats.getConnectionsCreated());
+		assertEquals(10, stats.getBorrowCount());
+		assertEquals(0, stats.getActive());
+		assertEquals(1, stats.getIdle());
+	}
+
+	@Test
+	public void testClosedProxy() throws SQLException {
+		pool = new ConnectionPool(dataSource, 0, 1, 1000, 60000, true, 0);
+		Connection con = pool.getConnection();
+		con.close();
+		assertTrue(con.isClosed());
+		con.close();	// closing twice should not return the connection twice
+		try {
+			con.createStatement();
+			fail("Connection returned to the pool should not be usable");
+		} catch (SQLException ex) {
+			// expected
+		}
+		Connection con2 = pool.getConnection();
+		assertFalse(con2.isClosed());
+		assertEquals(1, selectOne(con2));
+		con2.close();
+		assertEquals(1, pool.getStatistics().getConnectionsCreated());
+	}
+
+	@Test
+	public void testAcquireTimeout() throws SQLException {
+		pool = new ConnectionPool(dataSource, 0, 2, 100, 60000, true, 0);
+		Connection con1 = pool.getConnection();
+		Connection con2 = pool.getConnection();
+		try {
+			pool.getConnection();
+			fail("Expected timeout on exhausted pool");
+		} catch (SQLException ex) {
+			// expected
+		}
+		ConnectionPoolStatistics stats = pool.getStatistics();
+		assertEquals(1, stats.getTimeoutCount());
+		assertEquals(1, stats.getWaitCount());
+		assertEquals(2, stats.getActive());
+		con1.close();
+		Connection con3 = pool.getConnection();
+		assertEquals(1, selectOne(con3));
+		con3.close();
+		con2.close();
+		assertEquals(2, pool.getStatistics().getConnectionsCreated());
+	}
+
+	@Test
+	public void testRollbackOnReturn() throws SQLException {
+		pool = new ConnectionPool(dataSource, 0, 1, 1000, 60000, true, 0);
+		Connection con = pool.getConnection();
+		con.setAutoCommit(false);
+		Statement stmt = con.createStatement();
+		stmt.execute("create temporary table pool_test (id integer)");
+		stmt.close();
+		con.close();
+		con = pool.getConnection();
+		try {
+			assertTrue(con.getAutoCommit());
+			stmt = con.createStatement();
+			try {
+				stmt.executeQuery("select * from pool_test");
+				fail("Uncommitted work should have been rolled back");
+			} catch (SQLException ex) {
+				// expected
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			con.close();
+		}
+	}
+
+	@Test
+	public void testValidateOnBorrow() throws SQLException {
+		pool = new ConnectionPool(dataSource, 0, 1, 1000, 60000, true, 0);
+		Connection con = pool.getConnection();
+		Statement stmt = con.createStatement();
+		// Kill the physical connection from the server side
+		try {
+			stmt.execute("select pg_terminate_backend(pg_backend_pid())");
+		} catch (SQLException ex) {
+			// expected - the connection is terminated
+		}
+		con.close();
+		con = pool.getConnection();
+		try {
+			assertEquals(1, selectOne(con));
+		} finally {
+			con.close();
+		}
+		assertEquals(2, pool.getStatistics().getConnectionsCreated());
+	}
+
+	@Test
+	public void testIdleEviction() throws SQLException, InterruptedException {
+		pool = new ConnectionPool(dataSource, 1, 3, 1000, 50, true, 0);
+		Connection con1 = pool.getConnection();
+		Connection con2 = pool.getConnection();
+		Connection con3 = pool.getConnection();
+		con1.close();
+		con2.close();
+		con3.close();
+		assertEquals(3, pool.getStatistics().getIdle());
+		Thread.sleep(100);
+		pool.evictIdleConnections();
+		ConnectionPoolStatistics stats = pool.getStatistics();
+		assertEquals(1, stats.getIdle());
+		assertEquals(2, stats.getConnectionsClosed());
+	}
+
+	@Test
+	public void testLeakDetection() throws SQLException, InterruptedException {
+		pool = new ConnectionPool(dataSource, 0, 2, 1000, 60000, true, 10);
+		Connection con = pool.getConnection();
+		Thread.sleep(50);
+		pool.detectLeaks();
+		pool.detectLeaks();	// Should only be reported once
+		assertEquals(1, pool.getStatistics().getLeaksDetected());
+		con.close();
+	}
+}
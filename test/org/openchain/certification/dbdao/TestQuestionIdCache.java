@@ -0,0 +1,148 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.Question;
+import org.openchain.certification.model.QuestionException;
+import org.openchain.certification.model.Section;
+import org.openchain.certification.model.SubQuestion;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.YesNoQuestion;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+public class TestQuestionIdCache {
+
+	private Connection con;
+	String specVersion = "test-spec-version";
+	String language = "ang";
+	String sectionName = "section1Name";
+	SurveyDbDao dao;
+	long specId;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		TestHelper.truncateDatabase(con);
+		Survey survey = new Survey(specVersion, language);
+		List<Section> sections = new ArrayList<Section>();
+		Section section1 = new Section(language);
+		section1.setName(sectionName);
+		section1.setTitle("section1Title");
+		List<Question> questions = new ArrayList<Question>();
+		questions.add(new YesNoQuestion("q1", sectionName, "1.a", specVersion,
+				new String[] {"ref"}, language, YesNo.Yes));
+		questions.add(new SubQuestion("q2", sectionName, "1.b", specVersion,
+				new String[] {"ref"}, language, 1));
+		Question q3 = new YesNoQuestion("q3", sectionName, "1.b.i", specVersion,
+				new String[] {"ref"}, language, YesNo.No);
+		q3.setSubQuestionOfNumber("1.b");
+		questions.add(q3);
+		section1.setQuestions(questions);
+		sections.add(section1);
+		survey.setSections(sections);
+		dao = new SurveyDbDao(con);
+		dao.addSurvey(survey);
+		specId = dao.getSpecId(specVersion, language, false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		con.close();
+	}
+
+	@Test
+	public void testGetQuestionIds() throws Exception {
+		Map<String, Long> ids = QuestionIdCache.getQuestionIds(con, specId);
+		assertEquals(3, ids.size());
+		assertEquals(getQuestionIdFromDb("1.a"), ids.get("1.a").longValue());
+		assertEquals(getQuestionIdFromDb("1.b"), ids.get("1.b").longValue());
+		assertEquals(getQuestionIdFromDb("1.b.i"), QuestionIdCache.getQuestionId(con, specId, "1.b.i"));
+		assertEquals(-1, QuestionIdCache.getQuestionId(con, specId, "9.z"));
+		assertTrue(QuestionIdCache.getQuestionIds(con, specId) == ids);
+		assertTrue(QuestionIdCache.getQuestionIds(con, -1).isEmpty());
+	}
+
+	@Test
+	public void testInvalidateOnAdd() throws Exception {
+		assertEquals(3, QuestionIdCache.getQuestionIds(con, specId).size());
+		List<Question> added = new ArrayList<Question>();
+		Question q4 = new YesNoQuestion("q4", sectionName, "1.b.ii", specVersion,
+				new String[] {"ref"}, language, YesNo.Yes);
+		q4.setSubQuestionOfNumber("1.b");
+		added.add(q4);
+		dao.addQuestions(added);
+		Map<String, Long> ids = QuestionIdCache.getQuestionIds(con, specId);
+		assertEquals(4, ids.size());
+		assertEquals(getQuestionIdFromDb("1.b.ii"), ids.get("1.b.ii").longValue());
+		// A failed add must not leave ID's for the rolled back questions
+		added.clear();
+		added.add(new SubQuestion("q5", sectionName, "1.c", specVersion,
+				new String[] {"ref"}, language, 1));
+		Question q6 = new YesNoQuestion("q6", sectionName, "1.c.i", specVersion,
+				new String[] {"ref"}, language, YesNo.Yes);
+		q6.setSubQuestionOfNumber("1.d");
+		added.add(q6);
+		try {
+			dao.addQuestions(added);
+			fail("Expected invalid subquestion number");
+		} catch (QuestionException ex) {
+			// expected
+		}
+		ids = QuestionIdCache.getQuestionIds(con, specId);
+		assertEquals(4, ids.size());
+		assertFalse(ids.containsKey("1.c"));
+	}
+
+	@Test
+	public void testLoadInTransactionNotCached() throws Exception {
+		Map<String, Long> cached = QuestionIdCache.getQuestionIds(con, specId);
+		Connection writer = TestHelper.getConnection();
+		try {
+			writer.setAutoCommit(false);
+			PreparedStatement stmt = writer.prepareStatement("insert into question (number, question, type, " +
+					"correct_answer, spec_reference, section_id) values ('1.z', 'uncommitted', 'YES_NO', 'Yes', 'ref', " +
+					"(select id from section where name=? and spec_version=?))");
+			try {
+				stmt.setString(1, sectionName);
+				stmt.setLong(2, specId);
+				assertEquals(1, stmt.executeUpdate());
+			} finally {
+				stmt.close();
+			}
+			Map<String, Long> inTransaction = QuestionIdCache.loadQuestionIds(writer, specId);
+			assertTrue(inTransaction.containsKey("1.z"));
+			QuestionIdCache.invalidate(specId);
+			Map<String, Long> reloaded = QuestionIdCache.getQuestionIds(con, specId);
+			assertFalse(reloaded == cached);
+			assertFalse(reloaded.containsKey("1.z"));
+			writer.rollback();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private long getQuestionIdFromDb(String number) throws Exception {
+		PreparedStatement stmt = con.prepareStatement("select question.id from question join section " +
+				"on question.section_id=section.id where number=? and section.spec_version=?");
+		try {
+			stmt.setString(1, number);
+			stmt.setLong(2, specId);
+			ResultSet result = stmt.executeQuery();
+			assertTrue(result.next());
+			return result.getLong(1);
+		} finally {
+			stmt.close();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+
+public class TestSchemaMigrator {
+	
+	Connection con;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		new SchemaMigrator(con).migrate();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		con.close();
+	}
+	
+	/**
+	 * Explain a statement as the JDBC driver runs it by preparing the DAO SQL with
+	 * its <code>?</code> parameters and explaining an execution with the parameter values
+	 */
+	private String explain(String sql, String... parameters) throws SQLException {
+		StringBuilder prepared = new StringBuilder();
+		int parameterNum = 1;
+		for (char c:sql.toCharArray()) {
+			if (c == '?') {
+				prepared.append('$');
+				prepared.append(parameterNum++);
+			} else {
+				prepared.append(c);
+			}
+		}
+		assertEquals(parameters.length, parameterNum - 1);
+		StringBuilder execute = new StringBuilder("explain execute explained_stmt");
+		if (parameters.length > 0) {
+			execute.append('(');
+			for (int i = 0; i < parameters.length; i++) {
+				if (i > 0) {
+					execute.append(',');
+				}
+				execute.append(parameters[i]);
+			}
+			execute.append(')');
+		}
+		Statement stmt = con.createStatement();
+		try {
+			// The test tables are too small for the planner to prefer the indexes
+			stmt.execute("set enable_seqscan = off");
+			stmt.execute("prepare explained_stmt as " + prepared.toString());
+			try {
+				ResultSet rs = stmt.executeQuery(execute.toString());
+				StringBuilder sb = new StringBuilder();
+				while (rs.next()) {
+					sb.append(rs.getString(1));
+					sb.append('\n');
+				}
+				return sb.toString();
+			} finally {
+				stmt.execute("deallocate explained_stmt");
+			}
+		} finally {
+			stmt.execute("set enable_seqscan = on");
+			stmt.close();
+		}
+	}
+	
+	private void assertIndexUsed(String indexName, String sql, String... parameters) throws SQLException {
+		String plan = explain(sql, parameters);
+		assertTrue("Expected index "+indexName+" in plan:\n"+plan, plan.contains(indexName));
+		assertFalse("Unexpected sequential scan in plan:\n"+plan, plan.contains("Seq Scan"));
+	}
+
+	@Test
+	public void testMigrate() throws SQLException {
+		SchemaMigrator migrator = new SchemaMigrator(con);
+		assertEquals(SchemaMigrator.getLatestVersion(), migrator.getCurrentVersion());
+		// Already migrated
+		assertEquals(0, migrator.migrate());
+		assertEquals(SchemaMigrator.getLatestVersion(), migrator.getCurrentVersion());
+		assertTrue(con.getAutoCommit());
+	}
+	
+	@Test
+	public void testReadStatements() throws SQLException {
+		List<String> statements = SchemaMigrator.readStatements(SchemaMigrator.MIGRATIONS[0]);
+		assertTrue(statements.size() > 0);
+		for (String statement:statements) {
+			assertFalse(statement.startsWith("--"));
+			assertTrue(statement.endsWith(";"));
+		}
+		assertEquals(1, SchemaMigrator.getVersion("V1__response_scores.sql"));
+		assertEquals("response scores", SchemaMigrator.getDescription("V1__response_scores.sql"));
+	}
+	
+	@Test
+	public void testIndexesUsed() throws SQLException {
+		assertIndexUsed("uk_openchain_user_username", UserDb.GET_USER_SQL, "'test'");
+		assertIndexUsed("uk_openchain_user_username", SurveyResponseDao.GET_USER_ID_SQL, "'test'");
+		assertIndexUsed("uk_survey_response_user_version", SurveyResponseDao.GET_RESPONSE_ID_SQL, "1", "2");
+		assertIndexUsed("uk_spec_version_language", SurveyDbDao.GET_SPEC_ID_SQL, "'1.0'", "'en'");
+		assertIndexUsed("idx_section_spec_version", SurveyDbDao.GET_SURVEY_TREE_SQL, "1");
+		// Referencing rows looked up by the foreign key checks when questions are removed
+		assertIndexUsed("idx_question_subquestion_of", "delete from question where subquestion_of=?", "1");
+		assertIndexUsed("idx_answer_question", "delete from answer where question_id=?", "1");
+		// Answer reads and updates are served by the unique (response_id, question_id) index
+		assertIndexUsed("uk_answer_response_question", SurveyResponseDao.GET_ANSWERS_SQL, "1", "'1.0'");
+		assertIndexUsed("uk_answer_response_question", SurveyResponseDao.UPSERT_ANSWER_SQL, "1", "2", "'yes'", "null");
+		assertIndexUsed("uk_answer_response_question", SurveyResponseDao.DELETE_OTHER_ANSWERS_SQL, "1", "'{1,2}'");
+	}
+}
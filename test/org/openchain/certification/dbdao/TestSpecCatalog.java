@@ -0,0 +1,92 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+public class TestSpecCatalog {
+
+	private Connection con;
+	SurveyDbDao dao;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		TestHelper.truncateDatabase(con);
+		dao = new SurveyDbDao(con);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		con.close();
+	}
+
+	private Survey createSurvey(String specVersion, String language) throws Exception {
+		return new TestHelper.SurveyBuilder(specVersion, language)
+				.section("G1", "Title")
+				.yesNo("1.a", "q1", YesNo.Yes)
+				.build();
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		SpecCatalog catalog = SpecCatalog.getSpecCatalog(con);
+		assertEquals(0, catalog.getVersions().size());
+		assertEquals(0, catalog.getMajorVersions().size());
+		assertNull(catalog.getLatestVersion());
+		assertNull(catalog.getLatestMinorVersion("1.1"));
+		assertEquals(0, catalog.getLanguages("1.1.1").size());
+	}
+
+	@Test
+	public void testCatalog() throws Exception {
+		dao.addSurvey(createSurvey("1.1.1", "en"));
+		dao.addSurvey(createSurvey("1.1.1", "de"));
+		dao.addSurvey(createSurvey("1.1.2", "en"));
+		dao.addSurvey(createSurvey("1.2.1", "en"));
+		SpecCatalog catalog = SpecCatalog.getSpecCatalog(con);
+		assertTrue(catalog == SpecCatalog.getSpecCatalog(con));
+		assertEquals(3, catalog.getVersions().size());
+		assertEquals("1.1.1", catalog.getVersions().get(0));
+		assertEquals("1.2.1", catalog.getVersions().get(2));
+		assertEquals(2, catalog.getMajorVersions().size());
+		assertEquals("1.1", catalog.getMajorVersions().get(0));
+		assertEquals("1.2", catalog.getMajorVersions().get(1));
+		assertEquals("1.1.2", catalog.getLatestMinorVersion("1.1"));
+		assertEquals("1.2.1", catalog.getLatestMinorVersion("1.2"));
+		assertNull(catalog.getLatestMinorVersion("2.0"));
+		assertEquals("1.2.1", catalog.getLatestVersion());
+		List<String> languages = catalog.getLanguages("1.1.1");
+		assertEquals(2, languages.size());
+		assertTrue(languages.contains("en"));
+		assertTrue(languages.contains("de"));
+		assertEquals(1, catalog.getLanguages("1.1.2").size());
+	}
+
+	@Test
+	public void testInvalidateOnAddSurvey() throws Exception {
+		dao.addSurvey(createSurvey("1.1.1", "en"));
+		SpecCatalog catalog = SpecCatalog.getSpecCatalog(con);
+		assertEquals("1.1.1", catalog.getLatestVersion());
+		dao.addSurvey(createSurvey("2.0.1", "en"));
+		SpecCatalog updated = SpecCatalog.getSpecCatalog(con);
+		assertFalse(catalog == updated);
+		assertEquals("2.0.1", updated.getLatestVersion());
+		assertEquals("2.0.1", updated.getLatestMinorVersion("2.0"));
+	}
+
+	@Test
+	public void testExtractSpecVersion() {
+		assertEquals("1.1", SpecCatalog.extractSpecVersion("1.1.1"));
+		assertEquals("1.1", SpecCatalog.extractSpecVersion("1.1"));
+		assertEquals("1", SpecCatalog.extractSpecVersion("1"));
+	}
+}
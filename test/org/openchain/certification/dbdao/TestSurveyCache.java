@@ -0,0 +1,140 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.MockServletContext;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.Question;
+import org.openchain.certification.model.SubQuestion;
+import org.openchain.certification.model.Survey;
+import org.openchain.certification.model.YesNoQuestion;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+public class TestSurveyCache {
+
+	private Connection con;
+	String sectionName = "section1Name";
+	SurveyDbDao dao;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		TestHelper.truncateDatabase(con);
+		dao = new SurveyDbDao(con);
+		dao.addSurvey(createSurvey("1.1", "en"));
+		dao.addSurvey(createSurvey("1.2", "en"));
+		SurveyCache.setMaxSize(SurveyCache.DEFAULT_MAX_SIZE);
+		SurveyCache.resetStats();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		SurveyCache.setMaxSize(SurveyCache.DEFAULT_MAX_SIZE);
+		con.close();
+	}
+
+	private Survey createSurvey(String specVersion, String language) throws Exception {
+		return new TestHelper.SurveyBuilder(specVersion, language)
+				.section(sectionName, "section1Title")
+				.yesNo("1.a", "q1", YesNo.Yes)
+				.subQuestion("1.b", "q2", 1)
+				.yesNo("1.b.i", "q3", YesNo.No).subQuestionOf("1.b")
+				.build();
+	}
+
+	@Test
+	public void testHitMiss() throws Exception {
+		Survey first = SurveyDbDao.getSurvey(con, "1.1", "en");
+		assertEquals(0, SurveyCache.getHitCount());
+		assertEquals(1, SurveyCache.getMissCount());
+		Survey second = SurveyDbDao.getSurvey(con, "1.1", "en");
+		assertTrue(first == second);
+		assertEquals(1, SurveyCache.getHitCount());
+		// Fallback to the default language shares the survey cached for the resolved spec
+		Survey fallback = SurveyDbDao.getSurvey(con, "1.1", "xyz");
+		assertEquals("en", fallback.getLanguage());
+		assertTrue(fallback == first);
+		assertTrue(fallback == SurveyDbDao.getSurvey(con, "1.1", "xyz"));
+		Survey latest = SurveyDbDao.getSurvey(con, null, "en");
+		assertEquals("1.2", latest.getSpecVersion());
+		assertTrue(latest == SurveyDbDao.getSurvey(con, null, "en"));
+		assertTrue(latest == SurveyDbDao.getSurvey(con, "1.2", "en"));
+		assertEquals(2, SurveyCache.getMissCount());
+		assertEquals(5, SurveyCache.getHitCount());
+		assertEquals(2, SurveyCache.size());
+	}
+
+	@Test
+	public void testMissingVersion() throws Exception {
+		Survey missing = SurveyDbDao.getSurvey(con, "9.9", "en");
+		assertEquals("9.9", missing.getSpecVersion());
+		assertTrue(missing.getSections().isEmpty());
+		assertEquals(0, SurveyCache.size());
+	}
+
+	@Test
+	public void testConfigureFromContext() throws Exception {
+		MockServletContext.INIT_PARAMS.put(SurveyCache.MAX_SIZE_PARAM, "1");
+		try {
+			SurveyCache.configure(TestHelper.getTestServletConfig());
+			SurveyDbDao.getSurvey(con, "1.1", "en");
+			SurveyDbDao.getSurvey(con, "1.2", "en");
+			assertEquals(1, SurveyCache.size());
+			MockServletContext.INIT_PARAMS.put(SurveyCache.MAX_SIZE_PARAM, "invalid");
+			SurveyCache.configure(TestHelper.getTestServletConfig());
+			SurveyDbDao.getSurvey(con, "1.1", "en");
+			assertEquals(2, SurveyCache.size());
+		} finally {
+			MockServletContext.INIT_PARAMS.remove(SurveyCache.MAX_SIZE_PARAM);
+		}
+	}
+
+	@Test
+	public void testInvalidateOnUpdate() throws Exception {
+		Survey before = SurveyDbDao.getSurvey(con, "1.1", "en");
+		assertEquals("section1Title", before.getSections().get(0).getTitle());
+		dao.updateSectionTitle("1.1", "en", sectionName, "newTitle");
+		Survey after = SurveyDbDao.getSurvey(con, "1.1", "en");
+		assertFalse(before == after);
+		assertEquals("newTitle", after.getSections().get(0).getTitle());
+		List<Question> added = new ArrayList<Question>();
+		added.add(new YesNoQuestion("q4", sectionName, "1.c", "1.1",
+				new String[] {"ref"}, "en", YesNo.Yes));
+		dao.addQuestions(added);
+		assertTrue(SurveyDbDao.getSurvey(con, "1.1", "en").getQuestionNumbers().contains("1.c"));
+		dao.addSurvey(createSurvey("2.0", "en"));
+		assertEquals("2.0", SurveyDbDao.getSurvey(con, null, "en").getSpecVersion());
+	}
+
+	@Test
+	public void testMaxSize() throws Exception {
+		SurveyCache.setMaxSize(1);
+		SurveyDbDao.getSurvey(con, "1.1", "en");
+		SurveyDbDao.getSurvey(con, "1.2", "en");
+		assertEquals(1, SurveyCache.size());
+		assertEquals(1, SurveyCache.getEvictionCount());
+		SurveyDbDao.getSurvey(con, "1.2", "en");
+		assertEquals(1, SurveyCache.getHitCount());
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+		Survey cached = SurveyDbDao.getSurvey(con, "1.1", "en");
+		Survey copy = SurveyCache.getSurveyCopy(con, "1.1", "en");
+		assertFalse(cached == copy);
+		copy.prettify();
+		assertEquals(2, copy.getSections().get(0).getQuestions().size());
+		assertEquals(3, cached.getSections().get(0).getQuestions().size());
+		assertEquals("1.b", cached.getQuestion("1.b.i").getSubQuestionOfNumber());
+		assertEquals("1.1", cached.getQuestion("1.b.i").getSpecVersion());
+		SubQuestion cachedParent = (SubQuestion)cached.getQuestion("1.b");
+		assertEquals("1.1", cachedParent.getAllSubquestions().iterator().next().getSpecVersion());
+	}
+}
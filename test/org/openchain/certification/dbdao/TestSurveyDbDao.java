@@ -765,6 +765,62 @@ public class TestSurveyDbDao {
 		assertEquals(s1q1_2Question, result.getSections().get(0).getQuestions().get(0).getQuestion());
 	}
 	
+	private List<Section> createFallbackSections(String specVersion, String language) throws QuestionException {
+		List<Section> sections = new ArrayList<Section>();
+		Section section1 = new Section(language);
+		section1.setName("section1Name");
+		section1.setTitle("section1Title");
+		List<Question> section1Questions = new ArrayList<Question>();
+		section1Questions.add(new YesNoQuestion("s1q1question", 
+				"section1Name", "1", specVersion, new String[0], language, YesNo.Yes));
+		section1.setQuestions(section1Questions);
+		sections.add(section1);
+		Section emptySection = new Section(language);
+		emptySection.setName("section2Name");
+		emptySection.setTitle("section2Title");
+		emptySection.setQuestions(new ArrayList<Question>());
+		sections.add(emptySection);
+		return sections;
+	}
+	
+	@Test
+	public void testGetSurveyFallback() throws SQLException, SurveyResponseException, QuestionException {
+		String version1 = "0.1.2";
+		String version2 = "1.1.1";
+		String lang1 = "fra";
+		Survey survey1 = new Survey(version1, User.DEFAULT_LANGUAGE);
+		survey1.setSections(createFallbackSections(version1, User.DEFAULT_LANGUAGE));
+		Survey survey2 = new Survey(version2, null);
+		survey2.setSections(createFallbackSections(version2, null));
+		Survey survey3 = new Survey(version2, lang1);
+		survey3.setSections(createFallbackSections(version2, lang1));
+		SurveyDbDao dao = new SurveyDbDao(con);
+		dao.addSurvey(survey1);
+		dao.addSurvey(survey2);
+		dao.addSurvey(survey3);
+		// Fall back to the default language
+		Survey result = SurveyDbDao.getSurvey(con, version1, lang1);
+		assertEquals(version1, result.getSpecVersion());
+		assertEquals(User.DEFAULT_LANGUAGE, result.getLanguage());
+		assertEquals(2, result.getSections().size());
+		assertEquals("section1Name", result.getSections().get(0).getName());
+		assertEquals(1, result.getSections().get(0).getQuestions().size());
+		assertEquals("section2Name", result.getSections().get(1).getName());
+		assertEquals(0, result.getSections().get(1).getQuestions().size());
+		// Fall back to the null language
+		result = SurveyDbDao.getSurvey(con, version2, "ejk");
+		assertEquals(User.DEFAULT_LANGUAGE, result.getLanguage());
+		assertEquals(2, result.getSections().size());
+		// Latest version
+		result = SurveyDbDao.getSurvey(con, null, lang1);
+		assertEquals(version2, result.getSpecVersion());
+		assertEquals(lang1, result.getLanguage());
+		assertEquals(2, result.getSections().size());
+		// Missing version
+		result = SurveyDbDao.getSurvey(con, "9.9.9", lang1);
+		assertEquals(0, result.getSections().size());
+	}
+	
 	@Test
 	public void testGetSpecVersion() throws SQLException, SurveyResponseException, QuestionException {
 		List<Section> sections = new ArrayList<Section>();
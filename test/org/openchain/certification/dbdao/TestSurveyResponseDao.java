@@ -3,25 +3,31 @@ package org.openchain.certification.dbdao;
 import static org.junit.Assert.*;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.openchain.certification.InvalidUserException;
 import org.openchain.certification.TestHelper;
 import org.openchain.certification.model.Answer;
+import org.openchain.certification.model.CertifiedSubmission;
 import org.openchain.certification.model.Question;
 import org.openchain.certification.model.QuestionException;
 import org.openchain.certification.model.Section;
 import org.openchain.certification.model.SubQuestion;
 import org.openchain.certification.model.SubQuestionAnswers;
+import org.openchain.certification.model.Submission;
 import org.openchain.certification.model.Survey;
 import org.openchain.certification.model.SurveyResponse;
 import org.openchain.certification.model.SurveyResponseException;
@@ -33,6 +39,8 @@ import org.openchain.certification.model.YesNoQuestion;
 import org.openchain.certification.model.YesNoQuestionWithEvidence;
 import org.openchain.certification.model.YesNoQuestion.YesNo;
 
+import com.google.gson.Gson;
+
 public class TestSurveyResponseDao {
 
 	Connection con;
@@ -923,4 +931,341 @@ public class TestSurveyResponseDao {
 		assertEquals(s2q3answer.getAnswer(), ((YesNoAnswer)subAnswer).getAnswer());	
 		assertEquals(response2.getId(), secondVersion.getId());
 	}
+	
+	@Test
+	public void testGetAllSurveyResponses() throws SQLException, SurveyResponseException, QuestionException {
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		Map<String, Answer> responses = new HashMap<String, Answer>();
+		YesNoAnswer s1q1answer = new YesNoAnswer(language1, YesNo.No);
+		responses.put(s1q1Number, s1q1answer);
+		YesNoAnswerWithEvidence s2q2answer = new YesNoAnswerWithEvidence(language1, YesNo.No, "s2q2evidence");
+		responses.put(s2q2Number, s2q2answer);
+		YesNoAnswer s2q3answer = new YesNoAnswer(language1, YesNo.Yes);
+		responses.put(s2q3Number, s2q3answer);
+		response.setResponses(responses);
+		response.setSurvey(survey);
+		dao.addSurveyResponse(response, language1);
+		
+		SurveyResponse response2 = new SurveyResponse(specVersion, language1);
+		response2.setResponder(user2);
+		Map<String, Answer> responses2 = new HashMap<String, Answer>();
+		YesNoAnswer s1q2answer2 = new YesNoAnswer(language1, YesNo.NotApplicable);
+		responses2.put(s1q2Number, s1q2answer2);
+		YesNoAnswer s2q3answer2 = new YesNoAnswer(language1, YesNo.No);
+		responses2.put(s2q3Number, s2q3answer2);
+		response2.setResponses(responses2);
+		response2.setSurvey(survey);
+		dao.addSurveyResponse(response2, language1);
+		
+		List<SurveyResponse> result = dao.getSurveyResponses(language1);
+		assertEquals(2, result.size());
+		SurveyResponse result1 = result.get(0);
+		SurveyResponse result2 = result.get(1);
+		assertEquals(user.getUsername(), result1.getResponder().getUsername());
+		assertEquals(user2.getUsername(), result2.getResponder().getUsername());
+		assertEquals(response.getId(), result1.getId());
+		assertEquals(response2.getId(), result2.getId());
+		assertSame(result1.getSurvey(), result2.getSurvey());
+		
+		Map<String, Answer> resultResponses = result1.getResponses();
+		assertEquals(4, resultResponses.size());
+		assertEquals(s1q1answer.getAnswer(), ((YesNoAnswer)resultResponses.get(s1q1Number)).getAnswer());
+		assertEquals(s2q2answer.getEvidence(), ((YesNoAnswerWithEvidence)resultResponses.get(s2q2Number)).getEvidence());
+		SubQuestionAnswers subAnswers = (SubQuestionAnswers)resultResponses.get(s2q1Number);
+		assertEquals(2, subAnswers.getSubAnswers().size());
+		assertEquals(s2q3answer.getAnswer(), ((YesNoAnswer)subAnswers.getSubAnswers().get(s2q3Number)).getAnswer());
+		
+		resultResponses = result2.getResponses();
+		assertEquals(3, resultResponses.size());
+		assertEquals(s1q2answer2.getAnswer(), ((YesNoAnswer)resultResponses.get(s1q2Number)).getAnswer());
+		subAnswers = (SubQuestionAnswers)resultResponses.get(s2q1Number);
+		assertEquals(1, subAnswers.getSubAnswers().size());
+		assertEquals(s2q3answer2.getAnswer(), ((YesNoAnswer)subAnswers.getSubAnswers().get(s2q3Number)).getAnswer());
+	}
+	
+	@Test
+	public void testGetCertifiedSubmissions() throws SQLException, SurveyResponseException, QuestionException, InvalidUserException {
+		user.setNamePermission(false);
+		user.setEmailPermission(true);
+		UserDb.getUserDb(TestHelper.getTestServletConfig()).updateUser(user);
+		user2.setNamePermission(true);
+		user2.setEmailPermission(false);
+		UserDb.getUserDb(TestHelper.getTestServletConfig()).updateUser(user2);
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		Map<String, Answer> responses = new HashMap<String, Answer>();
+		responses.put(s1q1Number, new YesNoAnswer(language1, YesNo.Yes));
+		response.setResponses(responses);
+		response.setSurvey(survey);
+		response.setSubmitted(true);
+		response.setApproved(true);
+		dao.addSurveyResponse(response, language1);
+		SurveyResponse response2 = new SurveyResponse(specVersion, language1);
+		response2.setResponder(user2);
+		response2.setResponses(new HashMap<String, Answer>());
+		response2.setSurvey(survey);
+		response2.setSubmitted(true);
+		response2.setApproved(false);
+		dao.addSurveyResponse(response2, language1);
+		
+		List<CertifiedSubmission> result = dao.getCertifiedSubmissions();
+		assertEquals(1, result.size());
+		CertifiedSubmission certified = result.get(0);
+		assertTrue(certified.isApproved());
+		assertTrue(certified.isSubmitted());
+		assertFalse(certified.isRejected());
+		assertEquals(specVersion, certified.getSpecVersion());
+		assertEquals(user.getOrganization(), certified.getUser().getOrganization());
+		assertEquals(user.getEmail(), certified.getUser().getEmail());
+		assertNull(certified.getUser().getName());
+		assertNull(certified.getUser().getUsername());
+		assertNull(certified.getUser().getPasswordToken());
+		assertNull(certified.getUser().getAddress());
+		
+		dao.setApproved(user2.getUsername(), specVersion, true);
+		result = dao.getCertifiedSubmissions();
+		assertEquals(2, result.size());
+		assertEquals(user2.getName(), result.get(1).getUser().getName());
+		assertNull(result.get(1).getUser().getEmail());
+	}
+	
+	@Test
+	public void testGetSurveyResponsesFiltered() throws SQLException, SurveyResponseException, QuestionException {
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		Map<String, Answer> responses = new HashMap<String, Answer>();
+		responses.put(s1q1Number, new YesNoAnswer(language1, YesNo.Yes));
+		response.setResponses(responses);
+		response.setSurvey(survey);
+		response.setSubmitted(true);
+		response.setApproved(true);
+		dao.addSurveyResponse(response, language1);
+		SurveyResponse response2 = new SurveyResponse(specVersion, language1);
+		response2.setResponder(user2);
+		Map<String, Answer> responses2 = new HashMap<String, Answer>();
+		responses2.put(s1q1Number, new YesNoAnswer(language1, YesNo.No));
+		response2.setResponses(responses2);
+		response2.setSurvey(survey);
+		response2.setSubmitted(false);
+		dao.addSurveyResponse(response2, language1);
+		
+		// Paging and sorting
+		SubmissionFilter filter = new SubmissionFilter();
+		filter.setLimit(1);
+		List<SurveyResponse> result = dao.getSurveyResponses(language1, filter);
+		assertEquals(1, result.size());
+		assertEquals(user.getUsername(), result.get(0).getResponder().getUsername());
+		assertEquals(YesNo.Yes, ((YesNoAnswer)result.get(0).getResponses().get(s1q1Number)).getAnswer());
+		assertEquals(2, dao.countSurveyResponses(filter));
+		filter.setOffset(1);
+		result = dao.getSurveyResponses(language1, filter);
+		assertEquals(1, result.size());
+		assertEquals(user2.getUsername(), result.get(0).getResponder().getUsername());
+		assertEquals(YesNo.No, ((YesNoAnswer)result.get(0).getResponses().get(s1q1Number)).getAnswer());
+		filter.setOffset(0);
+		filter.setSortColumn(SubmissionFilter.SortColumn.organization);
+		filter.setAscending(false);
+		result = dao.getSurveyResponses(language1, filter);
+		assertEquals(user2.getUsername(), result.get(0).getResponder().getUsername());
+		
+		// Status
+		filter = new SubmissionFilter();
+		filter.setStatus(SubmissionFilter.Status.notSubmitted);
+		result = dao.getSurveyResponses(language1, filter);
+		assertEquals(1, result.size());
+		assertEquals(user2.getUsername(), result.get(0).getResponder().getUsername());
+		assertEquals(1, dao.countSurveyResponses(filter));
+		filter.setStatus(SubmissionFilter.Status.approved);
+		result = dao.getSurveyResponses(language1, filter);
+		assertEquals(1, result.size());
+		assertEquals(user.getUsername(), result.get(0).getResponder().getUsername());
+		filter.setStatus(SubmissionFilter.Status.rejected);
+		assertEquals(0, dao.getSurveyResponses(language1, filter).size());
+		assertEquals(0, dao.countSurveyResponses(filter));
+		
+		// Organization prefix
+		filter = new SubmissionFilter();
+		filter.setOrganizationPrefix("TEST OG");
+		assertEquals(2, dao.getSurveyResponses(language1, filter).size());
+		filter.setOrganizationPrefix("test og2");
+		result = dao.getSurveyResponses(language1, filter);
+		assertEquals(1, result.size());
+		assertEquals(user2.getUsername(), result.get(0).getResponder().getUsername());
+		filter.setOrganizationPrefix("Test%");
+		assertEquals(0, dao.countSurveyResponses(filter));
+		
+		// Spec version
+		filter = new SubmissionFilter();
+		filter.setSpecVersion(specVersion);
+		assertEquals(2, dao.countSurveyResponses(filter));
+		filter.setSpecVersion("other-version");
+		assertEquals(0, dao.getSurveyResponses(language1, filter).size());
+		
+		// Certified
+		filter = new SubmissionFilter();
+		filter.setOrganizationPrefix("test og2");
+		assertEquals(0, dao.getCertifiedSubmissions(filter).size());
+		assertEquals(0, dao.countCertifiedSubmissions(filter));
+		filter.setOrganizationPrefix(null);
+		filter.setLimit(10);
+		List<CertifiedSubmission> certified = dao.getCertifiedSubmissions(filter);
+		assertEquals(1, certified.size());
+		assertEquals(user.getOrganization(), certified.get(0).getUser().getOrganization());
+		assertEquals(1, dao.countCertifiedSubmissions(filter));
+	}
+	
+	@Test
+	public void testPersistedScores() throws SQLException, SurveyResponseException, QuestionException {
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		Map<String, Answer> responses = new HashMap<String, Answer>();
+		responses.put(s1q1Number, new YesNoAnswer(language1, s1q1Answer));
+		response.setResponses(responses);
+		response.setSurvey(survey);
+		dao.addSurveyResponse(response, language1);
+		Submission expected = new Submission(response);
+		List<Submission> result = dao.getSubmissions(new SubmissionFilter());
+		assertEquals(1, result.size());
+		assertEquals(expected.getScore(), result.get(0).getScore());
+		assertEquals(expected.getPercentComplete(), result.get(0).getPercentComplete());
+		assertEquals(response.getId(), result.get(0).getId());
+		
+		// Updating the answers updates the scores
+		responses.put(s1q2Number, new YesNoAnswer(language1, s1q2Answer));
+		dao.updateSurveyResponseAnswers(response, language1);
+		expected = new Submission(response);
+		result = dao.getSubmissions(new SubmissionFilter());
+		assertEquals(expected.getScore(), result.get(0).getScore());
+		assertEquals(expected.getPercentComplete(), result.get(0).getPercentComplete());
+		
+		// Missing scores are filled in when listed
+		Statement stmt = con.createStatement();
+		try {
+			stmt.executeUpdate("update survey_response set score=null, percent_complete=null, num_answered=null");
+		} finally {
+			stmt.close();
+		}
+		con.commit();
+		result = dao.getSubmissions(new SubmissionFilter());
+		assertEquals(expected.getScore(), result.get(0).getScore());
+		assertEquals(expected.getPercentComplete(), result.get(0).getPercentComplete());
+		stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("select score, percent_complete, num_answered from survey_response");
+			assertTrue(rs.next());
+			assertEquals(expected.getScore(), rs.getInt("score"));
+			assertEquals(expected.getPercentComplete(), rs.getInt("percent_complete"));
+			assertEquals(2, rs.getInt("num_answered"));
+		} finally {
+			stmt.close();
+		}
+		
+		// Recompute after the questions change
+		assertEquals(1, dao.recomputeScores(specVersion));
+		assertEquals(0, dao.recomputeScores("other-version"));
+		assertEquals(expected.getScore(), dao.getSubmissions(new SubmissionFilter()).get(0).getScore());
+	}
+	
+	@Test
+	public void testCertifiedSnapshot() throws Exception {
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		response.setResponses(new HashMap<String, Answer>());
+		response.setSurvey(survey);
+		response.setSubmitted(true);
+		response.setApproved(true);
+		dao.addSurveyResponse(response, language1);
+		SurveyResponse response2 = new SurveyResponse(specVersion, language1);
+		response2.setResponder(user2);
+		response2.setResponses(new HashMap<String, Answer>());
+		response2.setSurvey(survey);
+		response2.setSubmitted(true);
+		response2.setApproved(false);
+		dao.addSurveyResponse(response2, language1);
+		
+		List<CertifiedSubmission> result = CertifiedSnapshot.getCertifiedSubmissions(TestHelper.getTestServletConfig());
+		assertEquals(1, result.size());
+		assertEquals(user.getOrganization(), result.get(0).getUser().getOrganization());
+		String json = new String(CertifiedSnapshot.getJson(TestHelper.getTestServletConfig()), "UTF-8");
+		assertEquals(new Gson().toJson(dao.getCertifiedSubmissions()), json);
+		// Reads do not rebuild
+		long rebuildCount = CertifiedSnapshot.getRebuildCount();
+		assertTrue(result == CertifiedSnapshot.getCertifiedSubmissions(TestHelper.getTestServletConfig()));
+		assertEquals(rebuildCount, CertifiedSnapshot.getRebuildCount());
+		
+		// Writes rebuild in the background
+		dao.setApproved(user2.getUsername(), specVersion, true);
+		CertifiedSnapshot.awaitRebuild(10000);
+		assertEquals(2, CertifiedSnapshot.getCertifiedSubmissions(TestHelper.getTestServletConfig()).size());
+		rebuildCount = CertifiedSnapshot.getRebuildCount();
+		user2.setOrganization("Changed Org");
+		UserDb.getUserDb(TestHelper.getTestServletConfig()).updateUser(user2);
+		dao.setRejected(new String[] {String.valueOf(response.getId())}, true);
+		dao.setApproved(new String[] {String.valueOf(response.getId())}, false);
+		CertifiedSnapshot.awaitRebuild(10000);
+		result = CertifiedSnapshot.getCertifiedSubmissions(TestHelper.getTestServletConfig());
+		assertEquals(1, result.size());
+		assertEquals("Changed Org", result.get(0).getUser().getOrganization());
+		// Changes made while a rebuild is pending are coalesced
+		assertTrue(CertifiedSnapshot.getRebuildCount() - rebuildCount <= 3);
+		dao.deleteSurveyResponseAnswers(user2.getUsername(), specVersion);
+		CertifiedSnapshot.awaitRebuild(10000);
+		assertEquals(0, CertifiedSnapshot.getCertifiedSubmissions(TestHelper.getTestServletConfig()).size());
+	}
+	
+	private Map<Long, String> getStoredAnswers() throws SQLException {
+		Map<Long, String> retval = new HashMap<Long, String>();
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("select id, answer from answer");
+			while (rs.next()) {
+				retval.put(rs.getLong("id"), rs.getString("answer"));
+			}
+		} finally {
+			stmt.close();
+		}
+		con.commit();
+		return retval;
+	}
+	
+	@Test
+	public void testUpdateAnswersInPlace() throws SQLException, SurveyResponseException, QuestionException {
+		SurveyResponseDao dao = new SurveyResponseDao(con);
+		SurveyResponse response = new SurveyResponse(specVersion, language1);
+		response.setResponder(user);
+		Map<String, Answer> responses = new HashMap<String, Answer>();
+		responses.put(s1q1Number, new YesNoAnswer(language1, YesNo.Yes));
+		responses.put(s1q2Number, new YesNoAnswer(language1, YesNo.No));
+		response.setResponses(responses);
+		response.setSurvey(survey);
+		dao.addSurveyResponse(response, language1);
+		Map<Long, String> stored = getStoredAnswers();
+		assertEquals(2, stored.size());
+		long s1q1Id = -1;
+		for (Entry<Long, String> entry:stored.entrySet()) {
+			if ("Yes".equals(entry.getValue())) {
+				s1q1Id = entry.getKey();
+			}
+		}
+		assertTrue(s1q1Id > 0);
+		// Update one answer and remove the other
+		responses.put(s1q1Number, new YesNoAnswer(language1, YesNo.No));
+		responses.remove(s1q2Number);
+		dao.updateSurveyResponseAnswers(response, language1);
+		stored = getStoredAnswers();
+		assertEquals(1, stored.size());
+		assertEquals("No", stored.get(s1q1Id));
+		// Saving the same answers again does not change anything
+		dao.updateSurveyResponseAnswers(response, language1);
+		assertEquals(stored, getStoredAnswers());
+		SurveyResponse result = dao.getSurveyResponse(user.getUsername(), specVersion, language1);
+		assertEquals(1, result.getResponses().size());
+		assertEquals(YesNo.No, ((YesNoAnswer)result.getResponses().get(s1q1Number)).getAnswer());
+	}
 }
@@ -0,0 +1,176 @@
+package org.openchain.certification.dbdao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.MockServletContext;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.User;
+
+public class TestUserCache {
+
+	Connection con;
+	UserDb userDb;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		TestHelper.truncateDatabase(con);
+		userDb = UserDb.getUserDb(TestHelper.getTestServletConfig());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		UserCache.configure(UserCache.DEFAULT_MAX_SIZE, UserCache.DEFAULT_TTL_MILLIS, UserCache.DEFAULT_NEGATIVE_TTL_MILLIS);
+		con.close();
+	}
+
+	private User createUser(String username) {
+		User user = new User();
+		user.setUsername(username);
+		user.setName("Test User");
+		user.setEmail("test@openchain.com");
+		user.setPasswordToken("TOKEN");
+		user.setUuid(UUID.randomUUID().toString());
+		user.setVerificationExpirationDate(new Date());
+		user.setVerified(true);
+		return user;
+	}
+
+	private void updateNameInDb(String username, String name) throws Exception {
+		PreparedStatement stmt = con.prepareStatement("update openchain_user set name=? where username=?");
+		try {
+			stmt.setString(1, name);
+			stmt.setString(2, username);
+			assertEquals(1, stmt.executeUpdate());
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void testReadThrough() throws Exception {
+		userDb.addUser(createUser("user1"));
+		UserCache.invalidateAll();
+		long misses = UserCache.getMissCount();
+		long hits = UserCache.getHitCount();
+		User first = userDb.getUser("user1");
+		User second = userDb.getUser("user1");
+		assertEquals(misses + 1, UserCache.getMissCount());
+		assertEquals(hits + 1, UserCache.getHitCount());
+		assertFalse(first == second);
+		first.setName("Changed");
+		assertEquals("Test User", userDb.getUser("user1").getName());
+	}
+
+	@Test
+	public void testWriteThrough() throws Exception {
+		User user = createUser("user1");
+		userDb.addUser(user);
+		User cached = userDb.getUser("user1");
+		// The database only stores the date portion
+		assertEquals(new java.sql.Date(user.getVerificationExpirationDate().getTime()).toString(), 
+				new java.sql.Date(cached.getVerificationExpirationDate().getTime()).toString());
+		user.setName("New Name");
+		userDb.updateUser(user);
+		long misses = UserCache.getMissCount();
+		assertEquals("New Name", userDb.getUser("user1").getName());
+		userDb.setVerified("user1", false);
+		assertFalse(userDb.getUser("user1").isVerified());
+		assertEquals(misses, UserCache.getMissCount());
+		UserCache.invalidateAll();
+		User fromDb = userDb.getUser("user1");
+		assertEquals("New Name", fromDb.getName());
+		assertFalse(fromDb.isVerified());
+		assertEquals(cached.getVerificationExpirationDate(), fromDb.getVerificationExpirationDate());
+	}
+
+	@Test
+	public void testNegativeCache() throws Exception {
+		assertNull(userDb.getUser("unknown"));
+		long misses = UserCache.getMissCount();
+		assertNull(userDb.getUser("unknown"));
+		assertFalse(userDb.userExists("unknown"));
+		assertEquals(misses, UserCache.getMissCount());
+		userDb.addUser(createUser("unknown"));
+		assertNotNull(userDb.getUser("unknown"));
+		assertTrue(userDb.userExists("unknown"));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		userDb.addUser(createUser("user1"));
+		userDb.getUser("user1");
+		updateNameInDb("user1", "Direct Change");
+		assertEquals("Test User", userDb.getUser("user1").getName());
+		UserCache.invalidate("user1");
+		assertEquals("Direct Change", userDb.getUser("user1").getName());
+	}
+
+	@Test
+	public void testExpiration() throws Exception {
+		UserCache.configure(10, 50, 10);
+		userDb.addUser(createUser("user1"));
+		updateNameInDb("user1", "Direct Change");
+		assertEquals("Test User", userDb.getUser("user1").getName());
+		Thread.sleep(100);
+		assertEquals("Direct Change", userDb.getUser("user1").getName());
+	}
+
+	@Test
+	public void testMaxSize() throws Exception {
+		UserCache.configure(2, UserCache.DEFAULT_TTL_MILLIS, UserCache.DEFAULT_NEGATIVE_TTL_MILLIS);
+		userDb.addUser(createUser("user1"));
+		userDb.addUser(createUser("user2"));
+		userDb.addUser(createUser("user3"));
+		assertEquals(2, UserCache.size());
+		long misses = UserCache.getMissCount();
+		userDb.getUser("user1");
+		assertEquals(misses + 1, UserCache.getMissCount());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		UserCache.configure(20, UserCache.DEFAULT_TTL_MILLIS, UserCache.DEFAULT_NEGATIVE_TTL_MILLIS);
+		for (int i = 0; i < 20; i++) {
+			userDb.addUser(createUser("user" + i));
+		}
+		// user0 is the most recently used so it is kept
+		userDb.getUser("user0");
+		userDb.addUser(createUser("user20"));
+		assertEquals(18, UserCache.size());
+		long misses = UserCache.getMissCount();
+		userDb.getUser("user0");
+		userDb.getUser("user20");
+		assertEquals(misses, UserCache.getMissCount());
+		userDb.getUser("user1");
+		assertEquals(misses + 1, UserCache.getMissCount());
+	}
+
+	@Test
+	public void testConfigureFromContext() throws Exception {
+		MockServletContext.INIT_PARAMS.put(UserCache.MAX_SIZE_PARAM, "2");
+		MockServletContext.INIT_PARAMS.put(UserCache.TTL_PARAM, "50");
+		try {
+			UserCache.configure(TestHelper.getTestServletConfig());
+			userDb.addUser(createUser("user1"));
+			userDb.addUser(createUser("user2"));
+			userDb.addUser(createUser("user3"));
+			assertEquals(2, UserCache.size());
+			updateNameInDb("user3", "Direct Change");
+			Thread.sleep(100);
+			assertEquals("Direct Change", userDb.getUser("user3").getName());
+		} finally {
+			MockServletContext.INIT_PARAMS.remove(UserCache.MAX_SIZE_PARAM);
+			MockServletContext.INIT_PARAMS.remove(UserCache.TTL_PARAM);
+		}
+	}
+}
@@ -13,6 +13,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openchain.certification.InvalidUserException;
 import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.EmailMessage;
 import org.openchain.certification.model.User;
 
 public class TestUserDb {
@@ -78,6 +79,33 @@ public class TestUserDb {
 		assertEquals(language, result.getLanguagePreference());
 	}
 
+	@Test
+	public void testAddUserWithEmail() throws SQLException, InvalidUserException {
+		User user = new User();
+		user.setAddress("Address");
+		user.setEmail("test@openchain.com");
+		user.setName("Test User");
+		user.setOrganization("Test Og.");
+		user.setPasswordToken("TOKEN");
+		user.setUsername("testuser");
+		user.setUuid(UUID.randomUUID().toString());
+		user.setVerificationExpirationDate(new GregorianCalendar(2015, 4, 16).getTime());
+		EmailMessage email = new EmailMessage("from@openchain.com", "test@openchain.com", "Subject", "Body");
+		UserDb.getUserDb(TestHelper.getTestServletConfig()).addUser(user, email);
+		EmailOutboxDao outbox = new EmailOutboxDao(con);
+		assertEquals(1, outbox.countPending(1));
+		try {
+			UserDb.getUserDb(TestHelper.getTestServletConfig()).addUser(user, email);
+			fail("Expected duplicate user to fail");
+		} catch (InvalidUserException ex) {
+			// expected
+		}
+		// The email is not added if the user is not added
+		assertEquals(1, outbox.countPending(1));
+		UserDb.getUserDb(TestHelper.getTestServletConfig()).updateUser(user, email);
+		assertEquals(2, outbox.countPending(1));
+	}
+
 	@Test
 	public void testSetVerified() throws SQLException, InvalidUserException {
 		User user = new User();
@@ -290,5 +318,13 @@ public class TestUserDb {
 		result = UserDb.getUserDb(TestHelper.getTestServletConfig()).getUser(username);
 		assertTrue(result.getLanguagePreference() == null);
 	}
-	
+
+	@Test
+	public void testGetUserConcurrent() throws Exception {
+		UserDbBenchmark.addUsers(UserDbBenchmark.NUM_USERS);
+		for (int threadCount:UserDbBenchmark.THREAD_COUNTS) {
+			UserDbBenchmark.runGetUsers(threadCount, 50, UserDbBenchmark.NUM_USERS, false);
+			UserDbBenchmark.runGetUsers(threadCount, 50, UserDbBenchmark.NUM_USERS, true);
+		}
+	}
 }
@@ -0,0 +1,116 @@
+package org.openchain.certification.dbdao;
+
+import java.sql.Connection;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.User;
+
+/**
+ * Measures the throughput of concurrent user reads from the database with 1, 2, 4 and 8 threads.
+ * The reads use the uncached <code>UserDb.loadUser</code> so that every call goes through the
+ * connection pool to the database rather than being served from the <code>UserCache</code>.
+ * 
+ * WARNING: Deletes ALL the data in the test database.
+ * 
+ * Run with the test database available and the resources directory on the classpath:
+ * java -cp ... org.openchain.certification.dbdao.UserDbBenchmark [callsPerThread]
+ */
+public class UserDbBenchmark {
+	
+	static final int NUM_USERS = 20;
+	static final int[] THREAD_COUNTS = new int[] {1, 2, 4, 8};
+	
+	/**
+	 * Add the users read by <code>runGetUsers</code>
+	 * @param numUsers
+	 * @throws Exception
+	 */
+	static void addUsers(int numUsers) throws Exception {
+		for (int i = 0; i < numUsers; i++) {
+			User user = new User();
+			user.setUsername("benchuser"+i);
+			user.setName("Bench User "+i);
+			user.setEmail("bench"+i+"@openchain.com");
+			user.setPasswordToken("TOKEN");
+			user.setUuid(UUID.randomUUID().toString());
+			user.setVerificationExpirationDate(new Date());
+			user.setVerified(true);
+			UserDb.getUserDb(TestHelper.getTestServletConfig()).addUser(user);
+		}
+	}
+	
+	/**
+	 * Read the users added by <code>addUsers</code> from several threads at once
+	 * @param numThreads
+	 * @param callsPerThread
+	 * @param numUsers
+	 * @param uncached if true, read from the database with <code>loadUser</code> rather than <code>getUser</code>
+	 * @return elapsed time in nanoseconds
+	 * @throws Exception
+	 */
+	static long runGetUsers(int numThreads, final int callsPerThread, final int numUsers, 
+			final boolean uncached) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final int threadNum = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < callsPerThread; j++) {
+							String username = "benchuser"+((threadNum + j) % numUsers);
+							UserDb userDb = UserDb.getUserDb(TestHelper.getTestServletConfig());
+							User result = uncached ? userDb.loadUser(username) : userDb.getUser(username);
+							if (result == null || !username.equals(result.getUsername())) {
+								errors.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		for (Thread thread:threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - startTime;
+		if (errors.get() > 0) {
+			throw new IllegalStateException(errors.get() + " getUser calls failed");
+		}
+		return elapsed;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int callsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		Connection con = TestHelper.getConnection();
+		try {
+			TestHelper.truncateDatabase(con);
+		} finally {
+			con.close();
+		}
+		addUsers(NUM_USERS);
+		// warm up the pool and the server side statement caches
+		runGetUsers(4, 50, NUM_USERS, true);
+		double baseline = 0;
+		for (int threadCount:THREAD_COUNTS) {
+			long elapsed = runGetUsers(threadCount, callsPerThread, NUM_USERS, true);
+			double throughput = (threadCount * callsPerThread * 1e9) / elapsed;
+			if (baseline == 0) {
+				baseline = throughput;
+			}
+			System.out.println(String.format("%d threads %,12.0f calls/s  %.2fx", threadCount,
+					throughput, throughput / baseline));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.openchain.certification.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the heap retained by the survey and answers of many sessions using the previous
+ * layout (a survey per session and a HashMap of answer objects) with the compact layout
+ * (a shared survey and a CompactAnswerMap).
+ * 
+ * The heap is measured after requesting garbage collection so the results are approximate.
+ * 
+ * java -cp ... org.openchain.certification.model.CompactAnswerMapBenchmark [sessions] [questions]
+ */
+public class CompactAnswerMapBenchmark {
+	
+	static final String SPEC_VERSION = TestCompactAnswerMap.SPEC_VERSION;
+	static final String LANGUAGE = TestCompactAnswerMap.LANGUAGE;
+	
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long retval = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(20);
+			retval = Math.min(retval, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return retval;
+	}
+	
+	/**
+	 * @return heap bytes per session for a survey cloned per session and a HashMap of answers
+	 */
+	static long legacyBytesPerSession(Survey sharedSurvey, int numSessions, int numQuestions) throws Exception {
+		long start = usedHeap();
+		List<SurveyResponse> sessions = new ArrayList<SurveyResponse>();
+		for (int i = 0; i < numSessions; i++) {
+			SurveyResponse response = new SurveyResponse(SPEC_VERSION, LANGUAGE);
+			response.setSurvey(sharedSurvey.clone());
+			Map<String, Answer> answers = new HashMap<String, Answer>();
+			TestCompactAnswerMap.addAnswers(answers, numQuestions);
+			response.setResponses(answers);
+			sessions.add(response);
+		}
+		long retval = (usedHeap() - start) / numSessions;
+		if (sessions.size() != numSessions) {
+			throw new RuntimeException("Unexpected number of sessions");
+		}
+		return retval;
+	}
+	
+	/**
+	 * @return heap bytes per session for a shared survey and a CompactAnswerMap
+	 */
+	static long compactBytesPerSession(Survey sharedSurvey, int numSessions, int numQuestions) throws Exception {
+		long start = usedHeap();
+		List<SurveyResponse> sessions = new ArrayList<SurveyResponse>();
+		for (int i = 0; i < numSessions; i++) {
+			SurveyResponse response = new SurveyResponse(SPEC_VERSION, LANGUAGE);
+			response.setSurvey(sharedSurvey);
+			Map<String, Answer> answers = new CompactAnswerMap(sharedSurvey, LANGUAGE);
+			TestCompactAnswerMap.addAnswers(answers, numQuestions);
+			response.setResponses(answers);
+			sessions.add(response);
+		}
+		long retval = (usedHeap() - start) / numSessions;
+		if (sessions.size() != numSessions) {
+			throw new RuntimeException("Unexpected number of sessions");
+		}
+		return retval;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numSessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int numQuestions = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		Survey sharedSurvey = TestCompactAnswerMap.createSurvey(numQuestions);
+		long legacyBytes = legacyBytesPerSession(sharedSurvey, numSessions, numQuestions);
+		long compactBytes = compactBytesPerSession(sharedSurvey, numSessions, numQuestions);
+		System.out.println("Survey response heap per session for " + numQuestions + " questions: " +
+				legacyBytes + " bytes before, " + compactBytes + " bytes after");
+	}
+}
@@ -0,0 +1,168 @@
+package org.openchain.certification.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+/**
+ * Compares sorting questions using the packed sort keys in <code>Question.compareTo</code> with
+ * the previous implementation which parsed the number matcher groups on every comparison.
+ * 
+ * Questionnaires are generated with the N, N.a and N.a.i numbering used since spec version 1.0.2.
+ * 
+ * java -cp ... org.openchain.certification.model.QuestionSortBenchmark [iterations]
+ */
+public class QuestionSortBenchmark {
+	
+	static final String SPEC_VERSION = "1.1";
+	static final String LANGUAGE = "en";
+	static final int[] QUESTIONNAIRE_SIZES = new int[] {60, 120, 500};
+	static final String[] ROMAN = new String[] {"i", "ii", "iii", "iv", "v", "vi"};
+	static final int WARMUP_ITERATIONS = 2000;
+	
+	/**
+	 * The comparison used by Question.compareTo before the sort keys were added
+	 */
+	static class LegacyComparator implements Comparator<Question> {
+
+		@Override
+		public int compare(Question q1, Question q2) {
+			int retval = q1.getSpecVersion().compareToIgnoreCase(q2.getSpecVersion());
+			if (retval != 0) {
+				return retval;
+			}
+			Matcher m1 = q1.getNumberMatch();
+			Matcher m2 = q2.getNumberMatch();
+			retval = Integer.parseInt(m1.group(1)) - Integer.parseInt(m2.group(1));
+			if (retval != 0) {
+				return retval;
+			}
+			if (m1.group(2) == null) {
+				return m2.group(2) == null ? 0 : -1;
+			} else if (m2.group(2) == null) {
+				return 1;
+			}
+			retval = alphaToInt(m1.group(2).substring(1)) - alphaToInt(m2.group(2).substring(1));
+			if (retval != 0) {
+				return retval;
+			}
+			if (m1.group(3) == null) {
+				return m2.group(3) == null ? 0 : -1;
+			} else if (m2.group(3) == null) {
+				return 1;
+			}
+			return romanToInt(m1.group(3).substring(1)) - romanToInt(m2.group(3).substring(1));
+		}
+		
+		private int alphaToInt(String alpha) {
+			int retval = 0;
+			int valueOfa = Character.getNumericValue('a')-1;
+			String lowerAlpha = alpha.toLowerCase();
+			for (int i = lowerAlpha.length()-1; i >= 0; i--) {
+				retval = retval * 27 + (Character.getNumericValue(lowerAlpha.charAt(i))-valueOfa);
+			}
+			return retval;
+		}
+		
+		private int romanToInt(char letter) {
+			switch(letter) {
+			case 'M': return 1000;
+			case 'D': return 500;
+			case 'C': return 100;
+			case 'L': return 50;
+			case 'X': return 10;
+			case 'V': return 5;
+			case 'I': return 1;
+			default: return 0;
+			}
+		}
+		
+		private int romanToInt(String roman) {
+			int retval = 0;
+			String upperRoman = roman.toUpperCase();
+			for (int i = 0; i < upperRoman.length()-1; i++) {
+				int d1 = romanToInt(upperRoman.charAt(i));
+				int d2 = romanToInt(upperRoman.charAt(i+1));
+				retval = d1 < d2 ? retval - d1 : retval + d1;
+			}
+			return retval + romanToInt(upperRoman.charAt(upperRoman.length()-1));
+		}
+	}
+	
+	/**
+	 * @param size approximate number of questions
+	 * @return shuffled questions numbered the way a questionnaire is numbered
+	 */
+	static List<Question> createQuestionnaire(int size, Random random) throws QuestionException {
+		List<Question> retval = new ArrayList<Question>();
+		int level1 = 1;
+		while (retval.size() < size) {
+			retval.add(newQuestion(String.valueOf(level1)));
+			int numLevel2 = random.nextInt(5);
+			for (int i = 0; i < numLevel2; i++) {
+				String level2 = level1 + "." + (char)('a' + i);
+				retval.add(newQuestion(level2));
+				int numLevel3 = random.nextInt(3) == 0 ? random.nextInt(ROMAN.length) : 0;
+				for (int j = 0; j < numLevel3; j++) {
+					retval.add(newQuestion(level2 + "." + ROMAN[j]));
+				}
+			}
+			level1++;
+		}
+		Collections.shuffle(retval, random);
+		return retval;
+	}
+	
+	static Question newQuestion(String number) throws QuestionException {
+		return new YesNoQuestion("Question " + number, "G1", number, SPEC_VERSION, new String[] {"ref"}, LANGUAGE, YesNo.Yes);
+	}
+	
+	static long run(List<Question> questionnaire, Comparator<Question> comparator, int iterations) {
+		long check = 0;
+		for (int i = 0; i < iterations; i++) {
+			List<Question> questions = new ArrayList<Question>(questionnaire);
+			if (comparator == null) {
+				Collections.sort(questions);
+			} else {
+				Collections.sort(questions, comparator);
+			}
+			check += questions.get(i % questions.size()).getNumber().length();
+		}
+		return check;
+	}
+	
+	static void report(String name, int size, int iterations, long nanos) {
+		System.out.println(String.format("%-7s %4d questions %,10.0f sorts/s  %,10.0f ns/sort", name, size,
+				iterations * 1e9 / nanos, (double)nanos / iterations));
+	}
+
+	public static void main(String[] args) throws QuestionException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		Random random = new Random(42);
+		Comparator<Question> legacy = new LegacyComparator();
+		long check = 0;
+		for (int size:QUESTIONNAIRE_SIZES) {
+			List<Question> questionnaire = createQuestionnaire(size, random);
+			List<Question> legacySorted = new ArrayList<Question>(questionnaire);
+			Collections.sort(legacySorted, legacy);
+			List<Question> sorted = new ArrayList<Question>(questionnaire);
+			Collections.sort(sorted);
+			if (!legacySorted.equals(sorted)) {
+				throw new IllegalStateException("Sort orders differ for questionnaire size " + size);
+			}
+			check += run(questionnaire, legacy, WARMUP_ITERATIONS) + run(questionnaire, null, WARMUP_ITERATIONS);
+			long start = System.nanoTime();
+			check += run(questionnaire, legacy, iterations);
+			report("legacy", questionnaire.size(), iterations, System.nanoTime() - start);
+			start = System.nanoTime();
+			check += run(questionnaire, null, iterations);
+			report("packed", questionnaire.size(), iterations, System.nanoTime() - start);
+		}
+		System.out.println("checksum " + check);
+	}
+}
@@ -0,0 +1,145 @@
+package org.openchain.certification.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+public class TestAnswerKey {
+
+	static final String LANGUAGE = "en";
+	static final String SPEC_VERSION = "1.1";
+	static final YesNo[] CORRECT_ANSWERS = new YesNo[] {YesNo.Yes, YesNo.No, YesNo.Any, YesNo.YesNotApplicable, YesNo.NoNotApplicable};
+	static final YesNo[] ANSWER_VALUES = new YesNo[] {YesNo.Yes, YesNo.No, YesNo.NotApplicable};
+	static final int NUM_RESPONSES = 500;
+
+	private Survey createSurvey() throws Exception {
+		TestHelper.SurveyBuilder builder = new TestHelper.SurveyBuilder(SPEC_VERSION, LANGUAGE);
+		for (int s = 0; s < 2; s++) {
+			builder.section("G" + (s + 1), "Title");
+			for (int i = 0; i < CORRECT_ANSWERS.length; i++) {
+				String number = String.valueOf(s * 100 + i + 1);
+				if (i % 3 == 0) {
+					builder.yesNoWithEvidence(number, "Question " + number, CORRECT_ANSWERS[i], "Evidence");
+				} else if (i % 3 == 1) {
+					builder.yesNoNotApplicable(number, "Question " + number, CORRECT_ANSWERS[i], "Not applicable");
+				} else {
+					builder.yesNo(number, "Question " + number, CORRECT_ANSWERS[i]);
+				}
+			}
+			String parentNumber = String.valueOf(s * 100 + 50);
+			builder.subQuestion(parentNumber, "Parent", 2 - s);
+			for (int i = 0; i < 3; i++) {
+				builder.yesNo(parentNumber + "." + (char)('a' + i), "Sub " + i, CORRECT_ANSWERS[i]).subQuestionOf(parentNumber);
+			}
+		}
+		return builder.build();
+	}
+
+	private void addRandomAnswers(Survey survey, Map<String, Answer> answers, Random random) {
+		for (Section section:survey.getSections()) {
+			for (Question question:section.getQuestions()) {
+				if (question.getSubQuestionOfNumber() != null || random.nextInt(5) == 0) {
+					continue;
+				}
+				if (question instanceof SubQuestion) {
+					SubQuestionAnswers parentAnswer = new SubQuestionAnswers(LANGUAGE);
+					for (Question sub:((SubQuestion)question).getAllSubquestions()) {
+						if (random.nextBoolean()) {
+							Answer subAnswer = new YesNoAnswer(LANGUAGE, ANSWER_VALUES[random.nextInt(ANSWER_VALUES.length)]);
+							parentAnswer.addSubAnswer(sub.getNumber(), subAnswer);
+							answers.put(sub.getNumber(), subAnswer);
+						}
+					}
+					answers.put(question.getNumber(), parentAnswer);
+				} else if (question instanceof YesNoQuestionWithEvidence) {
+					answers.put(question.getNumber(), new YesNoAnswerWithEvidence(LANGUAGE,
+							ANSWER_VALUES[random.nextInt(ANSWER_VALUES.length)], "evidence"));
+				} else {
+					answers.put(question.getNumber(), new YesNoAnswer(LANGUAGE, ANSWER_VALUES[random.nextInt(ANSWER_VALUES.length)]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Score calculation used before the answer key was compiled
+	 */
+	private int[] referenceScore(Survey survey, Map<String, Answer> answers) {
+		int numQuestions = 0;
+		int numCorrect = 0;
+		int numAnswered = 0;
+		for (Section section:survey.getSections()) {
+			for (Question question:section.getQuestions()) {
+				if (question.getSubQuestionOfNumber() == null) {
+					numQuestions++;
+					Answer answer = answers.get(question.getNumber());
+					if (answer != null) {
+						numAnswered++;
+						if (question.validate(answer)) {
+							numCorrect++;
+						}
+					}
+				}
+			}
+		}
+		return new int[] {numCorrect * 100 / numQuestions, numAnswered * 100 / numQuestions, numAnswered};
+	}
+
+	@Test
+	public void testMatchesQuestionValidation() throws Exception {
+		Survey survey = createSurvey();
+		AnswerKey key = survey.getAnswerKey();
+		assertEquals(12, key.getNumQuestions());
+		Random random = new Random(1234);
+		for (int i = 0; i < NUM_RESPONSES; i++) {
+			Map<String, Answer> answers = new HashMap<String, Answer>();
+			addRandomAnswers(survey, answers, random);
+			CompactAnswerMap compact = new CompactAnswerMap(survey, LANGUAGE);
+			compact.putAll(answers);
+			int[] expected = referenceScore(survey, answers);
+			assertArrayEquals(expected, key.score(answers));
+			assertArrayEquals(expected, key.score(compact));
+			assertEquals(expected[AnswerKey.SCORE], Submission.calcScore(survey, compact));
+			assertEquals(expected[AnswerKey.PERCENT_COMPLETE], Submission.calcPercentComplete(survey, compact));
+			assertEquals(expected[AnswerKey.NUM_ANSWERED], Submission.calcNumAnswered(survey, compact));
+		}
+	}
+
+	@Test
+	public void testScoreAll() throws Exception {
+		Survey survey = createSurvey();
+		Random random = new Random(5678);
+		List<Map<String, Answer>> responses = new ArrayList<Map<String, Answer>>();
+		for (int i = 0; i < NUM_RESPONSES; i++) {
+			Map<String, Answer> answers = new CompactAnswerMap(survey, LANGUAGE);
+			addRandomAnswers(survey, answers, random);
+			responses.add(answers);
+		}
+		int[][] scores = survey.getAnswerKey().scoreAll(responses);
+		assertEquals(NUM_RESPONSES, scores.length);
+		for (int i = 0; i < NUM_RESPONSES; i++) {
+			assertArrayEquals(referenceScore(survey, responses.get(i)), scores[i]);
+		}
+	}
+
+	@Test
+	public void testEmptySurveyAndRecompile() throws Exception {
+		Survey survey = createSurvey();
+		Map<String, Answer> answers = new CompactAnswerMap(survey, LANGUAGE);
+		answers.put("1", new YesNoAnswerWithEvidence(LANGUAGE, YesNo.Yes, "evidence"));
+		AnswerKey key = survey.getAnswerKey();
+		assertSame(key, survey.getAnswerKey());
+		assertEquals(8, key.score(answers)[AnswerKey.SCORE]);
+		survey.setSections(new ArrayList<Section>());
+		assertNotSame(key, survey.getAnswerKey());
+		assertArrayEquals(new int[] {100, 100, 0}, survey.getAnswerKey().score(answers));
+	}
+}
@@ -0,0 +1,126 @@
+package org.openchain.certification.model;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.model.YesNoQuestion.YesNo;
+
+public class TestCompactAnswerMap {
+
+	static final String LANGUAGE = "en";
+	static final String SPEC_VERSION = "1.1";
+
+	/**
+	 * @param numQuestions number of yes/no questions in addition to 1 subquestion with 3 subquestions
+	 */
+	static Survey createSurvey(int numQuestions) throws Exception {
+		TestHelper.SurveyBuilder builder = new TestHelper.SurveyBuilder(SPEC_VERSION, LANGUAGE).section("G1", "Title");
+		for (int i = 0; i < numQuestions; i++) {
+			if (i % 2 == 0) {
+				builder.yesNo(String.valueOf(i + 1), "Question " + i, YesNo.Yes);
+			} else {
+				builder.yesNoWithEvidence(String.valueOf(i + 1), "Question " + i, YesNo.Yes, "Evidence prompt");
+			}
+		}
+		builder.subQuestion("200", "Parent", 2);
+		for (int i = 1; i <= 3; i++) {
+			builder.yesNo("200." + (char)('a' + i - 1), "Sub " + i, YesNo.Yes).subQuestionOf("200");
+		}
+		return builder.build();
+	}
+
+	static void addAnswers(Map<String, Answer> answers, int numQuestions) {
+		for (int i = 0; i < numQuestions; i++) {
+			if (i % 2 == 0) {
+				answers.put(String.valueOf(i + 1), new YesNoAnswer(LANGUAGE, i % 4 == 0 ? YesNo.Yes : YesNo.No));
+			} else {
+				answers.put(String.valueOf(i + 1), new YesNoAnswerWithEvidence(LANGUAGE, YesNo.Yes, new String("Evidence " + (i % 3))));
+			}
+		}
+		SubQuestionAnswers parentAnswer = new SubQuestionAnswers(LANGUAGE);
+		answers.put("200", parentAnswer);
+		for (int i = 1; i <= 2; i++) {
+			Answer subAnswer = new YesNoAnswer(LANGUAGE, YesNo.Yes);
+			String number = "200." + (char)('a' + i - 1);
+			answers.put(number, subAnswer);
+			parentAnswer.addSubAnswer(number, subAnswer);
+		}
+	}
+
+	@Test
+	public void testEquivalentToHashMap() throws Exception {
+		Survey survey = createSurvey(10);
+		Map<String, Answer> expected = new HashMap<String, Answer>();
+		addAnswers(expected, 10);
+		CompactAnswerMap compact = new CompactAnswerMap(survey, LANGUAGE);
+		addAnswers(compact, 10);
+		assertEquals(expected.size(), compact.size());
+		assertEquals(expected, compact);
+		assertEquals(expected, new HashMap<String, Answer>(compact));
+		SubQuestionAnswers parentAnswer = (SubQuestionAnswers)compact.get("200");
+		assertEquals(2, parentAnswer.getSubAnswers().size());
+		assertTrue(survey.getQuestion("200").validate(parentAnswer));
+		assertEquals(YesNo.No, ((YesNoAnswer)compact.get("3")).getAnswer());
+		assertEquals("Evidence 0", ((YesNoAnswerWithEvidence)compact.get("4")).getEvidence());
+		assertNull(compact.get("99"));
+		assertFalse(compact.containsKey("200.c"));
+	}
+
+	@Test
+	public void testPutRemove() throws Exception {
+		Survey survey = createSurvey(4);
+		CompactAnswerMap compact = new CompactAnswerMap(survey, LANGUAGE);
+		assertNull(compact.put("1", new YesNoAnswer(LANGUAGE, YesNo.Yes)));
+		assertEquals(new YesNoAnswer(LANGUAGE, YesNo.Yes), compact.put("1", new YesNoAnswer(LANGUAGE, YesNo.NotApplicable)));
+		assertEquals(YesNo.NotApplicable, ((YesNoAnswer)compact.get("1")).getAnswer());
+		compact.put("2", new YesNoAnswerWithEvidence(LANGUAGE, null, null));
+		assertNull(((YesNoAnswer)compact.get("2")).getAnswer());
+		// Answers for questions not in the survey are still kept
+		compact.put("999", new YesNoAnswer(LANGUAGE, YesNo.No));
+		assertEquals(3, compact.size());
+		assertEquals(YesNo.No, ((YesNoAnswer)compact.get("999")).getAnswer());
+		compact.setLanguage("de");
+		assertEquals("de", compact.get("1").getLanguage());
+		assertEquals("de", compact.get("999").getLanguage());
+		assertNotNull(compact.remove("1"));
+		assertNull(compact.remove("1"));
+		assertEquals(2, compact.size());
+		compact.entrySet().iterator().next();
+		java.util.Iterator<Map.Entry<String, Answer>> iter = compact.entrySet().iterator();
+		while (iter.hasNext()) {
+			iter.next();
+			iter.remove();
+		}
+		assertTrue(compact.isEmpty());
+	}
+
+	@Test
+	public void testCompactLayout() throws Exception {
+		int numQuestions = 100;
+		Survey sharedSurvey = createSurvey(numQuestions);
+		CompactAnswerMap first = new CompactAnswerMap(sharedSurvey, LANGUAGE);
+		addAnswers(first, numQuestions);
+		CompactAnswerMap second = new CompactAnswerMap(sharedSurvey, LANGUAGE);
+		addAnswers(second, numQuestions);
+		// The question index is shared by every map for the survey
+		assertSame(sharedSurvey.getQuestionIndex(), first.getQuestionIndex());
+		assertSame(first.getQuestionIndex(), second.getQuestionIndex());
+		// One byte per question and no answer objects retained
+		assertEquals(sharedSurvey.getQuestionIndex().size(), first.getPackedAnswers().length);
+		assertFalse(first.hasOtherAnswers());
+		int numPacked = 0;
+		for (byte packed:first.getPackedAnswers()) {
+			if (packed != CompactAnswerMap.NO_ANSWER) {
+				numPacked++;
+			}
+		}
+		assertEquals(first.size(), numPacked);
+		// Equal evidence strings from different sessions share one instance
+		assertSame(((YesNoAnswerWithEvidence)first.get("2")).getEvidence(),
+				((YesNoAnswerWithEvidence)second.get("2")).getEvidence());
+	}
+}
@@ -87,4 +87,41 @@ public class TestQuestion {
 			assertEquals(ORDERED_NUMERIC[i],romanQuestions.get(i).getNumber());
 		}
 	}
+
+	@Test
+	public void testSortKeyOrder() throws QuestionException {
+		for (int i = 1; i < ORDERED_ROMAN.length; i++) {
+			QuestionForTest lower = new QuestionForTest("Q", "section", ORDERED_ROMAN[i-1], ROMAN_SPEC_VERSION, ROMAN_LANGUAGE);
+			QuestionForTest higher = new QuestionForTest("Q", "section", ORDERED_ROMAN[i], ROMAN_SPEC_VERSION, ROMAN_LANGUAGE);
+			assertTrue(lower.getSortKey() < higher.getSortKey());
+		}
+		for (int i = 1; i < ORDERED_NUMERIC.length; i++) {
+			QuestionForTest lower = new QuestionForTest("Q", "section", ORDERED_NUMERIC[i-1], NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE);
+			QuestionForTest higher = new QuestionForTest("Q", "section", ORDERED_NUMERIC[i], NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE);
+			assertTrue(lower.getSortKey() < higher.getSortKey());
+		}
+	}
+	
+	@Test
+	public void testSortUnpackedNumbers() throws QuestionException {
+		QuestionForTest large = new QuestionForTest("Q", "section", "2.70000", NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE);
+		QuestionForTest small = new QuestionForTest("Q", "section", "2.5", NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE);
+		QuestionForTest first = new QuestionForTest("Q", "section", "1", NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE);
+		assertEquals(Question.SORT_KEY_NOT_PACKED, large.getSortKey());
+		assertTrue(small.compareTo(large) < 0);
+		assertTrue(large.compareTo(small) > 0);
+		assertTrue(first.compareTo(large) < 0);
+		assertEquals(0, large.compareTo(new QuestionForTest("Q", "section", "2.70000", NUMERIC_SPEC_STRING, NUMERIC_LANGUAGE)));
+	}
+	
+	@Test
+	public void testSortKeyChangedNumber() throws QuestionException {
+		QuestionForTest q1 = new QuestionForTest("Q", "section", "3.b", ROMAN_SPEC_VERSION, ROMAN_LANGUAGE);
+		QuestionForTest q2 = new QuestionForTest("Q", "section", "3.c", ROMAN_SPEC_VERSION, ROMAN_LANGUAGE);
+		assertTrue(q1.compareTo(q2) < 0);
+		q1.setNumber("3.d");
+		assertTrue(q1.compareTo(q2) > 0);
+		q1.setSpecVersion(ROMAN_SPEC_VERSION);
+		assertTrue(q1.compareTo(q2) > 0);
+	}
 }
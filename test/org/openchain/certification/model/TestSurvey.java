@@ -123,4 +123,64 @@ public class TestSurvey {
 		assertEquals(pattern.toString(), qclone.getEvidenceValidation().toString());
 	}
 
+	@Test
+	public void testQuestionIndex() throws QuestionException {
+		String specVersion = "1.1";
+		String language = "en";
+		Survey survey = new Survey(specVersion, language);
+		Section section = new Section("G1", "stitle", language);
+		List<Question> questions = new ArrayList<Question>();
+		YesNoQuestion q2 = new YesNoQuestion("Question 2", "G1", "2", specVersion, new String[] {"ref"}, language, YesNo.Yes);
+		YesNoQuestion q1 = new YesNoQuestion("Question 1", "G1", "1", specVersion, new String[] {"ref"}, language, YesNo.Yes);
+		SubQuestion parent = new SubQuestion("Parent", "G1", "3", specVersion, new String[] {"ref"}, language, 1);
+		YesNoQuestion sub1 = new YesNoQuestion("Sub 1", "G1", "3.a", specVersion, new String[] {"ref"}, language, YesNo.Yes);
+		YesNoQuestion sub2 = new YesNoQuestion("Sub 2", "G1", "3.b", specVersion, new String[] {"ref"}, language, YesNo.No);
+		sub1.setSubQuestionOfNumber("3");
+		sub2.setSubQuestionOfNumber("3");
+		parent.addSubQuestion(sub1);
+		parent.addSubQuestion(sub2);
+		questions.add(q2);
+		questions.add(sub2);
+		questions.add(parent);
+		questions.add(q1);
+		questions.add(sub1);
+		section.setQuestions(questions);
+		List<Section> sections = new ArrayList<Section>();
+		sections.add(section);
+		survey.setSections(sections);
+		
+		QuestionIndex index = survey.getQuestionIndex();
+		assertEquals(5, index.size());
+		assertSame(index, survey.getQuestionIndex());
+		assertSame(q1, survey.getQuestion("1"));
+		assertSame(sub2, survey.getQuestion("3.b"));
+		assertNull(survey.getQuestion("4"));
+		assertEquals(5, survey.getQuestionNumbers().size());
+		List<Question> sorted = index.getSortedQuestions();
+		assertSame(q1, sorted.get(0));
+		assertSame(q2, sorted.get(1));
+		assertSame(parent, sorted.get(2));
+		assertSame(sub1, sorted.get(3));
+		assertSame(sub2, sorted.get(4));
+		int parentOrdinal = index.getOrdinal("3");
+		assertEquals(parentOrdinal, index.getParent(index.getOrdinal("3.a")));
+		assertEquals(parentOrdinal, index.getParent(index.getOrdinal("3.b")));
+		assertEquals(-1, index.getParent(parentOrdinal));
+		assertEquals(2, index.getChildren(parentOrdinal).length);
+		assertEquals(0, index.getChildren(index.getOrdinal("1")).length);
+		
+		// prettify removes the redundant subquestions from the section
+		survey.prettify();
+		assertNotSame(index, survey.getQuestionIndex());
+		assertEquals(3, survey.getQuestionIndex().size());
+		assertNull(survey.getQuestion("3.a"));
+		survey.addInfoToSectionQuestions();
+		assertEquals(5, survey.getQuestionIndex().size());
+		assertEquals("3", survey.getQuestion("3.a").getSubQuestionOfNumber());
+		
+		survey.setSections(new ArrayList<Section>());
+		assertEquals(0, survey.getQuestionIndex().size());
+		assertNull(survey.getQuestion("1"));
+	}
+
 }
@@ -0,0 +1,50 @@
+package org.openchain.certification.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openchain.certification.model.EmailMessage;
+
+/**
+ * Email transport which keeps the sent emails in memory for testing
+ */
+public class InMemoryEmailTransport implements EmailTransport {
+	
+	private List<EmailMessage> sent = new ArrayList<EmailMessage>();
+	private int failuresRemaining = 0;
+	private boolean closed = false;
+
+	@Override
+	public synchronized void send(EmailMessage email) throws EmailUtilException {
+		if (failuresRemaining > 0) {
+			failuresRemaining--;
+			throw new EmailUtilException("Simulated send failure");
+		}
+		sent.add(email);
+	}
+
+	@Override
+	public double getMaxSendRate() {
+		return 0;
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+	}
+	
+	/**
+	 * @param failures Number of sends which fail before emails are sent
+	 */
+	public synchronized void setFailures(int failures) {
+		this.failuresRemaining = failures;
+	}
+	
+	public synchronized List<EmailMessage> getSent() {
+		return new ArrayList<EmailMessage>(sent);
+	}
+	
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+}
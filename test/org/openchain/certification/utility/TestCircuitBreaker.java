@@ -0,0 +1,53 @@
+package org.openchain.certification.utility;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openchain.certification.utility.CircuitBreaker.State;
+
+public class TestCircuitBreaker {
+
+	@Test
+	public void testOpenAfterThreshold() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+		assertTrue(breaker.allowRequest());
+		breaker.recordFailure();
+		assertTrue(breaker.allowRequest());
+		breaker.recordFailure();
+		assertEquals(State.Closed, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		breaker.recordFailure();
+		assertEquals(State.Open, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+	
+	@Test
+	public void testSuccessResetsFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		assertEquals(State.Closed, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+	
+	@Test
+	public void testHalfOpen() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, 50);
+		breaker.recordFailure();
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(80);
+		// only one trial request is allowed
+		assertTrue(breaker.allowRequest());
+		assertEquals(State.HalfOpen, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.recordFailure();
+		assertEquals(State.Open, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(80);
+		assertTrue(breaker.allowRequest());
+		breaker.recordSuccess();
+		assertEquals(State.Closed, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+}
@@ -0,0 +1,197 @@
+package org.openchain.certification.utility;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openchain.certification.TestHelper;
+import org.openchain.certification.dbdao.EmailOutboxDao;
+import org.openchain.certification.model.EmailMessage;
+
+public class TestEmailDispatcher {
+	
+	Connection con;
+	InMemoryEmailTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		con = TestHelper.getConnection();
+		TestHelper.truncateDatabase(con);
+		transport = new InMemoryEmailTransport();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		con.close();
+	}
+	
+	private void enqueue(EmailMessage... emails) throws Exception {
+		con.setAutoCommit(false);
+		EmailOutboxDao.enqueue(con, emails);
+		con.commit();
+	}
+
+	@Test
+	public void testDispatch() throws Exception {
+		EmailMessage email1 = new EmailMessage("from@openchain.com", "to1@openchain.com", "Subject 1", "<div>Body 1</div>");
+		EmailMessage email2 = new EmailMessage("from@openchain.com", "to2@openchain.com", "Subject 2", "<div>Body 2</div>");
+		EmailMessage email3 = new EmailMessage("from@openchain.com", "to3@openchain.com", "Subject 3", "<div>Body 3</div>");
+		enqueue(email1, email2);
+		enqueue(email3);
+		// batch size smaller than the number of emails
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 2, 3, 0);
+		assertEquals(3, dispatcher.dispatch());
+		List<EmailMessage> sent = transport.getSent();
+		assertEquals(3, sent.size());
+		assertEquals("to1@openchain.com", sent.get(0).getToEmail());
+		assertEquals("from@openchain.com", sent.get(0).getFromEmail());
+		assertEquals("Subject 1", sent.get(0).getSubject());
+		assertEquals("<div>Body 1</div>", sent.get(0).getHtmlBody());
+		assertEquals("to2@openchain.com", sent.get(1).getToEmail());
+		assertEquals("to3@openchain.com", sent.get(2).getToEmail());
+		assertEquals(0, new EmailOutboxDao(con).countPending(3));
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(3, dispatcher.getSentCount());
+		assertEquals(3, countRemovedBodies());
+	}
+	
+	/**
+	 * @return number of emails in the outbox whose body has been removed
+	 */
+	private int countRemovedBodies() throws Exception {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet result = stmt.executeQuery("select count(*) from email_outbox where body is null");
+			result.next();
+			return result.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+	
+	@Test
+	public void testRollback() throws Exception {
+		con.setAutoCommit(false);
+		EmailOutboxDao.enqueue(con, new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+		con.rollback();
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 3, 0);
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(0, transport.getSent().size());
+	}
+	
+	@Test
+	public void testRetry() throws Exception {
+		enqueue(new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+		transport.setFailures(1);
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 3, 0);
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(1, dispatcher.getFailedCount());
+		EmailOutboxDao dao = new EmailOutboxDao(con);
+		assertEquals(1, dao.countPending(3));
+		assertEquals(1, dispatcher.dispatch());
+		assertEquals(1, transport.getSent().size());
+		assertEquals(0, dao.countPending(3));
+	}
+	
+	@Test
+	public void testBackoff() throws Exception {
+		enqueue(new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+		transport.setFailures(1);
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 3, 60000);
+		assertEquals(0, dispatcher.dispatch());
+		// not retried until the backoff has passed
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(1, dispatcher.getFailedCount());
+		assertEquals(1, new EmailOutboxDao(con).countPending(3));
+	}
+	
+	@Test
+	public void testMaxAttempts() throws Exception {
+		enqueue(new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+		transport.setFailures(10);
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 2, 0);
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(2, dispatcher.getFailedCount());
+		assertEquals(0, new EmailOutboxDao(con).countPending(2));
+		assertEquals(1, countRemovedBodies());
+	}
+	
+	@Test
+	public void testAbandonedClaim() throws Exception {
+		enqueue(new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+		EmailOutboxDao dao = new EmailOutboxDao(con);
+		// Claimed for the last attempt with a lease which has already expired, then never marked
+		assertEquals(1, dao.claimBatch(10, -1000, 1).size());
+		assertEquals(0, countRemovedBodies());
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 1, 0);
+		assertEquals(0, dispatcher.dispatch());
+		assertEquals(0, transport.getSent().size());
+		assertEquals(1, countRemovedBodies());
+	}
+	
+	@Test
+	public void testSendRate() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			enqueue(new EmailMessage("from@openchain.com", "to"+i+"@openchain.com", "Subject", "Body"));
+		}
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 20, 10, 3, 0);
+		long start = System.nanoTime();
+		assertEquals(5, dispatcher.dispatch());
+		long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+		// 5 emails at 20 per second are spaced at least 50 milliseconds apart
+		assertTrue(elapsedMillis >= 200);
+	}
+	
+	@Test
+	public void testPolling() throws Exception {
+		EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0, 10, 3, 0);
+		dispatcher.startPolling(50);
+		try {
+			enqueue(new EmailMessage("from@openchain.com", "to@openchain.com", "Subject", "Body"));
+			long timeout = System.currentTimeMillis() + 5000;
+			while (transport.getSent().isEmpty() && System.currentTimeMillis() < timeout) {
+				Thread.sleep(20);
+			}
+			assertEquals(1, transport.getSent().size());
+		} finally {
+			dispatcher.stop();
+		}
+		assertTrue(transport.isClosed());
+	}
+	
+	@Test
+	public void testStopDuringDrain() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			enqueue(new EmailMessage("from@openchain.com", "to"+i+"@openchain.com", "Subject", "Body"));
+		}
+		// One email every 5 seconds so that the drain takes at least 10 seconds
+		final EmailDispatcher dispatcher = new EmailDispatcher(TestHelper.getTestServletConfig(), transport, 0.2, 10, 3, 0);
+		dispatcher.startPolling(60000);
+		long timeout = System.currentTimeMillis() + 5000;
+		while (transport.getSent().isEmpty() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, transport.getSent().size());
+		Thread stopper = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				// Stopping must not wait for the drain in progress
+				dispatcher.stop();
+			}
+		});
+		stopper.start();
+		stopper.join(3000);
+		assertFalse(stopper.isAlive());
+		assertTrue(transport.isClosed());
+		assertEquals(1, transport.getSent().size());
+	}
+}
@@ -0,0 +1,52 @@
+package org.openchain.certification.utility;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 1000000; value++) {
+			int index = LatencyHistogram.getIndex(value);
+			assertTrue(LatencyHistogram.getLowestValue(index) <= value);
+			assertTrue(LatencyHistogram.getHighestValue(index) >= value);
+		}
+		assertEquals(LatencyHistogram.getIndex(63) + 1, LatencyHistogram.getIndex(64));
+		int maxIndex = LatencyHistogram.getIndex(LatencyHistogram.MAX_VALUE);
+		assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.getHighestValue(maxIndex));
+		for (int i = 1; i <= maxIndex; i++) {
+			assertEquals(LatencyHistogram.getHighestValue(i-1) + 1, LatencyHistogram.getLowestValue(i));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99.0));
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 100);
+		}
+		assertEquals(10000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500050.0, histogram.getMean(), 0.01);
+		assertEquals(500000, histogram.getValueAtPercentile(50.0), 500000 * 0.04);
+		assertEquals(990000, histogram.getValueAtPercentile(99.0), 990000 * 0.04);
+		assertEquals(1000000, histogram.getValueAtPercentile(100.0));
+		assertEquals(100, histogram.getValueAtPercentile(0.0), 4);
+		assertEquals(10000, histogram.getCountAtOrBelow(LatencyHistogram.MAX_VALUE));
+		assertEquals(0, histogram.getCountAtOrBelow(50));
+	}
+
+	@Test
+	public void testOutOfRange() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2, histogram.getCount());
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+	}
+}
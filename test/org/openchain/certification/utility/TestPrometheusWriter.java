@@ -0,0 +1,49 @@
+package org.openchain.certification.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class TestPrometheusWriter {
+
+	@Test
+	public void testSamples() {
+		StringWriter sw = new StringWriter();
+		PrometheusWriter writer = new PrometheusWriter(new PrintWriter(sw));
+		writer.writeHeader("test_total", PrometheusWriter.COUNTER, "Test counter");
+		writer.writeSample("test_total", 12);
+		writer.writeSample("test_total", "name", "a\"b\\c\nd", 0.5);
+		assertEquals("# HELP test_total Test counter\n" +
+				"# TYPE test_total counter\n" +
+				"test_total 12\n" +
+				"test_total{name=\"a\\\"b\\\\c\\nd\"} 0.5\n", sw.toString());
+	}
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(500);			// 0.5 ms
+		histogram.record(20000);		// 20 ms
+		histogram.record(3000000);		// 3 seconds
+		StringWriter sw = new StringWriter();
+		PrometheusWriter writer = new PrometheusWriter(new PrintWriter(sw));
+		writer.writeHistogram("test_seconds", "op", "read", histogram);
+		String result = sw.toString();
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"0.001\"} 1\n"));
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"0.01\"} 1\n"));
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"0.025\"} 2\n"));
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"2.5\"} 2\n"));
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"5\"} 3\n"));
+		assertTrue(result.contains("test_seconds_bucket{op=\"read\",le=\"+Inf\"} 3\n"));
+		assertTrue(result.contains("test_seconds_sum{op=\"read\"} 3.0205\n"));
+		assertTrue(result.contains("test_seconds_count{op=\"read\"} 3\n"));
+		sw = new StringWriter();
+		writer = new PrometheusWriter(new PrintWriter(sw));
+		writer.writeHistogram("test_seconds", null, null, histogram);
+		assertTrue(sw.toString().contains("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+		assertTrue(sw.toString().contains("test_seconds_count 3\n"));
+	}
+}